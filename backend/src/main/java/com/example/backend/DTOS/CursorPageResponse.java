@@ -0,0 +1,22 @@
+package com.example.backend.DTOS;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * DTO for one page of a mail listing read from a cursor (infinite scroll, mail summaries)
+ * mails of the page, cursor of the next page (null after the last page) and page size
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CursorPageResponse {
+    private List<MailSummaryDTO> mails;
+    private String nextCursor;
+    private int size;
+}
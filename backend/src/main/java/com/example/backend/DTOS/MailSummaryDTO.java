@@ -0,0 +1,27 @@
+package com.example.backend.DTOS;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO for one row of a mail listing
+ * what the list shows: no body, recipients or attachments, GET /api/mail/{id} returns the whole mail
+ * folder is set in listings spanning folders (starred), null otherwise
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MailSummaryDTO {
+    private int id;
+    private String from;
+    private String subject;
+    private String preview;
+    private boolean starred;
+    private boolean hasAttachment;
+    private int priority;
+    private LocalDateTime timestamp;
+    private String folder;
+}
@@ -0,0 +1,23 @@
+package com.example.backend.DTOS;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * DTO for one page of a mail listing (mail summaries)
+ * mails of the page, number of mails of the whole listing, page number (from 0) and page size
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class PaginatedMailResponse {
+    private List<MailSummaryDTO> mails;
+    private int totalItems;
+    private int page;
+    private int size;
+}
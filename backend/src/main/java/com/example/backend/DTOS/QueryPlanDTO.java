@@ -0,0 +1,26 @@
+package com.example.backend.DTOS;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DTO for the plan of one folder listing (explain endpoint)
+ * steps in execution order: index lookups, folder access, filters, sort
+ * with the rows each one was expected to keep and the rows and time it really took
+ */
+@Data
+@NoArgsConstructor
+public class QueryPlanDTO {
+    private String folder;
+    private String sort;
+    //mails in the folder
+    private int folderSize;
+    //how the mails reach the filters (scan, scan with candidate check, lookup by id, time index order...)
+    private String access;
+    private List<QueryPlanStepDTO> steps = new ArrayList<>();
+    private int resultRows;
+    private long totalMicros;
+}
@@ -0,0 +1,20 @@
+package com.example.backend.DTOS;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for one step of a query plan (index lookup, folder access, filter, sort)
+ * estimatedRows is null when the step isn't estimated (index lookups are exact)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueryPlanStepDTO {
+    private String operation;
+    private String detail;
+    private Integer estimatedRows;
+    private Integer actualRows;
+    private long micros;
+}
@@ -0,0 +1,17 @@
+package com.example.backend.DTOS;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for one sender facet of a folder
+ * sender address (lower cased) and its number of mails
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SenderCountDTO {
+    private String sender;
+    private int count;
+}
@@ -2,6 +2,7 @@
 
 package com.example.backend.FilterPattern;
 
+import com.example.backend.Util.MailQuery;
 import com.example.backend.model.mail;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -24,9 +25,21 @@ public class AttachmentFilter extends AbstractEmailFilter {
         }
         //filter the list of mails based on the hasAttachments field in the filter modal
         List<mail> filtered = emails.stream()
-                .filter(email -> email.isHasAttachment() == hasAttachment)
+                .filter(this::matches)
                 .collect(Collectors.toList());
         //after filtering pass it to the next filter
         return passToNext(filtered);
     }
+
+    @Override
+    public boolean matches(mail email) {
+        return hasAttachment == null || email.isHasAttachment() == hasAttachment;
+    }
+
+    @Override
+    public void narrow(MailQuery query) {
+        if (hasAttachment != null) {
+            query.hasAttachment(hasAttachment);
+        }
+    }
 }
\ No newline at end of file
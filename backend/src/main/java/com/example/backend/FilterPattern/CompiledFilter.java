@@ -0,0 +1,123 @@
+package com.example.backend.FilterPattern;
+
+import com.example.backend.Util.MailQuery;
+import com.example.backend.model.mail;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Several filters fused into one test, run in one pass over the mails (no list between two filters)
+ * only active filters are kept, ordered so the cheap ones that drop the most mails run first:
+ * by cost / (1 - selectivity), the order that minimizes the expected cost of an AND
+ * immutable (apart from the next filter of the chain), one instance can serve concurrent requests
+ */
+public class CompiledFilter extends AbstractEmailFilter {
+
+    /**
+     * One filter and what it is expected to cost
+     */
+    public static final class Clause {
+        private final EmailFilter filter;
+        private final double cost;
+        private final double selectivity;
+        private final double rank;
+
+        /**
+         * @param filter : the filter, must be active
+         * @param cost : relative cost of one matches() call (1 = a boolean field check)
+         * @param selectivity : expected fraction of the mails it keeps, between 0 and 1
+         */
+        public Clause(EmailFilter filter, double cost, double selectivity) {
+            this.filter = filter;
+            this.cost = cost;
+            this.selectivity = selectivity;
+            // a filter keeping everything goes last
+            this.rank = cost / Math.max(1e-6, 1 - selectivity);
+        }
+
+        public EmailFilter getFilter() {
+            return filter;
+        }
+
+        public double getCost() {
+            return cost;
+        }
+
+        public double getSelectivity() {
+            return selectivity;
+        }
+    }
+
+    private final Clause[] clauses;
+    private final EmailFilter[] filters;
+
+    public CompiledFilter(List<Clause> clauses) {
+        List<Clause> ordered = new ArrayList<>(clauses);
+        ordered.sort(Comparator.comparingDouble(clause -> clause.rank));
+        this.clauses = ordered.toArray(new Clause[0]);
+        this.filters = new EmailFilter[ordered.size()];
+        for (int i = 0; i < filters.length; i++) {
+            filters[i] = ordered.get(i).filter;
+        }
+    }
+
+    //same filters, another chain
+    private CompiledFilter(Clause[] clauses, EmailFilter[] filters) {
+        this.clauses = clauses;
+        this.filters = filters;
+    }
+
+    /**
+     * A copy to link into a chain (setNext), the compiled filters are shared
+     */
+    public CompiledFilter copy() {
+        return new CompiledFilter(clauses, filters);
+    }
+
+    @Override
+    public List<mail> apply(List<mail> emails) {
+        if (filters.length == 0) {
+            return passToNext(emails);
+        }
+        List<mail> filtered = new ArrayList<>();
+        for (mail email : emails) {
+            if (matches(email)) {
+                filtered.add(email);
+            }
+        }
+        return passToNext(filtered);
+    }
+
+    @Override
+    public boolean matches(mail email) {
+        for (EmailFilter filter : filters) {
+            if (!filter.matches(email)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void narrow(MailQuery query) {
+        for (EmailFilter filter : filters) {
+            filter.narrow(query);
+        }
+    }
+
+    /**
+     * @return the filters in evaluation order
+     */
+    public List<EmailFilter> getFilters() {
+        return List.of(filters);
+    }
+
+    /**
+     * @return the filters with their estimates, in evaluation order
+     */
+    public List<Clause> getClauses() {
+        return List.of(clauses);
+    }
+}
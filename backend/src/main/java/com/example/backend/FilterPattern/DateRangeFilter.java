@@ -2,6 +2,7 @@
 
 package com.example.backend.FilterPattern;
 
+import com.example.backend.Util.MailQuery;
 import com.example.backend.model.mail;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -13,10 +14,13 @@ import java.util.stream.Collectors;
 public class DateRangeFilter extends AbstractEmailFilter {
     private final LocalDateTime dateFrom;
     private final LocalDateTime dateTo;
+    // Set to end of day, computed once
+    private final LocalDateTime endOfDay;
 
     public DateRangeFilter(LocalDateTime dateFrom, LocalDateTime dateTo) {
         this.dateFrom = dateFrom;
         this.dateTo = dateTo;
+        this.endOfDay = dateTo == null ? null : dateTo.withHour(23).withMinute(59).withSecond(59);
     }
 
     @Override
@@ -27,31 +31,39 @@ public class DateRangeFilter extends AbstractEmailFilter {
         }
 
         List<mail> filtered = emails.stream()
-                .filter(email -> {
-                    //get the date of the mail
-                    LocalDateTime emailDate = email.getTimestamp();
-                    //if the mail has no date remove it
-                    if (emailDate == null) {
-                        return false;
-                    }
-                    //if we have date from and date of the mail is before that date remove it
-                    if (dateFrom != null && emailDate.isBefore(dateFrom)) {
-                        return false;
-                    }
-                    //if we have a date To
-                    if (dateTo != null) {
-                        // Set to end of day
-                        LocalDateTime endOfDay = dateTo.withHour(23).withMinute(59).withSecond(59);
-                        //if email date is after the do date remove it
-                        if (emailDate.isAfter(endOfDay)) {
-                            return false;
-                        }
-                    }
-                    //add it to the filtered list if the email date is within the date range
-                    return true;
-                })
+                .filter(this::matches)
                 .collect(Collectors.toList());
         //after filtering pass it to the next filter
         return passToNext(filtered);
     }
+
+    @Override
+    public boolean matches(mail email) {
+        if (dateFrom == null && dateTo == null) {
+            return true;
+        }
+        //get the date of the mail
+        LocalDateTime emailDate = email.getTimestamp();
+        //if the mail has no date remove it
+        if (emailDate == null) {
+            return false;
+        }
+        //if we have date from and date of the mail is before that date remove it
+        if (dateFrom != null && emailDate.isBefore(dateFrom)) {
+            return false;
+        }
+        //if we have a date To and email date is after the end of that day remove it
+        if (endOfDay != null && emailDate.isAfter(endOfDay)) {
+            return false;
+        }
+        //keep it if the email date is within the date range
+        return true;
+    }
+
+    @Override
+    public void narrow(MailQuery query) {
+        if (dateFrom != null || dateTo != null) {
+            query.between(dateFrom, endOfDay);
+        }
+    }
 }
\ No newline at end of file
@@ -1,4 +1,5 @@
 package com.example.backend.FilterPattern;
+import com.example.backend.Util.MailQuery;
 import com.example.backend.model.mail;
 import java.util.List;
 
@@ -7,5 +8,15 @@ import java.util.List;
  */
 public interface EmailFilter {
     List<mail> apply(List<mail> emails);
+    //test one mail against this filter only (not the rest of the chain), an inactive filter matches everything
+    //the built-in filters override it, a custom filter written before it existed is asked through apply
+    //(a one mail list, so the filters chained after it are tested too)
+    default boolean matches(mail email) {
+        return !apply(List.of(email)).isEmpty();
+    }
     void setNext(EmailFilter next);
+    //add what this filter keeps to a query the storage layer can answer from its indexes (only narrows, matches decides)
+    //filters the indexes know nothing about (custom ones) add nothing
+    default void narrow(MailQuery query) {
+    }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.example.backend.FilterPattern;
 
+import com.example.backend.Util.MailQuery;
 import com.example.backend.model.mail;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -28,7 +29,7 @@ public class PriorityFilter extends AbstractEmailFilter {
 
         // Add only emails that match the specified priorities
         for (mail email : emails) {
-            if (priorities.contains(email.getPriority())) {
+            if (matches(email)) {
                 pq.offer(email);
             }
         }
@@ -41,4 +42,19 @@ public class PriorityFilter extends AbstractEmailFilter {
         //after filtering pass it to the next filter
         return passToNext(filtered);
     }
+
+    @Override
+    public boolean matches(mail email) {
+        if (priorities == null || priorities.isEmpty()) {
+            return true;
+        }
+        return priorities.contains(email.getPriority());
+    }
+
+    @Override
+    public void narrow(MailQuery query) {
+        if (priorities != null && !priorities.isEmpty()) {
+            query.priorityIn(priorities);
+        }
+    }
 }
\ No newline at end of file
@@ -2,6 +2,8 @@
 
 package com.example.backend.FilterPattern;
 
+import com.example.backend.Util.MailQuery;
+import com.example.backend.Util.TextQuery;
 import com.example.backend.model.mail;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -11,9 +13,12 @@ import java.util.stream.Collectors;
  */
 public class SearchFilter extends AbstractEmailFilter {
     private final String searchTerm;
+    //lower cased and trimmed once, null when the filter is inactive
+    private final String term;
 
     public SearchFilter(String searchTerm) {
         this.searchTerm = searchTerm;
+        this.term = searchTerm == null || searchTerm.trim().isEmpty() ? null : searchTerm.toLowerCase().trim();
     }
 
     @Override
@@ -23,14 +28,29 @@ public class SearchFilter extends AbstractEmailFilter {
             return passToNext(emails);
         }
 
-        String term = searchTerm.toLowerCase().trim();
         //filter the list of mails based on the subject, body and sender field in the filter modal
         List<mail> filtered = emails.stream()
-                .filter(email -> (email.getSubject() != null && email.getSubject().toLowerCase().contains(term)) ||
-                        (email.getBody() != null && email.getBody().toLowerCase().contains(term)) ||
-                        (email.getFrom() != null && email.getFrom().toLowerCase().contains(term)))
+                .filter(this::matches)
                 .collect(Collectors.toList());
         //after filtering pass it to the next filter
         return passToNext(filtered);
     }
+
+    @Override
+    public boolean matches(mail email) {
+        if (term == null) {
+            return true;
+        }
+        //match on the subject, body and sender field
+        return TextMatch.containsLowerCase(email.getSubject(), term) ||
+                TextMatch.containsLowerCase(email.getBody(), term) ||
+                TextMatch.containsLowerCase(email.getFrom(), term);
+    }
+
+    @Override
+    public void narrow(MailQuery query) {
+        if (term != null) {
+            query.getText().contains(term, TextQuery.Field.SUBJECT, TextQuery.Field.BODY, TextQuery.Field.FROM);
+        }
+    }
 }
\ No newline at end of file
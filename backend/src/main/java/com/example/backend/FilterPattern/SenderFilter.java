@@ -2,6 +2,7 @@
 
 package com.example.backend.FilterPattern;
 
+import com.example.backend.Util.MailQuery;
 import com.example.backend.model.mail;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -11,9 +12,12 @@ import java.util.stream.Collectors;
  */
 public class SenderFilter extends AbstractEmailFilter {
     private final String sender;
+    //lower cased and trimmed once, null when the filter is inactive
+    private final String term;
 
     public SenderFilter(String sender) {
         this.sender = sender;
+        this.term = sender == null || sender.trim().isEmpty() ? null : sender.toLowerCase().trim();
     }
 
 
@@ -24,13 +28,27 @@ public class SenderFilter extends AbstractEmailFilter {
             return passToNext(emails);
         }
 
-        String senderLower = sender.toLowerCase().trim();
-
         //filter the list of mails based on the sender field in the filter modal
         List<mail> filtered = emails.stream()
-                .filter(email -> (email.getFrom() != null && email.getFrom().toLowerCase().contains(senderLower)))
+                .filter(this::matches)
                 .collect(Collectors.toList());
         //after filtering pass it to the next filter
         return passToNext(filtered);
     }
+
+    @Override
+    public boolean matches(mail email) {
+        if (term == null) {
+            return true;
+        }
+        //match on the sender field
+        return TextMatch.containsLowerCase(email.getFrom(), term);
+    }
+
+    @Override
+    public void narrow(MailQuery query) {
+        if (term != null) {
+            query.senderContains(term);
+        }
+    }
 }
\ No newline at end of file
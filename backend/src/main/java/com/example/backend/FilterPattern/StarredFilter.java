@@ -1,5 +1,6 @@
 package com.example.backend.FilterPattern;
 
+import com.example.backend.Util.MailQuery;
 import com.example.backend.model.mail;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -23,9 +24,21 @@ public class StarredFilter extends AbstractEmailFilter {
 
         //filter the list of mails based on the sender field in the filter modal
         List<mail> filtered = emails.stream()
-                .filter(email -> email.isStarred() == isStarred)
+                .filter(this::matches)
                 .collect(Collectors.toList());
         //after filtering pass it to the next filter
         return passToNext(filtered);
     }
+
+    @Override
+    public boolean matches(mail email) {
+        return isStarred == null || email.isStarred() == isStarred;
+    }
+
+    @Override
+    public void narrow(MailQuery query) {
+        if (isStarred != null) {
+            query.starred(isStarred);
+        }
+    }
 }
\ No newline at end of file
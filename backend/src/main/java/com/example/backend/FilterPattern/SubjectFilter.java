@@ -2,6 +2,8 @@
 
 package com.example.backend.FilterPattern;
 
+import com.example.backend.Util.MailQuery;
+import com.example.backend.Util.TextQuery;
 import com.example.backend.model.mail;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -11,9 +13,12 @@ import java.util.stream.Collectors;
  */
 public class SubjectFilter extends AbstractEmailFilter {
     private final String subjectContains;
+    //lower cased and trimmed once, null when the filter is inactive
+    private final String term;
 
     public SubjectFilter(String subjectContains) {
         this.subjectContains = subjectContains;
+        this.term = subjectContains == null || subjectContains.trim().isEmpty() ? null : subjectContains.toLowerCase().trim();
     }
 
     @Override
@@ -23,12 +28,27 @@ public class SubjectFilter extends AbstractEmailFilter {
             return passToNext(emails);
         }
 
-        String term = subjectContains.toLowerCase().trim();
         //filter the list of mails based on the subject field in the filter modal
         List<mail> filtered = emails.stream()
-                .filter(email -> email.getSubject() != null && email.getSubject().toLowerCase().contains(term))
+                .filter(this::matches)
                 .collect(Collectors.toList());
         //after filtering pass it to the next filter
         return passToNext(filtered);
     }
+
+    @Override
+    public boolean matches(mail email) {
+        if (term == null) {
+            return true;
+        }
+        //match on the subject field
+        return TextMatch.containsLowerCase(email.getSubject(), term);
+    }
+
+    @Override
+    public void narrow(MailQuery query) {
+        if (term != null) {
+            query.getText().contains(term, TextQuery.Field.SUBJECT);
+        }
+    }
 }
\ No newline at end of file
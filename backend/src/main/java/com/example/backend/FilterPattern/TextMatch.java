@@ -0,0 +1,61 @@
+package com.example.backend.FilterPattern;
+
+/**
+ * Case insensitive "contains" of the text filters without lower casing the whole text first
+ * same answer as text.toLowerCase().contains(term): ascii text is compared char by char,
+ * anything else (or a default locale that doesn't lower case ascii to ascii, e.g. turkish) takes the original path
+ */
+final class TextMatch {
+
+    //false if the default locale lower cases some ascii letter to something else (turkish dotless i)
+    private static final boolean ASCII_LOWER_CASE =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toLowerCase().equals("abcdefghijklmnopqrstuvwxyz");
+
+    private TextMatch() {
+    }
+
+    /**
+     * @param text : text of the mail, may be null
+     * @param term : lower cased term
+     * @return true if the lower cased text contains the term
+     */
+    static boolean containsLowerCase(String text, String term) {
+        if (text == null) {
+            return false;
+        }
+        if (!ASCII_LOWER_CASE || !isAscii(text)) {
+            return text.toLowerCase().contains(term);
+        }
+        if (term.isEmpty()) {
+            return true;
+        }
+        int last = text.length() - term.length();
+        char first = term.charAt(0);
+        outer:
+        for (int i = 0; i <= last; i++) {
+            if (lower(text.charAt(i)) != first) {
+                continue;
+            }
+            for (int j = 1; j < term.length(); j++) {
+                if (lower(text.charAt(i + j)) != term.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 128) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
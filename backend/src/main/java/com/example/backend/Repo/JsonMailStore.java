@@ -0,0 +1,721 @@
+package com.example.backend.Repo;
+
+import com.example.backend.Util.CompressedBitmap;
+import com.example.backend.Util.DurabilityMode;
+import com.example.backend.Util.FolderVersions;
+import com.example.backend.Util.JsonFileManager;
+import com.example.backend.Util.IntIntHashMap;
+import com.example.backend.Util.MailBitmapIndex;
+import com.example.backend.Util.MailCollector;
+import com.example.backend.Util.MailLocationIndex;
+import com.example.backend.Util.MailPage;
+import com.example.backend.Util.MailQuery;
+import com.example.backend.Util.MailSenderIndex;
+import com.example.backend.Util.MailTimeIndex;
+import com.example.backend.Util.MailSortIndex;
+import com.example.backend.Util.MailSortOrder;
+import com.example.backend.Util.MailTimeOrder;
+import com.example.backend.Util.MailTextIndex;
+import com.example.backend.Util.MailboxCache;
+import com.example.backend.Util.StarredIndex;
+import com.example.backend.model.mail;
+import com.google.gson.reflect.TypeToken;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.File;
+import java.lang.reflect.Type;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * MailStore over the original layout: one file per folder, data/users/<user>/<folder>.json
+ * (user directory resolved by JsonFileManager, flat or hashed fan-out)
+ * every operation goes through JsonFileManager (cache, journal, format, coalescing)
+ * lookups by id go through MailLocationIndex (position in the cached folder),
+ * time ranges and date orders through MailTimeIndex (ids sorted by time, memory only),
+ * the other listing orders (MailSortOrder) through MailSortIndex (ids sorted per order, memory only)
+ * starred mails of every folder but trash are listed from StarredIndex (data/users/<user>/starred-index.json)
+ * text searches check the mails MailTextIndex points to (data/users/<user>/<folder>.textindex),
+ * priority / starred / attachment criteria the mails MailBitmapIndex points to (memory only),
+ * sender criteria and sender facets come from MailSenderIndex (memory only)
+ */
+@Repository
+@ConditionalOnProperty(name = "mail.store.type", havingValue = "json", matchIfMissing = true)
+public class JsonMailStore implements MailStore {
+
+    private static final Type MAIL_LIST_TYPE = new TypeToken<List<mail>>(){}.getType();
+    // the user directory also holds account files (info.json, contacts.json, folders.json...), only these are mail folders
+    private static final List<String> SYSTEM_FOLDERS = Arrays.asList(INBOX, SENT, DRAFT, TRASH);
+    private static final String EXTENSION = ".json";
+    private static final String STARRED_INDEX_FILE = "starred-index.json";
+    private static final String TEXT_INDEX_EXTENSION = ".textindex";
+    // more candidates than 1/CANDIDATE_SCAN_RATIO of the folder: one pass over the folder is cheaper than a read per id
+    private static final int CANDIDATE_SCAN_RATIO = 16;
+
+    private final JsonFileManager jsonFileManager;
+    // id -> (folder, position) hints, updated by every write below
+    private final MailLocationIndex mailLocationIndex;
+    // starred ids per folder, a superset of the starred mails: ids are added before a write and removed after it
+    private final StarredIndex starredIndex;
+    // trigram -> ids per folder, updated after every write below
+    private final MailTextIndex mailTextIndex;
+    // priority / starred / attachment bitmaps per folder, updated after every write below
+    private final MailBitmapIndex mailBitmapIndex;
+    // ids sorted by time per folder, updated after every write below
+    private final MailTimeIndex mailTimeIndex;
+    // sender -> ids per folder, updated after every write below
+    private final MailSenderIndex mailSenderIndex;
+    // ids sorted per listing order per folder, updated after every write below
+    private final MailSortIndex mailSortIndex;
+    // bumped after every write below
+    private final FolderVersions folderVersions = new FolderVersions();
+
+    public JsonMailStore(JsonFileManager jsonFileManager, MailLocationIndex mailLocationIndex, StarredIndex starredIndex,
+                         MailTextIndex mailTextIndex, MailBitmapIndex mailBitmapIndex, MailTimeIndex mailTimeIndex,
+                         MailSenderIndex mailSenderIndex, MailSortIndex mailSortIndex) {
+        this.jsonFileManager = jsonFileManager;
+        this.mailLocationIndex = mailLocationIndex;
+        this.starredIndex = starredIndex;
+        this.mailTextIndex = mailTextIndex;
+        this.mailBitmapIndex = mailBitmapIndex;
+        this.mailTimeIndex = mailTimeIndex;
+        this.mailSenderIndex = mailSenderIndex;
+        this.mailSortIndex = mailSortIndex;
+    }
+
+    @Override
+    public List<mail> list(String user, String folder) {
+        List<mail> mails = jsonFileManager.readListFromFile(pathOf(user, folder), MAIL_LIST_TYPE);
+        // the whole folder is at hand, index it for the single-mail operations that usually follow
+        mailLocationIndex.indexFolder(user, folder, mails);
+        return mails;
+    }
+
+    @Override
+    public List<mail> scan(String user, String folder, Predicate<mail> filter, Comparator<mail> order, int limit) {
+        return jsonFileManager.streamMailsFromFile(pathOf(user, folder), filter, order, limit);
+    }
+
+    //what search does before reading any mail: index lookups, candidates left and access path
+    private static final class Access {
+        SearchAccess.Path path = SearchAccess.Path.SCAN;
+        //ids the indexes left (SCAN_CANDIDATES, LOOKUP_BY_ID)
+        CompressedBitmap candidates;
+        //ids left in the wanted order, the first `count` ones (TIME_ORDER_*, SORT_ORDER_*)
+        int[] ordered;
+        int count;
+        //mails read from disk may come without their details (MailQuery.summaryOnly)
+        boolean summaryOnly;
+        //null unless explaining, lookups are recorded only then
+        final SearchAccess explained;
+
+        Access(SearchAccess explained) {
+            this.explained = explained;
+        }
+
+        void record(String index, String clause, int rows, long startNanos) {
+            if (explained != null) {
+                explained.addLookup(new SearchAccess.Lookup(index, clause, rows, (System.nanoTime() - startNanos) / 1000));
+            }
+        }
+    }
+
+    @Override
+    public List<mail> search(String user, String folder, MailQuery query, Predicate<mail> filter,
+                             Comparator<mail> order, int limit) {
+        return readFirst(user, folder, query, filter, order, null, limit);
+    }
+
+    @Override
+    public MailPage searchPage(String user, String folder, MailQuery query, Predicate<mail> filter,
+                               Comparator<mail> order, int offset, int limit) {
+        int[] total = {0};
+        if (MailPage.pastTheEnd(offset, size(user, folder))) {
+            // page number past the last mail: count the matching mails, keep none
+            read(user, folder, access(user, folder, query, null, null, null, 0),
+                    MailStore.counting(filter, total).and(email -> false), null, 0, true);
+            return new MailPage(new ArrayList<>(), total[0]);
+        }
+        // every matching mail must reach the filter to be counted, even in time order
+        List<mail> first = read(user, folder, access(user, folder, query, order, null, null, 0), MailStore.counting(filter, total),
+                order, MailPage.end(offset, limit), true);
+        return MailPage.window(first, offset, limit, total[0]);
+    }
+
+    @Override
+    public List<mail> searchAfter(String user, String folder, MailQuery query, Predicate<mail> filter,
+                                  Comparator<mail> order, mail after, int limit) {
+        // in an indexed order the index starts right after the mail, otherwise what comes before it is skipped
+        return readFirst(user, folder, query, filter, order, after, limit);
+    }
+
+    //first `limit` mails after a mail (null: from the start), an index order with nothing else to narrow it
+    //only gives the ids of the page, which are then read by id: a page costs the same in any folder
+    private List<mail> readFirst(String user, String folder, MailQuery query, Predicate<mail> filter,
+                                 Comparator<mail> order, mail after, int limit) {
+        boolean page = filter == null && limit > 0 && (query == null || query.isEmpty());
+        Access access = access(user, folder, query, order, after, null, page ? limit : 0);
+        List<mail> found = read(user, folder, access, MailStore.after(filter, order, after), order, limit, false);
+        if (page && access.ordered != null && access.count == limit && found.size() < limit) {
+            // an id of the page has no mail (removed while read): take every id after it
+            access = access(user, folder, query, order, after, null, 0);
+            found = read(user, folder, access, MailStore.after(filter, order, after), order, limit, false);
+        }
+        return found;
+    }
+
+    //mails of the folder the access points to that pass the filter, countAll: the filter sees every one of them
+    private List<mail> read(String user, String folder, Access access, Predicate<mail> filter, Comparator<mail> order,
+                            int limit, boolean countAll) {
+        switch (access.path) {
+            case SCAN_CANDIDATES:
+                CompressedBitmap candidates = access.candidates;
+                // a bit check before any field is looked at
+                return jsonFileManager.streamMailsFromFile(pathOf(user, folder),
+                        email -> candidates.contains(email.getId()) && (filter == null || filter.test(email)),
+                        order, limit, access.summaryOnly);
+            case LOOKUP_BY_ID:
+                return byId(user, folder, access.candidates, filter, order, limit);
+            case TIME_ORDER_BY_ID:
+            case TIME_ORDER_READ:
+            case SORT_ORDER_BY_ID:
+            case SORT_ORDER_READ:
+                return inIndexOrder(user, folder, access, filter, limit, countAll);
+            default:
+                return jsonFileManager.streamMailsFromFile(pathOf(user, folder), filter, order, limit, access.summaryOnly);
+        }
+    }
+
+    @Override
+    public SearchAccess explainSearch(String user, String folder, MailQuery query, Comparator<mail> order) {
+        SearchAccess explained = new SearchAccess();
+        Access access = access(user, folder, query, order, null, explained, 0);
+        explained.setPath(access.path);
+        if (access.ordered != null) {
+            explained.setCandidates(access.count);
+        } else if (access.candidates != null) {
+            explained.setCandidates(access.candidates.cardinality());
+        }
+        explained.setFolderSize(mailLocationIndex.folderSize(user, folder));
+        return explained;
+    }
+
+    //asks the indexes, decides how search reads the folder, after: only the mails after it in the order (null for all)
+    //limit: ids wanted from an order index, set only when nothing narrows them further (0 for all)
+    private Access access(String user, String folder, MailQuery query, Comparator<mail> order, mail after,
+                          SearchAccess explained, int limit) {
+        Access access = new Access(explained);
+        access.summaryOnly = query != null && query.isSummaryOnly();
+        // no index for a folder that doesn't exist
+        if (!new File(pathOf(user, folder)).exists()) {
+            return access;
+        }
+        if (order == MailTimeOrder.OLDEST_FIRST || order == MailTimeOrder.NEWEST_FIRST) {
+            // the time index gives the range and the order, the other indexes narrow it
+            LocalDateTime from = query != null && query.hasTimeRange() ? query.getFrom() : null;
+            LocalDateTime to = query != null && query.hasTimeRange() ? query.getTo() : null;
+            long start = System.nanoTime();
+            int[] ordered = mailTimeIndex.idsAfter(user, folder, from, to, order == MailTimeOrder.NEWEST_FIRST, after,
+                    limit, () -> list(user, folder));
+            if (ordered != null) {
+                access.record("time", from != null || to != null ? "date range, order" : "order", ordered.length, start);
+                return inOrder(user, folder, query, ordered, false, access,
+                        SearchAccess.Path.TIME_ORDER_BY_ID, SearchAccess.Path.TIME_ORDER_READ);
+            }
+        } else if (order instanceof MailSortOrder) {
+            // the sort index gives the order, every other index narrows it
+            long start = System.nanoTime();
+            int[] ordered = mailSortIndex.ids(user, folder, (MailSortOrder) order, after, limit, () -> list(user, folder));
+            if (ordered != null) {
+                access.record("sort", ((MailSortOrder) order).getName(), ordered.length, start);
+                return inOrder(user, folder, query, ordered, true, access,
+                        SearchAccess.Path.SORT_ORDER_BY_ID, SearchAccess.Path.SORT_ORDER_READ);
+            }
+        }
+        CompressedBitmap candidates = query == null || query.isEmpty() ? null : candidates(user, folder, query, true, access);
+        if (candidates == null) {
+            return access;
+        }
+        access.candidates = candidates;
+        int folderSize = mailLocationIndex.folderSize(user, folder);
+        // no O(1) lookup by id, or most of the folder: one pass over it is cheaper than a read per id
+        access.path = folderSize < 0 || candidates.cardinality() > folderSize / CANDIDATE_SCAN_RATIO
+                ? SearchAccess.Path.SCAN_CANDIDATES : SearchAccess.Path.LOOKUP_BY_ID;
+        return access;
+    }
+
+    //ordered ids narrowed by the other indexes (withTime: the time index too), read by id or from one read of the folder
+    private Access inOrder(String user, String folder, MailQuery query, int[] ordered, boolean withTime, Access access,
+                           SearchAccess.Path byId, SearchAccess.Path read) {
+        CompressedBitmap candidates = query == null ? null : candidates(user, folder, query, withTime, access);
+        int count = 0;
+        for (int id : ordered) {
+            if (candidates == null || candidates.contains(id)) {
+                ordered[count++] = id;
+            }
+        }
+        access.ordered = ordered;
+        access.count = count;
+        int folderSize = mailLocationIndex.folderSize(user, folder);
+        // few mails: a read per id, most of the folder: one read of it
+        access.path = folderSize >= 0 && count <= folderSize / CANDIDATE_SCAN_RATIO ? byId : read;
+        return access;
+    }
+
+    //candidates read by id that pass the filter, in the given order or in folder order
+    private List<mail> byId(String user, String folder, CompressedBitmap candidates, Predicate<mail> filter,
+                            Comparator<mail> order, int limit) {
+        List<mail> matches = new ArrayList<>();
+        IntIntHashMap positions = new IntIntHashMap(candidates.cardinality());
+        candidates.forEach(id -> {
+            mail email = get(user, folder, id);
+            // the indexes only narrow, the filter decides
+            if (email != null && (filter == null || filter.test(email))) {
+                matches.add(email);
+                positions.put(id, mailLocationIndex.positionOf(user, folder, id), -1);
+            }
+        });
+        if (order == null) {
+            // back to folder order, like a scan
+            matches.sort(Comparator.comparingInt(email -> positions.get(email.getId(), Integer.MAX_VALUE)));
+        }
+        MailCollector collector = new MailCollector(null, order, limit);
+        for (mail email : matches) {
+            collector.offer(email);
+        }
+        return collector.result();
+    }
+
+    //mails of the ordered ids of the access that pass the filter, in the order of the ids
+    //stops after `limit` mails unless countAll (the filter still sees the others)
+    private List<mail> inIndexOrder(String user, String folder, Access access, Predicate<mail> filter, int limit,
+                                    boolean countAll) {
+        int[] ordered = access.ordered;
+        int count = access.count;
+        List<mail> matches = new ArrayList<>();
+        if (access.path == SearchAccess.Path.TIME_ORDER_BY_ID || access.path == SearchAccess.Path.SORT_ORDER_BY_ID) {
+            for (int i = 0; i < count && (countAll || limit <= 0 || matches.size() < limit); i++) {
+                mail email = get(user, folder, ordered[i]);
+                if (email != null && (filter == null || filter.test(email)) && (limit <= 0 || matches.size() < limit)) {
+                    matches.add(email);
+                }
+            }
+            return matches;
+        }
+        // most of the folder: one pass over it (summaries only when that's all the caller shows),
+        // each mail put at its position in the index order, no sort
+        IntIntHashMap positions = new IntIntHashMap(count);
+        for (int i = 0; i < count; i++) {
+            positions.put(ordered[i], i, -1);
+        }
+        mail[] inOrder = new mail[count];
+        for (mail email : jsonFileManager.streamMailsFromFile(pathOf(user, folder),
+                email -> positions.containsKey(email.getId()), null, 0, access.summaryOnly)) {
+            inOrder[positions.get(email.getId(), -1)] = email;
+        }
+        for (int i = 0; i < count && (countAll || limit <= 0 || matches.size() < limit); i++) {
+            mail email = inOrder[i];
+            if (email != null && (filter == null || filter.test(email)) && (limit <= 0 || matches.size() < limit)) {
+                matches.add(email);
+            }
+        }
+        return matches;
+    }
+
+    @Override
+    public Map<String, Integer> topSenders(String user, String folder, int limit) {
+        Map<String, Integer> top = !new File(pathOf(user, folder)).exists() ? new LinkedHashMap<>()
+                : mailSenderIndex.topSenders(user, folder, limit, () -> list(user, folder));
+        return top != null ? top : MailStore.super.topSenders(user, folder, limit);
+    }
+
+    @Override
+    public int size(String user, String folder) {
+        // known once the folder was indexed
+        return mailLocationIndex.folderSize(user, folder);
+    }
+
+    @Override
+    public long version(String user, String folder) {
+        return folderVersions.current(user, folder);
+    }
+
+    @Override
+    public mail get(String user, String folder, int id) {
+        int position = mailLocationIndex.positionOf(user, folder, id);
+        if (position != MailLocationIndex.UNKNOWN_POSITION) {
+            mail email = jsonFileManager.readMailAt(pathOf(user, folder), position, id);
+            if (email != null) {
+                return email;
+            }
+        }
+        if (!mailLocationIndex.isEnabled()) {
+            // no index to fill, only copy the matching mail out of the folder
+            List<mail> found = jsonFileManager.streamMailsFromFile(pathOf(user, folder), email -> email.getId() == id, null, 1);
+            return found.isEmpty() ? null : found.get(0);
+        }
+        // not indexed, folder not cached or stale hint: one read of the folder (indexed and cached for the next lookups)
+        for (mail email : list(user, folder)) {
+            if (email.getId() == id) {
+                return email;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String locate(String user, int id) {
+        String folder = mailLocationIndex.folderOf(user, id);
+        if (folder != null && get(user, folder, id) != null) {
+            return folder;
+        }
+        // unknown id (or moved since it was indexed): index every folder of the user
+        for (String candidate : folders(user)) {
+            for (mail email : list(user, candidate)) {
+                if (email.getId() == id) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<mail> rangeByTime(String user, String folder, LocalDateTime from, LocalDateTime to) {
+        Predicate<mail> inRange = email -> email.getTimestamp() != null
+                && (from == null || !email.getTimestamp().isBefore(from))
+                && (to == null || !email.getTimestamp().isAfter(to));
+        return search(user, folder, new MailQuery().between(from, to), inRange, MailTimeOrder.OLDEST_FIRST, 0);
+    }
+
+    @Override
+    public List<String> folders(String user) {
+        List<String> folders = new ArrayList<>();
+        String[] names = new File(jsonFileManager.getUserDirectory(user)).list((dir, name) -> name.endsWith(EXTENSION));
+        if (names != null) {
+            for (String name : names) {
+                String folder = name.substring(0, name.length() - EXTENSION.length());
+                if (SYSTEM_FOLDERS.contains(folder) || folder.startsWith("folder_")) {
+                    folders.add(folder);
+                }
+            }
+        }
+        folders.sort(null);
+        return folders;
+    }
+
+    @Override
+    public List<mail> starred(String user) {
+        Map<String, List<Integer>> ids = starredIndex.starred(user, starredIndexFile(user), rebuildStarred(user));
+        List<mail> starred = new ArrayList<>();
+        for (String folder : starredFolderOrder(ids.keySet())) {
+            for (int id : ids.get(folder)) {
+                mail email = get(user, folder, id);
+                // extra ids (crash between the index and the folder write) are skipped
+                if (email != null && email.isStarred()) {
+                    email.setFolder(folder);
+                    starred.add(email);
+                }
+            }
+        }
+        return starred;
+    }
+
+    @Override
+    public boolean append(String user, String folder, mail email) {
+        if (email.isStarred()) {
+            addStarred(user, folder, List.of(email.getId()));
+        }
+        if (!jsonFileManager.appendMailToFile(pathOf(user, folder), email)) {
+            return false;
+        }
+        appended(user, folder, email);
+        return true;
+    }
+
+    @Override
+    public BooleanSupplier queueAppend(String user, String folder, mail email) {
+        // the caller may change its mail once queued (setTo(null) in composeMail), the indexes follow the write
+        mail stored = MailboxCache.copyOf(List.of(email)).get(0);
+        if (stored.isStarred()) {
+            addStarred(user, folder, List.of(stored.getId()));
+        }
+        return jsonFileManager.queueMailAppend(pathOf(user, folder), stored, written -> {
+            // an id added to the starred index for a mail that wasn't written is skipped by starred()
+            if (written) {
+                appended(user, folder, stored);
+            }
+        });
+    }
+
+    //indexes after a mail was written at the end of a folder
+    private void appended(String user, String folder, mail email) {
+        mailLocationIndex.added(user, folder, email.getId());
+        mailTextIndex.added(user, folder, email);
+        mailBitmapIndex.added(user, folder, email);
+        mailTimeIndex.added(user, folder, email);
+        mailSenderIndex.added(user, folder, email);
+        mailSortIndex.added(user, folder, email);
+        folderVersions.changed(user, folder);
+        if (!email.isStarred()) {
+            // may replace a starred version of the mail
+            starredIndex.remove(user, starredIndexFile(user), folder, email.getId());
+        }
+    }
+
+    @Override
+    public boolean updateStarred(String user, String folder, int id, boolean starred, DurabilityMode durability) {
+        if (durability == DurabilityMode.COMMIT) {
+            return queueStarred(user, folder, id, starred).getAsBoolean();
+        }
+        // visible at once, so the indexes change at once too
+        if (get(user, folder, id) == null) {
+            return false;
+        }
+        if (starred) {
+            addStarred(user, folder, List.of(id));
+        }
+        if (!jsonFileManager.updateStarredInFile(pathOf(user, folder), id, starred, durability)) {
+            return false;
+        }
+        starredChanged(user, folder, id, starred);
+        return true;
+    }
+
+    @Override
+    public BooleanSupplier queueStarred(String user, String folder, int id, boolean starred) {
+        if (get(user, folder, id) == null) {
+            return () -> false;
+        }
+        if (starred) {
+            addStarred(user, folder, List.of(id));
+        }
+        // the indexes and the version change once the flag is written, in the order the folder's changes were queued
+        // (a starred index id left by a failed write is skipped by starred())
+        return jsonFileManager.queueStarredUpdate(pathOf(user, folder), id, starred, written -> {
+            if (written) {
+                starredChanged(user, folder, id, starred);
+            }
+        });
+    }
+
+    //indexes after the starred flag of a mail was written
+    private void starredChanged(String user, String folder, int id, boolean starred) {
+        mailBitmapIndex.starred(user, folder, id, starred);
+        folderVersions.changed(user, folder);
+        if (!starred) {
+            starredIndex.remove(user, starredIndexFile(user), folder, id);
+        }
+    }
+
+    @Override
+    public mail move(String user, String fromFolder, String toFolder, int id, Consumer<mail> change) {
+        mail email = get(user, fromFolder, id);
+        if (email == null) {
+            return null;
+        }
+        if (change != null) {
+            change.accept(email);
+        }
+        // destination first: a crash in between leaves a copy in both folders instead of losing the mail
+        if (!append(user, toFolder, email)) {
+            System.err.println("Failed to add to folder: " + pathOf(user, toFolder));
+            return null;
+        }
+        if (!fromFolder.equals(toFolder)) {
+            if (!jsonFileManager.removeMailFromFile(pathOf(user, fromFolder), id)) {
+                System.err.println("Failed to remove from folder: " + pathOf(user, fromFolder));
+                return null;
+            }
+            mailLocationIndex.removed(user, fromFolder, id);
+            mailTextIndex.removed(user, fromFolder, id);
+            mailBitmapIndex.removed(user, fromFolder, id);
+            mailTimeIndex.removed(user, fromFolder, id);
+            mailSenderIndex.removed(user, fromFolder, id);
+            mailSortIndex.removed(user, fromFolder, id);
+            folderVersions.changed(user, fromFolder);
+            starredIndex.remove(user, starredIndexFile(user), fromFolder, id);
+        }
+        return email;
+    }
+
+    @Override
+    public boolean delete(String user, String folder, int id) {
+        if (get(user, folder, id) == null) {
+            return false;
+        }
+        if (!jsonFileManager.removeMailFromFile(pathOf(user, folder), id)) {
+            return false;
+        }
+        mailLocationIndex.removed(user, folder, id);
+        mailTextIndex.removed(user, folder, id);
+        mailBitmapIndex.removed(user, folder, id);
+        mailTimeIndex.removed(user, folder, id);
+        mailSenderIndex.removed(user, folder, id);
+        mailSortIndex.removed(user, folder, id);
+        folderVersions.changed(user, folder);
+        starredIndex.remove(user, starredIndexFile(user), folder, id);
+        return true;
+    }
+
+    @Override
+    public boolean replaceAll(String user, String folder, List<mail> mails) {
+        List<Integer> starredIds = new ArrayList<>();
+        for (mail email : mails) {
+            if (email.isStarred()) {
+                starredIds.add(email.getId());
+            }
+        }
+        addStarred(user, folder, starredIds);
+        if (!jsonFileManager.writeListToFile(pathOf(user, folder), mails)) {
+            mailLocationIndex.dropFolder(user, folder);
+            mailTextIndex.dropFolder(user, folder, textIndexFile(user, folder));
+            mailBitmapIndex.dropFolder(user, folder);
+            mailTimeIndex.dropFolder(user, folder);
+            mailSenderIndex.dropFolder(user, folder);
+            mailSortIndex.dropFolder(user, folder);
+            folderVersions.changed(user, folder);
+            return false;
+        }
+        mailLocationIndex.indexFolder(user, folder, mails);
+        mailTextIndex.replaced(user, folder, mails);
+        mailBitmapIndex.replaced(user, folder, mails);
+        mailTimeIndex.replaced(user, folder, mails);
+        mailSenderIndex.replaced(user, folder, mails);
+        mailSortIndex.replaced(user, folder, mails);
+        folderVersions.changed(user, folder);
+        if (indexesStarred(folder)) {
+            starredIndex.replaceFolder(user, starredIndexFile(user), folder, starredIds);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean createFolder(String user, String folder) {
+        if (new File(pathOf(user, folder)).exists()) {
+            return true;
+        }
+        List<mail> empty = new ArrayList<>();
+        if (!jsonFileManager.writeListToFile(pathOf(user, folder), empty)) {
+            return false;
+        }
+        mailLocationIndex.indexFolder(user, folder, empty);
+        folderVersions.changed(user, folder);
+        return true;
+    }
+
+    @Override
+    public boolean deleteFolder(String user, String folder) {
+        mailLocationIndex.dropFolder(user, folder);
+        boolean deleted = jsonFileManager.deleteFile(pathOf(user, folder));
+        mailTextIndex.dropFolder(user, folder, textIndexFile(user, folder));
+        mailBitmapIndex.dropFolder(user, folder);
+        mailTimeIndex.dropFolder(user, folder);
+        mailSenderIndex.dropFolder(user, folder);
+        mailSortIndex.dropFolder(user, folder);
+        folderVersions.changed(user, folder);
+        starredIndex.replaceFolder(user, starredIndexFile(user), folder, List.of());
+        return deleted;
+    }
+
+    //mails starred in trash aren't listed, their ids aren't kept
+    private static boolean indexesStarred(String folder) {
+        return !TRASH.equals(folder);
+    }
+
+    private void addStarred(String user, String folder, List<Integer> ids) {
+        if (indexesStarred(folder)) {
+            starredIndex.add(user, starredIndexFile(user), folder, ids, rebuildStarred(user));
+        }
+    }
+
+    //one scan of every folder, only for a user whose index file doesn't exist yet (or is unreadable)
+    private Supplier<Map<String, List<Integer>>> rebuildStarred(String user) {
+        return () -> {
+            Map<String, List<Integer>> ids = new LinkedHashMap<>();
+            for (String folder : folders(user)) {
+                if (!indexesStarred(folder)) {
+                    continue;
+                }
+                List<Integer> folderIds = new ArrayList<>();
+                for (mail email : scan(user, folder, mail::isStarred, null, 0)) {
+                    folderIds.add(email.getId());
+                }
+                ids.put(folder, folderIds);
+            }
+            return ids;
+        };
+    }
+
+    //inbox, sent, draft, then the custom folders
+    private static List<String> starredFolderOrder(Collection<String> folders) {
+        List<String> order = new ArrayList<>();
+        for (String folder : List.of(INBOX, SENT, DRAFT)) {
+            if (folders.contains(folder)) {
+                order.add(folder);
+            }
+        }
+        for (String folder : folders) {
+            if (!order.contains(folder)) {
+                order.add(folder);
+            }
+        }
+        return order;
+    }
+
+    //intersection of what the text, sender, flag and time (withTime) indexes answer, null if none can narrow the query
+    private CompressedBitmap candidates(String user, String folder, MailQuery query, boolean withTime, Access access) {
+        long start = System.nanoTime();
+        CompressedBitmap candidates = mailBitmapIndex.candidates(user, folder, query, () -> list(user, folder));
+        if (candidates != null) {
+            access.record("bitmap", "priority / starred / attachment", candidates.cardinality(), start);
+        }
+        start = System.nanoTime();
+        CompressedBitmap fromSenders = mailSenderIndex.candidates(user, folder, query.getSenderTerms(), () -> list(user, folder));
+        if (fromSenders != null) {
+            access.record("sender", "sender", fromSenders.cardinality(), start);
+            candidates = candidates == null ? fromSenders : candidates.and(fromSenders);
+        }
+        if (withTime && query.hasTimeRange()) {
+            start = System.nanoTime();
+            int[] inRange = mailTimeIndex.ids(user, folder, query.getFrom(), query.getTo(), false, () -> list(user, folder));
+            if (inRange != null) {
+                access.record("time", "date range", inRange.length, start);
+                CompressedBitmap within = CompressedBitmap.of(inRange);
+                candidates = candidates == null ? within : candidates.and(within);
+            }
+        }
+        start = System.nanoTime();
+        int[] text = mailTextIndex.candidates(user, folder, textIndexFile(user, folder), query.getText(),
+                () -> list(user, folder));
+        if (text != null) {
+            access.record("text", "search / subject / body", text.length, start);
+            CompressedBitmap containing = CompressedBitmap.of(text);
+            candidates = candidates == null ? containing : candidates.and(containing);
+        }
+        return candidates;
+    }
+
+    private File textIndexFile(String user, String folder) {
+        return new File(jsonFileManager.getUserDirectory(user), folder + TEXT_INDEX_EXTENSION);
+    }
+
+    private File starredIndexFile(String user) {
+        return new File(jsonFileManager.getUserDirectory(user), STARRED_INDEX_FILE);
+    }
+
+    private String pathOf(String user, String folder) {
+        return jsonFileManager.getUserFolderPath(user, folder);
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.backend.Repo;
+
+import com.example.backend.Util.DurabilityMode;
+import com.example.backend.Util.MailPage;
+import com.example.backend.Util.MailQuery;
+import com.example.backend.Util.MailSenderIndex;
+import com.example.backend.model.mail;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Storage of the mail folders of every user, folder names: inbox, sent, draft, trash, folder_<id> (custom folders)
+ * repos and services go through this interface instead of building "data/users/..." paths themselves
+ * implementations: JsonMailStore (one json file per folder, default), MvStoreMailStore (embedded key-value store)
+ * selected with mail.store.type; every implementation must pass MailStoreConformanceTest
+ * mails handed out are copies, changing them never changes the store
+ */
+public interface MailStore {
+
+    String INBOX = "inbox";
+    String SENT = "sent";
+    String DRAFT = "draft";
+    String TRASH = "trash";
+    // system folders and custom folders (folder_<id>)
+    String FOLDER_NAME = "inbox|sent|draft|trash|folder_[A-Za-z0-9_-]+";
+
+    /**
+     * All mails of a folder
+     * @param user : owner email
+     * @param folder : folder name
+     * @return mails in folder order (order of first append), empty if the folder doesn't exist
+     */
+    List<mail> list(String user, String folder);
+
+    /**
+     * Mails of a folder passing a filter, without loading the folder first when the backend can
+     * @param filter : mails to keep, null keeps all
+     * @param order : order of the result, null keeps the folder order
+     * @param limit : keep only the first `limit` mails in that order, 0 or less keeps all
+     * @return matching mails
+     */
+    List<mail> scan(String user, String folder, Predicate<mail> filter, Comparator<mail> order, int limit);
+
+    /**
+     * Mails of a folder matching the criteria of a query and a filter
+     * backends with indexes (text, flags) check only the mails they point to, the others scan the folder
+     * @param query : criteria the indexes can answer, used to narrow the mails to check (may be null)
+     * @param filter : the full test, query criteria included (the query alone never decides)
+     * @return matching mails, same result as scan(user, folder, filter, order, limit)
+     */
+    default List<mail> search(String user, String folder, MailQuery query, Predicate<mail> filter,
+                              Comparator<mail> order, int limit) {
+        return scan(user, folder, filter, order, limit);
+    }
+
+    /**
+     * One page of the mails search would return, and how many mails match in all
+     * only the mails up to the end of the page are kept (bounded heap), the others are counted
+     * @param filter : the full test, query criteria included (null keeps all)
+     * @param order : order of the listing, null keeps the folder order
+     * @param offset : matching mails before the page
+     * @param limit : mails in the page
+     * @return the page and the number of matching mails
+     */
+    default MailPage searchPage(String user, String folder, MailQuery query, Predicate<mail> filter,
+                                Comparator<mail> order, int offset, int limit) {
+        int[] total = {0};
+        if (MailPage.pastTheEnd(offset, size(user, folder))) {
+            // page number past the last mail: count the matching mails, keep none
+            search(user, folder, query, counting(filter, total).and(email -> false), null, 0);
+            return new MailPage(new ArrayList<>(), total[0]);
+        }
+        List<mail> first = search(user, folder, query, counting(filter, total), order, MailPage.end(offset, limit));
+        return MailPage.window(first, offset, limit, total[0]);
+    }
+
+    /**
+     * Mails search would return that come after a given mail in the order (keyset paging)
+     * the page costs the same wherever the mail is, and mails added before it since don't shift the page
+     * @param filter : the full test, query criteria included (null keeps all)
+     * @param order : order of the listing, without ties (see MailCursor.totalOrder)
+     * @param after : last mail of the previous page, only its sort fields and id are read (null for the first page)
+     * @param limit : mails in the page
+     * @return the first `limit` matching mails after it, in order
+     */
+    default List<mail> searchAfter(String user, String folder, MailQuery query, Predicate<mail> filter,
+                                   Comparator<mail> order, mail after, int limit) {
+        return search(user, folder, query, after(filter, order, after), order, limit);
+    }
+
+    /**
+     * The filter, keeping only the mails after a mail in an order
+     * @param after : null keeps the filter as is
+     */
+    static Predicate<mail> after(Predicate<mail> filter, Comparator<mail> order, mail after) {
+        if (after == null) {
+            return filter;
+        }
+        return email -> order.compare(email, after) > 0 && (filter == null || filter.test(email));
+    }
+
+    /**
+     * The filter, counting the mails it keeps (for one search at a time, it calls the filter from one thread)
+     * @param total : total[0] is incremented for each mail kept
+     */
+    static Predicate<mail> counting(Predicate<mail> filter, int[] total) {
+        return email -> {
+            if (filter == null || filter.test(email)) {
+                total[0]++;
+                return true;
+            }
+            return false;
+        };
+    }
+
+    /**
+     * How search would read a folder for this query and order, without reading the mails
+     * backends with indexes make the index lookups and report them, the others always scan
+     * @param query : criteria the indexes can answer (may be null)
+     * @param order : order of the result, null keeps the folder order
+     * @return access path, lookups made and number of candidates
+     */
+    default SearchAccess explainSearch(String user, String folder, MailQuery query, Comparator<mail> order) {
+        return new SearchAccess();
+    }
+
+    /**
+     * Senders with the most mails in a folder (sender facets)
+     * backends with a sender index count from it, the others scan the folder
+     * @param limit : number of senders
+     * @return normalized sender (lower cased, trimmed) -> number of mails, most frequent first, ties by sender
+     */
+    default Map<String, Integer> topSenders(String user, String folder, int limit) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (mail email : scan(user, folder, null, null, 0)) {
+            String sender = MailSenderIndex.normalize(email.getFrom());
+            if (sender != null) {
+                counts.merge(sender, 1, Integer::sum);
+            }
+        }
+        return MailSenderIndex.top(counts, limit);
+    }
+
+    /**
+     * Number of mails of a folder, when the backend knows it without reading the folder
+     * @return mails in the folder (0 if it doesn't exist), -1 if unknown
+     */
+    default int size(String user, String folder) {
+        return -1;
+    }
+
+    /**
+     * Version of a folder, changed by every write to it (results read from the folder can be cached under it)
+     * @return a number that differs from any version the folder had before a write
+     */
+    long version(String user, String folder);
+
+    /**
+     * One mail by id
+     * @return the mail, or null if the folder has no mail with this id
+     */
+    mail get(String user, String folder, int id);
+
+    /**
+     * Folder holding a mail, found from its id alone
+     * @return folder name, or null if no folder of the user has a mail with this id
+     */
+    String locate(String user, int id);
+
+    /**
+     * Mails whose timestamp is within [from, to] (mails without timestamp never match)
+     * @param from : lower bound (inclusive), null for no lower bound
+     * @param to : upper bound (inclusive), null for no upper bound
+     * @return mails by ascending timestamp, ties by ascending id
+     */
+    List<mail> rangeByTime(String user, String folder, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Starred mails of every folder but trash, without reading the other mails when the backend can
+     * @return mails with their folder set: inbox, sent, draft, then custom folders, by ascending id within a folder
+     */
+    List<mail> starred(String user);
+
+    /**
+     * @return names of the mail folders the user has, sorted
+     */
+    List<String> folders(String user);
+
+    /**
+     * Add a mail at the end of a folder, or replace the mail with the same id where it is
+     * @return true if stored
+     */
+    boolean append(String user, String folder, mail email);
+
+    /**
+     * append() in two steps, for callers holding the mailbox lock: the change is queued under the lock,
+     * the returned commit is called after releasing it, so concurrent changes of the folder can share one write
+     * the mail is visible to reads of the folder once queued, the indexes and the version follow the write
+     * @return commit: true once the mail is stored
+     */
+    default BooleanSupplier queueAppend(String user, String folder, mail email) {
+        boolean stored = append(user, folder, email);
+        return () -> stored;
+    }
+
+    /**
+     * Set the starred flag of one mail
+     * @param durability : wait until the change is durable, or only until it is visible
+     * @return false if the folder has no mail with this id
+     */
+    boolean updateStarred(String user, String folder, int id, boolean starred, DurabilityMode durability);
+
+    /**
+     * updateStarred() with COMMIT in two steps, like queueAppend()
+     * @return commit: true once the flag is stored, false if the folder has no mail with this id
+     */
+    default BooleanSupplier queueStarred(String user, String folder, int id, boolean starred) {
+        boolean updated = updateStarred(user, folder, id, starred, DurabilityMode.COMMIT);
+        return () -> updated;
+    }
+
+    /**
+     * Move a mail to another folder of the same user
+     * @param change : applied to the mail before it is stored in the destination (e.g. set trashedAt), may be null
+     * @return the mail as stored in the destination, or null if the source has no mail with this id
+     */
+    mail move(String user, String fromFolder, String toFolder, int id, Consumer<mail> change);
+
+    /**
+     * Remove one mail from a folder
+     * @return false if the folder has no mail with this id
+     */
+    boolean delete(String user, String folder, int id);
+
+    /**
+     * Replace the whole content of a folder (bulk cleanup)
+     * @return true if stored
+     */
+    boolean replaceAll(String user, String folder, List<mail> mails);
+
+    /**
+     * Create an empty folder (custom folders), no-op if it exists
+     * @return true if the folder exists afterwards
+     */
+    boolean createFolder(String user, String folder);
+
+    /**
+     * Delete a folder and all its mails
+     * @return true if the folder existed
+     */
+    boolean deleteFolder(String user, String folder);
+}
@@ -0,0 +1,380 @@
+package com.example.backend.Repo;
+
+import com.example.backend.Util.DurabilityMode;
+import com.example.backend.Util.FolderVersions;
+import com.example.backend.Util.JsonFileManager;
+import com.example.backend.Util.MailCollector;
+import com.example.backend.model.mail;
+import com.google.gson.Gson;
+import jakarta.annotation.PreDestroy;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * MailStore in an embedded key-value store (H2 MVStore, one file, no server)
+ * each folder of each user is a set of maps:
+ *   mails:<user>/<folder>  sequence -> mail json (sequence keeps the folder order)
+ *   ids:<user>/<folder>    mail id -> sequence (point lookups)
+ *   time:<user>/<folder>   timestamp key -> sequence (range scans by time)
+ *   starred:<user>/<folder> ids of the starred mails -> true (not kept for trash)
+ *   folders:<user>         folder name -> true
+ * a change rewrites only the entries of the mails it touches, never the whole folder
+ * reads don't lock (MVStore maps are versioned), writes are serialized on the store
+ */
+@Repository
+@ConditionalOnProperty(name = "mail.store.type", havingValue = "mvstore")
+public class MvStoreMailStore implements MailStore {
+
+    private static final Gson gson = JsonFileManager.compactGson();
+
+    private final MVStore store;
+    // bumped by every change of a folder's maps
+    private final FolderVersions folderVersions = new FolderVersions();
+
+    public MvStoreMailStore(@Value("${mail.store.mvstore.file:data/mailstore.mv.db}") String fileName) {
+        File file = new File(fileName).getAbsoluteFile();
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        this.store = new MVStore.Builder()
+                .fileName(file.getPath())
+                .open();
+    }
+
+    /**
+     * Commit what is pending and close the store file
+     */
+    @PreDestroy
+    public void close() {
+        synchronized (store) {
+            if (!store.isClosed()) {
+                store.close();
+            }
+        }
+    }
+
+    @Override
+    public List<mail> list(String user, String folder) {
+        return scan(user, folder, null, null, 0);
+    }
+
+    @Override
+    public List<mail> scan(String user, String folder, Predicate<mail> filter, Comparator<mail> order, int limit) {
+        MailCollector collector = new MailCollector(filter, order, limit);
+        if (!hasFolder(user, folder)) {
+            return collector.result();
+        }
+        for (String json : mails(user, folder).values()) {
+            collector.offer(gson.fromJson(json, mail.class));
+        }
+        return collector.result();
+    }
+
+    @Override
+    public int size(String user, String folder) {
+        return hasFolder(user, folder) ? ids(user, folder).size() : 0;
+    }
+
+    @Override
+    public long version(String user, String folder) {
+        return folderVersions.current(user, folder);
+    }
+
+    @Override
+    public mail get(String user, String folder, int id) {
+        if (!hasFolder(user, folder)) {
+            return null;
+        }
+        Long seq = ids(user, folder).get(id);
+        if (seq == null) {
+            return null;
+        }
+        String json = mails(user, folder).get(seq);
+        return json == null ? null : gson.fromJson(json, mail.class);
+    }
+
+    @Override
+    public String locate(String user, int id) {
+        // one point lookup in the id map of each folder
+        for (String folder : folders(user)) {
+            if (ids(user, folder).containsKey(id)) {
+                return folder;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<mail> rangeByTime(String user, String folder, LocalDateTime from, LocalDateTime to) {
+        List<mail> result = new ArrayList<>();
+        if (!hasFolder(user, folder)) {
+            return result;
+        }
+        MVMap<Long, String> mails = mails(user, folder);
+        // keys sort by (time, id), so the range is one ordered walk from the first key >= from
+        String last = to == null ? null : timePrefix(to) + "ffffffff";
+        Iterator<String> keys = times(user, folder).keyIterator(from == null ? null : timePrefix(from) + "00000000");
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (last != null && key.compareTo(last) > 0) {
+                break;
+            }
+            Long seq = times(user, folder).get(key);
+            String json = seq == null ? null : mails.get(seq);
+            if (json != null) {
+                result.add(gson.fromJson(json, mail.class));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<mail> starred(String user) {
+        List<mail> result = new ArrayList<>();
+        List<String> order = new ArrayList<>(List.of(INBOX, SENT, DRAFT));
+        for (String folder : folders(user)) {
+            if (!order.contains(folder) && !TRASH.equals(folder)) {
+                order.add(folder);
+            }
+        }
+        for (String folder : order) {
+            if (!store.hasMap(starredMapName(user, folder))) {
+                continue;
+            }
+            // the starred map is updated in the same commit as the mail, no check needed
+            MVMap<Long, String> mails = mails(user, folder);
+            MVMap<Integer, Long> ids = ids(user, folder);
+            for (Integer id : starredIds(user, folder).keySet()) {
+                Long seq = ids.get(id);
+                String json = seq == null ? null : mails.get(seq);
+                if (json != null) {
+                    mail email = gson.fromJson(json, mail.class);
+                    email.setFolder(folder);
+                    result.add(email);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<String> folders(String user) {
+        if (!store.hasMap(foldersMapName(user))) {
+            return new ArrayList<>();
+        }
+        // map keys are sorted
+        return new ArrayList<>(folderNames(user).keySet());
+    }
+
+    @Override
+    public boolean append(String user, String folder, mail email) {
+        synchronized (store) {
+            put(user, folder, email);
+            commit(DurabilityMode.COMMIT);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean updateStarred(String user, String folder, int id, boolean starred, DurabilityMode durability) {
+        synchronized (store) {
+            mail email = get(user, folder, id);
+            if (email == null) {
+                return false;
+            }
+            email.setStarred(starred);
+            put(user, folder, email);
+            commit(durability);
+            return true;
+        }
+    }
+
+    @Override
+    public mail move(String user, String fromFolder, String toFolder, int id, Consumer<mail> change) {
+        synchronized (store) {
+            mail email = get(user, fromFolder, id);
+            if (email == null) {
+                return null;
+            }
+            if (change != null) {
+                change.accept(email);
+            }
+            put(user, toFolder, email);
+            if (!fromFolder.equals(toFolder)) {
+                remove(user, fromFolder, id);
+            }
+            // both folders change in the same commit
+            commit(DurabilityMode.COMMIT);
+            return email;
+        }
+    }
+
+    @Override
+    public boolean delete(String user, String folder, int id) {
+        synchronized (store) {
+            if (!hasFolder(user, folder) || !remove(user, folder, id)) {
+                return false;
+            }
+            commit(DurabilityMode.COMMIT);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean replaceAll(String user, String folder, List<mail> mails) {
+        synchronized (store) {
+            mails(user, folder).clear();
+            ids(user, folder).clear();
+            times(user, folder).clear();
+            starredIds(user, folder).clear();
+            folderNames(user).put(folder, Boolean.TRUE);
+            for (mail email : mails) {
+                put(user, folder, email);
+            }
+            folderVersions.changed(user, folder);
+            commit(DurabilityMode.COMMIT);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean createFolder(String user, String folder) {
+        synchronized (store) {
+            if (!hasFolder(user, folder)) {
+                folderNames(user).put(folder, Boolean.TRUE);
+                folderVersions.changed(user, folder);
+                commit(DurabilityMode.COMMIT);
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public boolean deleteFolder(String user, String folder) {
+        synchronized (store) {
+            if (!hasFolder(user, folder)) {
+                return false;
+            }
+            store.removeMap(mails(user, folder));
+            store.removeMap(ids(user, folder));
+            store.removeMap(times(user, folder));
+            store.removeMap(starredIds(user, folder));
+            folderNames(user).remove(folder);
+            folderVersions.changed(user, folder);
+            commit(DurabilityMode.COMMIT);
+            return true;
+        }
+    }
+
+    //insert or replace in place, caller holds the store lock
+    private void put(String user, String folder, mail email) {
+        MVMap<Long, String> mails = mails(user, folder);
+        MVMap<Integer, Long> ids = ids(user, folder);
+        MVMap<String, Long> times = times(user, folder);
+        folderNames(user).putIfAbsent(folder, Boolean.TRUE);
+
+        Long seq = ids.get(email.getId());
+        if (seq != null) {
+            mail previous = gson.fromJson(mails.get(seq), mail.class);
+            if (previous.getTimestamp() != null) {
+                times.remove(timeKey(previous));
+            }
+        } else {
+            Long lastSeq = mails.lastKey();
+            seq = lastSeq == null ? 0L : lastSeq + 1;
+            ids.put(email.getId(), seq);
+        }
+        mails.put(seq, gson.toJson(email));
+        if (email.getTimestamp() != null) {
+            times.put(timeKey(email), seq);
+        }
+        if (email.isStarred() && !TRASH.equals(folder)) {
+            starredIds(user, folder).put(email.getId(), Boolean.TRUE);
+        } else if (store.hasMap(starredMapName(user, folder))) {
+            starredIds(user, folder).remove(email.getId());
+        }
+        folderVersions.changed(user, folder);
+    }
+
+    //caller holds the store lock
+    private boolean remove(String user, String folder, int id) {
+        Long seq = ids(user, folder).remove(id);
+        if (seq == null) {
+            return false;
+        }
+        if (store.hasMap(starredMapName(user, folder))) {
+            starredIds(user, folder).remove(id);
+        }
+        String json = mails(user, folder).remove(seq);
+        if (json != null) {
+            mail previous = gson.fromJson(json, mail.class);
+            if (previous.getTimestamp() != null) {
+                times(user, folder).remove(timeKey(previous));
+            }
+        }
+        folderVersions.changed(user, folder);
+        return true;
+    }
+
+    //FIRE_AND_FORGET leaves the change to the store's background auto commit
+    private void commit(DurabilityMode durability) {
+        if (durability == DurabilityMode.COMMIT) {
+            store.commit();
+        }
+    }
+
+    private boolean hasFolder(String user, String folder) {
+        // reads of unknown users must not create their maps
+        return store.hasMap(foldersMapName(user)) && folderNames(user).containsKey(folder);
+    }
+
+    private MVMap<Long, String> mails(String user, String folder) {
+        return store.openMap("mails:" + user + "/" + folder);
+    }
+
+    private MVMap<Integer, Long> ids(String user, String folder) {
+        return store.openMap("ids:" + user + "/" + folder);
+    }
+
+    private MVMap<String, Long> times(String user, String folder) {
+        return store.openMap("time:" + user + "/" + folder);
+    }
+
+    private MVMap<Integer, Boolean> starredIds(String user, String folder) {
+        return store.openMap(starredMapName(user, folder));
+    }
+
+    private static String starredMapName(String user, String folder) {
+        return "starred:" + user + "/" + folder;
+    }
+
+    private MVMap<String, Boolean> folderNames(String user) {
+        return store.openMap(foldersMapName(user));
+    }
+
+    private static String foldersMapName(String user) {
+        return "folders:" + user;
+    }
+
+    //fixed width hex so string order == (time, id) order, sign bits flipped so negative values sort first
+    private static String timeKey(mail email) {
+        return timePrefix(email.getTimestamp()) + String.format("%08x", email.getId() ^ Integer.MIN_VALUE);
+    }
+
+    private static String timePrefix(LocalDateTime time) {
+        return String.format("%016x%08x", time.toEpochSecond(ZoneOffset.UTC) ^ Long.MIN_VALUE, time.getNano());
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.backend.Repo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * How MailStore.search reads a folder for a query and an order (access path), as explainSearch found it
+ * the index lookups are made for real: their row counts and timings are measured, not estimated
+ */
+public final class SearchAccess {
+
+    /**
+     * Way the mails reach the filter
+     */
+    public enum Path {
+        //every mail of the folder is read and filtered
+        SCAN,
+        //every mail of the folder is read, the candidate bitmap is checked before the filter
+        SCAN_CANDIDATES,
+        //each candidate is read by id, then ordered
+        LOOKUP_BY_ID,
+        //ids come from the time index in the wanted order, each read by id (no sort)
+        TIME_ORDER_BY_ID,
+        //ids come from the time index in the wanted order, picked from one read of the folder (no sort)
+        TIME_ORDER_READ,
+        //ids come from the sort index in the wanted order, each read by id (no sort)
+        SORT_ORDER_BY_ID,
+        //ids come from the sort index in the wanted order, picked from one read of the folder (no sort)
+        SORT_ORDER_READ
+    }
+
+    /**
+     * One index asked for the ids that may match
+     */
+    public static final class Lookup {
+        private final String index;
+        private final String clause;
+        private final int rows;
+        private final long micros;
+
+        /**
+         * @param index : index name (bitmap, sender, time, text)
+         * @param clause : criteria it answered
+         * @param rows : ids it returned
+         * @param micros : time it took
+         */
+        public Lookup(String index, String clause, int rows, long micros) {
+            this.index = index;
+            this.clause = clause;
+            this.rows = rows;
+            this.micros = micros;
+        }
+
+        public String getIndex() {
+            return index;
+        }
+
+        public String getClause() {
+            return clause;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public long getMicros() {
+            return micros;
+        }
+    }
+
+    private final List<Lookup> lookups = new ArrayList<>();
+    private Path path = Path.SCAN;
+    private int candidates = -1;
+    private int folderSize = -1;
+
+    /**
+     * @return index lookups in the order they were made
+     */
+    public List<Lookup> getLookups() {
+        return Collections.unmodifiableList(lookups);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return ids left after intersecting the lookups, -1 if no index narrowed the search
+     */
+    public int getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * @return mails in the folder, -1 if the store doesn't know without reading it
+     */
+    public int getFolderSize() {
+        return folderSize;
+    }
+
+    /**
+     * @return true if the mails come out in the wanted order without being sorted
+     */
+    public boolean isOrdered() {
+        return path == Path.TIME_ORDER_BY_ID || path == Path.TIME_ORDER_READ
+                || path == Path.SORT_ORDER_BY_ID || path == Path.SORT_ORDER_READ;
+    }
+
+    void addLookup(Lookup lookup) {
+        lookups.add(lookup);
+    }
+
+    void setPath(Path path) {
+        this.path = path;
+    }
+
+    void setCandidates(int candidates) {
+        this.candidates = candidates;
+    }
+
+    void setFolderSize(int folderSize) {
+        this.folderSize = folderSize;
+    }
+}
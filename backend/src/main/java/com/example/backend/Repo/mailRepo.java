@@ -1,12 +1,10 @@
 package com.example.backend.Repo;
 
-import java.io.File;
-import java.lang.reflect.Type;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.stream.Collectors;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 
 
 import org.springframework.stereotype.Repository;
@@ -14,10 +12,10 @@ import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 
-import com.example.backend.Util.EmailPriorityComparator;
-import com.example.backend.Util.JsonFileManager;
+import com.example.backend.Util.MailboxLockManager;
+import com.example.backend.Util.MailPage;
+import com.example.backend.Util.MailQuery;
 import com.example.backend.model.mail;
-import com.google.gson.reflect.TypeToken;
 
 import jakarta.servlet.http.HttpServletRequest;
 
@@ -25,12 +23,14 @@ import jakarta.servlet.http.HttpServletRequest;
 public class mailRepo {
     private String senderEmail; // Keep this for backward compatibility with setSenderEmail()
 
-    private final String BasePath = "data/users/";
-    private final JsonFileManager jsonFileManager;
-    private static final Type MAIL_LIST_TYPE = new TypeToken<List<mail>>(){}.getType();
+    // folders of every user (json files or embedded key-value store, see mail.store.type)
+    private final MailStore mailStore;
+    // per (user, folder) locks shared with mailService and TrashCleanupService
+    private final MailboxLockManager mailboxLockManager;
 
-    public mailRepo(JsonFileManager jsonFileManager) {
-        this.jsonFileManager = jsonFileManager;
+    public mailRepo(MailStore mailStore, MailboxLockManager mailboxLockManager) {
+        this.mailStore = mailStore;
+        this.mailboxLockManager = mailboxLockManager;
     }
      private String getLoggedInUser() {
         if (senderEmail != null) {
@@ -50,38 +50,112 @@ public class mailRepo {
         return null;
     }
 
+    /**
+     * User whose folders the reads of this repo go to
+     * @return email of the logged in user
+     */
+    public String getCurrentUser() {
+        return getLoggedInUser();
+    }
+
     public List<mail> getInboxEmails() {
-        String inboxPath = BasePath + getLoggedInUser() + "/inbox.json";
-        return jsonFileManager.readListFromFile(inboxPath, MAIL_LIST_TYPE);
+        return mailStore.list(getLoggedInUser(), MailStore.INBOX);
     }
     public List<mail> getSentEmails() {
-        String sentPath = BasePath + getLoggedInUser() + "/sent.json";
-        return jsonFileManager.readListFromFile(sentPath, MAIL_LIST_TYPE);
+        return mailStore.list(getLoggedInUser(), MailStore.SENT);
     }
 
     public List<mail> getTrashEmails() {
-        String trashPath = BasePath + getLoggedInUser() + "/trash.json";
-        return jsonFileManager.readListFromFile(trashPath, MAIL_LIST_TYPE);
+        return mailStore.list(getLoggedInUser(), MailStore.TRASH);
     }
     public List<mail> getDraftEmails() {
-        String draftPath = BasePath + getLoggedInUser() + "/draft.json";
-        return jsonFileManager.readListFromFile(draftPath, MAIL_LIST_TYPE);
+        return mailStore.list(getLoggedInUser(), MailStore.DRAFT);
     }
-    
 
+    /**
+     * All mails of any folder of the logged in user
+     * @param folder : folder name (inbox, sent, draft, trash, folder_x)
+     * @return mails in folder order
+     */
+    public List<mail> getFolderEmails(String folder) {
+        return mailStore.list(getLoggedInUser(), folder);
+    }
 
-    public mail getEmailById(int id, String folder) {
-        String folderPath = BasePath + getLoggedInUser() + "/" + folder + ".json";
-        List<mail> emails = jsonFileManager.readListFromFile(folderPath, MAIL_LIST_TYPE);
+    /**
+     * Read only the mails of a folder that pass the filter, without loading the whole folder first
+     * @param folder : folder file name without extension (inbox, sent, draft, trash, folder_x)
+     * @param filter : mails to keep
+     * @return matching mails in folder order
+     */
+    public List<mail> getFolderEmails(String folder, Predicate<mail> filter) {
+        return mailStore.scan(getLoggedInUser(), folder, filter, null, 0);
+    }
+
+    /**
+     * Read only the mails of a folder that pass the filter, the query criteria narrow the mails to check first
+     * @param folder : folder file name without extension (inbox, sent, draft, trash, folder_x)
+     * @param query : criteria of the filter the indexes can answer (may be empty)
+     * @param filter : mails to keep, query criteria included (null keeps all)
+     * @param order : order of the result (an index may produce it without sorting), null for folder order
+     * @return matching mails
+     */
+    public List<mail> getFolderEmails(String folder, MailQuery query, Predicate<mail> filter, Comparator<mail> order) {
+        return mailStore.search(getLoggedInUser(), folder, query, filter, order, 0);
+    }
 
-        return emails.stream()
-                .filter(email -> email.getId() == id)
-                .findFirst()
-                .orElse(null);
+    /**
+     * One page of the mails getFolderEmails would return, and their number
+     * @param folder : folder file name without extension (inbox, sent, draft, trash, folder_x)
+     * @param query : criteria of the filter the indexes can answer (may be empty)
+     * @param filter : mails to keep, query criteria included (null keeps all)
+     * @param order : order of the listing, null for folder order
+     * @param offset : mails before the page
+     * @param limit : mails in the page
+     * @return the page and the number of matching mails
+     */
+    public MailPage getFolderEmailsPage(String folder, MailQuery query, Predicate<mail> filter, Comparator<mail> order,
+                                        int offset, int limit) {
+        return mailStore.searchPage(getLoggedInUser(), folder, query, filter, order, offset, limit);
     }
-    private final Object trashLock = new Object();
-    private final Object folderLock = new Object();
 
+    /**
+     * The mails getFolderEmails would return that come after a mail in the order (keyset paging)
+     * @param folder : folder file name without extension (inbox, sent, draft, trash, folder_x)
+     * @param query : criteria of the filter the indexes can answer (may be empty)
+     * @param filter : mails to keep, query criteria included (null keeps all)
+     * @param order : order of the listing, without ties
+     * @param after : last mail of the previous page, null for the first page
+     * @param limit : mails in the page
+     * @return the first `limit` matching mails after it
+     */
+    public List<mail> getFolderEmailsAfter(String folder, MailQuery query, Predicate<mail> filter, Comparator<mail> order,
+                                           mail after, int limit) {
+        return mailStore.searchAfter(getLoggedInUser(), folder, query, filter, order, after, limit);
+    }
+    
+
+
+    /**
+     * Get one mail of the logged in user
+     * @param id : mail id
+     * @param folder : folder of the mail, null to find it from the id
+     * @return the mail with its folder set, or null if not found
+     */
+    public mail getEmailById(int id, String folder) {
+        String currentUser = getLoggedInUser();
+        if (folder == null || folder.isEmpty()) {
+            folder = mailStore.locate(currentUser, id);
+            if (folder == null) {
+                return null;
+            }
+        }
+        mail email = mailStore.get(currentUser, folder, id);
+        if (email != null) {
+            // so the frontend knows where the mail lives when it didn't say
+            email.setFolder(folder);
+        }
+        return email;
+    }
     public boolean deleteEmail(int id, String folder) {
         System.out.println("=== DELETE EMAIL START ===");
         System.out.println("Email ID: " + id);
@@ -94,60 +168,19 @@ public class mailRepo {
             }
 
             String currentUser = getLoggedInUser();
-            String folderPath = BasePath + currentUser + "/" + folder + ".json";
-            String trashPath = BasePath + currentUser + "/trash.json";
 
-            // Synchronize to prevent concurrent modification
-            synchronized (folderLock) {
-                List<mail> emails = jsonFileManager.readListFromFile(folderPath, MAIL_LIST_TYPE);
+            // Lock source folder and trash of this user only (always taken in the same order)
+            try (MailboxLockManager.Handle locks = mailboxLockManager.write(
+                    MailboxLockManager.mailbox(currentUser, folder), MailboxLockManager.mailbox(currentUser, MailStore.TRASH))) {
+                // Move to trash, stamped with the time it was trashed (for the 30 days cleanup)
+                LocalDateTime trashedAt = LocalDateTime.now();
+                mail trashed = mailStore.move(currentUser, folder, MailStore.TRASH, id, email -> email.setTrashedAt(trashedAt));
 
-                // Handle null or empty list
-                if (emails == null) {
-                    emails = new ArrayList<>();
-                }
-
-                // Find and remove the email
-                mail emailToDelete = null;
-                for (mail email : emails) {
-                    if (email.getId() == id) {
-                        emailToDelete = email;
-                        break;
-                    }
-                }
-
-                if (emailToDelete == null) {
+                if (trashed == null) {
                     System.out.println("Email not found with ID: " + id);
                     return false;
                 }
 
-                // Remove from source folder
-                emails.remove(emailToDelete);
-                boolean writeSuccess = jsonFileManager.writeListToFile(folderPath, emails);
-
-                if (!writeSuccess) {
-                    System.err.println("Failed to write to folder: " + folderPath);
-                    return false;
-                }
-
-                // Add to trash (synchronized separately)
-                synchronized (trashLock) {
-                    List<mail> trashEmails = jsonFileManager.readListFromFile(trashPath, MAIL_LIST_TYPE);
-
-                    // Initialize trash list if null
-                    if (trashEmails == null) {
-                        trashEmails = new ArrayList<>();
-                    }
-
-                    emailToDelete.setTrashedAt(LocalDateTime.now());
-                    trashEmails.add(emailToDelete);
-                    boolean trashWriteSuccess = jsonFileManager.writeListToFile(trashPath, trashEmails);
-
-                    if (!trashWriteSuccess) {
-                        System.err.println("Failed to write to trash: " + trashPath);
-                        return false;
-                    }
-                }
-
                 System.out.println("=== DELETE EMAIL SUCCESS ===");
                 return true;
             }
@@ -161,29 +194,13 @@ public class mailRepo {
     }
 
     private boolean permanentlyDeleteEmail(int id) {
-        String trashPath = BasePath + getLoggedInUser() + "/trash.json";
-        System.out.println("Attempting to delete email " + id + " from: " + trashPath);
+        String currentUser = getLoggedInUser();
+        System.out.println("Attempting to delete email " + id + " from trash of: " + currentUser);
 
         try {
-            synchronized (trashLock) {
-                List<mail> emails = jsonFileManager.readListFromFile(trashPath, MAIL_LIST_TYPE);
-
-                // Handle case where trash file doesn't exist or is null
-                if (emails == null) {
-                    emails = new ArrayList<>();
-                    return false; // Email not found
-                }
-
-                List<mail> filteredEmails = emails.stream()
-                        .filter(email -> email.getId() != id)
-                        .collect(Collectors.toList());
-
-                if (filteredEmails.size() < emails.size()) {
-                    jsonFileManager.writeListToFile(trashPath, filteredEmails);
-                    return true;
-                }
-
-                return false;
+            try (MailboxLockManager.Handle locks = mailboxLockManager.write(MailboxLockManager.mailbox(currentUser, MailStore.TRASH))) {
+                // false if the email isn't in trash
+                return mailStore.delete(currentUser, MailStore.TRASH, id);
             }
         } catch (Exception e) {
             System.err.println("Error permanently deleting email: " + e.getMessage());
@@ -192,59 +209,14 @@ public class mailRepo {
         }
     }
 
-    // ADD this method to mailRepo.java after getDraftEmails()
-
-    // In your mailRepo class, update the getStarredEmails() method to include folder information
-
-public List<mail> getStarredEmails() {
-    String currentUser = getLoggedInUser();
-    List<mail> starredEmails = new ArrayList<>();
-    
-    // Search through all folders for starred emails
-    String[] folders = {"inbox", "sent", "draft"};
-    
-    for (String folder : folders) {
-        String folderPath = BasePath + currentUser + "/" + folder + ".json";
-        List<mail> emails = jsonFileManager.readListFromFile(folderPath, MAIL_LIST_TYPE);
-        
-        if (emails != null) {
-            for (mail email : emails) {
-                if (email.isStarred()) {
-                    // IMPORTANT: Set the folder property so frontend knows where email actually lives
-                    email.setFolder(folder);
-                    starredEmails.add(email);
-                }
-            }
-        }
-    }
-    
-    // Also check custom folders
-    File userDir = new File(BasePath + currentUser);
-    if (userDir.exists() && userDir.isDirectory()) {
-        File[] files = userDir.listFiles((dir, name) -> name.startsWith("folder_") && name.endsWith(".json"));
-        
-        if (files != null) {
-            for (File file : files) {
-                // Extract just the ID part from "folder_123.json"
-                String fileName = file.getName().replace(".json", "");
-                String folderPath = file.getAbsolutePath();
-                List<mail> emails = jsonFileManager.readListFromFile(folderPath, MAIL_LIST_TYPE);
-                
-                if (emails != null) {
-                    for (mail email : emails) {
-                        if (email.isStarred()) {
-                            // Set folder as "folder_X" to match file naming (e.g., "folder_123")
-                            email.setFolder(fileName);  // CHANGED: Use fileName directly instead of concatenating
-                            starredEmails.add(email);
-                        }
-                    }
-                }
-            }
-        }
+    /**
+     * Starred emails of every folder but trash, read from the store's starred index
+     * (work proportional to the number of starred emails, not to the mailbox)
+     * the folder property is set so the frontend knows where each email lives ("folder_X" for custom folders)
+     */
+    public List<mail> getStarredEmails() {
+        return mailStore.starred(getLoggedInUser());
     }
-    
-    return starredEmails;
-}
 
     public boolean toggleStar(int id, String folder) {
         System.out.println("=== TOGGLE STAR START ===");
@@ -253,32 +225,11 @@ public List<mail> getStarredEmails() {
 
         try {
             String currentUser = getLoggedInUser();
-            String folderPath = BasePath + currentUser + "/" + folder + ".json";
-
-            System.out.println("Folder Path: " + folderPath);
-
-            synchronized (folderLock) {
-                // Read current emails from folder
-                List<mail> emails = jsonFileManager.readListFromFile(folderPath, MAIL_LIST_TYPE);
-
-                if (emails == null) {
-                    System.err.println("ERROR: Could not read emails from " + folderPath);
-                    return false;
-                }
-
-                System.out.println("Found " + emails.size() + " emails in folder");
-
+            boolean newStarredStatus;
+            BooleanSupplier commit;
+            try (MailboxLockManager.Handle locks = mailboxLockManager.write(MailboxLockManager.mailbox(currentUser, folder))) {
                 // Find the email to toggle
-                mail emailToToggle = null;
-                int emailIndex = -1;
-
-                for (int i = 0; i < emails.size(); i++) {
-                    if (emails.get(i).getId() == id) {
-                        emailToToggle = emails.get(i);
-                        emailIndex = i;
-                        break;
-                    }
-                }
+                mail emailToToggle = mailStore.get(currentUser, folder, id);
 
                 if (emailToToggle == null) {
                     System.err.println("ERROR: Email not found with ID: " + id);
@@ -290,42 +241,23 @@ public List<mail> getStarredEmails() {
                 System.out.println("Current starred status: " + currentStarredStatus);
 
                 // Toggle the starred status
-                boolean newStarredStatus = !currentStarredStatus;
-                emailToToggle.setStarred(newStarredStatus);
+                newStarredStatus = !currentStarredStatus;
 
                 System.out.println("New starred status: " + newStarredStatus);
 
-                // Verify the change was applied
-                System.out.println("Verified starred status after set: " + emailToToggle.isStarred());
-
-                // Update the email in the list (just to be extra safe)
-                emails.set(emailIndex, emailToToggle);
-
-                // Write back to file
-                System.out.println("Writing " + emails.size() + " emails back to file...");
-                boolean writeSuccess = jsonFileManager.writeListToFile(folderPath, emails);
-
-                if (writeSuccess) {
-                    System.out.println("=== TOGGLE STAR SUCCESS ===");
-                    System.out.println("Email " + id + " starred status changed to: " + newStarredStatus);
-
-                    // Verify by reading back
-                    List<mail> verifyEmails = jsonFileManager.readListFromFile(folderPath, MAIL_LIST_TYPE);
-                    if (verifyEmails != null) {
-                        mail verifyEmail = verifyEmails.stream()
-                                .filter(e -> e.getId() == id)
-                                .findFirst()
-                                .orElse(null);
-                        if (verifyEmail != null) {
-                            System.out.println("VERIFICATION: Read back starred status = " + verifyEmail.isStarred());
-                        }
-                    }
-
-                    return true;
-                } else {
-                    System.err.println("ERROR: Failed to write to folder: " + folderPath);
-                    return false;
-                }
+                // Queue only the flag change, the next toggle of the folder sees it once queued
+                commit = mailStore.queueStarred(currentUser, folder, id, newStarredStatus);
+            }
+
+            // Written after the lock is released: toggles of the folder queued meanwhile share the write
+            // (waits for it: the indexes and the folder version change only once the flag is on disk)
+            if (commit.getAsBoolean()) {
+                System.out.println("=== TOGGLE STAR SUCCESS ===");
+                System.out.println("Email " + id + " starred status changed to: " + newStarredStatus);
+                return true;
+            } else {
+                System.err.println("ERROR: Failed to write to folder: " + folder);
+                return false;
             }
         } catch (Exception e) {
             System.err.println("=== TOGGLE STAR ERROR ===");
@@ -334,20 +266,4 @@ public List<mail> getStarredEmails() {
             return false;
         }
     }
-
-// REMOVE the createMailCopy method as it's no longer needed
-
-///**
-// * Create a copy of a mail object
-// */
-//private mail createMailCopy(mail original) {
-//    try {
-//        return (mail) original.clone();
-//    } catch (CloneNotSupportedException e) {
-//        System.err.println("Error cloning mail object: " + e.getMessage());
-//        e.printStackTrace();
-//        // Fallback to manual copy if clone fails
-//        return createMailCopy(original);
-//    }
-//}
 }
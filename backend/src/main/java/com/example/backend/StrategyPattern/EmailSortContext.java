@@ -1,9 +1,12 @@
 package com.example.backend.StrategyPattern;
 
+import com.example.backend.Util.ParallelMailProcessor;
 import com.example.backend.model.mail;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,10 +20,18 @@ import java.util.Map;
 public class EmailSortContext {
     //Map to store available strategies(name,strategy)
     private final Map<String, EmailSortStrategy> strategies;
+    //sorts big lists in parallel with the order of the strategy
+    private final ParallelMailProcessor parallelMailProcessor;
 
-    //constructor to register our default strategies
+    //constructor to register our default strategies, every list sorted on the calling thread
     public EmailSortContext() {
+        this(new ParallelMailProcessor(1, Integer.MAX_VALUE));
+    }
+
+    @Autowired
+    public EmailSortContext(ParallelMailProcessor parallelMailProcessor) {
         this.strategies = new HashMap<>();
+        this.parallelMailProcessor = parallelMailProcessor;
         registerDefaultStrategies();
     }
 
@@ -56,6 +67,37 @@ public class EmailSortContext {
       @return Sorted list of emails
      */
     public List<mail> sortEmails(List<mail> emails, String strategyName) {
+        EmailSortStrategy strategy = strategyOf(strategyName);
+        Comparator<mail> order = strategy.getOrder();
+        //big list: sorted in parallel chunks with the order of the strategy
+        if (emails != null && order != null && parallelMailProcessor.isParallel(emails.size())) {
+            parallelMailProcessor.sort(emails, order);
+            return emails;
+        }
+        //apply the sorting strategy on list of mails
+        strategy.sort(emails);
+        return emails;
+    }
+
+    /**
+      Order of a strategy the storage layer can produce itself
+      @param strategyName Name of the strategy
+      @return its comparator, or null if the list must be sorted with sortEmails
+     */
+    public Comparator<mail> getComparator(String strategyName) {
+        return strategyOf(strategyName).getComparator();
+    }
+
+    /**
+      Order of a strategy, to keep only the first mails of a list without sorting all of it
+      @param strategyName Name of the strategy
+      @return comparator giving the order of sortEmails, or null if only the strategy knows it
+     */
+    public Comparator<mail> getOrder(String strategyName) {
+        return strategyOf(strategyName).getOrder();
+    }
+
+    private EmailSortStrategy strategyOf(String strategyName) {
         //get the strategy to work with
         EmailSortStrategy strategy = strategies.get(strategyName);
         //if null then default sort by descending date
@@ -63,9 +105,7 @@ public class EmailSortContext {
             System.err.println("Unknown sort strategy: " + strategyName + ". Using default date-desc");
             strategy = strategies.get("date-desc");
         }
-        //apply the sorting strategy on list of mails
-        strategy.sort(emails);
-        return emails;
+        return strategy;
     }
 
     /*
@@ -2,6 +2,7 @@ package com.example.backend.StrategyPattern;
 
 import com.example.backend.model.mail;
 
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -20,4 +21,21 @@ public interface EmailSortStrategy {
      * @return Strategy name
      */
     String getStrategyName();
+
+    /**
+     * Order the storage layer can produce itself (from an index) instead of sorting the list afterwards
+     * @return the comparator sort() applies, or null if only sort() knows the order
+     */
+    default Comparator<mail> getComparator() {
+        return null;
+    }
+
+    /**
+     * Order sort() applies: the storage layer reads folders in it from an index (MailTimeIndex, MailSortIndex)
+     * instead of sorting them, and big lists are sorted in parallel (chunks sorted then merged)
+     * @return comparator giving the same order as sort(), or null if only sort() knows the order
+     */
+    default Comparator<mail> getOrder() {
+        return getComparator();
+    }
 }
\ No newline at end of file
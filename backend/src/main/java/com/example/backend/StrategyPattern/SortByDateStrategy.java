@@ -1,14 +1,15 @@
 package com.example.backend.StrategyPattern;
 
 
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import com.example.backend.Util.MailSortKernels;
+import com.example.backend.Util.MailTimeOrder;
 import com.example.backend.model.mail;
 
 /**
- * Sort emails by date (timestamp)
+ * Sort emails by date (timestamp to the millisecond, then id), the order of MailTimeIndex
  */
 public class SortByDateStrategy implements EmailSortStrategy {
     private final boolean ascending;
@@ -23,18 +24,13 @@ public class SortByDateStrategy implements EmailSortStrategy {
         if (emails == null || emails.isEmpty()) {
             return;
         }
-        //define a comparator and its rules
-        Comparator<mail> comparator = Comparator.comparing(
-                mail::getTimestamp,
-                //if mail.getTimeStamp()=null put last
-                Comparator.nullsLast(Comparator.naturalOrder())
-        );
-        //if sort in descending reverse the list
-        if (!ascending) {
-            comparator = comparator.reversed();
-        }
-        //apply the comparator on the emails list
-        Collections.sort(emails, comparator);
+        //radix sort on the epoch millis, same order as the comparator (mails without date last, first in descending order)
+        MailSortKernels.byTime(emails, ascending);
+    }
+
+    @Override
+    public Comparator<mail> getComparator() {
+        return ascending ? MailTimeOrder.OLDEST_FIRST : MailTimeOrder.NEWEST_FIRST;
     }
 
     @Override
@@ -2,12 +2,15 @@ package com.example.backend.StrategyPattern;
 
 import java.util.Comparator;
 import java.util.List;
-import java.util.PriorityQueue;
 
+import com.example.backend.Util.MailSortKernels;
+import com.example.backend.Util.MailSortOrder;
+import com.example.backend.Util.MailTimeOrder;
 import com.example.backend.model.mail;
 
 /**
- * Sort emails by priority (1=Urgent, 2=High, 3=Medium, 4=Low) using PriorityQueue
+ * Sort emails by priority (1=Urgent, 2=High, 3=Medium, 4=Low), newest first within a priority
+ * counting sort of the priorities (MailSortKernels)
  */
 public class SortByPriorityStrategy implements EmailSortStrategy {
     private final boolean ascending;
@@ -23,26 +26,22 @@ public class SortByPriorityStrategy implements EmailSortStrategy {
             return;
         }
 
+        //linear sort: radix on the dates, then stable counting sort on the priorities
+        MailSortKernels.byPriority(emails, ascending);
+    }
+
+    @Override
+    public Comparator<mail> getOrder() {
         //define a comparator and its rules
         Comparator<mail> comparator = Comparator.comparingInt(mail::getPriority);
         //if sort in descending reverse the list
         if (!ascending) {
             comparator = comparator.reversed();
         }
-
-        // Create PriorityQueue with the comparator
-        PriorityQueue<mail> pq = new PriorityQueue<>(comparator);
-
-        // Add all emails to the priority queue
-        pq.addAll(emails);
-
-        // Clear the original list
-        emails.clear();
-
-        // Extract emails from priority queue in sorted order
-        while (!pq.isEmpty()) {
-            emails.add(pq.poll());
-        }
+        //same priority: newest first
+        comparator = comparator.thenComparing(MailTimeOrder.NEWEST_FIRST);
+        //ties by id: a total order the storage layer can keep per folder (MailSortIndex)
+        return new MailSortOrder(getStrategyName(), comparator);
     }
 
     @Override
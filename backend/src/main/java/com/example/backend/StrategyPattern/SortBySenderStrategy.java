@@ -1,9 +1,10 @@
 package com.example.backend.StrategyPattern;
 
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import com.example.backend.Util.MailSortKernels;
+import com.example.backend.Util.MailSortOrder;
 import com.example.backend.model.mail;
 
 /**
@@ -22,6 +23,12 @@ public class SortBySenderStrategy implements EmailSortStrategy {
         if (emails == null || emails.isEmpty()) {
             return;
         }
+        //every text case folded once, not in each comparison
+        MailSortKernels.byText(emails, mail::getFrom, ascending);
+    }
+
+    @Override
+    public Comparator<mail> getOrder() {
         //define a comparator and its rules
         Comparator<mail> comparator = Comparator.comparing(
                 mail::getFrom,
@@ -32,8 +39,8 @@ public class SortBySenderStrategy implements EmailSortStrategy {
         if (!ascending) {
             comparator = comparator.reversed();
         }
-        //apply the comparator on the emails list
-        Collections.sort(emails, comparator);
+        //ties by id: a total order the storage layer can keep per folder (MailSortIndex)
+        return new MailSortOrder(getStrategyName(), comparator);
     }
 
     @Override
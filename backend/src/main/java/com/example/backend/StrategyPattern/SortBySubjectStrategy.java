@@ -1,10 +1,11 @@
 package com.example.backend.StrategyPattern;
 
 
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import com.example.backend.Util.MailSortKernels;
+import com.example.backend.Util.MailSortOrder;
 import com.example.backend.model.mail;
 
 /**
@@ -23,6 +24,12 @@ public class SortBySubjectStrategy implements EmailSortStrategy {
         if (emails == null || emails.isEmpty()) {
             return;
         }
+        //every text case folded once, not in each comparison
+        MailSortKernels.byText(emails, mail::getSubject, ascending);
+    }
+
+    @Override
+    public Comparator<mail> getOrder() {
         //define a comparator and its rules
         Comparator<mail> comparator = Comparator.comparing(
                 mail::getSubject,
@@ -33,8 +40,8 @@ public class SortBySubjectStrategy implements EmailSortStrategy {
         if (!ascending) {
             comparator = comparator.reversed();
         }
-        //apply the comparator on the emails list
-        Collections.sort(emails, comparator);
+        //ties by id: a total order the storage layer can keep per folder (MailSortIndex)
+        return new MailSortOrder(getStrategyName(), comparator);
     }
 
     @Override
@@ -0,0 +1,120 @@
+package com.example.backend.Util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Crash-safe file replacement: write to a temp file in the same directory, fsync (per policy), atomic rename
+ * a reader opening the target always sees either the old or the new content, never a half written file,
+ * so readers don't need any lock
+ */
+@Component
+public class AtomicFileWriter {
+
+    /**
+     * writes the new content of a file into the given writer
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    private final FsyncPolicy fsyncPolicy;
+
+    public AtomicFileWriter(@Value("${mail.storage.fsync:FILE}") FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    /**
+     * writes the new content of a file as raw bytes (binary mail folders)
+     */
+    @FunctionalInterface
+    public interface BinaryContentWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Replace the content of a file atomically
+     * @param target : file to replace (parent directories are created)
+     * @param content : produces the new content (UTF-8 text)
+     */
+    public void write(File target, ContentWriter content) throws IOException {
+        writeBytes(target, out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            content.writeTo(writer);
+            writer.flush();
+        });
+    }
+
+    /**
+     * Replace the content of a file atomically
+     * @param target : file to replace (parent directories are created)
+     * @param content : produces the new content (bytes)
+     */
+    public void writeBytes(File target, BinaryContentWriter content) throws IOException {
+        Path targetPath = target.toPath().toAbsolutePath();
+        Path directory = targetPath.getParent();
+        Files.createDirectories(directory);
+
+        // temp file in the same directory, a rename across file systems wouldn't be atomic
+        Path temp = Files.createTempFile(directory, "." + targetPath.getFileName(), ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp.toFile());
+                 OutputStream buffered = new BufferedOutputStream(out)) {
+                content.writeTo(buffered);
+                buffered.flush();
+                if (fsyncPolicy != FsyncPolicy.NEVER) {
+                    out.getChannel().force(true);
+                }
+            }
+            move(temp, targetPath);
+            if (fsyncPolicy == FsyncPolicy.FILE_AND_DIRECTORY) {
+                syncDirectory(directory);
+            }
+        } finally {
+            // only left behind if something failed before the rename
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Append bytes at the end of a file (journal records), fsynced per policy
+     * @param target : file to append to, created if missing
+     * @param bytes : data to append in a single write
+     */
+    public void append(File target, byte[] bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(target, true)) {
+            out.write(bytes);
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                out.getChannel().force(false);
+            }
+        }
+    }
+
+    private static void move(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // some file systems (e.g. network shares) can't rename atomically, still better than truncating
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    //directory fsync is not supported everywhere (e.g. Windows), it's best effort
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            System.err.println("Could not fsync directory: " + directory);
+        }
+    }
+}
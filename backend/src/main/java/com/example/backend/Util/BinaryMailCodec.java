@@ -0,0 +1,298 @@
+package com.example.backend.Util;
+
+import com.example.backend.DTOS.attachementDTO;
+import com.example.backend.model.mail;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+/**
+ * Compact binary encoding of a mail folder (alternative to the pretty printed json)
+ * layout (big endian):
+ *   header  : magic 0x89 'M' 'B' 'X' | u16 version
+ *   strings : int count | count x string            (addresses, folder names, mime types, stored once)
+ *   records : int count | count x (int length | record bytes)
+ * record (version 1):
+ *   int id | ref from | int n, n x ref to | string subject, body, preview | byte flags (1 starred, 2 attachment)
+ *   | long timestamp | int priority | int n, n x (string filename, string filePath, ref mimeType, long size)
+ *   | long trashedAt | ref folder | ref customFolderId
+ * string = int byte length (-1 null) + UTF-8 bytes, ref = int index in the string table (-1 null),
+ * times = epoch millis in UTC (Long.MIN_VALUE null), lists use n = -1 for null
+ * records are length prefixed so a newer version can add fields at the end of a record
+ */
+public final class BinaryMailCodec {
+
+    // 0x89 is never the first byte of a json file (not ascii, not a valid UTF-8 lead byte)
+    private static final byte[] MAGIC = { (byte) 0x89, 'M', 'B', 'X' };
+    public static final int VERSION = 1;
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final int STARRED = 1;
+    private static final int HAS_ATTACHMENT = 2;
+
+    private BinaryMailCodec() {}
+
+    /**
+     * @return number of bytes needed to recognize the format
+     */
+    public static int magicLength() {
+        return MAGIC.length;
+    }
+
+    /**
+     * Check the first bytes of a file
+     * @param head : first bytes of the file
+     * @param length : number of valid bytes in head
+     * @return true if the file is a binary mail folder
+     */
+    public static boolean hasMagic(byte[] head, int length) {
+        return length >= MAGIC.length && Arrays.equals(Arrays.copyOf(head, MAGIC.length), MAGIC);
+    }
+
+    /**
+     * Encode a whole folder
+     * @param mails : folder content
+     * @param out : destination, not closed
+     */
+    public static void write(List<mail> mails, OutputStream out) throws IOException {
+        // string table first so records can be decoded one by one while reading
+        Map<String, Integer> table = new LinkedHashMap<>();
+        for (mail email : mails) {
+            intern(table, email.getFrom());
+            if (email.getTo() != null) {
+                for (String address : email.getTo()) {
+                    intern(table, address);
+                }
+            }
+            if (email.getAttachments() != null) {
+                for (attachementDTO attachment : email.getAttachments()) {
+                    intern(table, attachment.getMimeType());
+                }
+            }
+            intern(table, email.getFolder());
+            intern(table, email.getCustomFolderId());
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(MAGIC);
+        data.writeShort(VERSION);
+        data.writeInt(table.size());
+        for (String value : table.keySet()) {
+            writeString(data, value);
+        }
+
+        data.writeInt(mails.size());
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(512);
+        DataOutputStream record = new DataOutputStream(recordBytes);
+        for (mail email : mails) {
+            recordBytes.reset();
+            writeRecord(record, email, table);
+            record.flush();
+            data.writeInt(recordBytes.size());
+            recordBytes.writeTo(data);
+        }
+        data.flush();
+    }
+
+    /**
+     * Decode a folder record by record
+     * @param in : source positioned at the magic, not closed
+     * @param consumer : receives every mail in folder order
+     */
+    public static void read(InputStream in, Consumer<mail> consumer) throws IOException {
+        read(in, consumer, false);
+    }
+
+    /**
+     * Decode a folder record by record
+     * @param summaryOnly : skip the recipients, body and attachments of every record (mails come without them)
+     */
+    public static void read(InputStream in, Consumer<mail> consumer, boolean summaryOnly) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        if (!hasMagic(magic, magic.length)) {
+            throw new IOException("Not a binary mail folder");
+        }
+        int version = data.readUnsignedShort();
+        if (version > VERSION) {
+            throw new IOException("Unsupported binary mail folder version: " + version);
+        }
+
+        String[] table = new String[data.readInt()];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = readString(data);
+        }
+
+        int count = data.readInt();
+        byte[] buffer = new byte[512];
+        for (int i = 0; i < count; i++) {
+            int length = data.readInt();
+            if (length < 0) {
+                throw new IOException("Corrupt record length: " + length);
+            }
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            data.readFully(buffer, 0, length);
+            consumer.accept(readRecord(new DataInputStream(new ByteArrayInputStream(buffer, 0, length)), table, summaryOnly));
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, mail email, Map<String, Integer> table) throws IOException {
+        out.writeInt(email.getId());
+        writeRef(out, table, email.getFrom());
+        Queue<String> to = email.getTo();
+        out.writeInt(to == null ? -1 : to.size());
+        if (to != null) {
+            for (String address : to) {
+                writeRef(out, table, address);
+            }
+        }
+        writeString(out, email.getSubject());
+        writeString(out, email.getBody());
+        writeString(out, email.getPreview());
+        out.writeByte((email.isStarred() ? STARRED : 0) | (email.isHasAttachment() ? HAS_ATTACHMENT : 0));
+        writeTime(out, email.getTimestamp());
+        out.writeInt(email.getPriority());
+        List<attachementDTO> attachments = email.getAttachments();
+        out.writeInt(attachments == null ? -1 : attachments.size());
+        if (attachments != null) {
+            for (attachementDTO attachment : attachments) {
+                writeString(out, attachment.getFilename());
+                writeString(out, attachment.getFilePath());
+                writeRef(out, table, attachment.getMimeType());
+                out.writeLong(attachment.getFileSize());
+            }
+        }
+        writeTime(out, email.getTrashedAt());
+        writeRef(out, table, email.getFolder());
+        writeRef(out, table, email.getCustomFolderId());
+    }
+
+    private static mail readRecord(DataInputStream in, String[] table, boolean summaryOnly) throws IOException {
+        mail email = new mail();
+        email.setId(in.readInt());
+        email.setFrom(readRef(in, table));
+        int toCount = in.readInt();
+        if (summaryOnly) {
+            // refs are ints
+            in.skipBytes(4 * Math.max(0, toCount));
+        } else if (toCount >= 0) {
+            Queue<String> to = new LinkedList<>();
+            for (int i = 0; i < toCount; i++) {
+                to.add(readRef(in, table));
+            }
+            email.setTo(to);
+        }
+        email.setSubject(readString(in));
+        if (summaryOnly) {
+            skipString(in);
+        } else {
+            email.setBody(readString(in));
+        }
+        email.setPreview(readString(in));
+        int flags = in.readUnsignedByte();
+        email.setStarred((flags & STARRED) != 0);
+        email.setHasAttachment((flags & HAS_ATTACHMENT) != 0);
+        email.setTimestamp(readTime(in));
+        email.setPriority(in.readInt());
+        int attachmentCount = in.readInt();
+        if (summaryOnly) {
+            for (int i = 0; i < attachmentCount; i++) {
+                skipString(in);
+                skipString(in);
+                // mime type ref, size
+                in.skipBytes(4 + 8);
+            }
+        } else if (attachmentCount >= 0) {
+            List<attachementDTO> attachments = new ArrayList<>(attachmentCount);
+            for (int i = 0; i < attachmentCount; i++) {
+                attachementDTO attachment = new attachementDTO();
+                attachment.setFilename(readString(in));
+                attachment.setFilePath(readString(in));
+                attachment.setMimeType(readRef(in, table));
+                attachment.setFileSize(in.readLong());
+                attachments.add(attachment);
+            }
+            email.setAttachments(attachments);
+        }
+        email.setTrashedAt(readTime(in));
+        email.setFolder(readRef(in, table));
+        email.setCustomFolderId(readRef(in, table));
+        return email;
+    }
+
+    private static void intern(Map<String, Integer> table, String value) {
+        if (value != null) {
+            table.putIfAbsent(value, table.size());
+        }
+    }
+
+    private static void writeRef(DataOutputStream out, Map<String, Integer> table, String value) throws IOException {
+        out.writeInt(value == null ? -1 : table.get(value));
+    }
+
+    private static String readRef(DataInputStream in, String[] table) throws IOException {
+        int ref = in.readInt();
+        if (ref < 0) {
+            return null;
+        }
+        if (ref >= table.length) {
+            throw new IOException("Bad string reference: " + ref);
+        }
+        return table[ref];
+    }
+
+    //DataOutputStream.writeUTF is limited to 64KB, mail bodies can be bigger
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length > 0) {
+            in.skipBytes(length);
+        }
+    }
+
+    //LocalDateTime has no zone, UTC is only a fixed reference so the value round-trips (to the millisecond)
+    private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeLong(time == null ? NO_TIME : time.toInstant(ZoneOffset.UTC).toEpochMilli());
+    }
+
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        long millis = in.readLong();
+        if (millis == NO_TIME) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L),
+                (int) Math.floorMod(millis, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,426 @@
+package com.example.backend.Util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative ints (mail ids), Roaring style:
+ * values are grouped by their high 16 bits, each group (container) holds the low 16 bits either as a sorted char array
+ * (up to 4096 values, 2 bytes per value) or as a 65536 bit bitmap (8 KB, when denser)
+ * sparse ids of one user spread over the global id counter stay small, dense ranges are plain bit operations
+ * and / or / andNot work container by container without expanding to ids
+ * not thread safe, callers synchronize (results are new bitmaps, the operands are never changed)
+ */
+public final class CompressedBitmap {
+
+    //an array container bigger than this takes more space than a bitmap container
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    //low 16 bits of one group of values
+    private abstract static class Container {
+        abstract Container add(char low);
+
+        abstract Container remove(char low);
+
+        abstract boolean contains(char low);
+
+        abstract int cardinality();
+
+        abstract long[] words();
+
+        abstract void forEach(int high, IntConsumer action);
+
+        abstract Container copy();
+    }
+
+    private static final class ArrayContainer extends Container {
+        char[] values;
+        int size;
+
+        ArrayContainer(char[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override
+        Container add(char low) {
+            int at = Arrays.binarySearch(values, 0, size, low);
+            if (at >= 0) {
+                return this;
+            }
+            if (size == ARRAY_MAX) {
+                return toBitmap().add(low);
+            }
+            at = -at - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, size * 2)));
+            }
+            System.arraycopy(values, at, values, at + 1, size - at);
+            values[at] = low;
+            size++;
+            return this;
+        }
+
+        @Override
+        Container remove(char low) {
+            int at = Arrays.binarySearch(values, 0, size, low);
+            if (at >= 0) {
+                System.arraycopy(values, at + 1, values, at, size - at - 1);
+                size--;
+            }
+            return size == 0 ? null : this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, size, low) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return size;
+        }
+
+        @Override
+        long[] words() {
+            long[] words = new long[WORDS];
+            for (int i = 0; i < size; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return words;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < size; i++) {
+                action.accept(high << 16 | values[i]);
+            }
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(size, 1)), size);
+        }
+
+        BitmapContainer toBitmap() {
+            return new BitmapContainer(words(), size);
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        final long[] words;
+        int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char low) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                words[low >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char low) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) != 0) {
+                words[low >>> 6] &= ~bit;
+                cardinality--;
+                if (cardinality <= ARRAY_MAX) {
+                    return fromWords(words, cardinality);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        long[] words() {
+            return words;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int w = 0; w < WORDS; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    action.accept(high << 16 | (w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+    }
+
+    //sorted high 16 bits, containers[i] holds the values whose high bits are keys[i]
+    private int[] keys = new int[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    public CompressedBitmap() {
+    }
+
+    /**
+     * @param values : values to put in the bitmap, any order
+     */
+    public static CompressedBitmap of(int... values) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    public void add(int value) {
+        int at = find(value >>> 16);
+        if (at >= 0) {
+            containers[at] = containers[at].add((char) value);
+            return;
+        }
+        at = -at - 1;
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, at, keys, at + 1, size - at);
+        System.arraycopy(containers, at, containers, at + 1, size - at);
+        keys[at] = value >>> 16;
+        containers[at] = new ArrayContainer(new char[]{(char) value}, 1);
+        size++;
+    }
+
+    public void remove(int value) {
+        int at = find(value >>> 16);
+        if (at < 0) {
+            return;
+        }
+        Container container = containers[at].remove((char) value);
+        if (container != null) {
+            containers[at] = container;
+            return;
+        }
+        System.arraycopy(keys, at + 1, keys, at, size - at - 1);
+        System.arraycopy(containers, at + 1, containers, at, size - at - 1);
+        containers[--size] = null;
+    }
+
+    public boolean contains(int value) {
+        int at = find(value >>> 16);
+        return at >= 0 && containers[at].contains((char) value);
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return values in both bitmaps
+     */
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0, j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = and(containers[i], other.containers[j]);
+                if (container != null) {
+                    result.append(keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return values in either bitmap
+     */
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0, j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || other.keys[j] < keys[i]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], or(containers[i], other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return values of this bitmap that aren't in the other one
+     */
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Container container = j < other.size && other.keys[j] == keys[i]
+                    ? andNot(containers[i], other.containers[j]) : containers[i].copy();
+            if (container != null) {
+                result.append(keys[i], container);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Visit every value in ascending order
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i], action);
+        }
+    }
+
+    /**
+     * @return values in ascending order
+     */
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int[] n = {0};
+        forEach(value -> values[n[0]++] = value);
+        return values;
+    }
+
+    /**
+     * @return bytes held by the containers (to size caches)
+     */
+    public long sizeInBytes() {
+        long bytes = size * 8L;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i] instanceof ArrayContainer ? ((ArrayContainer) containers[i]).values.length * 2L : WORDS * 8L;
+        }
+        return bytes;
+    }
+
+    //keys are appended in ascending order by the set operations
+    private void append(int key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        keys[size] = key;
+        containers[size++] = container;
+    }
+
+    private int find(int key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private static Container and(Container a, Container b) {
+        if (a instanceof ArrayContainer || b instanceof ArrayContainer) {
+            // the result is no bigger than the array: test its values against the other container
+            ArrayContainer array = (ArrayContainer) (a instanceof ArrayContainer ? a : b);
+            Container other = array == a ? b : a;
+            char[] values = new char[array.size];
+            int n = 0;
+            for (int i = 0; i < array.size; i++) {
+                if (other.contains(array.values[i])) {
+                    values[n++] = array.values[i];
+                }
+            }
+            return n == 0 ? null : new ArrayContainer(values, n);
+        }
+        long[] words = new long[WORDS];
+        long[] x = a.words();
+        long[] y = b.words();
+        int cardinality = 0;
+        for (int w = 0; w < WORDS; w++) {
+            words[w] = x[w] & y[w];
+            cardinality += Long.bitCount(words[w]);
+        }
+        return cardinality == 0 ? null : fromWords(words, cardinality);
+    }
+
+    private static Container or(Container a, Container b) {
+        long[] words = a.words().clone();
+        long[] y = b.words();
+        int cardinality = 0;
+        for (int w = 0; w < WORDS; w++) {
+            words[w] |= y[w];
+            cardinality += Long.bitCount(words[w]);
+        }
+        return fromWords(words, cardinality);
+    }
+
+    private static Container andNot(Container a, Container b) {
+        if (a instanceof ArrayContainer) {
+            ArrayContainer array = (ArrayContainer) a;
+            char[] values = new char[array.size];
+            int n = 0;
+            for (int i = 0; i < array.size; i++) {
+                if (!b.contains(array.values[i])) {
+                    values[n++] = array.values[i];
+                }
+            }
+            return n == 0 ? null : new ArrayContainer(values, n);
+        }
+        long[] words = a.words().clone();
+        long[] y = b.words();
+        int cardinality = 0;
+        for (int w = 0; w < WORDS; w++) {
+            words[w] &= ~y[w];
+            cardinality += Long.bitCount(words[w]);
+        }
+        return cardinality == 0 ? null : fromWords(words, cardinality);
+    }
+
+    //array container if small enough, the words are kept otherwise
+    private static Container fromWords(long[] words, int cardinality) {
+        if (cardinality > ARRAY_MAX) {
+            return new BitmapContainer(words, cardinality);
+        }
+        char[] values = new char[Math.max(cardinality, 1)];
+        int n = 0;
+        for (int w = 0; w < WORDS; w++) {
+            long word = words[w];
+            while (word != 0) {
+                values[n++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return new ArrayContainer(values, cardinality);
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.backend.Util;
+
+/**
+ * what a caller waits for when it changes a mail folder through the write coalescer
+ */
+public enum DurabilityMode {
+    //return once the physical write (and fsync, per FsyncPolicy) holding the change is done
+    COMMIT,
+    //return as soon as the change is queued, a crash within the coalescing window can lose it
+    //reads of this process still see it (pending writes of a folder are flushed before it is read)
+    FIRE_AND_FORGET
+}
@@ -0,0 +1,39 @@
+package com.example.backend.Util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version of each mail folder, changed by every write of the store that owns it
+ * read before a folder is read, a result computed from it is valid as long as the version is the same
+ * versions come from one counter: a folder forgotten by the LRU gets a value never handed out before,
+ * so a result kept under an older version can't match again
+ */
+public class FolderVersions {
+
+    private static final int MAX_FOLDERS = 100_000;
+
+    private final AtomicLong counter = new AtomicLong();
+    //"user/folder" -> version, least recently used dropped first
+    private final Map<String, Long> versions = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_FOLDERS;
+        }
+    };
+
+    /**
+     * @return current version of the folder
+     */
+    public synchronized long current(String user, String folder) {
+        return versions.computeIfAbsent(user + "/" + folder, key -> counter.incrementAndGet());
+    }
+
+    /**
+     * The folder was written (call after the write)
+     */
+    public synchronized void changed(String user, String folder) {
+        versions.put(user + "/" + folder, counter.incrementAndGet());
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.backend.Util;
+
+/**
+ * how hard a write tries to reach the disk before it is reported as done
+ */
+public enum FsyncPolicy {
+    //leave flushing to the OS, fastest, a crash can lose the last writes (never tears a file though)
+    NEVER,
+    //fsync the temp file before renaming it over the target and fsync journal appends
+    FILE,
+    //FILE + fsync the parent directory so the rename itself survives a power loss
+    FILE_AND_DIRECTORY
+}
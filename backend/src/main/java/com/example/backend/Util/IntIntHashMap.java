@@ -0,0 +1,234 @@
+package com.example.backend.Util;
+
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * int -> int hash map without boxing (open addressing, linear probing)
+ * keys and values live in two int arrays, a lookup is a hash and a few array reads, no Integer objects
+ * removals shift the following entries back instead of leaving tombstones, so lookups never slow down after deletes
+ * not thread safe, callers synchronize
+ */
+public final class IntIntHashMap {
+
+    //marks a free slot, the key with this value is stored aside
+    private static final int FREE = 0;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    //key 0 can't be stored in the arrays (it marks free slots)
+    private boolean hasFreeKey;
+    private int freeKeyValue;
+
+    public IntIntHashMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize : number of entries the map should hold without resizing
+     */
+    public IntIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @return value of the key, or `missing` if the key isn't in the map
+     */
+    public int get(int key, int missing) {
+        if (key == FREE) {
+            return hasFreeKey ? freeKeyValue : missing;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            int k = keys[slot];
+            if (k == key) {
+                return values[slot];
+            }
+            if (k == FREE) {
+                return missing;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public boolean containsKey(int key) {
+        if (key == FREE) {
+            return hasFreeKey;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            int k = keys[slot];
+            if (k == key) {
+                return true;
+            }
+            if (k == FREE) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Insert or replace
+     * @return previous value, or `missing` if the key was new
+     */
+    public int put(int key, int value, int missing) {
+        if (key == FREE) {
+            int previous = hasFreeKey ? freeKeyValue : missing;
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeKeyValue = value;
+            return previous;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            int k = keys[slot];
+            if (k == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            if (k == FREE) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size > resizeAt) {
+                    allocateAndRehash(keys.length << 1);
+                }
+                return missing;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return removed value, or `missing` if the key wasn't in the map
+     */
+    public int remove(int key, int missing) {
+        if (key == FREE) {
+            if (!hasFreeKey) {
+                return missing;
+            }
+            hasFreeKey = false;
+            size--;
+            return freeKeyValue;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            int k = keys[slot];
+            if (k == key) {
+                int previous = values[slot];
+                shiftBack(slot);
+                size--;
+                return previous;
+            }
+            if (k == FREE) {
+                return missing;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Replace every value by function(key, value)
+     */
+    public void replaceAll(IntBinaryOperator function) {
+        if (hasFreeKey) {
+            freeKeyValue = function.applyAsInt(FREE, freeKeyValue);
+        }
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE) {
+                values[slot] = function.applyAsInt(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    /**
+     * @return the keys, in no particular order
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+        if (hasFreeKey) {
+            result[n++] = FREE;
+        }
+        for (int k : keys) {
+            if (k != FREE) {
+                result[n++] = k;
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        hasFreeKey = false;
+        size = 0;
+    }
+
+    //close the gap left at `free`: move back every following entry of the run that may no longer be reachable
+    private void shiftBack(int free) {
+        int slot = free;
+        while (true) {
+            slot = (slot + 1) & mask;
+            int k = keys[slot];
+            if (k == FREE) {
+                keys[free] = FREE;
+                return;
+            }
+            int home = slotOf(k);
+            // the entry can move to `free` if its home slot isn't within (free, slot] (cyclically)
+            boolean reachable = free <= slot ? (free < home && home <= slot) : (free < home || home <= slot);
+            if (!reachable) {
+                keys[free] = k;
+                values[free] = values[slot];
+                free = slot;
+            }
+        }
+    }
+
+    private int slotOf(int key) {
+        // fibonacci hashing, sequential ids spread over the whole table
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void allocateAndRehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int k = oldKeys[i];
+            if (k != FREE) {
+                int slot = slotOf(k);
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = k;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
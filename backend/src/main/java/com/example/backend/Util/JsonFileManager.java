@@ -1,15 +1,31 @@
 package com.example.backend.Util;
 
+import com.example.backend.model.mail;
 import com.google.gson.*;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 /**
  * FileService handles all file I/O operations for the system
@@ -28,9 +44,18 @@ public class JsonFileManager {
      * java object <-> JSON text
      * GSON builder uses Builder design pattern
      **/
-    private static final Gson gson = new GsonBuilder()
+    private static final Gson gson = newGsonBuilder()
             //for indentation between json attributes
             .setPrettyPrinting()
+            //build the json Object
+            .create();
+
+    // same adapters without indentation, one record per line (journal)
+    private static final Gson compactGson = newGsonBuilder().create();
+
+    //GSON builder with the LocalDateTime adapters shared by both gson instances
+    private static GsonBuilder newGsonBuilder() {
+        return new GsonBuilder()
             /*
              All of this made because json doesn't support localDataTime conversion
              registerTypeAdapter:add custom serializer and deserializer
@@ -51,12 +76,57 @@ public class JsonFileManager {
                         throws JsonParseException {
                     return LocalDateTime.parse(json.getAsString(), dateTimeFormatter);
                 }
-            })
-            //build the json Object
-            .create();
+            });
+    }
+
+    /**
+     * Gson with the LocalDateTime adapters, without indentation
+     * shared with the other stores so a mail is serialized the same way everywhere
+     * @return compact gson instance
+     */
+    public static Gson compactGson() {
+        return compactGson;
+    }
+
+    private static final Type MAIL_LIST_TYPE = new TypeToken<List<mail>>(){}.getType();
+    // reads one mail object at a time from a JsonReader (streaming path)
+    private static final TypeAdapter<mail> MAIL_ADAPTER = gson.getAdapter(mail.class);
+    // fields of a mail the listings don't show, summary reads skip them without decoding
+    private static final Set<String> DETAIL_FIELDS = Set.of("to", "body", "attachments");
+    // file names of the mail folders (MailStore.FOLDER_NAME), every other file (folders.json, contacts.json) holds no mails
+    private static final Pattern MAIL_FOLDER_FILE = Pattern.compile("(inbox|sent|draft|trash|folder_[A-Za-z0-9_-]+)\\.json");
+
+    // parsed mail folders kept in memory between polls
+    private final MailboxCache mailboxCache;
+    // append-only mutation log next to each mail folder
+    private final MailboxJournal mailboxJournal;
+    // temp file + fsync + rename, readers never see a torn file
+    private final AtomicFileWriter atomicFileWriter;
 
-    // Base directory for storing user data
-    private static final String basePath = "data/users/";
+    // format of the mail folders we write (json or binary), reads detect it per file
+    private final MailStorageFormat storageFormat;
+    // large folder files are decoded straight from a memory mapping
+    private final MappedFileCache mappedFileCache;
+    // folds bursts of small changes to one folder into a single physical write
+    private final WriteCoalescer writeCoalescer;
+    // where each user directory lives under data/users (flat or hashed fan-out)
+    private final UserDirectoryLayout userDirectoryLayout;
+
+    // a lock-free read is retried this many times if a writer changed the folder while it was read
+    private static final int OPTIMISTIC_READ_ATTEMPTS = 3;
+
+    public JsonFileManager(MailboxCache mailboxCache, MailboxJournal mailboxJournal, AtomicFileWriter atomicFileWriter,
+                           @Value("${mail.storage.format:JSON}") MailStorageFormat storageFormat,
+                           MappedFileCache mappedFileCache, WriteCoalescer writeCoalescer,
+                           UserDirectoryLayout userDirectoryLayout) {
+        this.mailboxCache = mailboxCache;
+        this.mailboxJournal = mailboxJournal;
+        this.atomicFileWriter = atomicFileWriter;
+        this.storageFormat = storageFormat;
+        this.mappedFileCache = mappedFileCache;
+        this.writeCoalescer = writeCoalescer;
+        this.userDirectoryLayout = userDirectoryLayout;
+    }
 
     /**
      * Reads objects from a JSON file and converts them to List<T>
@@ -75,20 +145,88 @@ public class JsonFileManager {
             return new ArrayList<>();
         }
 
-        //read data inside file and close it after reading to avoid memory leak
-        try (Reader reader = new FileReader(file)) {
-            // Define the type for Gson to deserialize (List<T>)
-            System.out.println("trying to read file: " + filePath);
-            List<T> items = gson.fromJson(reader, type);
+        if (!isMailListType(type)) {
+            return parseFile(file, type);
+        }
+        // queued changes of this folder become visible before it is read
+        writeCoalescer.flush(file);
 
-            // Return the list or empty list if null
-            return items != null ? items : new ArrayList<>();
+        // mail folders are read without any lock, writers replace files atomically
+        for (int attempt = 0; attempt < OPTIMISTIC_READ_ATTEMPTS; attempt++) {
+            List<T> items = readMailFolder(file, type, true);
+            if (items != null) {
+                return items;
+            }
+        }
+        // the folder kept changing under us (snapshot + journal out of step), read it with writers held off
+        synchronized (mailboxJournal.lockFor(file)) {
+            return readMailFolder(file, type, false);
+        }
+    }
 
-        } catch (IOException e) {
-            System.err.println("Error reading file: " + filePath);
-            e.printStackTrace();
+    /**
+     * Reads a mail folder record by record and keeps only what the caller needs
+     * peak memory follows the size of the result instead of the size of the folder
+     * @param filePath: Path to the folder file
+     * @param filter: mails to keep, null keeps all
+     * @param order: order of the result, null keeps the folder order
+     * @param limit: keep only the first `limit` mails in that order (top-K), 0 or less keeps all matches
+     * @return matching mails
+     */
+    public List<mail> streamMailsFromFile(String filePath, Predicate<mail> filter, Comparator<mail> order, int limit) {
+        return streamMailsFromFile(filePath, filter, order, limit, false);
+    }
+
+    /**
+     * Same as streamMailsFromFile, summaryOnly: a folder read from disk is read without the mail details
+     * (body, recipients, attachments are skipped in the file, those mails come without them), from a cached folder
+     * only the summaries of the matching mails are copied; the filter must then read none of these fields
+     */
+    public List<mail> streamMailsFromFile(String filePath, Predicate<mail> filter, Comparator<mail> order, int limit,
+                                          boolean summaryOnly) {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            System.out.println("File not found: " + filePath);
             return new ArrayList<>();
         }
+        writeCoalescer.flush(file);
+        for (int attempt = 0; attempt < OPTIMISTIC_READ_ATTEMPTS; attempt++) {
+            List<mail> mails = streamMailFolder(file, filter, order, limit, summaryOnly, true);
+            if (mails != null) {
+                return mails;
+            }
+        }
+        synchronized (mailboxJournal.lockFor(file)) {
+            return streamMailFolder(file, filter, order, limit, summaryOnly, false);
+        }
+    }
+
+    /**
+     * Reads one mail of a folder by its position (from MailLocationIndex) when the folder is cached
+     * @param filePath: Path to the folder file
+     * @param position: position of the mail in the folder
+     * @param id: id the mail at that position must have
+     * @return the mail, or null if the folder isn't cached or the position is stale (caller reads the folder)
+     */
+    public mail readMailAt(String filePath, int position, int id) {
+        File file = new File(filePath);
+        if (!mailboxCache.isEnabled() || !file.exists()) {
+            return null;
+        }
+        // queued changes (a star toggle) are laid over the cached mail instead of being written first,
+        // so the changes of a hot folder keep sharing writes; taken before the cache so none is missed
+        List<MailboxJournal.Record> pending = writeCoalescer.pending(file);
+        mail email = mailboxCache.getAt(file, stampOf(file), position, id);
+        if (email == null || pending.isEmpty()) {
+            return email;
+        }
+        List<mail> one = new ArrayList<>(List.of(email));
+        for (MailboxJournal.Record record : pending) {
+            if (record.getId() == id) {
+                MailboxJournal.apply(one, record);
+            }
+        }
+        return one.isEmpty() ? null : one.get(0);
     }
 
     /**
@@ -99,26 +237,411 @@ public class JsonFileManager {
      * @return true: if successful, false otherwise
      */
     public <T> boolean writeListToFile(String filePath, List<T> items) {
+        File file = new File(filePath);
+        // queued changes were made before this write, they must not land on top of it
+        writeCoalescer.flush(file);
+        // writers of the same file are serialized, readers never wait for them
+        synchronized (mailboxJournal.lockFor(file)) {
+            return writeSnapshot(file, items);
+        }
+    }
+
+    /**
+     * Adds one mail at the end of a folder (or replaces the mail with the same id)
+     * in journal mode this appends one record, its cost doesn't depend on the folder size
+     * @param filePath: Path to the folder file
+     * @param item: mail to add
+     * @return true if successful, false otherwise
+     */
+    public boolean appendMailToFile(String filePath, mail item) {
+        return appendMailToFile(filePath, item, writeCoalescer.getDefaultDurability());
+    }
+
+    /**
+     * Adds one mail at the end of a folder (or replaces the mail with the same id)
+     * @param filePath: Path to the folder file
+     * @param item: mail to add
+     * @param durability: wait for the physical write, or only for the change to be queued
+     * @return true if successful (queued for FIRE_AND_FORGET), false otherwise
+     */
+    public boolean appendMailToFile(String filePath, mail item, DurabilityMode durability) {
+        return applyMailRecord(filePath, MailboxJournal.Record.append(item), durability);
+    }
+
+    /**
+     * Removes the mail with the given id from a folder
+     * @param filePath: Path to the folder file
+     * @param id: id of the mail to remove
+     * @return true if successful, false otherwise
+     */
+    public boolean removeMailFromFile(String filePath, int id) {
+        return removeMailFromFile(filePath, id, writeCoalescer.getDefaultDurability());
+    }
+
+    /**
+     * Removes the mail with the given id from a folder
+     * @param filePath: Path to the folder file
+     * @param id: id of the mail to remove
+     * @param durability: wait for the physical write, or only for the change to be queued
+     * @return true if successful (queued for FIRE_AND_FORGET), false otherwise
+     */
+    public boolean removeMailFromFile(String filePath, int id, DurabilityMode durability) {
+        return applyMailRecord(filePath, MailboxJournal.Record.remove(id), durability);
+    }
+
+    /**
+     * Sets the starred flag of one mail in a folder
+     * @param filePath: Path to the folder file
+     * @param id: id of the mail to update
+     * @param starred: new starred status
+     * @return true if successful, false otherwise
+     */
+    public boolean updateStarredInFile(String filePath, int id, boolean starred) {
+        return updateStarredInFile(filePath, id, starred, writeCoalescer.getDefaultDurability());
+    }
+
+    /**
+     * Sets the starred flag of one mail in a folder
+     * @param filePath: Path to the folder file
+     * @param id: id of the mail to update
+     * @param starred: new starred status
+     * @param durability: wait for the physical write, or only for the change to be queued
+     * @return true if successful (queued for FIRE_AND_FORGET), false otherwise
+     */
+    public boolean updateStarredInFile(String filePath, int id, boolean starred, DurabilityMode durability) {
+        return applyMailRecord(filePath, MailboxJournal.Record.star(id, starred), durability);
+    }
+
+    /**
+     * Queues one mail at the end of a folder (or replacing the mail with the same id), written when committed
+     * queue it while holding the mailbox lock, commit after releasing it: changes of the folder queued meanwhile
+     * share the write
+     * @param filePath: Path to the folder file
+     * @param item: mail to add
+     * @param onWritten: told whether the write succeeded, in the order the folder's changes were queued
+     * @return commit: writes the change (or waits for the write holding it), true once written
+     */
+    public BooleanSupplier queueMailAppend(String filePath, mail item, Consumer<Boolean> onWritten) {
+        return queueMailRecord(filePath, MailboxJournal.Record.append(item), onWritten);
+    }
+
+    /**
+     * Queues the starred flag of one mail of a folder, written when committed (see queueMailAppend)
+     * @param filePath: Path to the folder file
+     * @param id: id of the mail to update
+     * @param starred: new starred status
+     * @param onWritten: told whether the write succeeded, in the order the folder's changes were queued
+     * @return commit: writes the change (or waits for the write holding it), true once written
+     */
+    public BooleanSupplier queueStarredUpdate(String filePath, int id, boolean starred, Consumer<Boolean> onWritten) {
+        return queueMailRecord(filePath, MailboxJournal.Record.star(id, starred), onWritten);
+    }
+
+    /**
+     * Folds every pending journal into its snapshot
+     * called periodically by MailboxCompactionService
+     * @return number of folders compacted
+     */
+    public int compactJournals() {
+        int compacted = 0;
+        for (File file : mailboxJournal.dirtyFolders()) {
+            if (rewriteMailFolder(file)) {
+                compacted++;
+            }
+        }
+        return compacted;
+    }
+
+    /**
+     * Rewrites a mail folder in the configured storage format, folding its journal in
+     * used by the offline conversion tool (MailboxFormatTool)
+     * @param filePath: Path to the folder file
+     * @return true if the folder was rewritten, false if it doesn't exist or the write failed
+     */
+    public boolean convertMailFolder(String filePath) {
+        return rewriteMailFolder(new File(filePath));
+    }
+
+    public MailStorageFormat getStorageFormat() {
+        return storageFormat;
+    }
+
+    //parse a whole json file into a list, no caching
+    private <T> List<T> parseFile(File file, Type type) {
+        //read data inside file and close it after reading to avoid memory leak
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            // Define the type for Gson to deserialize (List<T>)
+            System.out.println("trying to read file: " + file.getPath());
+            List<T> items = gson.fromJson(reader, type);
+
+            // Return the list or empty list if null
+            return items != null ? items : new ArrayList<>();
+
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + file.getPath());
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    //read a mail folder: cache first, otherwise snapshot streamed through the journal overlay
+    //optimistic: returns null if a writer touched the snapshot or journal while they were being read
+    private <T> List<T> readMailFolder(File file, Type type, boolean optimistic) {
+        // Serve mail folders from memory when the files didn't change since we last read/wrote them
+        MailboxCache.Stamp stamp = stampOf(file);
+        List<mail> mails = mailboxCache.get(file, stamp);
+        if (mails == null) {
+            List<mail> parsed = new ArrayList<>();
+            scanMailFolder(file, parsed::add, false);
+            // snapshot and journal are two files, make sure we didn't mix an old one with a new one
+            if (optimistic && mailboxJournal.isEnabled() && !stamp.equals(stampOf(file))) {
+                return null;
+            }
+            mailboxCache.put(file, parsed, stamp);
+            mails = parsed;
+        }
+        @SuppressWarnings("unchecked")
+        List<T> items = (List<T>) mails;
+        return items;
+    }
+
+    //filtered read of a mail folder: cached folders are filtered in memory, others are streamed from disk
+    private List<mail> streamMailFolder(File file, Predicate<mail> filter, Comparator<mail> order, int limit,
+                                        boolean summaryOnly, boolean optimistic) {
+        MailboxCache.Stamp stamp = stampOf(file);
+        MailCollector collector = new MailCollector(null, order, limit);
+        List<mail> cachedMatches = mailboxCache.scan(file, stamp, filter, summaryOnly);
+        if (cachedMatches != null) {
+            cachedMatches.forEach(collector::offer);
+            return collector.result();
+        }
+        // not cached: keep only what passes the filter, the folder itself is never materialized
+        collector = new MailCollector(filter, order, limit);
+        scanMailFolder(file, collector::offer, summaryOnly);
+        if (optimistic && mailboxJournal.isEnabled() && !stamp.equals(stampOf(file))) {
+            return null;
+        }
+        return collector.result();
+    }
+
+    //parse a mail folder record by record (snapshot + journal overlay) into the consumer
+    //summaryOnly: snapshot mails without their details (mails from the journal are whole)
+    private void scanMailFolder(File file, Consumer<mail> consumer, boolean summaryOnly) {
+        MailboxJournal.Overlay overlay = readOverlay(file);
+
+        System.out.println("trying to read file: " + file.getPath());
+        Consumer<mail> resolved = email -> {
+            mail current = overlay.resolve(email);
+            if (current != null) {
+                consumer.accept(current);
+            }
+        };
+        try (InputStream in = openMailFolder(file)) {
+            // both formats can sit at the same path, the first bytes tell which one this file is
+            byte[] head = new byte[BinaryMailCodec.magicLength()];
+            in.mark(head.length);
+            int read = in.readNBytes(head, 0, head.length);
+            in.reset();
+            if (BinaryMailCodec.hasMagic(head, read)) {
+                BinaryMailCodec.read(in, resolved, summaryOnly);
+            } else {
+                scanJson(new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8)), resolved, summaryOnly);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + file.getPath());
+            e.printStackTrace();
+        }
+        overlay.tail().forEach(consumer);
+    }
+
+    //large files come from their (cached) memory mapping, others through a buffered stream
+    private InputStream openMailFolder(File file) throws IOException {
+        ByteBuffer mapped = mappedFileCache.map(file);
+        if (mapped != null) {
+            return new ByteBufferInputStream(mapped);
+        }
+        return new BufferedInputStream(new FileInputStream(file));
+    }
+
+    //pending journal records of a folder, applied while its snapshot is streamed
+    private MailboxJournal.Overlay readOverlay(File file) {
+        if (!mailboxJournal.isEnabled()) {
+            return MailboxJournal.Overlay.EMPTY;
+        }
         try {
-            // Create parent directories if they don't exist
-            File file = new File(filePath);
-            file.getParentFile().mkdirs();
+            return MailboxJournal.Overlay.of(mailboxJournal.readRecords(file));
+        } catch (IOException e) {
+            System.err.println("Error reading journal of: " + file.getPath());
+            e.printStackTrace();
+            return MailboxJournal.Overlay.EMPTY;
+        }
+    }
+
+    //json array of mails, one mail object parsed at a time
+    private static void scanJson(JsonReader reader, Consumer<mail> consumer, boolean summaryOnly) throws IOException {
+        JsonToken first;
+        try {
+            first = reader.peek();
+        } catch (EOFException e) {
+            // empty snapshot file
+            return;
+        }
+        // "null" or an empty file -> no mails in the snapshot
+        if (first == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                consumer.accept(summaryOnly ? readSummary(reader) : MAIL_ADAPTER.read(reader));
+            }
+            reader.endArray();
+        }
+    }
 
-            // Write the list to JSON file
-            try (Writer writer = new FileWriter(file)) {
-                gson.toJson(items, writer);
-                System.out.println("Successfully wrote to: " + filePath);
+    //one mail object without its detail fields: skipped in the stream, the other fields go through the mail adapter
+    private static mail readSummary(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            return MAIL_ADAPTER.read(reader);
+        }
+        JsonObject fields = new JsonObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (DETAIL_FIELDS.contains(name)) {
+                reader.skipValue();
+            } else {
+                fields.add(name, JsonParser.parseReader(reader));
+            }
+        }
+        reader.endObject();
+        return MAIL_ADAPTER.fromJsonTree(fields);
+    }
+
+    //fold the journal of a mail folder into a fresh snapshot written in the configured format
+    private boolean rewriteMailFolder(File file) {
+        synchronized (mailboxJournal.lockFor(file)) {
+            if (!file.exists()) {
+                // folder was deleted, its journal goes with it
+                mailboxJournal.clear(file);
+                return false;
+            }
+            List<mail> mails = readMailFolder(file, MAIL_LIST_TYPE, false);
+            if (!writeFile(file, mails)) {
+                return false;
+            }
+            if (mailboxJournal.isEnabled()) {
+                mailboxJournal.clear(file);
+            }
+            cacheWritten(file, mails);
+            return true;
+        }
+    }
+
+    //serialize a list into a file, replacing its content atomically (temp file + rename)
+    private <T> boolean writeFile(File file, List<T> items) {
+        return writeFile(file, items, isMailFolder(file));
+    }
+
+    //mailFolder: items are mails, written in the configured storage format
+    private <T> boolean writeFile(File file, List<T> items, boolean mailFolder) {
+        try {
+            if (mailFolder && storageFormat == MailStorageFormat.BINARY) {
+                @SuppressWarnings("unchecked")
+                List<mail> mails = (List<mail>) items;
+                atomicFileWriter.writeBytes(file, out -> BinaryMailCodec.write(mails, out));
+                // the old file is replaced, its mapping must not keep it alive
+                mappedFileCache.invalidate(file);
+                System.out.println("Successfully wrote to: " + file.getPath());
                 return true;
             }
+            // Write the list to a temp JSON file and rename it over the old one
+            atomicFileWriter.write(file, writer -> gson.toJson(items, writer));
+            mappedFileCache.invalidate(file);
+            System.out.println("Successfully wrote to: " + file.getPath());
+            return true;
 
-        } catch (IOException e) {
-            System.err.println("Error writing to file: " + filePath);
+        } catch (IOException | JsonIOException e) {
+            System.err.println("Error writing to file: " + file.getPath());
+            mailboxCache.invalidate(file);
             e.printStackTrace();
             return false;
         }
     }
 
+    // write-through: the next read of this folder is served from memory
+    private <T> void cacheWritten(File file, List<T> items) {
+        if (isMailFolder(file)) {
+            @SuppressWarnings("unchecked")
+            List<mail> mails = (List<mail>) items;
+            mailboxCache.put(file, mails, stampOf(file));
+        } else {
+            mailboxCache.invalidate(file);
+        }
+    }
+
+    //single mail change, queued in the coalescer with the other changes of the same folder
+    private boolean applyMailRecord(String filePath, MailboxJournal.Record record, DurabilityMode durability) {
+        CompletableFuture<Boolean> written = writeCoalescer.submit(new File(filePath), record, this::writeMailRecords, durability);
+        if (durability == DurabilityMode.FIRE_AND_FORGET) {
+            return true;
+        }
+        return written.join();
+    }
+
+    //single mail change queued without writing, the returned commit writes it
+    private BooleanSupplier queueMailRecord(String filePath, MailboxJournal.Record record, Consumer<Boolean> onWritten) {
+        File file = new File(filePath);
+        CompletableFuture<Boolean> written = writeCoalescer.enqueue(file, record, this::writeMailRecords, onWritten);
+        return () -> writeCoalescer.commit(file, written);
+    }
 
+    //batch of changes of one folder: one journal append, or one read-modify-write of the whole folder
+    //called by the coalescer only, must not go through the public read/write methods (they flush the coalescer)
+    private boolean writeMailRecords(File file, List<MailboxJournal.Record> records) {
+        synchronized (mailboxJournal.lockFor(file)) {
+            if (!mailboxJournal.isEnabled()) {
+                List<mail> mails = file.exists() ? readMailFolder(file, MAIL_LIST_TYPE, false) : new ArrayList<>();
+                MailboxJournal.replay(mails, records);
+                return writeSnapshot(file, mails);
+            }
+
+            // the snapshot must exist so readers and userExists-style checks keep working
+            if (!file.exists() && !writeFile(file, new ArrayList<>())) {
+                return false;
+            }
+            MailboxCache.Stamp before = stampOf(file);
+            try {
+                mailboxJournal.append(file, records);
+            } catch (IOException e) {
+                System.err.println("Error appending to journal of: " + file.getPath());
+                mailboxCache.invalidate(file);
+                e.printStackTrace();
+                return false;
+            }
+            // keep a cached copy of the folder in sync instead of dropping it
+            mailboxCache.apply(file, before, stampOf(file), mails -> MailboxJournal.replay(mails, records));
+            return true;
+        }
+    }
+
+    //full write of a folder file, caller holds lockFor(file)
+    private <T> boolean writeSnapshot(File file, List<T> items) {
+        boolean written = writeFile(file, items);
+        if (written) {
+            // a full write is a new snapshot, pending journal records are part of it now
+            if (mailboxJournal.isEnabled()) {
+                mailboxJournal.clear(file);
+            }
+            cacheWritten(file, items);
+        }
+        return written;
+    }
+
+    //stamp of everything a mail folder is made of
+    private MailboxCache.Stamp stampOf(File file) {
+        if (mailboxJournal.isEnabled()) {
+            return MailboxCache.Stamp.of(file, mailboxJournal.journalFileFor(file));
+        }
+        return MailboxCache.Stamp.of(file);
+    }
 
     /**
      * Creates a user folder  with default JSON files
@@ -129,7 +652,7 @@ public class JsonFileManager {
     public boolean createUserFolder(String email) {
         try {
             // Create user directory at the given path
-            Path userPath = Paths.get(basePath + email);
+            Path userPath = Paths.get(userDirectoryLayout.userDirectory(email));
             Files.createDirectories(userPath);
             System.out.println("Created user folder: " + userPath);
 
@@ -154,12 +677,22 @@ public class JsonFileManager {
 
     /**
      * Build the full path to a user's folder file
+     * the user directory is resolved by UserDirectoryLayout (moved to the hashed layout on first access)
      * @param email:  User's email
      * @param folder: Folder name (inbox, sent, trash, draft)
      *@ return Full file path
      */
     public String getUserFolderPath(String email, String folder) {
-        return basePath + email + "/" + folder + ".json";
+        return userDirectoryLayout.userDirectory(email) + "/" + folder + ".json";
+    }
+
+    /**
+     * Build the path of a user's directory
+     * @param email:  User's email
+     * @return directory path
+     */
+    public String getUserDirectory(String email) {
+        return userDirectoryLayout.userDirectory(email);
     }
 
 
@@ -171,10 +704,18 @@ public class JsonFileManager {
     public boolean deleteFile(String filePath) {
         try {
             File file = new File(filePath);
-            if (file.exists()) {
-                return file.delete();
+            writeCoalescer.flush(file);
+            synchronized (mailboxJournal.lockFor(file)) {
+                mailboxCache.invalidate(file);
+                mappedFileCache.invalidate(file);
+                if (mailboxJournal.isEnabled()) {
+                    mailboxJournal.clear(file);
+                }
+                if (file.exists()) {
+                    return file.delete();
+                }
+                return false;
             }
-            return false;
         } catch (Exception e) {
             System.err.println("Error deleting file: " + filePath);
             e.printStackTrace();
@@ -188,7 +729,55 @@ public class JsonFileManager {
      * @return true if folder exists, false otherwise
      */
     public boolean userExists(String email) {
-        File userFolder = new File(basePath + email);
-        return userFolder.exists() && userFolder.isDirectory();
+        return userDirectoryLayout.exists(email);
+    }
+
+    /**
+     * Hit/miss/eviction counters of the mailbox cache
+     * @return cache statistics
+     */
+    public Map<String, Long> getCacheStats() {
+        return mailboxCache.getStats();
+    }
+
+    /**
+     * Counters of the memory mapped read path
+     * @return mapping statistics
+     */
+    public Map<String, Long> getMappedFileStats() {
+        return mappedFileCache.getStats();
+    }
+
+    /**
+     * Logical vs physical writes of the write coalescer
+     * @return coalescing statistics
+     */
+    public Map<String, Long> getWriteCoalescerStats() {
+        return writeCoalescer.getStats();
+    }
+
+    /**
+     * Fan-out and migration counters of the user directory layout
+     * @return layout statistics
+     */
+    public Map<String, Long> getUserLayoutStats() {
+        return userDirectoryLayout.getStats();
+    }
+
+    //only List<mail> reads are cached, folders.json/contacts.json go straight to disk
+    private static boolean isMailListType(Type type) {
+        if (!(type instanceof ParameterizedType)) {
+            return false;
+        }
+        ParameterizedType parameterized = (ParameterizedType) type;
+        return parameterized.getRawType() == List.class
+                && parameterized.getActualTypeArguments().length == 1
+                && parameterized.getActualTypeArguments()[0] == mail.class;
+    }
+
+    //mail folders are told by their file name, not by the list written (an empty list has no type):
+    //an emptied trash or a new custom folder is cached and written in the storage format like any folder
+    private static boolean isMailFolder(File file) {
+        return MAIL_FOLDER_FILE.matcher(file.getName()).matches();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,251 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Flag bitmaps of the mails of each folder: one CompressedBitmap of ids per priority level, starred, with attachment,
+ * and the ids of the folder itself
+ * priority / starred / attachment criteria are answered with and / or / andNot on these bitmaps before any mail is read,
+ * the store then reads only the ids left (the filters still decide)
+ * built from the whole folder the first time it is queried, then updated by every write of the store
+ * (writes to a folder that isn't built are ignored, the build will read them)
+ * memory only, kept for the most recently used users
+ */
+@Component
+public class MailBitmapIndex {
+
+    //bitmaps of one folder
+    private static final class FolderBitmaps {
+        final CompressedBitmap members = new CompressedBitmap();
+        final CompressedBitmap starred = new CompressedBitmap();
+        final CompressedBitmap attachment = new CompressedBitmap();
+        final Map<Integer, CompressedBitmap> priorities = new TreeMap<>();
+
+        void add(mail email) {
+            int id = email.getId();
+            // may replace a version of the mail with other flags
+            remove(id);
+            members.add(id);
+            if (email.isStarred()) {
+                starred.add(id);
+            }
+            if (email.isHasAttachment()) {
+                attachment.add(id);
+            }
+            priorities.computeIfAbsent(email.getPriority(), p -> new CompressedBitmap()).add(id);
+        }
+
+        void remove(int id) {
+            if (!members.contains(id)) {
+                return;
+            }
+            members.remove(id);
+            starred.remove(id);
+            attachment.remove(id);
+            priorities.values().removeIf(ids -> {
+                ids.remove(id);
+                return ids.isEmpty();
+            });
+        }
+    }
+
+    //folders of one user, guarded by the UserBitmaps itself
+    private static final class UserBitmaps {
+        final Map<String, FolderBitmaps> folders = new HashMap<>();
+    }
+
+    private final int maxUsers;
+    private final LinkedHashMap<String, UserBitmaps> users;
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong builds = new AtomicLong();
+
+    public MailBitmapIndex(@Value("${mail.bitmap-index.max-users:10000}") int maxUsers) {
+        this.maxUsers = maxUsers;
+        // access order: the least recently used user is dropped first
+        this.users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserBitmaps> eldest) {
+                return size() > MailBitmapIndex.this.maxUsers;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxUsers > 0;
+    }
+
+    /**
+     * Ids of the mails of a folder that may match the flag criteria of a query
+     * @param user : owner email
+     * @param folder : folder name
+     * @param query : criteria, only priorities, starred and attachment are used
+     * @param mails : content of the folder, read only if its bitmaps aren't built
+     * @return candidate ids (a new bitmap), or null if the query has no flag criterion or the index is disabled
+     */
+    public CompressedBitmap candidates(String user, String folder, MailQuery query, Supplier<List<mail>> mails) {
+        if (query == null || !query.hasFlags()) {
+            return null;
+        }
+        UserBitmaps index = userBitmaps(user, true);
+        if (index == null) {
+            return null;
+        }
+        queries.incrementAndGet();
+        synchronized (index) {
+            FolderBitmaps bitmaps = index.folders.get(folder);
+            if (bitmaps == null) {
+                // writers wait for the build: none slips between the read and the first update
+                bitmaps = new FolderBitmaps();
+                for (mail email : mails.get()) {
+                    bitmaps.add(email);
+                }
+                index.folders.put(folder, bitmaps);
+                builds.incrementAndGet();
+            }
+            CompressedBitmap result = bitmaps.members;
+            if (query.getPriorities() != null) {
+                CompressedBitmap levels = new CompressedBitmap();
+                for (int priority : query.getPriorities()) {
+                    CompressedBitmap ids = bitmaps.priorities.get(priority);
+                    if (ids != null) {
+                        levels = levels.or(ids);
+                    }
+                }
+                result = result.and(levels);
+            }
+            if (query.getStarred() != null) {
+                result = query.getStarred() ? result.and(bitmaps.starred) : result.andNot(bitmaps.starred);
+            }
+            if (query.getHasAttachment() != null) {
+                result = query.getHasAttachment() ? result.and(bitmaps.attachment) : result.andNot(bitmaps.attachment);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A mail was appended to a folder (or replaced in place if the id is already there)
+     */
+    public void added(String user, String folder, mail email) {
+        UserBitmaps index = userBitmaps(user, false);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            FolderBitmaps bitmaps = index.folders.get(folder);
+            if (bitmaps != null) {
+                bitmaps.add(email);
+            }
+        }
+    }
+
+    /**
+     * A mail was removed from a folder
+     */
+    public void removed(String user, String folder, int id) {
+        UserBitmaps index = userBitmaps(user, false);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            FolderBitmaps bitmaps = index.folders.get(folder);
+            if (bitmaps != null) {
+                bitmaps.remove(id);
+            }
+        }
+    }
+
+    /**
+     * A mail was starred or unstarred
+     */
+    public void starred(String user, String folder, int id, boolean starred) {
+        UserBitmaps index = userBitmaps(user, false);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            FolderBitmaps bitmaps = index.folders.get(folder);
+            if (bitmaps == null || !bitmaps.members.contains(id)) {
+                return;
+            }
+            if (starred) {
+                bitmaps.starred.add(id);
+            } else {
+                bitmaps.starred.remove(id);
+            }
+        }
+    }
+
+    /**
+     * A whole folder was rewritten
+     * @param mails : content of the folder now
+     */
+    public void replaced(String user, String folder, List<mail> mails) {
+        UserBitmaps index = userBitmaps(user, false);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            if (!index.folders.containsKey(folder)) {
+                return;
+            }
+            FolderBitmaps bitmaps = new FolderBitmaps();
+            for (mail email : mails) {
+                bitmaps.add(email);
+            }
+            index.folders.put(folder, bitmaps);
+        }
+    }
+
+    /**
+     * Forget a folder (deleted, or its content can't be trusted anymore)
+     */
+    public void dropFolder(String user, String folder) {
+        UserBitmaps index = userBitmaps(user, false);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            index.folders.remove(folder);
+        }
+    }
+
+    /**
+     * @return queries answered, folders built, number of users in memory
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("queries", queries.get());
+        stats.put("builds", builds.get());
+        synchronized (users) {
+            stats.put("users", (long) users.size());
+        }
+        stats.put("maxUsers", (long) maxUsers);
+        return stats;
+    }
+
+    private UserBitmaps userBitmaps(String user, boolean create) {
+        if (!isEnabled()) {
+            return null;
+        }
+        synchronized (users) {
+            UserBitmaps index = users.get(user);
+            if (index == null && create) {
+                index = new UserBitmaps();
+                users.put(user, index);
+            }
+            return index;
+        }
+    }
+}
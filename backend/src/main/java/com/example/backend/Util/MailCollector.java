@@ -0,0 +1,99 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * Collects the mails of a streamed folder that pass a filter
+ * with an order and a limit only the first `limit` mails in that order are kept (bounded heap, O(n log k)),
+ * so memory stays proportional to the result, not to the folder
+ * the heap grows with the mails kept: a huge limit (page far down a listing) reserves nothing up front
+ */
+public class MailCollector {
+
+    //initial heap capacity at most, a limit comes from the client (offset + page size)
+    private static final int MAX_INITIAL_CAPACITY = 1024;
+
+    //mail + arrival number, ties in the order keep the folder order (stable like Collections.sort)
+    private static final class Candidate {
+        final mail email;
+        final long seq;
+
+        Candidate(mail email, long seq) {
+            this.email = email;
+            this.seq = seq;
+        }
+    }
+
+    private final Predicate<mail> filter;
+    private final Comparator<Candidate> order;
+    //order asked by the caller, null keeps the folder order
+    private final Comparator<mail> mailOrder;
+    private final int limit;
+    private final List<mail> all = new ArrayList<>();
+    private final PriorityQueue<Candidate> top;
+    private long seq = 0;
+
+    /**
+     * @param filter : mails to keep, null keeps everything
+     * @param order : order of the result, null keeps the folder order
+     * @param limit : max number of mails to keep (first ones in the given order), 0 or less means no limit
+     */
+    public MailCollector(Predicate<mail> filter, Comparator<mail> order, int limit) {
+        this.filter = filter;
+        this.limit = limit;
+        this.mailOrder = order;
+        if (order != null) {
+            this.order = Comparator.<Candidate, mail>comparing(c -> c.email, order).thenComparingLong(c -> c.seq);
+        } else {
+            this.order = Comparator.comparingLong(c -> c.seq);
+        }
+        // max-heap on the wanted order: the root is the first candidate to drop
+        this.top = limit > 0 ? new PriorityQueue<>(Math.min(limit, MAX_INITIAL_CAPACITY) + 1, this.order.reversed()) : null;
+    }
+
+    /**
+     * offer one mail of the folder
+     */
+    public void offer(mail email) {
+        if (filter != null && !filter.test(email)) {
+            return;
+        }
+        if (top == null) {
+            all.add(email);
+            return;
+        }
+        Candidate candidate = new Candidate(email, seq++);
+        if (top.size() < limit) {
+            top.offer(candidate);
+        } else if (order.compare(candidate, top.peek()) < 0) {
+            top.poll();
+            top.offer(candidate);
+        }
+    }
+
+    /**
+     * @return kept mails, sorted by the order if one was given
+     */
+    public List<mail> result() {
+        if (top == null) {
+            // no limit: everything was kept in folder order, List.sort is stable
+            if (mailOrder != null) {
+                all.sort(mailOrder);
+            }
+            return all;
+        }
+        List<Candidate> kept = new ArrayList<>(top);
+        kept.sort(order);
+        List<mail> result = new ArrayList<>(kept.size());
+        for (Candidate candidate : kept) {
+            result.add(candidate.email);
+        }
+        return result;
+    }
+}
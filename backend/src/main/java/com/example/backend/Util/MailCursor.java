@@ -0,0 +1,87 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import com.google.gson.Gson;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Comparator;
+
+/**
+ * Opaque position in a sorted listing (keyset paging): the sort and the sort fields and id of the last mail sent
+ * the next page starts right after that position, so it costs the same whatever the page number,
+ * and mails added or removed before it meanwhile (new mail at the head of the inbox) don't shift the pages
+ * encoded as url safe base64 of a small json object, clients pass it back as is
+ */
+public final class MailCursor {
+
+    private static final Gson gson = JsonFileManager.compactGson();
+
+    //fields every registered sort strategy may read, and the id that breaks ties
+    private static final class Position {
+        String sort;
+        LocalDateTime timestamp;
+        String from;
+        String subject;
+        int priority;
+        int id;
+    }
+
+    private MailCursor() {
+    }
+
+    /**
+     * @param sort : sort strategy name of the listing
+     * @param last : last mail of the page
+     * @return cursor of the page that follows
+     */
+    public static String encode(String sort, mail last) {
+        Position position = new Position();
+        position.sort = sort;
+        position.timestamp = last.getTimestamp();
+        position.from = last.getFrom();
+        position.subject = last.getSubject();
+        position.priority = last.getPriority();
+        position.id = last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(gson.toJson(position).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor : cursor from encode
+     * @param sort : sort strategy name of the listing asked now
+     * @return a mail with the sort fields and id of the last mail of the previous page, to compare mails with
+     * @throws IllegalArgumentException if the cursor is unreadable or was made for another sort
+     */
+    public static mail decode(String cursor, String sort) {
+        Position position;
+        try {
+            position = gson.fromJson(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8), Position.class);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        if (position == null || !sort.equals(position.sort)) {
+            throw new IllegalArgumentException("Cursor of another listing: " + cursor);
+        }
+        mail last = new mail();
+        last.setTimestamp(position.timestamp);
+        last.setFrom(position.from);
+        last.setSubject(position.subject);
+        last.setPriority(position.priority);
+        last.setId(position.id);
+        return last;
+    }
+
+    /**
+     * Order without ties, so "after the last mail" is one exact position
+     * @param order : order of a sort strategy
+     * @return the order, ties broken by id (the date orders and MailSortOrders already are, they are kept as is
+     * for MailTimeIndex and MailSortIndex)
+     */
+    public static Comparator<mail> totalOrder(Comparator<mail> order) {
+        if (order == MailTimeOrder.OLDEST_FIRST || order == MailTimeOrder.NEWEST_FIRST || order instanceof MailSortOrder) {
+            return order;
+        }
+        return order.thenComparingInt(mail::getId);
+    }
+}
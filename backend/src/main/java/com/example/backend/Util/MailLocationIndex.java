@@ -0,0 +1,221 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory index mail id -> (folder, position in the folder) per user
+ * lets single-mail operations (get, star, delete, move) jump to the mail instead of scanning its folder,
+ * and finds the folder of a mail from its id alone
+ * entries are hints: callers check that the mail at the position really has the id, and re-index the folder if not
+ * (a stale hint costs one folder read, never a wrong answer)
+ * kept for the most recently used users only
+ */
+@Component
+public class MailLocationIndex {
+
+    //position of a mail whose folder is known but not its place in it
+    public static final int UNKNOWN_POSITION = -1;
+    //returned by the id maps for a missing id
+    private static final int MISSING = Integer.MIN_VALUE;
+
+    //ids of one folder
+    private static final class FolderIndex {
+        final IntIntHashMap positions = new IntIntHashMap();
+        //number of mails in the folder, -1 until the whole folder was indexed
+        int size = -1;
+    }
+
+    //folders of one user, guarded by the UserIndex itself
+    private static final class UserIndex {
+        final Map<String, FolderIndex> folders = new LinkedHashMap<>();
+    }
+
+    private final int maxUsers;
+    private final LinkedHashMap<String, UserIndex> users;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public MailLocationIndex(@Value("${mail.index.max-users:10000}") int maxUsers) {
+        this.maxUsers = maxUsers;
+        // access order: the least recently used user is dropped first
+        this.users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserIndex> eldest) {
+                return size() > MailLocationIndex.this.maxUsers;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxUsers > 0;
+    }
+
+    /**
+     * Index a whole folder that was just read or written
+     * @param user : owner email
+     * @param folder : folder name
+     * @param mails : content of the folder, in folder order
+     */
+    public void indexFolder(String user, String folder, List<mail> mails) {
+        UserIndex index = userIndex(user, true);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            FolderIndex folderIndex = index.folders.computeIfAbsent(folder, f -> new FolderIndex());
+            folderIndex.positions.clear();
+            for (int i = 0; i < mails.size(); i++) {
+                folderIndex.positions.put(mails.get(i).getId(), i, MISSING);
+            }
+            folderIndex.size = mails.size();
+        }
+    }
+
+    /**
+     * A mail was appended to a folder (or replaced in place if the id is already there)
+     */
+    public void added(String user, String folder, int id) {
+        UserIndex index = userIndex(user, true);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            FolderIndex folderIndex = index.folders.computeIfAbsent(folder, f -> new FolderIndex());
+            if (folderIndex.positions.containsKey(id)) {
+                return;
+            }
+            if (folderIndex.size >= 0) {
+                folderIndex.positions.put(id, folderIndex.size++, MISSING);
+            } else {
+                folderIndex.positions.put(id, UNKNOWN_POSITION, MISSING);
+            }
+        }
+    }
+
+    /**
+     * A mail was removed from a folder, the mails after it move one place up
+     */
+    public void removed(String user, String folder, int id) {
+        UserIndex index = userIndex(user, false);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            FolderIndex folderIndex = index.folders.get(folder);
+            if (folderIndex == null) {
+                return;
+            }
+            int position = folderIndex.positions.remove(id, MISSING);
+            if (position == MISSING) {
+                return;
+            }
+            if (folderIndex.size >= 0) {
+                folderIndex.size--;
+            }
+            if (position >= 0) {
+                folderIndex.positions.replaceAll((key, value) -> value > position ? value - 1 : value);
+            }
+        }
+    }
+
+    /**
+     * Forget a folder (deleted, or its content can't be trusted anymore)
+     */
+    public void dropFolder(String user, String folder) {
+        UserIndex index = userIndex(user, false);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            index.folders.remove(folder);
+        }
+    }
+
+    /**
+     * @return position of the mail in the folder, or UNKNOWN_POSITION
+     */
+    public int positionOf(String user, String folder, int id) {
+        UserIndex index = userIndex(user, false);
+        if (index != null) {
+            synchronized (index) {
+                FolderIndex folderIndex = index.folders.get(folder);
+                int position = folderIndex == null ? MISSING : folderIndex.positions.get(id, MISSING);
+                if (position >= 0) {
+                    hits.incrementAndGet();
+                    return position;
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return UNKNOWN_POSITION;
+    }
+
+    /**
+     * @return number of mails in the folder, or -1 if the whole folder wasn't indexed
+     */
+    public int folderSize(String user, String folder) {
+        UserIndex index = userIndex(user, false);
+        if (index == null) {
+            return -1;
+        }
+        synchronized (index) {
+            FolderIndex folderIndex = index.folders.get(folder);
+            return folderIndex == null ? -1 : folderIndex.size;
+        }
+    }
+
+    /**
+     * @return folder holding the mail, or null if no indexed folder of the user has this id
+     */
+    public String folderOf(String user, int id) {
+        UserIndex index = userIndex(user, false);
+        if (index != null) {
+            synchronized (index) {
+                for (Map.Entry<String, FolderIndex> entry : index.folders.entrySet()) {
+                    if (entry.getValue().positions.containsKey(id)) {
+                        hits.incrementAndGet();
+                        return entry.getKey();
+                    }
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @return hits, misses and number of indexed users
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        synchronized (users) {
+            stats.put("users", (long) users.size());
+        }
+        stats.put("maxUsers", (long) maxUsers);
+        return stats;
+    }
+
+    private UserIndex userIndex(String user, boolean create) {
+        if (!isEnabled()) {
+            return null;
+        }
+        synchronized (users) {
+            UserIndex index = users.get(user);
+            if (index == null && create) {
+                index = new UserIndex();
+                users.put(user, index);
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * One page of a listing: the mails of the page and how many mails the whole listing has
+ * built from the first offset + limit mails in the listing order, the mails after the page are counted, never kept
+ */
+public final class MailPage {
+
+    private final List<mail> mails;
+    private final int total;
+
+    /**
+     * @param mails : mails of the page, in listing order
+     * @param total : mails in the whole listing
+     */
+    public MailPage(List<mail> mails, int total) {
+        this.mails = mails;
+        this.total = total;
+    }
+
+    /**
+     * Page of a list: the mails passing the filter are counted, the first offset + limit of them in the order
+     * are kept (bounded heap, O(n log k) instead of a full sort), then the page is cut out
+     * @param mails : mails in list order
+     * @param filter : mails to keep, null keeps all
+     * @param order : order of the listing, null keeps the list order
+     * @param offset : mails before the page
+     * @param limit : mails in the page
+     */
+    public static MailPage of(Iterable<mail> mails, Predicate<mail> filter, Comparator<mail> order, int offset, int limit) {
+        if (mails instanceof Collection && pastTheEnd(offset, ((Collection<mail>) mails).size())) {
+            // no mail of the page can exist: count, keep nothing
+            int total = 0;
+            for (mail email : mails) {
+                if (filter == null || filter.test(email)) {
+                    total++;
+                }
+            }
+            return new MailPage(new ArrayList<>(), total);
+        }
+        MailCollector collector = new MailCollector(null, order, end(offset, limit));
+        int total = 0;
+        for (mail email : mails) {
+            if (filter == null || filter.test(email)) {
+                total++;
+                collector.offer(email);
+            }
+        }
+        return window(collector.result(), offset, limit, total);
+    }
+
+    /**
+     * @param first : the first mails of the listing in order, up to the end of the page at least
+     * @param offset : mails before the page
+     * @param limit : mails in the page
+     * @param total : mails in the whole listing
+     * @return the page within these mails (empty past the end of the listing)
+     */
+    public static MailPage window(List<mail> first, int offset, int limit, int total) {
+        if (offset >= first.size()) {
+            return new MailPage(new ArrayList<>(), total);
+        }
+        return new MailPage(new ArrayList<>(first.subList(offset, Math.min(first.size(), end(offset, limit)))), total);
+    }
+
+    /**
+     * @param offset : mails before the page
+     * @param size : mails in the whole list before filtering, -1 if unknown
+     * @return true if the page starts after the last mail, whatever the filter keeps
+     */
+    public static boolean pastTheEnd(int offset, int size) {
+        return size >= 0 && offset >= size;
+    }
+
+    /**
+     * @return mails to keep to cut a page out: offset + limit, without overflowing
+     */
+    public static int end(int offset, int limit) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+    }
+
+    public List<mail> getMails() {
+        return mails;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.backend.Util;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * What a filter keeps, in a form the storage layer can answer from its indexes before reading any mail:
+ * text criteria (MailTextIndex), sender terms (MailSenderIndex), flags (MailBitmapIndex: priority levels, starred, attachment)
+ * and a time range (MailTimeIndex)
+ * filled by the filters themselves (EmailFilter.narrow), criteria of custom filters are simply not in it
+ * only narrows: the store checks the mails it points to with the filter, which alone decides
+ * built once per request, read only afterwards
+ * also tells the store when the caller only shows summaries (listings), so mails may be read without their details
+ */
+public final class MailQuery {
+
+    private final TextQuery text = new TextQuery();
+    //lower cased, trimmed terms the sender must contain
+    private final List<String> senderTerms = new ArrayList<>();
+    //null = any priority
+    private Set<Integer> priorities;
+    //null = starred or not
+    private Boolean starred;
+    //null = with or without attachment
+    private Boolean hasAttachment;
+    //inclusive bounds, null = unbounded, only used if timeRange is set
+    private boolean timeRange;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    //the caller only needs the summary fields, not a criterion
+    private boolean summaryOnly;
+
+    public TextQuery getText() {
+        return text;
+    }
+
+    /**
+     * Keep the mails whose sender contains a term, ignored if the term is null or blank (like an inactive filter)
+     * @param term : text to find in the sender, as typed
+     * @return this query
+     */
+    public MailQuery senderContains(String term) {
+        if (term != null && !term.trim().isEmpty()) {
+            senderTerms.add(term.toLowerCase().trim());
+        }
+        return this;
+    }
+
+    /**
+     * Keep the mails with one of these priorities (intersected with the levels already set)
+     * @param levels : priority levels
+     * @return this query
+     */
+    public MailQuery priorityIn(Collection<Integer> levels) {
+        if (priorities == null) {
+            priorities = new TreeSet<>(levels);
+        } else {
+            priorities.retainAll(levels);
+        }
+        return this;
+    }
+
+    public MailQuery starred(boolean starred) {
+        this.starred = starred;
+        return this;
+    }
+
+    public MailQuery hasAttachment(boolean hasAttachment) {
+        this.hasAttachment = hasAttachment;
+        return this;
+    }
+
+    /**
+     * Keep the mails whose timestamp is within [from, to] (intersected with the range already set)
+     * @param from : lower bound (inclusive), null for no lower bound
+     * @param to : upper bound (inclusive), null for no upper bound
+     * @return this query
+     */
+    public MailQuery between(LocalDateTime from, LocalDateTime to) {
+        if (!timeRange) {
+            this.from = from;
+            this.to = to;
+        } else {
+            if (from != null && (this.from == null || from.isAfter(this.from))) {
+                this.from = from;
+            }
+            if (to != null && (this.to == null || to.isBefore(this.to))) {
+                this.to = to;
+            }
+        }
+        timeRange = true;
+        return this;
+    }
+
+    public List<String> getSenderTerms() {
+        return Collections.unmodifiableList(senderTerms);
+    }
+
+    public Set<Integer> getPriorities() {
+        return priorities == null ? null : Collections.unmodifiableSet(priorities);
+    }
+
+    public Boolean getStarred() {
+        return starred;
+    }
+
+    public Boolean getHasAttachment() {
+        return hasAttachment;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    /**
+     * Mails may come without body, recipients and attachments (the store skips them when it reads from disk)
+     * only for a filter that reads none of these fields
+     * @return this query
+     */
+    public MailQuery summaryOnly() {
+        this.summaryOnly = true;
+        return this;
+    }
+
+    public boolean isSummaryOnly() {
+        return summaryOnly;
+    }
+
+    /**
+     * @return true if a time range is set (mails without timestamp never match one)
+     */
+    public boolean hasTimeRange() {
+        return timeRange;
+    }
+
+    /**
+     * @return true if a priority, starred or attachment criterion is set
+     */
+    public boolean hasFlags() {
+        return priorities != null || starred != null || hasAttachment != null;
+    }
+
+    /**
+     * @return true if nothing can be narrowed
+     */
+    public boolean isEmpty() {
+        return text.isEmpty() && senderTerms.isEmpty() && !hasFlags() && !timeRange;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Results of the folder listings (filtered and sorted), so a client polling the same criteria every few seconds
+ * gets the previous answer instead of a new read, filter and sort
+ * keyed by (user, folder, normalized criteria, sort), each entry remembers the folder version it was computed at
+ * (MailStore.version, read before the folder) and is only served while the folder still has that version:
+ * any write to the folder makes its entries stale, a stale entry is replaced by the next result
+ * bounded by total weight (number of mails held) across all users and evicted LRU
+ * pages of a listing (MailPage) are cached the same way, with the size of the whole listing
+ * counts hits and misses per endpoint
+ */
+@Component
+public class MailResultCache {
+
+    //one listing result, or one page of it and the size of the listing
+    private static final class Entry {
+        final long version;
+        final List<mail> mails;
+        final int total;
+        final int weight;
+
+        Entry(long version, List<mail> mails, int total) {
+            this.version = version;
+            this.mails = mails;
+            this.total = total;
+            this.weight = Math.max(1, mails.size());
+        }
+    }
+
+    //max total weight (mails) kept in memory, 0 disables the cache
+    private final long maxWeight;
+    private long totalWeight;
+    private final LinkedHashMap<List<Object>, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    //endpoint -> {hits, misses}
+    private final Map<String, AtomicLong[]> counters = new TreeMap<>();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public MailResultCache(@Value("${mail.result-cache.max-weight:50000}") long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Cached result, or the loaded one (cached for the next calls)
+     * @param endpoint : listing the result is for (inbox, sent, ...), for the counters
+     * @param key : user, folder, normalized criteria and sort of the listing
+     * @param version : version of the folder, read before anything is loaded
+     * @param load : computes the result if it isn't cached at this version
+     * @return the result (a list the caller may change)
+     */
+    public List<mail> get(String endpoint, List<Object> key, long version, Supplier<List<mail>> load) {
+        return getPage(endpoint, key, version, () -> {
+            List<mail> mails = load.get();
+            return new MailPage(mails, mails.size());
+        }).getMails();
+    }
+
+    /**
+     * Cached page, or the loaded one (cached for the next calls), weighs the mails of the page only
+     * @param key : user, folder, normalized criteria, sort, page and page size
+     * @param load : computes the page if it isn't cached at this version
+     * @return the page (its list the caller may change) and the size of the listing
+     */
+    public MailPage getPage(String endpoint, List<Object> key, long version, Supplier<MailPage> load) {
+        AtomicLong[] endpointCounters = countersOf(endpoint);
+        if (maxWeight > 0) {
+            synchronized (this) {
+                Entry entry = entries.get(key);
+                if (entry != null && entry.version == version) {
+                    endpointCounters[0].incrementAndGet();
+                    return new MailPage(new ArrayList<>(entry.mails), entry.total);
+                }
+            }
+        }
+        endpointCounters[1].incrementAndGet();
+        // loaded without the lock: other listings go on meanwhile
+        MailPage page = load.get();
+        if (maxWeight > 0) {
+            put(key, new Entry(version, new ArrayList<>(page.getMails()), page.getTotal()));
+        }
+        return page;
+    }
+
+    /**
+     * @return hits and misses per endpoint, entries, weight and evictions
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        synchronized (counters) {
+            for (Map.Entry<String, AtomicLong[]> entry : counters.entrySet()) {
+                long hits = entry.getValue()[0].get();
+                long misses = entry.getValue()[1].get();
+                stats.put(entry.getKey() + ".hits", hits);
+                stats.put(entry.getKey() + ".misses", misses);
+                stats.put(entry.getKey() + ".hitRatePercent", hits + misses == 0 ? 0 : hits * 100 / (hits + misses));
+            }
+        }
+        synchronized (this) {
+            stats.put("entries", (long) entries.size());
+            stats.put("weight", totalWeight);
+        }
+        stats.put("maxWeight", maxWeight);
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    private synchronized void put(List<Object> key, Entry entry) {
+        if (entry.weight > maxWeight) {
+            // bigger than the whole cache: not kept
+            return;
+        }
+        Entry old = entries.get(key);
+        if (old != null && old.version > entry.version) {
+            // a newer result was stored meanwhile
+            return;
+        }
+        totalWeight += entry.weight;
+        old = entries.put(key, entry);
+        if (old != null) {
+            totalWeight -= old.weight;
+        }
+        while (totalWeight > maxWeight) {
+            Map.Entry<List<Object>, Entry> eldest = entries.entrySet().iterator().next();
+            totalWeight -= eldest.getValue().weight;
+            entries.remove(eldest.getKey());
+            evictions.incrementAndGet();
+        }
+    }
+
+    private AtomicLong[] countersOf(String endpoint) {
+        synchronized (counters) {
+            return counters.computeIfAbsent(endpoint, e -> new AtomicLong[]{new AtomicLong(), new AtomicLong()});
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Senders of the mails of each folder: normalized sender address -> ids of its mails
+ * a sender filter only checks the distinct addresses of the folder (a few hundred) instead of the from of every mail,
+ * and the sender facets (top senders with counts) are read from the bitmap sizes without touching any mail
+ * addresses are normalized like the filters read them (lower cased, trimmed), so the ids of the addresses containing
+ * a term are exactly the mails whose sender contains it (the filters still decide)
+ * built from the whole folder the first time it is queried, then updated by every write of the store
+ * (writes to a folder that isn't built are ignored, the build will read them)
+ * memory only, kept for the most recently used users
+ */
+@Component
+public class MailSenderIndex {
+
+    //most frequent first, then by address
+    private static final Comparator<Map.Entry<String, Integer>> BY_COUNT =
+            Comparator.comparing(Map.Entry<String, Integer>::getValue).reversed().thenComparing(Map.Entry::getKey);
+
+    //senders of one folder
+    private static final class FolderSenders {
+        final Map<String, CompressedBitmap> senders = new HashMap<>();
+        // id -> sender, to find the bitmap of a removed or replaced mail
+        final Map<Integer, String> senderOf = new HashMap<>();
+
+        void add(mail email) {
+            // may replace a version of the mail with another sender
+            remove(email.getId());
+            String sender = normalize(email.getFrom());
+            if (sender != null) {
+                senders.computeIfAbsent(sender, s -> new CompressedBitmap()).add(email.getId());
+                senderOf.put(email.getId(), sender);
+            }
+        }
+
+        void remove(int id) {
+            String sender = senderOf.remove(id);
+            if (sender == null) {
+                return;
+            }
+            CompressedBitmap ids = senders.get(sender);
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                senders.remove(sender);
+            }
+        }
+    }
+
+    //folders of one user, guarded by the UserSenders itself
+    private static final class UserSenders {
+        final Map<String, FolderSenders> folders = new HashMap<>();
+    }
+
+    private final int maxUsers;
+    private final LinkedHashMap<String, UserSenders> users;
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong builds = new AtomicLong();
+
+    public MailSenderIndex(@Value("${mail.sender-index.max-users:10000}") int maxUsers) {
+        this.maxUsers = maxUsers;
+        // access order: the least recently used user is dropped first
+        this.users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserSenders> eldest) {
+                return size() > MailSenderIndex.this.maxUsers;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxUsers > 0;
+    }
+
+    /**
+     * @param from : sender of a mail, as stored
+     * @return the address as the filters compare it (lower cased, trimmed), null if there is none
+     */
+    public static String normalize(String from) {
+        if (from == null) {
+            return null;
+        }
+        String sender = from.toLowerCase().trim();
+        return sender.isEmpty() ? null : sender;
+    }
+
+    /**
+     * The most frequent entries of sender counts
+     * @param counts : sender -> number of mails
+     * @param limit : number of senders to keep
+     * @return sender -> count, most frequent first (ties by address)
+     */
+    public static Map<String, Integer> top(Map<String, Integer> counts, int limit) {
+        // smallest kept entry on top, replaced by any bigger one
+        PriorityQueue<Map.Entry<String, Integer>> kept = new PriorityQueue<>(BY_COUNT.reversed());
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            kept.offer(Map.entry(entry.getKey(), entry.getValue()));
+            if (kept.size() > limit) {
+                kept.poll();
+            }
+        }
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(kept);
+        sorted.sort(BY_COUNT);
+        Map<String, Integer> top = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : sorted) {
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return top;
+    }
+
+    /**
+     * Ids of the mails of a folder whose sender contains every term
+     * @param user : owner email
+     * @param folder : folder name
+     * @param terms : lower cased, trimmed terms (like SenderFilter), may be empty
+     * @param mails : content of the folder, read only if its index isn't built
+     * @return candidate ids (a new bitmap), or null if there is no term or the index is disabled
+     */
+    public CompressedBitmap candidates(String user, String folder, List<String> terms, Supplier<List<mail>> mails) {
+        if (terms.isEmpty()) {
+            return null;
+        }
+        UserSenders index = userSenders(user, true);
+        if (index == null) {
+            return null;
+        }
+        queries.incrementAndGet();
+        synchronized (index) {
+            FolderSenders senders = folderSenders(index, folder, mails);
+            CompressedBitmap result = null;
+            for (String term : terms) {
+                CompressedBitmap containing = new CompressedBitmap();
+                for (Map.Entry<String, CompressedBitmap> entry : senders.senders.entrySet()) {
+                    if (entry.getKey().contains(term)) {
+                        containing = containing.or(entry.getValue());
+                    }
+                }
+                result = result == null ? containing : result.and(containing);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Senders with the most mails in a folder
+     * @param user : owner email
+     * @param folder : folder name
+     * @param limit : number of senders
+     * @param mails : content of the folder, read only if its index isn't built
+     * @return sender -> number of mails, most frequent first, or null if the index is disabled
+     */
+    public Map<String, Integer> topSenders(String user, String folder, int limit, Supplier<List<mail>> mails) {
+        UserSenders index = userSenders(user, true);
+        if (index == null) {
+            return null;
+        }
+        queries.incrementAndGet();
+        Map<String, Integer> counts = new HashMap<>();
+        synchronized (index) {
+            for (Map.Entry<String, CompressedBitmap> entry : folderSenders(index, folder, mails).senders.entrySet()) {
+                counts.put(entry.getKey(), entry.getValue().cardinality());
+            }
+        }
+        return top(counts, limit);
+    }
+
+    /**
+     * A mail was appended to a folder (or replaced in place if the id is already there)
+     */
+    public void added(String user, String folder, mail email) {
+        UserSenders index = userSenders(user, false);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            FolderSenders senders = index.folders.get(folder);
+            if (senders != null) {
+                senders.add(email);
+            }
+        }
+    }
+
+    /**
+     * A mail was removed from a folder
+     */
+    public void removed(String user, String folder, int id) {
+        UserSenders index = userSenders(user, false);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            FolderSenders senders = index.folders.get(folder);
+            if (senders != null) {
+                senders.remove(id);
+            }
+        }
+    }
+
+    /**
+     * A whole folder was rewritten
+     * @param mails : content of the folder now
+     */
+    public void replaced(String user, String folder, List<mail> mails) {
+        UserSenders index = userSenders(user, false);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            if (index.folders.containsKey(folder)) {
+                index.folders.put(folder, build(mails));
+            }
+        }
+    }
+
+    /**
+     * Forget a folder (deleted, or its content can't be trusted anymore)
+     */
+    public void dropFolder(String user, String folder) {
+        UserSenders index = userSenders(user, false);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            index.folders.remove(folder);
+        }
+    }
+
+    /**
+     * @return queries answered, folders built, number of users in memory
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("queries", queries.get());
+        stats.put("builds", builds.get());
+        synchronized (users) {
+            stats.put("users", (long) users.size());
+        }
+        stats.put("maxUsers", (long) maxUsers);
+        return stats;
+    }
+
+    //caller holds the user's lock: writers wait for the build, none slips between the read and the first update
+    private FolderSenders folderSenders(UserSenders index, String folder, Supplier<List<mail>> mails) {
+        FolderSenders senders = index.folders.get(folder);
+        if (senders == null) {
+            senders = build(mails.get());
+            index.folders.put(folder, senders);
+            builds.incrementAndGet();
+        }
+        return senders;
+    }
+
+    private static FolderSenders build(List<mail> mails) {
+        FolderSenders senders = new FolderSenders();
+        for (mail email : mails) {
+            senders.add(email);
+        }
+        return senders;
+    }
+
+    private UserSenders userSenders(String user, boolean create) {
+        if (!isEnabled()) {
+            return null;
+        }
+        synchronized (users) {
+            UserSenders index = users.get(user);
+            if (index == null && create) {
+                index = new UserSenders();
+                users.put(user, index);
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Mails of each folder in the order of each sort strategy (MailSortOrder: sender, subject, priority...),
+ * one red-black tree of sort keys per folder and order: a sorted listing reads the ids front to back instead of
+ * sorting the folder, a cursor page starts with one O(log n) lookup
+ * built from the whole folder the first time a folder is listed in an order, then every write of the store
+ * is an O(log n) insert or remove in the trees of that folder (writes to orders that aren't built are ignored)
+ * date orders aren't kept here, MailTimeIndex has them
+ * memory only, at most mail.sort-index.max-entries mails over all trees: the least recently used trees are dropped first
+ */
+@Component
+public class MailSortIndex {
+
+    //one folder in one order, guarded by itself
+    private static final class FolderOrder {
+        final MailSortOrder order;
+        //null until built
+        TreeSet<mail> keys;
+        Map<Integer, mail> byId;
+        //mails it was counted with in the budget, guarded by the MailSortIndex
+        long weight;
+
+        FolderOrder(MailSortOrder order) {
+            this.order = order;
+        }
+
+        void build(List<mail> mails) {
+            keys = new TreeSet<>(order);
+            byId = new HashMap<>(mails.size() * 2);
+            for (mail email : mails) {
+                add(email);
+            }
+        }
+
+        void add(mail email) {
+            // may replace a version of the mail with other sort fields
+            remove(email.getId());
+            mail key = keyOf(email);
+            keys.add(key);
+            byId.put(key.getId(), key);
+        }
+
+        void remove(int id) {
+            mail key = byId.remove(id);
+            if (key != null) {
+                keys.remove(key);
+            }
+        }
+    }
+
+    private final long maxEntries;
+    //user, folder, order name -> tree, access order: the least recently used tree is dropped first
+    private final LinkedHashMap<List<String>, FolderOrder> orders = new LinkedHashMap<>(16, 0.75f, true);
+    //user, folder -> order name -> tree, to update every tree of a folder
+    private final Map<List<String>, Map<String, FolderOrder>> folders = new HashMap<>();
+    //mails in the trees, counted when they are built
+    private long entries;
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public MailSortIndex(@Value("${mail.sort-index.max-entries:200000}") long maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Ids of the mails of a folder in an order
+     * @param user : owner email
+     * @param folder : folder name
+     * @param order : order of the listing
+     * @param after : only the mails after this one in the order (keyset paging), null for all
+     * @param mails : content of the folder, read only if the folder isn't built in this order
+     * @return ids (a copy), or null if the index is disabled or the folder is bigger than the whole budget
+     */
+    public int[] ids(String user, String folder, MailSortOrder order, mail after, Supplier<List<mail>> mails) {
+        return ids(user, folder, order, after, 0, mails);
+    }
+
+    /**
+     * Same as ids, only the first ids in the order (a page), the rest of the folder isn't walked
+     * @param limit : at most this many ids, 0 or less for all of them
+     */
+    public int[] ids(String user, String folder, MailSortOrder order, mail after, int limit, Supplier<List<mail>> mails) {
+        if (!isEnabled()) {
+            return null;
+        }
+        queries.incrementAndGet();
+        FolderOrder index = folderOrder(user, folder, order);
+        long built = 0;
+        int[] ids;
+        synchronized (index) {
+            if (index.keys == null) {
+                List<mail> content = mails.get();
+                if (content.size() > maxEntries) {
+                    // would be dropped right away, the caller sorts
+                    forget(user, folder, index);
+                    return null;
+                }
+                index.build(content);
+                builds.incrementAndGet();
+                built = Math.max(1, content.size());
+            }
+            NavigableSet<mail> keys = after == null ? index.keys : index.keys.tailSet(keyOf(after), false);
+            if (limit > 0) {
+                // the size of a tail set is a walk of it, the page is sized from the whole set instead
+                ids = new int[Math.min(limit, index.keys.size())];
+                int count = 0;
+                for (Iterator<mail> it = keys.iterator(); count < ids.length && it.hasNext(); ) {
+                    ids[count++] = it.next().getId();
+                }
+                ids = count == ids.length ? ids : Arrays.copyOf(ids, count);
+            } else {
+                ids = new int[keys.size()];
+                Iterator<mail> it = keys.iterator();
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = it.next().getId();
+                }
+            }
+        }
+        if (built > 0) {
+            weigh(user, folder, index, built);
+        }
+        return ids;
+    }
+
+    /**
+     * A mail was appended to a folder (or replaced in place if the id is already there)
+     */
+    public void added(String user, String folder, mail email) {
+        for (FolderOrder index : built(user, folder)) {
+            synchronized (index) {
+                if (index.keys != null) {
+                    index.add(email);
+                }
+            }
+        }
+    }
+
+    /**
+     * A mail was removed from a folder
+     */
+    public void removed(String user, String folder, int id) {
+        for (FolderOrder index : built(user, folder)) {
+            synchronized (index) {
+                if (index.keys != null) {
+                    index.remove(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * A whole folder was rewritten
+     * @param mails : content of the folder now
+     */
+    public void replaced(String user, String folder, List<mail> mails) {
+        for (FolderOrder index : built(user, folder)) {
+            synchronized (index) {
+                if (index.keys != null) {
+                    index.build(mails);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget a folder in every order (deleted, or its content can't be trusted anymore)
+     */
+    public synchronized void dropFolder(String user, String folder) {
+        Map<String, FolderOrder> byOrder = folders.remove(Arrays.asList(user, folder));
+        if (byOrder != null) {
+            for (FolderOrder index : byOrder.values()) {
+                orders.remove(Arrays.asList(user, folder, index.order.getName()));
+                entries -= index.weight;
+            }
+        }
+    }
+
+    /**
+     * @return queries answered, trees built and dropped, trees and mails in memory
+     */
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("queries", queries.get());
+        stats.put("builds", builds.get());
+        stats.put("evictions", evictions.get());
+        stats.put("trees", (long) orders.size());
+        stats.put("entries", entries);
+        stats.put("maxEntries", maxEntries);
+        return stats;
+    }
+
+    //the fields a MailSortOrder may read
+    private static mail keyOf(mail email) {
+        mail key = new mail();
+        key.setId(email.getId());
+        key.setFrom(email.getFrom());
+        key.setSubject(email.getSubject());
+        key.setPriority(email.getPriority());
+        key.setTimestamp(email.getTimestamp());
+        return key;
+    }
+
+    private synchronized FolderOrder folderOrder(String user, String folder, MailSortOrder order) {
+        List<String> key = Arrays.asList(user, folder, order.getName());
+        FolderOrder index = orders.get(key);
+        if (index == null) {
+            index = new FolderOrder(order);
+            orders.put(key, index);
+            folders.computeIfAbsent(Arrays.asList(user, folder), k -> new HashMap<>()).put(order.getName(), index);
+        }
+        return index;
+    }
+
+    //trees of a folder (may still be building: writers wait for the build, none slips between the read and the first update)
+    private synchronized List<FolderOrder> built(String user, String folder) {
+        Map<String, FolderOrder> byOrder = folders.get(Arrays.asList(user, folder));
+        return byOrder == null ? List.of() : List.copyOf(byOrder.values());
+    }
+
+    //count a built tree, drop the least recently used ones over the budget
+    private synchronized void weigh(String user, String folder, FolderOrder built, long weight) {
+        if (orders.get(Arrays.asList(user, folder, built.order.getName())) != built) {
+            // folder dropped while it was built
+            return;
+        }
+        built.weight = weight;
+        entries += weight;
+        Iterator<Map.Entry<List<String>, FolderOrder>> it = orders.entrySet().iterator();
+        while (entries > maxEntries && it.hasNext()) {
+            Map.Entry<List<String>, FolderOrder> eldest = it.next();
+            List<String> key = eldest.getKey();
+            it.remove();
+            unlink(key.get(0), key.get(1), eldest.getValue());
+            entries -= eldest.getValue().weight;
+            evictions.incrementAndGet();
+        }
+    }
+
+    private synchronized void forget(String user, String folder, FolderOrder index) {
+        orders.remove(Arrays.asList(user, folder, index.order.getName()));
+        unlink(user, folder, index);
+    }
+
+    private void unlink(String user, String folder, FolderOrder index) {
+        Map<String, FolderOrder> byOrder = folders.get(Arrays.asList(user, folder));
+        if (byOrder != null && byOrder.get(index.order.getName()) == index) {
+            byOrder.remove(index.order.getName());
+            if (byOrder.isEmpty()) {
+                folders.remove(Arrays.asList(user, folder));
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.function.Function;
+
+/**
+ * Sorts of the sort strategies that don't call a comparator n log n times, each gives the order of the strategy
+ * date: LSD radix sort of the epoch millis (then id), O(n), no comparison at all
+ * priority: the date sort, then a stable counting sort of the few priority values, O(n)
+ * sender, subject: every text is case folded once (collation key), the sort compares the keys with compareTo
+ * instead of folding both strings again in each comparison like String.CASE_INSENSITIVE_ORDER
+ * the work is done on arrays, the list is written back in place (must support set())
+ * SortKernelBenchmark compares them with the comparator sorts
+ */
+public final class MailSortKernels {
+
+    //priorities spread wider than this are sorted with the comparator (the model uses 1 to 4)
+    private static final int MAX_PRIORITY_RANGE = 1024;
+
+    //text and mail, key is null when the text is
+    private static final class Keyed {
+        final String key;
+        final mail email;
+
+        Keyed(String key, mail email) {
+            this.key = key;
+            this.email = email;
+        }
+    }
+
+    private MailSortKernels() {
+    }
+
+    /**
+     * Same order as MailTimeOrder.OLDEST_FIRST / NEWEST_FIRST
+     * @param mails : list to sort in place
+     * @param oldestFirst : false for newest first
+     */
+    public static void byTime(List<mail> mails, boolean oldestFirst) {
+        if (mails.size() < 2) {
+            return;
+        }
+        mail[] array = mails.toArray(new mail[0]);
+        int[] positions = byTime(array);
+        ListIterator<mail> it = mails.listIterator();
+        for (int i = 0; i < positions.length; i++) {
+            it.next();
+            it.set(array[positions[oldestFirst ? i : positions.length - 1 - i]]);
+        }
+    }
+
+    /**
+     * Priority order of SortByPriorityStrategy: priority, then newest first (then id)
+     * @param mails : list to sort in place
+     * @param ascending : 1 (urgent) first, false for 4 (low) first
+     */
+    public static void byPriority(List<mail> mails, boolean ascending) {
+        if (mails.size() < 2) {
+            return;
+        }
+        mail[] array = mails.toArray(new mail[0]);
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (mail email : array) {
+            min = Math.min(min, email.getPriority());
+            max = Math.max(max, email.getPriority());
+        }
+        if ((long) max - min >= MAX_PRIORITY_RANGE) {
+            Comparator<mail> order = Comparator.comparingInt(mail::getPriority);
+            mails.sort((ascending ? order : order.reversed()).thenComparing(MailTimeOrder.NEWEST_FIRST));
+            return;
+        }
+        //newest first, the counting sort keeps that order within a priority
+        int[] byTime = byTime(array);
+        int[] count = new int[max - min + 2];
+        for (mail email : array) {
+            count[bucket(email, min, max, ascending) + 1]++;
+        }
+        for (int b = 1; b < count.length; b++) {
+            count[b] += count[b - 1];
+        }
+        mail[] sorted = new mail[array.length];
+        for (int i = byTime.length - 1; i >= 0; i--) {
+            mail email = array[byTime[i]];
+            sorted[count[bucket(email, min, max, ascending)]++] = email;
+        }
+        write(mails, sorted);
+    }
+
+    /**
+     * Text order of SortBySenderStrategy and SortBySubjectStrategy: String.CASE_INSENSITIVE_ORDER, no text last
+     * (first when descending), then id
+     * @param mails : list to sort in place
+     * @param field : text to sort on
+     * @param ascending : false for the reverse text order (ties still by ascending id)
+     */
+    public static void byText(List<mail> mails, Function<mail, String> field, boolean ascending) {
+        if (mails.size() < 2) {
+            return;
+        }
+        Keyed[] keyed = new Keyed[mails.size()];
+        int n = 0;
+        for (mail email : mails) {
+            keyed[n++] = new Keyed(collationKey(field.apply(email)), email);
+        }
+        //one plain comparator, no chain of comparator lambdas per comparison
+        Arrays.sort(keyed, (a, b) -> {
+            int byKey = compareKeys(a.key, b.key);
+            if (byKey != 0) {
+                return ascending ? byKey : -byKey;
+            }
+            return Integer.compare(a.email.getId(), b.email.getId());
+        });
+        ListIterator<mail> it = mails.listIterator();
+        for (Keyed k : keyed) {
+            it.next();
+            it.set(k.email);
+        }
+    }
+
+    /**
+     * Case folded text: a.compareTo(b) of two keys has the sign of String.CASE_INSENSITIVE_ORDER on the texts
+     * (both fold each char to lower case of its upper case)
+     * @param text : text, may be null
+     * @return the key, the text itself when nothing to fold, null for null
+     */
+    public static String collationKey(String text) {
+        if (text == null) {
+            return null;
+        }
+        char[] chars = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char folded = Character.toLowerCase(Character.toUpperCase(c));
+            if (folded != c) {
+                if (chars == null) {
+                    chars = text.toCharArray();
+                }
+                chars[i] = folded;
+            }
+        }
+        return chars == null ? text : new String(chars);
+    }
+
+    //positions of the mails oldest first: radix by id, then (stable) by time
+    private static int[] byTime(mail[] array) {
+        int n = array.length;
+        long[] ids = new long[n];
+        long[] times = new long[n];
+        for (int i = 0; i < n; i++) {
+            // sign bit flipped: unsigned byte order is the signed order
+            ids[i] = (array[i].getId() ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+            times[i] = MailTimeOrder.keyOf(array[i].getTimestamp()) ^ Long.MIN_VALUE;
+        }
+        int[] positions = new int[n];
+        int[] spare = new int[n];
+        for (int i = 0; i < n; i++) {
+            positions[i] = i;
+        }
+        int[] sorted = radix(ids, positions, spare, 4);
+        return radix(times, sorted, sorted == positions ? spare : positions, 8);
+    }
+
+    //stable LSD radix sort of positions by unsigned keys, 8 bits a pass
+    //a pass where every key has the same byte is skipped (high bytes of ids and of close dates)
+    private static int[] radix(long[] keys, int[] positions, int[] spare, int bytes) {
+        int n = positions.length;
+        int[] count = new int[257];
+        for (int shift = 0; shift < bytes * 8; shift += 8) {
+            Arrays.fill(count, 0);
+            for (int i = 0; i < n; i++) {
+                count[(int) (keys[positions[i]] >>> shift & 0xFF) + 1]++;
+            }
+            if (count[(int) (keys[positions[0]] >>> shift & 0xFF) + 1] == n) {
+                continue;
+            }
+            for (int b = 1; b < count.length; b++) {
+                count[b] += count[b - 1];
+            }
+            for (int i = 0; i < n; i++) {
+                spare[count[(int) (keys[positions[i]] >>> shift & 0xFF)]++] = positions[i];
+            }
+            int[] swap = positions;
+            positions = spare;
+            spare = swap;
+        }
+        return positions;
+    }
+
+    //no text last
+    private static int compareKeys(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : 1) : -1;
+        }
+        return a.compareTo(b);
+    }
+
+    private static int bucket(mail email, int min, int max, boolean ascending) {
+        return ascending ? email.getPriority() - min : max - email.getPriority();
+    }
+
+    private static void write(List<mail> mails, mail[] sorted) {
+        ListIterator<mail> it = mails.listIterator();
+        for (mail email : sorted) {
+            it.next();
+            it.set(email);
+        }
+    }
+}
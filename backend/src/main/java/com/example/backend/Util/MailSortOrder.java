@@ -0,0 +1,35 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+
+import java.util.Comparator;
+
+/**
+ * Named order of a listing (order of a sort strategy), made total: ties broken by ascending id
+ * the stores keep folders in these orders with MailSortIndex instead of sorting them, found by name:
+ * two orders with the same name must order mails the same way
+ * may read id, from, subject, priority and timestamp only (the fields MailSortIndex keeps)
+ */
+public final class MailSortOrder implements Comparator<mail> {
+
+    private final String name;
+    private final Comparator<mail> order;
+
+    /**
+     * @param name : name of the sort strategy
+     * @param order : order of the strategy, ties are broken by id here
+     */
+    public MailSortOrder(String name, Comparator<mail> order) {
+        this.name = name;
+        this.order = order.thenComparingInt(mail::getId);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int compare(mail a, mail b) {
+        return order.compare(a, b);
+    }
+}
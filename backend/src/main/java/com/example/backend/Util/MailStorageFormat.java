@@ -0,0 +1,12 @@
+package com.example.backend.Util;
+
+/**
+ * on-disk format used when a mail folder is written
+ * reads don't depend on it: the format of each file is detected from its first bytes
+ */
+public enum MailStorageFormat {
+    //pretty printed json array (human readable, default)
+    JSON,
+    //length-prefixed binary records, see BinaryMailCodec
+    BINARY
+}
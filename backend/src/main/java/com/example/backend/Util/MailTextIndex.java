@@ -0,0 +1,545 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Inverted index of the mail texts of a folder: trigram of a field (subject, body, from) -> ids of the mails containing it
+ * a text search only checks the mails holding every trigram of its term instead of lower casing every mail of the folder
+ * trigrams are taken from the lower cased text, exactly what the filters search, so any mail containing the term is a
+ * candidate: the answer is a superset and the filters still decide, the substring semantics don't change
+ * (terms shorter than a trigram can't be narrowed, the caller scans the folder)
+ * updated by every write of the store while the folder is in memory, saved to <folder>.textindex next to the folder
+ * (every minute and at shutdown) and checked against the folder when loaded: only mails whose text changed are indexed again
+ * removed or re-indexed mails stay in the postings until the folder is re-indexed, filtered by the live ids
+ * kept in memory for the most recently searched folders only
+ */
+@Component
+public class MailTextIndex {
+
+    private static final int GRAM = 3;
+    private static final int FILE_MAGIC = 0x54584931;
+    //returned by the id map for a missing id
+    private static final int MISSING = Integer.MIN_VALUE;
+
+    //sorted ids of the mails holding one trigram
+    private static final class Postings {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            if (size == 0 || id > ids[size - 1]) {
+                // new mails have the highest ids: almost always an append
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                }
+                ids[size++] = id;
+                return;
+            }
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+    }
+
+    //index of one folder, guarded by itself
+    private static final class FolderIndex {
+        final File file;
+        // id -> hash of the indexed texts, ids missing here are removed mails still in the postings
+        IntIntHashMap live = new IntIntHashMap();
+        Map<Long, Postings> postings = new HashMap<>();
+        // postings entries of removed or re-indexed mails
+        int stale;
+        // changed since loaded or saved
+        boolean dirty;
+        // loaded or built and checked against the folder, writes are ignored before (the check will see them)
+        boolean ready;
+
+        FolderIndex(File file) {
+            this.file = file;
+        }
+    }
+
+    private final AtomicFileWriter atomicFileWriter;
+    private final int maxFolders;
+    //"user/folder" -> index, the least recently searched folder is saved and dropped first
+    private final LinkedHashMap<String, FolderIndex> folders;
+    //dropped by the LRU while the map lock was held, saved after it is released
+    private final List<FolderIndex> evicted = new ArrayList<>();
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong narrowed = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong reindexedMails = new AtomicLong();
+    private final AtomicLong saves = new AtomicLong();
+
+    public MailTextIndex(AtomicFileWriter atomicFileWriter,
+                         @Value("${mail.text-index.max-folders:256}") int maxFolders) {
+        this.atomicFileWriter = atomicFileWriter;
+        this.maxFolders = maxFolders;
+        this.folders = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FolderIndex> eldest) {
+                if (size() > MailTextIndex.this.maxFolders) {
+                    evicted.add(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxFolders > 0;
+    }
+
+    /**
+     * Ids of the mails that may match a text query
+     * @param user : owner email
+     * @param folder : folder name
+     * @param file : index file of the folder
+     * @param mails : content of the folder, read only if the index isn't in memory (to load it or build it)
+     * @return candidate ids (ascending), or null if the query can't be narrowed (no term of a trigram or more, index disabled)
+     */
+    public int[] candidates(String user, String folder, File file, TextQuery query, Supplier<List<mail>> mails) {
+        searches.incrementAndGet();
+        if (!isEnabled() || !canNarrow(query)) {
+            return null;
+        }
+        FolderIndex index = folderIndex(user, folder, file, mails);
+        int[] result = null;
+        synchronized (index) {
+            for (TextQuery.Clause clause : query.getClauses()) {
+                if (clause.getTerm().length() < GRAM) {
+                    // too short to narrow, the filters check it on the candidates of the other clauses
+                    continue;
+                }
+                int[] clauseIds = new int[0];
+                for (TextQuery.Field field : clause.getFields()) {
+                    clauseIds = union(clauseIds, containing(index, field, clause.getTerm()));
+                }
+                result = result == null ? clauseIds : intersect(result, clauseIds);
+                if (result.length == 0) {
+                    break;
+                }
+            }
+            // drop removed mails
+            int kept = 0;
+            for (int id : result) {
+                if (index.live.containsKey(id)) {
+                    result[kept++] = id;
+                }
+            }
+            result = Arrays.copyOf(result, kept);
+        }
+        narrowed.incrementAndGet();
+        return result;
+    }
+
+    /**
+     * A mail was appended to a folder or replaced in place (no-op if the folder isn't in memory)
+     */
+    public void added(String user, String folder, mail email) {
+        FolderIndex index = loaded(user, folder);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            if (!index.ready) {
+                return;
+            }
+            if (index.live.containsKey(email.getId())) {
+                index.stale++;
+            }
+            indexMail(index, email);
+            index.dirty = true;
+        }
+    }
+
+    /**
+     * A mail was removed from a folder (no-op if the folder isn't in memory)
+     */
+    public void removed(String user, String folder, int id) {
+        FolderIndex index = loaded(user, folder);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            if (index.ready && index.live.remove(id, MISSING) != MISSING) {
+                index.stale++;
+                index.dirty = true;
+            }
+        }
+    }
+
+    /**
+     * The whole content of a folder was replaced (no-op if the folder isn't in memory)
+     * @param mails : new content of the folder
+     */
+    public void replaced(String user, String folder, List<mail> mails) {
+        FolderIndex index = loaded(user, folder);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            if (index.ready) {
+                sync(index, mails);
+            }
+        }
+    }
+
+    /**
+     * Forget a folder and delete its index file (folder deleted)
+     */
+    public void dropFolder(String user, String folder, File file) {
+        FolderIndex index;
+        synchronized (folders) {
+            index = folders.remove(key(user, folder));
+        }
+        if (index != null) {
+            synchronized (index) {
+                index.dirty = false;
+                index.ready = false;
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            System.err.println("Could not delete text index: " + file.getPath());
+        }
+    }
+
+    /**
+     * Save the folders changed since their last save, a crash loses at most this interval
+     * (the lost changes are found again by the check against the folder at the next load)
+     */
+    @Scheduled(fixedDelayString = "${mail.text-index.save-interval-ms:60000}")
+    public void saveChanged() {
+        List<FolderIndex> indexes;
+        synchronized (folders) {
+            indexes = new ArrayList<>(folders.values());
+        }
+        for (FolderIndex index : indexes) {
+            save(index);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        saveChanged();
+    }
+
+    /**
+     * @return searches, searches narrowed by the index, index files loaded, folders indexed from scratch,
+     * mails indexed again after a change, index files written, folders in memory
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("searches", searches.get());
+        stats.put("narrowed", narrowed.get());
+        stats.put("loads", loads.get());
+        stats.put("builds", builds.get());
+        stats.put("reindexedMails", reindexedMails.get());
+        stats.put("saves", saves.get());
+        synchronized (folders) {
+            stats.put("folders", (long) folders.size());
+        }
+        stats.put("maxFolders", (long) maxFolders);
+        return stats;
+    }
+
+    private static boolean canNarrow(TextQuery query) {
+        if (query == null) {
+            return false;
+        }
+        for (TextQuery.Clause clause : query.getClauses()) {
+            if (clause.getTerm().length() >= GRAM) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //ids of the mails whose field has every trigram of the term, caller holds the index lock
+    private static int[] containing(FolderIndex index, TextQuery.Field field, String term) {
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + GRAM <= term.length(); i++) {
+            Postings postings = index.postings.get(gramKey(field, term, i));
+            if (postings == null) {
+                return new int[0];
+            }
+            lists.add(postings);
+        }
+        // shortest list first, every intersection only gets smaller
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        int[] result = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, Arrays.copyOf(lists.get(i).ids, lists.get(i).size));
+        }
+        return result;
+    }
+
+    //caller holds the index lock
+    private void indexMail(FolderIndex index, mail email) {
+        int id = email.getId();
+        for (TextQuery.Field field : TextQuery.Field.values()) {
+            String text = field.of(email);
+            if (text == null) {
+                continue;
+            }
+            // lower cased like the filters, so every substring they can find is made of indexed trigrams
+            String lower = text.toLowerCase();
+            for (int i = 0; i + GRAM <= lower.length(); i++) {
+                index.postings.computeIfAbsent(gramKey(field, lower, i), k -> new Postings()).add(id);
+            }
+        }
+        index.live.put(id, textHash(email), MISSING);
+    }
+
+    //make the index match the folder: index the mails that are new or whose text changed, forget the others
+    //caller holds the index lock
+    private void sync(FolderIndex index, List<mail> mails) {
+        IntIntHashMap live = new IntIntHashMap(mails.size());
+        int unchanged = 0;
+        int reindexed = 0;
+        for (mail email : mails) {
+            int hash = textHash(email);
+            if (index.live.get(email.getId(), MISSING) == hash) {
+                unchanged++;
+            } else {
+                indexMail(index, email);
+                reindexed++;
+            }
+            live.put(email.getId(), hash, MISSING);
+        }
+        index.stale += index.live.size() - unchanged;
+        index.live = live;
+        if (reindexed > 0 || index.live.size() != unchanged) {
+            index.dirty = true;
+        }
+        reindexedMails.addAndGet(reindexed);
+    }
+
+    private FolderIndex folderIndex(String user, String folder, File file, Supplier<List<mail>> mails) {
+        String key = key(user, folder);
+        FolderIndex index;
+        synchronized (folders) {
+            index = folders.get(key);
+            if (index == null) {
+                index = new FolderIndex(file);
+                folders.put(key, index);
+            }
+        }
+        saveEvicted();
+        synchronized (index) {
+            if (!index.ready || index.stale > index.live.size() + 64) {
+                // first search since startup (or eviction), or too many dead entries: load or build, then check
+                List<mail> content = mails.get();
+                if (!index.ready && load(index)) {
+                    loads.incrementAndGet();
+                } else {
+                    index.live = new IntIntHashMap(content.size());
+                    index.postings = new HashMap<>();
+                    index.stale = 0;
+                    builds.incrementAndGet();
+                }
+                sync(index, content);
+                index.ready = true;
+            }
+        }
+        return index;
+    }
+
+    private FolderIndex loaded(String user, String folder) {
+        synchronized (folders) {
+            return folders.get(key(user, folder));
+        }
+    }
+
+    private void saveEvicted() {
+        List<FolderIndex> toSave;
+        synchronized (folders) {
+            if (evicted.isEmpty()) {
+                return;
+            }
+            toSave = new ArrayList<>(evicted);
+            evicted.clear();
+        }
+        for (FolderIndex index : toSave) {
+            save(index);
+        }
+    }
+
+    //caller holds the index lock, false if there is no readable index file
+    private boolean load(FolderIndex index) {
+        if (!index.file.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index.file)))) {
+            if (in.readInt() != FILE_MAGIC) {
+                return false;
+            }
+            int liveCount = in.readInt();
+            IntIntHashMap live = new IntIntHashMap(liveCount);
+            for (int i = 0; i < liveCount; i++) {
+                live.put(in.readInt(), in.readInt(), MISSING);
+            }
+            int postingsCount = in.readInt();
+            Map<Long, Postings> postings = new HashMap<>(postingsCount * 2);
+            for (int i = 0; i < postingsCount; i++) {
+                long gram = in.readLong();
+                Postings list = new Postings();
+                list.size = in.readInt();
+                list.ids = new int[Math.max(2, list.size)];
+                for (int j = 0; j < list.size; j++) {
+                    list.ids[j] = in.readInt();
+                }
+                postings.put(gram, list);
+            }
+            index.live = live;
+            index.postings = postings;
+            index.stale = 0;
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error reading text index: " + index.file.getPath() + " (" + e.getMessage() + ")");
+            return false;
+        }
+    }
+
+    private void save(FolderIndex index) {
+        synchronized (index) {
+            if (!index.dirty) {
+                return;
+            }
+            File directory = index.file.getAbsoluteFile().getParentFile();
+            if (directory != null && !directory.isDirectory()) {
+                // folder gone with its user directory
+                index.dirty = false;
+                return;
+            }
+            try {
+                atomicFileWriter.writeBytes(index.file, out -> write(index, new DataOutputStream(new BufferedOutputStream(out))));
+                index.dirty = false;
+                saves.incrementAndGet();
+            } catch (IOException e) {
+                // stays dirty, tried again at the next save
+                System.err.println("Error writing text index: " + index.file.getPath() + " (" + e.getMessage() + ")");
+            }
+        }
+    }
+
+    //ids of removed mails aren't written, a loaded index starts without dead entries
+    private static void write(FolderIndex index, DataOutputStream out) throws IOException {
+        out.writeInt(FILE_MAGIC);
+        int[] liveIds = index.live.keys();
+        out.writeInt(liveIds.length);
+        for (int id : liveIds) {
+            out.writeInt(id);
+            out.writeInt(index.live.get(id, MISSING));
+        }
+        List<Map.Entry<Long, Postings>> entries = new ArrayList<>(index.postings.entrySet());
+        int[] kept = new int[0];
+        out.writeInt(entries.size());
+        for (Map.Entry<Long, Postings> entry : entries) {
+            Postings list = entry.getValue();
+            if (kept.length < list.size) {
+                kept = new int[list.size];
+            }
+            int size = 0;
+            for (int i = 0; i < list.size; i++) {
+                if (index.live.containsKey(list.ids[i])) {
+                    kept[size++] = list.ids[i];
+                }
+            }
+            out.writeLong(entry.getKey());
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(kept[i]);
+            }
+        }
+        out.flush();
+    }
+
+    //field in the top bits, then the three chars (16 bits each)
+    private static long gramKey(TextQuery.Field field, String text, int at) {
+        return ((long) field.ordinal() << 48) | ((long) text.charAt(at) << 32) | ((long) text.charAt(at + 1) << 16) | text.charAt(at + 2);
+    }
+
+    //changes when an indexed text changes (a mail saved again with another subject or body)
+    private static int textHash(mail email) {
+        int hash = 1;
+        for (TextQuery.Field field : TextQuery.Field.values()) {
+            String text = field.of(email);
+            hash = 31 * hash + (text == null ? 0 : text.hashCode());
+        }
+        // murmur finalizer, and never the value marking a missing id
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash == MISSING ? 0 : hash;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, size = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, size = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                result[size++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                result[size++] = b[j++];
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static String key(String user, String folder) {
+        return user + "/" + folder;
+    }
+}
@@ -0,0 +1,307 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Mails of each folder in date order: epoch millis (MailTimeOrder.keyOf) and ids in two parallel arrays sorted by (key, id)
+ * a date range is two binary searches, and date-asc / date-desc listings read the ids front to back or back to front
+ * instead of sorting the folder
+ * built from the whole folder the first time it is queried, then updated by every write of the store
+ * (writes to a folder that isn't built are ignored, the build will read them)
+ * memory only, kept for the most recently used users
+ */
+@Component
+public class MailTimeIndex {
+
+    //mails of one folder sorted by (key, id)
+    private static final class FolderTimes {
+        long[] keys;
+        int[] ids;
+        int size;
+
+        FolderTimes(List<mail> mails) {
+            size = mails.size();
+            long[] packedKeys = new long[size];
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                packedKeys[i] = MailTimeOrder.keyOf(mails.get(i).getTimestamp());
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> packedKeys[a] != packedKeys[b] ? Long.compare(packedKeys[a], packedKeys[b])
+                    : Integer.compare(mails.get(a).getId(), mails.get(b).getId()));
+            keys = new long[Math.max(size, 16)];
+            ids = new int[Math.max(size, 16)];
+            for (int i = 0; i < size; i++) {
+                keys[i] = packedKeys[order[i]];
+                ids[i] = mails.get(order[i]).getId();
+            }
+        }
+
+        void add(mail email) {
+            // may replace a version of the mail with another time
+            remove(email.getId());
+            long key = MailTimeOrder.keyOf(email.getTimestamp());
+            int at = size;
+            // new mails are the newest: almost always an append
+            if (size > 0 && (keys[size - 1] > key || keys[size - 1] == key && ids[size - 1] > email.getId())) {
+                at = lowerBound(key);
+                while (at < size && keys[at] == key && ids[at] < email.getId()) {
+                    at++;
+                }
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(keys, at, keys, at + 1, size - at);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            keys[at] = key;
+            ids[at] = email.getId();
+            size++;
+        }
+
+        void remove(int id) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (ids[i] == id) {
+                    System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+                    System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                    size--;
+                    return;
+                }
+            }
+        }
+
+        //first position whose (key, id) is >= (key, id)
+        int lowerBound(long key, long id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (keys[middle] < key || keys[middle] == key && ids[middle] < id) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        //first position whose key is >= key
+        int lowerBound(long key) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (keys[middle] < key) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    //folders of one user, guarded by the UserTimes itself
+    private static final class UserTimes {
+        final Map<String, FolderTimes> folders = new HashMap<>();
+    }
+
+    private final int maxUsers;
+    private final LinkedHashMap<String, UserTimes> users;
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong builds = new AtomicLong();
+
+    public MailTimeIndex(@Value("${mail.time-index.max-users:10000}") int maxUsers) {
+        this.maxUsers = maxUsers;
+        // access order: the least recently used user is dropped first
+        this.users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserTimes> eldest) {
+                return size() > MailTimeIndex.this.maxUsers;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxUsers > 0;
+    }
+
+    /**
+     * Ids of the mails of a folder in date order, within a time range
+     * @param user : owner email
+     * @param folder : folder name
+     * @param from : lower bound (inclusive, to the millisecond), null for no lower bound
+     * @param to : upper bound (inclusive, to the millisecond), null for no upper bound
+     * @param newestFirst : false for MailTimeOrder.OLDEST_FIRST, true for MailTimeOrder.NEWEST_FIRST
+     * @param mails : content of the folder, read only if its index isn't built
+     * @return ids (a copy), undated mails included only without bounds, or null if the index is disabled
+     */
+    public int[] ids(String user, String folder, LocalDateTime from, LocalDateTime to, boolean newestFirst,
+                     Supplier<List<mail>> mails) {
+        return ids(user, folder, from, to, newestFirst, null, 0, mails);
+    }
+
+    /**
+     * Same as ids, only the mails that come after a mail in that order (keyset paging)
+     * @param after : last mail seen, only its timestamp and id are read (it may have left the folder since)
+     * @param limit : only the first `limit` ids in that order (a page), 0 or less for all of them
+     */
+    public int[] idsAfter(String user, String folder, LocalDateTime from, LocalDateTime to, boolean newestFirst,
+                          mail after, int limit, Supplier<List<mail>> mails) {
+        return ids(user, folder, from, to, newestFirst, after, limit, mails);
+    }
+
+    //after null: the whole range
+    private int[] ids(String user, String folder, LocalDateTime from, LocalDateTime to, boolean newestFirst,
+                      mail after, int limit, Supplier<List<mail>> mails) {
+        UserTimes index = userTimes(user, true);
+        if (index == null) {
+            return null;
+        }
+        queries.incrementAndGet();
+        synchronized (index) {
+            FolderTimes times = index.folders.get(folder);
+            if (times == null) {
+                // writers wait for the build: none slips between the read and the first update
+                times = new FolderTimes(mails.get());
+                index.folders.put(folder, times);
+                builds.incrementAndGet();
+            }
+            int start = from == null ? 0 : times.lowerBound(MailTimeOrder.keyOf(from));
+            int end = times.size;
+            if (from != null || to != null) {
+                // a range never holds undated mails
+                end = to == null ? times.lowerBound(MailTimeOrder.UNDATED) : times.lowerBound(MailTimeOrder.keyOf(to) + 1);
+            }
+            if (after != null) {
+                long key = MailTimeOrder.keyOf(after.getTimestamp());
+                if (newestFirst) {
+                    // read back to front: what is before the mail
+                    end = Math.min(end, times.lowerBound(key, after.getId()));
+                } else {
+                    start = Math.max(start, times.lowerBound(key, (long) after.getId() + 1));
+                }
+            }
+            end = Math.max(start, end);
+            if (limit > 0 && end - start > limit) {
+                // only the page is copied: the oldest of the range, or the newest when read back to front
+                if (newestFirst) {
+                    start = end - limit;
+                } else {
+                    end = start + limit;
+                }
+            }
+            int[] ids = Arrays.copyOfRange(times.ids, start, end);
+            if (newestFirst) {
+                for (int i = 0, j = ids.length - 1; i < j; i++, j--) {
+                    int id = ids[i];
+                    ids[i] = ids[j];
+                    ids[j] = id;
+                }
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * A mail was appended to a folder (or replaced in place if the id is already there)
+     */
+    public void added(String user, String folder, mail email) {
+        UserTimes index = userTimes(user, false);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            FolderTimes times = index.folders.get(folder);
+            if (times != null) {
+                times.add(email);
+            }
+        }
+    }
+
+    /**
+     * A mail was removed from a folder
+     */
+    public void removed(String user, String folder, int id) {
+        UserTimes index = userTimes(user, false);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            FolderTimes times = index.folders.get(folder);
+            if (times != null) {
+                times.remove(id);
+            }
+        }
+    }
+
+    /**
+     * A whole folder was rewritten
+     * @param mails : content of the folder now
+     */
+    public void replaced(String user, String folder, List<mail> mails) {
+        UserTimes index = userTimes(user, false);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            if (index.folders.containsKey(folder)) {
+                index.folders.put(folder, new FolderTimes(mails));
+            }
+        }
+    }
+
+    /**
+     * Forget a folder (deleted, or its content can't be trusted anymore)
+     */
+    public void dropFolder(String user, String folder) {
+        UserTimes index = userTimes(user, false);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            index.folders.remove(folder);
+        }
+    }
+
+    /**
+     * @return queries answered, folders built, number of users in memory
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("queries", queries.get());
+        stats.put("builds", builds.get());
+        synchronized (users) {
+            stats.put("users", (long) users.size());
+        }
+        stats.put("maxUsers", (long) maxUsers);
+        return stats;
+    }
+
+    private UserTimes userTimes(String user, boolean create) {
+        if (!isEnabled()) {
+            return null;
+        }
+        synchronized (users) {
+            UserTimes index = users.get(user);
+            if (index == null && create) {
+                index = new UserTimes();
+                users.put(user, index);
+            }
+            return index;
+        }
+    }
+}
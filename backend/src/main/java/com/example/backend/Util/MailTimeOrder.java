@@ -0,0 +1,35 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+
+/**
+ * Date order of the mail listings: timestamp to the millisecond, then id
+ * mails without timestamp come after every dated mail (oldest first) or before them (newest first)
+ * the same key is kept by MailTimeIndex, so a folder read in index order is already sorted
+ */
+public final class MailTimeOrder {
+
+    //key of a mail without timestamp, after every real time
+    public static final long UNDATED = Long.MAX_VALUE;
+
+    public static final Comparator<mail> OLDEST_FIRST = Comparator
+            .comparingLong((mail email) -> keyOf(email.getTimestamp()))
+            .thenComparingInt(mail::getId);
+
+    public static final Comparator<mail> NEWEST_FIRST = OLDEST_FIRST.reversed();
+
+    private MailTimeOrder() {
+    }
+
+    /**
+     * @param timestamp : time of a mail, may be null
+     * @return epoch millis (the local time read as UTC, only the order matters), UNDATED for null
+     */
+    public static long keyOf(LocalDateTime timestamp) {
+        return timestamp == null ? UNDATED : timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
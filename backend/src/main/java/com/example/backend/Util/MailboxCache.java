@@ -0,0 +1,340 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Write-through cache of parsed mail folders (inbox.json, sent.json, folder_x.json ...)
+ * sits inside JsonFileManager so every repo/service gets it for free
+ * keyed by the absolute file path, bounded by total weight (number of cached mails) and evicted LRU
+ * every entry remembers the identity/lastModified/length (stamp) of the file(s) it came from,
+ * so a file changed on disk behind our back is detected and re-read
+ */
+@Component
+public class MailboxCache {
+
+    /**
+     * identity (inode), lastModified and length of the file(s) backing an entry (snapshot + journal)
+     * an entry is only served while the files still carry the same stamp
+     * files are replaced by atomic rename, so every write gives the snapshot a new identity
+     */
+    public static final class Stamp {
+        private final long[] values;
+
+        private Stamp(long[] values) {
+            this.values = values;
+        }
+
+        public static Stamp of(File... files) {
+            long[] values = new long[files.length * 3];
+            for (int i = 0; i < files.length; i++) {
+                //missing file -> -1s, so creating it later changes the stamp
+                Arrays.fill(values, 3 * i, 3 * i + 3, -1);
+                if (files[i] == null) {
+                    continue;
+                }
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(files[i].toPath(), BasicFileAttributes.class);
+                    Object fileKey = attributes.fileKey();
+                    values[3 * i] = fileKey != null ? fileKey.hashCode() : 0;
+                    values[3 * i + 1] = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+                    values[3 * i + 2] = attributes.size();
+                } catch (IOException e) {
+                    // NoSuchFileException -> keep the "missing" values
+                }
+            }
+            return new Stamp(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Stamp && Arrays.equals(values, ((Stamp) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+    }
+
+    //one cached folder file
+    private static final class Entry {
+        final List<mail> mails;
+        final Stamp stamp;
+        final int weight;
+
+        Entry(List<mail> mails, Stamp stamp) {
+            this.mails = mails;
+            this.stamp = stamp;
+            //an empty folder still costs a slot
+            this.weight = Math.max(1, mails.size());
+        }
+    }
+
+    //max total weight (mails) kept in memory, 0 disables the cache
+    private final long maxWeight;
+    //access ordered map -> iteration order is least recently used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalWeight = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong staleInvalidations = new AtomicLong();
+
+    public MailboxCache(@Value("${mail.cache.max-weight:200000}") long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    public boolean isEnabled() {
+        return maxWeight > 0;
+    }
+
+    /**
+     * Get a copy of the cached folder
+     * @param file : folder file on disk (cache key)
+     * @param current : current stamp of the backing files, used to check that the cached copy is still fresh
+     * @return copy of the cached mails, or null on a miss
+     */
+    public List<mail> get(File file, Stamp current) {
+        if (!isEnabled()) {
+            return null;
+        }
+        String key = keyOf(file);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            //file was changed outside JsonFileManager (or deleted) -> drop the entry
+            if (!entry.stamp.equals(current)) {
+                remove(key);
+                staleInvalidations.incrementAndGet();
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return copyOf(entry.mails);
+        }
+    }
+
+    /**
+     * Filter a cached folder without copying the mails that don't match
+     * @param file : folder file on disk (cache key)
+     * @param current : current stamp of the backing files
+     * @param filter : mails to return
+     * @param summaryOnly : copy the matching mails without their details (recipients, body, attachments)
+     * @return copies of the matching mails, or null on a miss
+     */
+    public List<mail> scan(File file, Stamp current, Predicate<mail> filter, boolean summaryOnly) {
+        if (!isEnabled()) {
+            return null;
+        }
+        String key = keyOf(file);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            if (!entry.stamp.equals(current)) {
+                remove(key);
+                staleInvalidations.incrementAndGet();
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            List<mail> matches = new ArrayList<>();
+            for (mail email : entry.mails) {
+                if (filter == null || filter.test(email)) {
+                    matches.add(summaryOnly ? summaryOf(email) : email);
+                }
+            }
+            return summaryOnly ? matches : copyOf(matches);
+        }
+    }
+
+    /**
+     * One mail of a cached folder by position (id index hint), without copying the rest of the folder
+     * @param file : folder file on disk (cache key)
+     * @param current : current stamp of the backing files
+     * @param position : position of the mail in the folder
+     * @param id : id the mail at that position must have
+     * @return copy of the mail, or null on a miss or if another mail is at that position
+     */
+    public mail getAt(File file, Stamp current, int position, int id) {
+        if (!isEnabled()) {
+            return null;
+        }
+        String key = keyOf(file);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null || !entry.stamp.equals(current)) {
+                // not counted, the caller falls back to a normal read which counts the miss
+                return null;
+            }
+            if (position < 0 || position >= entry.mails.size() || entry.mails.get(position).getId() != id) {
+                return null;
+            }
+            hits.incrementAndGet();
+            return copyOf(List.of(entry.mails.get(position))).get(0);
+        }
+    }
+
+    /**
+     * Store a folder that was just read or written
+     * for reads the stamp must be taken BEFORE reading, so a write racing with the read leaves a stale-looking entry
+     * @param file : folder file on disk (cache key)
+     * @param mails : content of the file
+     * @param stamp : stamp of the backing files holding exactly these mails
+     */
+    public void put(File file, List<mail> mails, Stamp stamp) {
+        if (!isEnabled()) {
+            return;
+        }
+        String key = keyOf(file);
+        //copy outside the lock, callers keep mutating their own list/objects afterwards
+        Entry entry = new Entry(copyOf(mails), stamp);
+        synchronized (this) {
+            remove(key);
+            store(key, entry);
+        }
+    }
+
+    /**
+     * Apply a small in-place change (journal record) to a cached folder instead of dropping it
+     * the change is only applied if the entry still matches the stamp the files had before the change
+     * @param file : folder file on disk (cache key)
+     * @param before : stamp of the backing files before the change was written
+     * @param after : stamp of the backing files after the change was written
+     * @param change : mutation applied to the cached list, must not keep references to caller objects
+     */
+    public void apply(File file, Stamp before, Stamp after, Consumer<List<mail>> change) {
+        if (!isEnabled()) {
+            return;
+        }
+        String key = keyOf(file);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return;
+            }
+            remove(key);
+            if (entry.stamp.equals(before)) {
+                change.accept(entry.mails);
+                store(key, new Entry(entry.mails, after));
+            }
+        }
+    }
+
+    /**
+     * Forget a file (deleted, or written with something that isn't a mail list)
+     */
+    public void invalidate(File file) {
+        if (!isEnabled()) {
+            return;
+        }
+        String key = keyOf(file);
+        synchronized (this) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Counters to size the cache against the polling load
+     * @return hits, misses, evictions, stale invalidations and current size
+     */
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("staleInvalidations", staleInvalidations.get());
+        stats.put("entries", (long) entries.size());
+        stats.put("weight", totalWeight);
+        stats.put("maxWeight", maxWeight);
+        return stats;
+    }
+
+    //must be called while holding the lock
+    private void store(String key, Entry entry) {
+        //a single folder bigger than the whole cache is not worth keeping
+        if (entry.weight > maxWeight) {
+            return;
+        }
+        entries.put(key, entry);
+        totalWeight += entry.weight;
+        evictIfNeeded();
+    }
+
+    //must be called while holding the lock
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            totalWeight -= old.weight;
+        }
+    }
+
+    //must be called while holding the lock, drops least recently used entries until we fit again
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (totalWeight > maxWeight && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            totalWeight -= eldest.weight;
+            evictions.incrementAndGet();
+        }
+    }
+
+    //same file reached through relative and absolute paths must share one entry
+    private static String keyOf(File file) {
+        return file.getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    //new mail with the fields a listing shows, nothing shared with the cached one
+    private static mail summaryOf(mail email) {
+        mail summary = new mail();
+        summary.setId(email.getId());
+        summary.setFrom(email.getFrom());
+        summary.setSubject(email.getSubject());
+        summary.setPreview(email.getPreview());
+        summary.setStarred(email.isStarred());
+        summary.setHasAttachment(email.isHasAttachment());
+        summary.setTimestamp(email.getTimestamp());
+        summary.setPriority(email.getPriority());
+        summary.setTrashedAt(email.getTrashedAt());
+        summary.setFolder(email.getFolder());
+        summary.setCustomFolderId(email.getCustomFolderId());
+        return summary;
+    }
+
+    //callers mutate the mails they get (setStarred, setFolder, setTo ...) so never hand out cached objects
+    public static List<mail> copyOf(List<mail> mails) {
+        List<mail> copy = new ArrayList<>(mails.size());
+        for (mail email : mails) {
+            try {
+                copy.add((mail) email.clone());
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException("mail must be cloneable", e);
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.backend.Util;
+
+import java.io.File;
+import java.util.Set;
+
+/**
+ * Offline conversion of every mail folder under data/users between the json and binary formats
+ * pending journals are folded in, other files (info.json, contacts.json, folders.json ...) stay json
+ * stop the server first, it keeps journal/cache state in memory
+ * usage: java -cp target/classes:&lt;gson jar&gt; com.example.backend.Util.MailboxFormatTool json|binary [data/users]
+ * users are found in both the flat and the hashed fan-out layout, nothing is moved
+ * then set mail.storage.format to the same format, otherwise the next writes switch folders back one by one
+ */
+public final class MailboxFormatTool {
+
+    // system folders of a user, custom folders are folder_<id>.json
+    private static final Set<String> SYSTEM_FOLDERS = Set.of("inbox.json", "sent.json", "draft.json", "trash.json");
+
+    private MailboxFormatTool() {}
+
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: MailboxFormatTool json|binary [users directory]");
+            System.exit(2);
+        }
+        MailStorageFormat target;
+        try {
+            target = MailStorageFormat.valueOf(args[0].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown format: " + args[0] + " (expected json or binary)");
+            System.exit(2);
+            return;
+        }
+        File usersDir = new File(args.length > 1 ? args[1] : "data/users");
+        if (!usersDir.isDirectory()) {
+            System.err.println("Not a directory: " + usersDir.getPath());
+            System.exit(1);
+            return;
+        }
+
+        if (convertAll(usersDir, target) > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Convert every mail folder of every user
+     * @param usersDir : users directory (flat or fan-out layout)
+     * @param target : format to write
+     * @return number of folders that could not be converted
+     */
+    static int convertAll(File usersDir, MailStorageFormat target) {
+        // no cache, journal mode on so leftover journals are read and deleted
+        AtomicFileWriter writer = new AtomicFileWriter(FsyncPolicy.FILE);
+        UserDirectoryLayout layout = new UserDirectoryLayout(usersDir.getPath(), 0);
+        JsonFileManager manager = new JsonFileManager(new MailboxCache(0), new MailboxJournal(true, writer), writer, target,
+                new MappedFileCache(0, 0), new WriteCoalescer(0, 1, DurabilityMode.COMMIT), layout);
+
+        int converted = 0;
+        int failed = 0;
+        long bytesBefore = 0;
+        long bytesAfter = 0;
+        for (File userFolder : layout.userDirectories()) {
+            File[] folders = userFolder.listFiles((dir, name) -> isMailFolder(name));
+            if (folders == null) {
+                continue;
+            }
+            for (File folder : folders) {
+                long before = folder.length();
+                if (manager.convertMailFolder(folder.getPath())) {
+                    converted++;
+                    bytesBefore += before;
+                    bytesAfter += folder.length();
+                } else {
+                    failed++;
+                    System.err.println("Could not convert: " + folder.getPath());
+                }
+            }
+        }
+
+        System.out.println("Converted " + converted + " mail folders to " + target
+                + " (" + bytesBefore + " -> " + bytesAfter + " bytes), " + failed + " failed");
+        return failed;
+    }
+
+    private static boolean isMailFolder(String fileName) {
+        return SYSTEM_FOLDERS.contains(fileName) || (fileName.startsWith("folder_") && fileName.endsWith(".json"));
+    }
+}
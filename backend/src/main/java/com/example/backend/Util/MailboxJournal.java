@@ -0,0 +1,346 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import com.google.gson.JsonParseException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only record log next to a mail folder file (inbox.json -> inbox.journal)
+ * a delivery appends one line instead of rewriting the whole folder,
+ * deletes/moves/star toggles append small mutation records
+ * the folder content is always: snapshot (inbox.json) + replay of the journal lines
+ * a background compaction (MailboxCompactionService) folds the journal back into the snapshot
+ */
+@Component
+public class MailboxJournal {
+
+    public enum Op { APPEND, REMOVE, STAR }
+
+    /**
+     * one journal line, serialized as compact json
+     * replaying a record is idempotent (APPEND is an upsert by id, STAR sets an absolute value),
+     * so a crash between writing the snapshot and deleting the journal is harmless
+     */
+    public static final class Record {
+        private Op op;
+        private Integer id;
+        private Boolean starred;
+        private mail mail;
+
+        private Record() {}
+
+        public static Record append(mail item) {
+            Record record = new Record();
+            record.op = Op.APPEND;
+            record.id = item.getId();
+            //callers keep mutating their mail object after handing it over (setTo(null) in composeMail)
+            record.mail = MailboxCache.copyOf(List.of(item)).get(0);
+            return record;
+        }
+
+        public static Record remove(int id) {
+            Record record = new Record();
+            record.op = Op.REMOVE;
+            record.id = id;
+            return record;
+        }
+
+        public static Record star(int id, boolean starred) {
+            Record record = new Record();
+            record.op = Op.STAR;
+            record.id = id;
+            record.starred = starred;
+            return record;
+        }
+
+        public Op getOp() {
+            return op;
+        }
+
+        public int getId() {
+            return id;
+        }
+    }
+
+    private static final String JOURNAL_EXTENSION = ".journal";
+
+    //journal mode on/off, off = every change rewrites the whole folder file (old behaviour)
+    private final boolean enabled;
+    //folder files whose journal holds records not yet folded into the snapshot
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    //one lock per folder file, serializes appends, snapshot writes and compaction of that folder
+    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    //appends go through it so they follow the configured fsync policy
+    private final AtomicFileWriter atomicFileWriter;
+
+    public MailboxJournal(@Value("${mail.journal.enabled:false}") boolean enabled, AtomicFileWriter atomicFileWriter) {
+        this.enabled = enabled;
+        this.atomicFileWriter = atomicFileWriter;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * journal file of a folder file
+     * @param folderFile : e.g. data/users/x/inbox.json
+     * @return e.g. data/users/x/inbox.journal
+     */
+    public File journalFileFor(File folderFile) {
+        String name = folderFile.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        return new File(folderFile.getParentFile(), base + JOURNAL_EXTENSION);
+    }
+
+    /**
+     * lock guarding one folder file (snapshot + journal)
+     */
+    public Object lockFor(File folderFile) {
+        return locks.computeIfAbsent(keyOf(folderFile), key -> new Object());
+    }
+
+    /**
+     * Append one record at the end of the journal (single write of one line)
+     * caller must hold lockFor(folderFile)
+     */
+    public void append(File folderFile, Record record) throws IOException {
+        append(folderFile, List.of(record));
+    }
+
+    /**
+     * Append several records with a single write and a single fsync (group commit)
+     * caller must hold lockFor(folderFile)
+     */
+    public void append(File folderFile, List<Record> records) throws IOException {
+        File journalFile = journalFileFor(folderFile);
+        StringBuilder lines = new StringBuilder();
+        for (Record record : records) {
+            lines.append(JsonFileManager.compactGson().toJson(record)).append('\n');
+        }
+        atomicFileWriter.append(journalFile, lines.toString().getBytes(StandardCharsets.UTF_8));
+        dirty.add(keyOf(folderFile));
+    }
+
+    /**
+     * Read all records of a folder's journal
+     * a torn last line (crash in the middle of an append) is ignored
+     * @return records in append order, empty if there is no journal
+     */
+    public List<Record> readRecords(File folderFile) throws IOException {
+        File journalFile = journalFileFor(folderFile);
+        List<Record> records = new ArrayList<>();
+        if (!journalFile.exists()) {
+            return records;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    records.add(JsonFileManager.compactGson().fromJson(line, Record.class));
+                } catch (JsonParseException e) {
+                    System.err.println("Ignoring torn journal record in: " + journalFile.getPath());
+                    break;
+                }
+            }
+        }
+        if (!records.isEmpty()) {
+            //journals left over from a previous run get compacted too
+            dirty.add(keyOf(folderFile));
+        }
+        return records;
+    }
+
+    /**
+     * Drop the journal once its records are part of the snapshot
+     * caller must hold lockFor(folderFile)
+     */
+    public void clear(File folderFile) {
+        File journalFile = journalFileFor(folderFile);
+        if (journalFile.exists() && !journalFile.delete()) {
+            System.err.println("Could not delete journal: " + journalFile.getPath());
+            return;
+        }
+        dirty.remove(keyOf(folderFile));
+    }
+
+    /**
+     * @return folder files that have records waiting for compaction
+     */
+    public List<File> dirtyFolders() {
+        List<File> folders = new ArrayList<>();
+        for (String key : dirty) {
+            folders.add(new File(key));
+        }
+        return folders;
+    }
+
+    /**
+     * Replay records in order over a folder's snapshot
+     * @param mails : snapshot content, modified in place
+     * @param records : journal records in append order
+     */
+    public static void replay(List<mail> mails, List<Record> records) {
+        for (Record record : records) {
+            apply(mails, record);
+        }
+    }
+
+    /**
+     * Apply one record to a folder list
+     * @return true if the list changed
+     */
+    public static boolean apply(List<mail> mails, Record record) {
+        switch (record.op) {
+            case APPEND: {
+                mail copy = MailboxCache.copyOf(List.of(record.mail)).get(0);
+                for (int i = 0; i < mails.size(); i++) {
+                    if (mails.get(i).getId() == record.id) {
+                        mails.set(i, copy);
+                        return true;
+                    }
+                }
+                mails.add(copy);
+                return true;
+            }
+            case REMOVE:
+                return mails.removeIf(email -> email.getId() == record.id);
+            case STAR:
+                for (mail email : mails) {
+                    if (email.getId() == record.id) {
+                        email.setStarred(record.starred);
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Net effect of a journal, applied mail by mail while the snapshot is streamed
+     * gives exactly the same list as replay() over the snapshot, in O(snapshot + records)
+     */
+    public static final class Overlay {
+        //what the journal says about one id
+        private static final class State {
+            mail replacement;
+            Boolean starred;
+            boolean removed;
+            //re-added after a REMOVE -> lives at the end of the folder, not at its snapshot position
+            boolean movedToEnd;
+        }
+
+        public static final Overlay EMPTY = new Overlay();
+
+        private final Map<Integer, State> states = new HashMap<>();
+        //mails appended by the journal that may not exist in the snapshot, in replay order
+        private final LinkedHashMap<Integer, State> appended = new LinkedHashMap<>();
+
+        private Overlay() {}
+
+        public static Overlay of(List<Record> records) {
+            if (records.isEmpty()) {
+                return EMPTY;
+            }
+            Overlay overlay = new Overlay();
+            for (Record record : records) {
+                State state = overlay.states.computeIfAbsent(record.id, id -> new State());
+                switch (record.op) {
+                    case APPEND:
+                        if (state.removed) {
+                            state.movedToEnd = true;
+                            overlay.appended.remove(record.id);
+                        }
+                        state.replacement = record.mail;
+                        state.removed = false;
+                        state.starred = null;
+                        overlay.appended.putIfAbsent(record.id, state);
+                        break;
+                    case REMOVE:
+                        state.replacement = null;
+                        state.removed = true;
+                        state.starred = null;
+                        overlay.appended.remove(record.id);
+                        break;
+                    case STAR:
+                        if (state.replacement != null) {
+                            state.replacement.setStarred(record.starred);
+                        } else if (!state.removed) {
+                            state.starred = record.starred;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return overlay;
+        }
+
+        public boolean isEmpty() {
+            return states.isEmpty();
+        }
+
+        /**
+         * Apply the journal to one snapshot mail
+         * @param snapshotMail : mail as stored in the snapshot (may be modified)
+         * @return the mail to emit at this position, or null if it was removed/moved
+         */
+        public mail resolve(mail snapshotMail) {
+            State state = states.get(snapshotMail.getId());
+            if (state == null) {
+                return snapshotMail;
+            }
+            if (state.removed || state.movedToEnd) {
+                return null;
+            }
+            if (state.replacement != null) {
+                //upsert in place, no need to emit it again at the end
+                appended.remove(snapshotMail.getId());
+                return copyOf(state.replacement);
+            }
+            if (state.starred != null) {
+                snapshotMail.setStarred(state.starred);
+            }
+            return snapshotMail;
+        }
+
+        /**
+         * Mails to emit after the last snapshot mail, call once after the snapshot was streamed
+         * @return fresh copies, in replay order
+         */
+        public List<mail> tail() {
+            List<mail> tail = new ArrayList<>(appended.size());
+            for (State state : appended.values()) {
+                tail.add(copyOf(state.replacement));
+            }
+            return tail;
+        }
+
+        private static mail copyOf(mail email) {
+            return MailboxCache.copyOf(List.of(email)).get(0);
+        }
+    }
+
+    private static String keyOf(File file) {
+        return file.getAbsoluteFile().toPath().normalize().toString();
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.backend.Util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Locks for multi-step mailbox operations (read, check, then modify one or more folders)
+ * one lock per mailbox (user, folder) instead of one global lock, so different users never wait for each other
+ * mailboxes are hashed onto a fixed set of striped ReadWriteLocks, memory stays constant whatever the number of users
+ * operations touching several mailboxes (move, delete to trash, deliver) take all their stripes in
+ * ascending stripe order, so two of them can never wait for each other in a cycle (no deadlock)
+ * single file writes are already serialized inside JsonFileManager, these locks make whole operations atomic
+ */
+@Component
+public class MailboxLockManager {
+
+    /**
+     * locks held by one operation, released in reverse order by close()
+     * use with try-with-resources
+     */
+    public static final class Handle implements AutoCloseable {
+        private final Lock[] locks;
+
+        private Handle(Lock[] locks) {
+            this.locks = locks;
+        }
+
+        @Override
+        public void close() {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].unlock();
+            }
+        }
+
+        //stripes held, one per distinct stripe of the mailboxes
+        int stripes() {
+            return locks.length;
+        }
+    }
+
+    private final ReadWriteLock[] stripes;
+    private final int mask;
+
+    public MailboxLockManager(@Value("${mail.lock.stripes:64}") int stripeCount) {
+        // power of two so a stripe is picked with a mask
+        int size = stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+        this.stripes = new ReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Key of one mailbox
+     * @param user : owner email
+     * @param folder : folder name (inbox, sent, draft, trash, folder_x)
+     * @return key to pass to read()/write()
+     */
+    public static String mailbox(String user, String folder) {
+        return user + "/" + folder;
+    }
+
+    /**
+     * Take the write locks of the given mailboxes (exclusive)
+     * @param mailboxes : keys built with mailbox(user, folder), in any order, duplicates allowed
+     * @return handle releasing the locks
+     */
+    public Handle write(String... mailboxes) {
+        return acquire(mailboxes, true);
+    }
+
+    /**
+     * Take the read locks of the given mailboxes (shared with other readers, excludes writers)
+     * @param mailboxes : keys built with mailbox(user, folder), in any order, duplicates allowed
+     * @return handle releasing the locks
+     */
+    public Handle read(String... mailboxes) {
+        return acquire(mailboxes, false);
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    private Handle acquire(String[] mailboxes, boolean exclusive) {
+        // global order: ascending stripe index, each stripe once (two mailboxes can share a stripe)
+        int[] indexes = new int[mailboxes.length];
+        for (int i = 0; i < mailboxes.length; i++) {
+            indexes[i] = stripeOf(mailboxes[i]);
+        }
+        indexes = Arrays.stream(indexes).sorted().distinct().toArray();
+
+        Lock[] locks = new Lock[indexes.length];
+        int taken = 0;
+        try {
+            for (int index : indexes) {
+                Lock lock = exclusive ? stripes[index].writeLock() : stripes[index].readLock();
+                lock.lock();
+                locks[taken++] = lock;
+            }
+        } catch (RuntimeException | Error e) {
+            for (int i = taken - 1; i >= 0; i--) {
+                locks[i].unlock();
+            }
+            throw e;
+        }
+        return new Handle(locks);
+    }
+
+    private int stripeOf(String mailbox) {
+        int h = mailbox.hashCode();
+        // spread the high bits, user names often share long prefixes/suffixes (@gmail.com)
+        h ^= (h >>> 16);
+        return h & mask;
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.backend.Util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-only memory mappings of large folder files (multi hundred MB inbox.json/trash.json)
+ * decoding reads the page cache directly instead of copying the file through read() calls into heap buffers
+ * a mapping is kept across requests while the file keeps the same stamp (identity, lastModified, length)
+ * writers replace files by atomic rename, so a mapping always shows one complete old file, never a torn one
+ * java can't unmap a buffer that readers may still hold: a dropped mapping keeps its file and address space
+ * until the buffer is garbage collected, so the budget (mail.storage.mmap-max-bytes) counts those pinned bytes too
+ * and a file that doesn't fit is read normally; a mapping is dropped as soon as its file is rewritten or deleted
+ */
+@Component
+public class MappedFileCache {
+
+    // FileChannel.map can't map more than 2GB in one buffer
+    private static final long MAX_MAPPING_SIZE = Integer.MAX_VALUE;
+    // tells when a dropped mapping is really released
+    private static final Cleaner cleaner = Cleaner.create();
+
+    //one mapped file
+    private static final class Mapping {
+        final MappedByteBuffer buffer;
+        final MailboxCache.Stamp stamp;
+        final long size;
+
+        Mapping(MappedByteBuffer buffer, MailboxCache.Stamp stamp, long size) {
+            this.buffer = buffer;
+            this.stamp = stamp;
+            this.size = size;
+        }
+    }
+
+    //files smaller than this are read normally, 0 disables mapping
+    private final long threshold;
+    //max bytes mapped at once, cached or dropped but not yet released
+    private final long maxBytes;
+    //access ordered map -> iteration order is least recently used first
+    private final LinkedHashMap<String, Mapping> mappings = new LinkedHashMap<>(16, 0.75f, true);
+    //bytes of the cached mappings, guarded by this
+    private long cachedBytes;
+    //bytes of every mapping not released yet (cached, dropped and still referenced, or being mapped)
+    private final AtomicLong pinnedBytes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong mapped = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+
+    public MappedFileCache(@Value("${mail.storage.mmap-threshold:67108864}") long threshold,
+                           @Value("${mail.storage.mmap-max-bytes:1073741824}") long maxBytes) {
+        this.threshold = threshold;
+        this.maxBytes = maxBytes;
+    }
+
+    public boolean isEnabled() {
+        return threshold > 0 && maxBytes > 0;
+    }
+
+    /**
+     * Get the content of a file through a memory mapping
+     * @param file : file to read
+     * @return read-only view positioned at the start of the file (own position, safe to consume),
+     *         or null if the file is below the threshold, over the budget or can't be mapped -> read it normally
+     */
+    public ByteBuffer map(File file) {
+        if (!isEnabled()) {
+            return null;
+        }
+        // stamp before mapping: if the file is replaced in between we store new content under the old stamp,
+        // which only costs a remap on the next call
+        MailboxCache.Stamp stamp = MailboxCache.Stamp.of(file);
+        long size = file.length();
+        if (size < threshold || size > MAX_MAPPING_SIZE) {
+            return null;
+        }
+
+        String key = keyOf(file);
+        synchronized (this) {
+            Mapping mapping = mappings.get(key);
+            if (mapping != null && mapping.stamp.equals(stamp)) {
+                hits.incrementAndGet();
+                return mapping.buffer.asReadOnlyBuffer();
+            }
+            // file rewritten: its old mapping goes now, not when it would be the least recently used
+            drop(key);
+            while (!mappings.isEmpty() && cachedBytes + size > maxBytes) {
+                drop(mappings.keySet().iterator().next());
+            }
+            // dropped mappings still referenced count until they are collected
+            if (pinnedBytes.get() + size > maxBytes) {
+                refused.incrementAndGet();
+                return null;
+            }
+            pinnedBytes.addAndGet(size);
+        }
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+            pinnedBytes.addAndGet(-size);
+            failures.incrementAndGet();
+            System.err.println("Could not map file: " + file.getPath());
+            return null;
+        }
+        mapped.incrementAndGet();
+        // views from asReadOnlyBuffer reference the buffer, it is collected once no reader holds one
+        cleaner.register(buffer, () -> pinnedBytes.addAndGet(-size));
+
+        synchronized (this) {
+            drop(key);
+            mappings.put(key, new Mapping(buffer, stamp, size));
+            cachedBytes += size;
+        }
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Drop the mapping of a file (rewritten or deleted)
+     */
+    public synchronized void invalidate(File file) {
+        drop(keyOf(file));
+    }
+
+    /**
+     * @return hits, new mappings, failures, files read normally for lack of budget,
+     *         number and bytes of the cached mappings, bytes still mapped (cached or not yet released)
+     */
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.get());
+        stats.put("mapped", mapped.get());
+        stats.put("failures", failures.get());
+        stats.put("refused", refused.get());
+        stats.put("files", (long) mappings.size());
+        stats.put("cachedBytes", cachedBytes);
+        stats.put("pinnedBytes", pinnedBytes.get());
+        stats.put("threshold", threshold);
+        stats.put("maxBytes", maxBytes);
+        return stats;
+    }
+
+    //caller holds this
+    private void drop(String key) {
+        Mapping mapping = mappings.remove(key);
+        if (mapping != null) {
+            cachedBytes -= mapping.size;
+        }
+    }
+
+    private static String keyOf(File file) {
+        return file.getAbsoluteFile().toPath().normalize().toString();
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Filters and sorts big mail lists on a dedicated ForkJoinPool with bounded parallelism
+ * (request threads wait, the common pool is left alone)
+ * lists smaller than mail.parallel.min-size stay on the calling thread: splitting and merging cost more than they save,
+ * ParallelMailBenchmark measures where the parallel path starts to win on a given machine
+ * filter: the list is cut into chunks filtered in parallel, the kept mails are joined in list order
+ * sort: chunks are sorted in parallel (stable), then merged k ways, ties keep the list order like List.sort
+ */
+@Component
+public class ParallelMailProcessor {
+
+    // chunks per thread: a slow chunk doesn't keep the other threads idle
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int MIN_CHUNK = 1024;
+
+    private final int parallelism;
+    private final int minSize;
+    private final ForkJoinPool pool;
+
+    private final AtomicLong parallelFilters = new AtomicLong();
+    private final AtomicLong parallelSorts = new AtomicLong();
+
+    /**
+     * @param threads : max threads of the pool, 0 for the number of cores (at most 4), 1 disables the parallel path
+     * @param minSize : lists of this many mails or more are filtered and sorted in parallel
+     */
+    public ParallelMailProcessor(@Value("${mail.parallel.threads:0}") int threads,
+                                 @Value("${mail.parallel.min-size:50000}") int minSize) {
+        this.parallelism = threads > 0 ? threads : Math.min(4, Runtime.getRuntime().availableProcessors());
+        this.minSize = Math.max(0, minSize);
+        // threads are started on the first parallel task only
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("mail-parallel-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * @return true if a list of this size takes the parallel path
+     */
+    public boolean isParallel(int size) {
+        return parallelism > 1 && size >= minSize && size >= 2 * MIN_CHUNK;
+    }
+
+    /**
+     * Mails of a list that pass a filter
+     * @param mails : list to filter, not changed
+     * @param filter : mails to keep, called from several threads on big lists (must not keep state)
+     * @return kept mails in list order (a new list)
+     */
+    public List<mail> filter(List<mail> mails, Predicate<mail> filter) {
+        if (!isParallel(mails.size())) {
+            List<mail> kept = new ArrayList<>();
+            for (mail email : mails) {
+                if (filter.test(email)) {
+                    kept.add(email);
+                }
+            }
+            return kept;
+        }
+        parallelFilters.incrementAndGet();
+        mail[] array = mails.toArray(new mail[0]);
+        int[] bounds = chunkBounds(array.length);
+        List<ForkJoinTask<List<mail>>> tasks = new ArrayList<>();
+        for (int c = 0; c + 1 < bounds.length; c++) {
+            int from = bounds[c];
+            int to = bounds[c + 1];
+            tasks.add(pool.submit(() -> {
+                List<mail> kept = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    if (filter.test(array[i])) {
+                        kept.add(array[i]);
+                    }
+                }
+                return kept;
+            }));
+        }
+        List<mail> kept = new ArrayList<>();
+        for (ForkJoinTask<List<mail>> task : tasks) {
+            // chunks joined in list order, an exception of the filter is rethrown here
+            kept.addAll(task.join());
+        }
+        return kept;
+    }
+
+    /**
+     * Sort a list in place, stable (same result as mails.sort(order))
+     * @param mails : list to sort, must support set()
+     * @param order : order of the result, called from several threads on big lists
+     */
+    public void sort(List<mail> mails, Comparator<mail> order) {
+        if (!isParallel(mails.size())) {
+            mails.sort(order);
+            return;
+        }
+        parallelSorts.incrementAndGet();
+        mail[] array = mails.toArray(new mail[0]);
+        int[] bounds = chunkBounds(array.length);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int c = 0; c + 1 < bounds.length; c++) {
+            int from = bounds[c];
+            int to = bounds[c + 1];
+            tasks.add(pool.submit(() -> Arrays.sort(array, from, to, order)));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        mail[] merged = merge(array, bounds, order);
+        ListIterator<mail> it = mails.listIterator();
+        for (mail email : merged) {
+            it.next();
+            it.set(email);
+        }
+    }
+
+    /**
+     * @return threads, threshold and number of parallel filters and sorts run
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("parallelism", (long) parallelism);
+        stats.put("minSize", (long) minSize);
+        stats.put("parallelFilters", parallelFilters.get());
+        stats.put("parallelSorts", parallelSorts.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.shutdown();
+    }
+
+    //start of each chunk, then the end of the list
+    private int[] chunkBounds(int size) {
+        int chunks = Math.max(1, Math.min(parallelism * CHUNKS_PER_THREAD, size / MIN_CHUNK));
+        int[] bounds = new int[chunks + 1];
+        for (int c = 0; c <= chunks; c++) {
+            bounds[c] = (int) ((long) size * c / chunks);
+        }
+        return bounds;
+    }
+
+    //k-way merge of the sorted chunks, a tie goes to the earlier chunk (stable)
+    private static mail[] merge(mail[] array, int[] bounds, Comparator<mail> order) {
+        int runs = bounds.length - 1;
+        int[] next = Arrays.copyOf(bounds, runs);
+        PriorityQueue<Integer> heads = new PriorityQueue<>(runs,
+                Comparator.<Integer, mail>comparing(run -> array[next[run]], order).thenComparingInt(run -> run));
+        for (int run = 0; run < runs; run++) {
+            if (next[run] < bounds[run + 1]) {
+                heads.add(run);
+            }
+        }
+        mail[] merged = new mail[array.length];
+        int n = 0;
+        while (!heads.isEmpty()) {
+            int run = heads.poll();
+            merged[n++] = array[next[run]++];
+            if (next[run] < bounds[run + 1]) {
+                heads.add(run);
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.backend.Util;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Ids of the starred mails of each user, per folder, kept in memory and in one small file per user
+ * (written through AtomicFileWriter on every change, read back after a restart or an eviction)
+ * so listing the starred mails reads this set and the starred mails only, not every folder
+ * may hold more ids than there are starred mails, never fewer:
+ * callers add an id before the folder change that stars it and remove it after the change that unstars it,
+ * a crash in between leaves an extra id, which readers drop by checking the mail itself
+ * a user without index file is indexed once from its folders (rebuild supplier of the caller)
+ * kept in memory for the most recently used users only
+ */
+@Component
+public class StarredIndex {
+
+    private static final Type FILE_TYPE = new TypeToken<Map<String, List<Integer>>>(){}.getType();
+    private static final Gson gson = JsonFileManager.compactGson();
+
+    private static final int LOCK_STRIPES = 256;
+
+    //starred ids of one user by folder, null until loaded, guarded by the lock stripe of the user
+    private static final class UserIndex {
+        TreeMap<String, TreeSet<Integer>> folders;
+    }
+
+    private final AtomicFileWriter atomicFileWriter;
+    private final int maxUsers;
+    private final LinkedHashMap<String, UserIndex> users;
+    // locks outlive evictions: a user dropped from memory while in use is loaded again only after that use is saved
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+
+    public StarredIndex(AtomicFileWriter atomicFileWriter,
+                        @Value("${mail.starred-index.max-users:10000}") int maxUsers) {
+        this.atomicFileWriter = atomicFileWriter;
+        this.maxUsers = Math.max(1, maxUsers);
+        // access order: the least recently used user is dropped first (it stays on disk)
+        this.users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserIndex> eldest) {
+                return size() > StarredIndex.this.maxUsers;
+            }
+        };
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Starred ids of a user
+     * @param user : owner email
+     * @param file : index file of the user
+     * @param rebuild : starred ids by folder read from the folders themselves, called if the file doesn't exist
+     * @return folder -> ascending ids (a copy)
+     */
+    public Map<String, List<Integer>> starred(String user, File file, Supplier<Map<String, List<Integer>>> rebuild) {
+        synchronized (lockFor(user)) {
+            UserIndex index = userIndex(user);
+            load(index, file, rebuild);
+            Map<String, List<Integer>> copy = new TreeMap<>();
+            for (Map.Entry<String, TreeSet<Integer>> entry : index.folders.entrySet()) {
+                copy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * Mails are about to be starred in a folder, or to arrive starred (call before the folder is written)
+     * @param ids : ids of these mails
+     */
+    public void add(String user, File file, String folder, Collection<Integer> ids, Supplier<Map<String, List<Integer>>> rebuild) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        synchronized (lockFor(user)) {
+            UserIndex index = userIndex(user);
+            load(index, file, rebuild);
+            if (index.folders.computeIfAbsent(folder, f -> new TreeSet<>()).addAll(ids)) {
+                save(index, file);
+            }
+        }
+    }
+
+    /**
+     * A mail was unstarred or left a folder (call after the folder was written)
+     */
+    public void remove(String user, File file, String folder, int id) {
+        synchronized (lockFor(user)) {
+            UserIndex index = userIndex(user);
+            if (!loadIfExists(index, file)) {
+                return;
+            }
+            TreeSet<Integer> ids = index.folders.get(folder);
+            if (ids != null && ids.remove(id)) {
+                if (ids.isEmpty()) {
+                    index.folders.remove(folder);
+                }
+                save(index, file);
+            }
+        }
+    }
+
+    /**
+     * Set the starred ids of a whole folder after it was rewritten or deleted
+     * (ids starred by the new content must have been added before the write)
+     * @param ids : starred ids of the folder now, empty to forget it
+     */
+    public void replaceFolder(String user, File file, String folder, Collection<Integer> ids) {
+        synchronized (lockFor(user)) {
+            UserIndex index = userIndex(user);
+            if (!loadIfExists(index, file)) {
+                return;
+            }
+            TreeSet<Integer> current = new TreeSet<>(ids);
+            TreeSet<Integer> previous = current.isEmpty() ? index.folders.remove(folder) : index.folders.put(folder, current);
+            if (previous == null ? !current.isEmpty() : !previous.equals(current)) {
+                save(index, file);
+            }
+        }
+    }
+
+    /**
+     * @return index files read, rebuilt from the folders and written, number of users in memory
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("loads", loads.get());
+        stats.put("rebuilds", rebuilds.get());
+        stats.put("writes", writes.get());
+        synchronized (users) {
+            stats.put("users", (long) users.size());
+        }
+        return stats;
+    }
+
+    //removals don't need the index of a user that isn't built: the rebuild will read the folders after the change
+    //caller holds the user's lock
+    private boolean loadIfExists(UserIndex index, File file) {
+        return load(index, file, null);
+    }
+
+    //caller holds the user's lock: readers and writers of this user wait for the rebuild, no change slips past it
+    //rebuild null: don't rebuild, return false if there is no readable index
+    private boolean load(UserIndex index, File file, Supplier<Map<String, List<Integer>>> rebuild) {
+        if (index.folders != null) {
+            return true;
+        }
+        Map<String, List<Integer>> content = null;
+        if (file.exists()) {
+            try (Reader reader = new FileReader(file, StandardCharsets.UTF_8)) {
+                content = gson.fromJson(reader, FILE_TYPE);
+                loads.incrementAndGet();
+            } catch (Exception e) {
+                System.err.println("Error reading starred index: " + file.getPath() + " (" + e.getMessage() + ")");
+            }
+        }
+        boolean rebuilt = content == null;
+        if (rebuilt) {
+            if (rebuild == null) {
+                // unreadable index: dropped, the next reader rebuilds it from the folders
+                file.delete();
+                return false;
+            }
+            content = rebuild.get();
+            rebuilds.incrementAndGet();
+            System.out.println("Rebuilt starred index: " + file.getPath());
+        }
+        index.folders = new TreeMap<>();
+        for (Map.Entry<String, List<Integer>> entry : content.entrySet()) {
+            if (entry.getValue() != null && !entry.getValue().isEmpty()) {
+                index.folders.put(entry.getKey(), new TreeSet<>(entry.getValue()));
+            }
+        }
+        if (rebuilt) {
+            save(index, file);
+        }
+        return true;
+    }
+
+    //caller holds the user's lock
+    private void save(UserIndex index, File file) {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory()) {
+            // no user directory (unknown user): don't create one just for the index, keep it in memory only
+            return;
+        }
+        try {
+            atomicFileWriter.write(file, writer -> gson.toJson(index.folders, writer));
+            writes.incrementAndGet();
+        } catch (IOException e) {
+            // the file is behind the memory: drop it, the next load rebuilds from the folders
+            System.err.println("Error writing starred index: " + file.getPath() + " (" + e.getMessage() + ")");
+            file.delete();
+        }
+    }
+
+    private Object lockFor(String user) {
+        return locks[(user.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    private UserIndex userIndex(String user) {
+        synchronized (users) {
+            return users.computeIfAbsent(user, u -> new UserIndex());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Text criteria of a mail search: every clause must match, a clause matches if one of its fields contains its term
+ * same semantics as the text filters (SearchFilter, SenderFilter, SubjectFilter, BodyFilter):
+ * case insensitive substring, term lower cased then trimmed
+ * lets the storage layer narrow the mails to check with MailTextIndex before running the filters
+ */
+public final class TextQuery {
+
+    /**
+     * Searchable text of a mail
+     */
+    public enum Field {
+        SUBJECT, BODY, FROM;
+
+        public String of(mail email) {
+            switch (this) {
+                case SUBJECT: return email.getSubject();
+                case BODY: return email.getBody();
+                default: return email.getFrom();
+            }
+        }
+    }
+
+    /**
+     * One term and the fields it may be found in
+     */
+    public static final class Clause {
+        private final String term;
+        private final EnumSet<Field> fields;
+
+        private Clause(String term, EnumSet<Field> fields) {
+            this.term = term;
+            this.fields = fields;
+        }
+
+        public String getTerm() {
+            return term;
+        }
+
+        public EnumSet<Field> getFields() {
+            return fields;
+        }
+    }
+
+    private final List<Clause> clauses = new ArrayList<>();
+
+    /**
+     * Add a clause, ignored if the term is null or blank (like an inactive filter)
+     * @param term : text to find, as typed
+     * @param first : field the text may be found in
+     * @param others : more fields it may be found in
+     * @return this query
+     */
+    public TextQuery contains(String term, Field first, Field... others) {
+        if (term != null && !term.trim().isEmpty()) {
+            clauses.add(new Clause(term.toLowerCase().trim(), EnumSet.of(first, others)));
+        }
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return clauses.isEmpty();
+    }
+
+    public List<Clause> getClauses() {
+        return Collections.unmodifiableList(clauses);
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.backend.Util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where the directory of each user lives under data/users
+ * fan-out 0 (flat): data/users/<email>/
+ * fan-out N: N levels of 2 hex chars taken from a hash of the email, e.g. fan-out 2: data/users/3f/a0/<email>/
+ * keeps every directory small with hundreds of thousands of accounts, lookups and listings stay fast
+ * online migration: a user still in the flat layout is moved (one directory rename) the first time its path is resolved
+ * every path to user data must be resolved here (JsonFileManager.getUserFolderPath), never built by hand
+ */
+@Component
+public class UserDirectoryLayout {
+
+    private static final int MAX_FAN_OUT_LEVELS = 4;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // Base directory for storing user data
+    private final String basePath;
+    // number of hashed directory levels above each user directory
+    private final int fanOutLevels;
+    // only taken when a user isn't found in its hashed place (migration or unknown user)
+    private final Object migrationLock = new Object();
+
+    private final AtomicLong migratedUsers = new AtomicLong();
+    private final AtomicLong failedMigrations = new AtomicLong();
+
+    public UserDirectoryLayout(@Value("${mail.storage.users-dir:data/users/}") String basePath,
+                               @Value("${mail.storage.fan-out-levels:0}") int fanOutLevels) {
+        if (fanOutLevels < 0 || fanOutLevels > MAX_FAN_OUT_LEVELS) {
+            throw new IllegalArgumentException("mail.storage.fan-out-levels must be between 0 and " + MAX_FAN_OUT_LEVELS);
+        }
+        this.basePath = basePath.endsWith("/") ? basePath : basePath + "/";
+        this.fanOutLevels = fanOutLevels;
+    }
+
+    /**
+     * Directory of a user, moved there first if it is still in the flat layout
+     * @param email : user's email
+     * @return directory path (may not exist yet for a new or unknown user)
+     */
+    public String userDirectory(String email) {
+        String target = basePath + bucketOf(email) + email;
+        if (fanOutLevels == 0 || new File(target).isDirectory()) {
+            return target;
+        }
+        File flat = new File(basePath + email);
+        if (!flat.isDirectory()) {
+            // new user (or unknown recipient), created directly in the hashed place
+            return target;
+        }
+        synchronized (migrationLock) {
+            // another request may have moved it while we waited
+            if (new File(target).isDirectory() || !flat.isDirectory()) {
+                return target;
+            }
+            try {
+                Path targetPath = new File(target).toPath();
+                Files.createDirectories(targetPath.getParent());
+                // same file system, one rename: readers see the whole directory in one place or the other
+                Files.move(flat.toPath(), targetPath, StandardCopyOption.ATOMIC_MOVE);
+                migratedUsers.incrementAndGet();
+                System.out.println("Moved user directory " + flat.getPath() + " -> " + target);
+                return target;
+            } catch (IOException e) {
+                // keep serving from the flat place, the move is tried again on the next access
+                failedMigrations.incrementAndGet();
+                System.err.println("Could not move user directory " + flat.getPath() + ": " + e.getMessage());
+                return flat.getPath();
+            }
+        }
+    }
+
+    /**
+     * Checks if a user directory exists (in either layout)
+     * @param email : user's email
+     * @return true if the user has a directory
+     */
+    public boolean exists(String email) {
+        return new File(userDirectory(email)).isDirectory();
+    }
+
+    /**
+     * Directories of every user, flat ones not migrated yet included
+     * doesn't move anything (used by background jobs and offline tools)
+     * @return user directories, the directory name is the user's email
+     */
+    public List<File> userDirectories() {
+        List<File> directories = new ArrayList<>();
+        collectUserDirectories(new File(basePath), 0, directories);
+        return directories;
+    }
+
+    /**
+     * @return emails of every user
+     */
+    public List<String> users() {
+        List<String> users = new ArrayList<>();
+        for (File directory : userDirectories()) {
+            users.add(directory.getName());
+        }
+        return users;
+    }
+
+    public int getFanOutLevels() {
+        return fanOutLevels;
+    }
+
+    /**
+     * Users moved from the flat layout since startup
+     * @return layout counters
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("fanOutLevels", (long) fanOutLevels);
+        stats.put("migratedUsers", migratedUsers.get());
+        stats.put("failedMigrations", failedMigrations.get());
+        return stats;
+    }
+
+    //"3f/a0/" for fan-out 2, "" when flat
+    String bucketOf(String email) {
+        int h = hash(email);
+        StringBuilder bucket = new StringBuilder(fanOutLevels * 3);
+        for (int level = 0; level < fanOutLevels; level++) {
+            int b = (h >>> (8 * level)) & 0xff;
+            bucket.append(HEX[b >>> 4]).append(HEX[b & 0xf]).append('/');
+        }
+        return bucket.toString();
+    }
+
+    //String.hashCode is specified, so the bucket of a user never changes between runs or JVMs
+    //(changing this function would lose every user), the finalizer spreads emails sharing a domain
+    private static int hash(String email) {
+        int h = email.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    //bucket directories are 2 hex chars, user directories are emails (never 2 hex chars)
+    private static void collectUserDirectories(File directory, int depth, List<File> out) {
+        File[] children = directory.listFiles(File::isDirectory);
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (depth < MAX_FAN_OUT_LEVELS && isBucketName(child.getName())) {
+                collectUserDirectories(child, depth + 1, out);
+            } else {
+                out.add(child);
+            }
+        }
+    }
+
+    private static boolean isBucketName(String name) {
+        return name.length() == 2 && Character.digit(name.charAt(0), 16) >= 0 && Character.digit(name.charAt(1), 16) >= 0
+                && name.equals(name.toLowerCase());
+    }
+}
@@ -0,0 +1,335 @@
+package com.example.backend.Util;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Group commit of small mail folder changes (journal records), per folder file
+ * a COMMIT change is written by the thread that submits it: it writes every change of its file queued so far
+ * in one physical write (one fsync), changes submitted while that write runs wait for it and go together in the next one
+ * -> only a folder written concurrently (a hot folder) gets batched, a lone change is written at once, and
+ * changes of different files never wait for each other
+ * a FIRE_AND_FORGET change returns at once, a small pool writes it after the window (0: right away),
+ * changes of the same file made meanwhile join that write; a batch reaching N changes is written by the submitter
+ * batches of a file are written one after the other in submission order
+ * enqueue + commit split a COMMIT change for callers holding a mailbox lock: the change is queued under the lock,
+ * the commit (same group commit) runs after it is released, so the next caller of the folder can queue its change
+ * while this one is written instead of waiting on the lock for the whole write
+ * must not be called while holding JsonFileManager's per-file lock (the flush takes it)
+ */
+@Component
+public class WriteCoalescer {
+
+    /**
+     * writes a batch of records to one folder file
+     */
+    @FunctionalInterface
+    public interface BatchWriter {
+        boolean write(File file, List<MailboxJournal.Record> records);
+    }
+
+    //changes of one file waiting for the same physical write
+    private static final class Batch {
+        final List<MailboxJournal.Record> records = new ArrayList<>();
+        //told the result of the write, in queuing order, before `written` completes
+        final List<Consumer<Boolean>> onWritten = new ArrayList<>();
+        final CompletableFuture<Boolean> written = new CompletableFuture<>();
+        //a background write is planned
+        boolean scheduled;
+    }
+
+    //one folder file: the batch being filled and the one being written (guarded by the FileQueue),
+    //one write at a time (flushLock)
+    private static final class FileQueue {
+        final File file;
+        final BatchWriter writer;
+        final Object flushLock = new Object();
+        Batch open;
+        Batch writing;
+
+        FileQueue(File file, BatchWriter writer) {
+            this.file = file;
+            this.writer = writer;
+        }
+    }
+
+    //how long a fire and forget change waits for others to join it
+    private final long windowMillis;
+    //a batch is written as soon as it holds this many changes
+    private final int maxPending;
+    //what callers wait for when they don't choose
+    private final DurabilityMode defaultDurability;
+    //writes the fire and forget changes, several files in parallel
+    private final ScheduledThreadPoolExecutor background;
+    private final int threads;
+
+    private final ConcurrentHashMap<String, FileQueue> queues = new ConcurrentHashMap<>();
+
+    private final AtomicLong logicalWrites = new AtomicLong();
+    private final AtomicLong physicalWrites = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private final AtomicLong largestBatch = new AtomicLong();
+    // batch size histogram: 1, 2-4, 5-16, 17-64, 65+
+    private static final int[] BUCKET_LIMITS = { 1, 4, 16, 64, Integer.MAX_VALUE };
+    private static final String[] BUCKET_NAMES = { "batches.1", "batches.2-4", "batches.5-16", "batches.17-64", "batches.65+" };
+    private final AtomicLong[] buckets = new AtomicLong[BUCKET_LIMITS.length];
+
+    //two background writers
+    public WriteCoalescer(long windowMillis, int maxPending, DurabilityMode defaultDurability) {
+        this(windowMillis, maxPending, defaultDurability, 2);
+    }
+
+    @Autowired
+    public WriteCoalescer(@Value("${mail.write.coalesce-window-ms:0}") long windowMillis,
+                          @Value("${mail.write.coalesce-max-pending:64}") int maxPending,
+                          @Value("${mail.write.durability:COMMIT}") DurabilityMode defaultDurability,
+                          @Value("${mail.write.background-threads:2}") int threads) {
+        this.windowMillis = Math.max(0, windowMillis);
+        this.maxPending = Math.max(1, maxPending);
+        this.defaultDurability = defaultDurability;
+        this.threads = Math.max(1, threads);
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new AtomicLong();
+        }
+        AtomicInteger created = new AtomicInteger();
+        background = new ScheduledThreadPoolExecutor(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "mail-write-" + created.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // no thread at all while nothing is written in the background
+        background.setKeepAliveTime(30, TimeUnit.SECONDS);
+        background.allowCoreThreadTimeOut(true);
+    }
+
+    public DurabilityMode getDefaultDurability() {
+        return defaultDurability;
+    }
+
+    /**
+     * Queue one change of a folder file
+     * @param file : folder file
+     * @param record : change to write
+     * @param writer : writes a whole batch of changes of this file
+     * @param durability : COMMIT writes it before returning, FIRE_AND_FORGET leaves it to the background writers
+     * @return completed with true once the batch holding this change is written, false if that write failed
+     */
+    public CompletableFuture<Boolean> submit(File file, MailboxJournal.Record record, BatchWriter writer,
+                                             DurabilityMode durability) {
+        logicalWrites.incrementAndGet();
+        FileQueue queue = queues.computeIfAbsent(keyOf(file), k -> new FileQueue(file, writer));
+        Batch batch;
+        boolean writeNow;
+        boolean schedule = false;
+        synchronized (queue) {
+            if (queue.open == null) {
+                queue.open = new Batch();
+            }
+            batch = queue.open;
+            batch.records.add(record);
+            writeNow = durability == DurabilityMode.COMMIT || batch.records.size() >= maxPending;
+            if (!writeNow && !batch.scheduled) {
+                batch.scheduled = true;
+                schedule = true;
+            }
+        }
+        if (writeNow) {
+            write(queue, batch.written);
+        } else if (schedule) {
+            background.schedule(() -> write(queue, null), windowMillis, TimeUnit.MILLISECONDS);
+        }
+        return batch.written;
+    }
+
+    /**
+     * Queue one change of a folder file without writing it, commit() writes it
+     * (a batch reaching N changes is still written at once by the caller)
+     * @param file : folder file
+     * @param record : change to write
+     * @param writer : writes a whole batch of changes of this file
+     * @param onWritten : told whether the write succeeded, in the order the changes were queued (null for none)
+     * @return pass to commit()
+     */
+    public CompletableFuture<Boolean> enqueue(File file, MailboxJournal.Record record, BatchWriter writer,
+                                              Consumer<Boolean> onWritten) {
+        logicalWrites.incrementAndGet();
+        FileQueue queue = queues.computeIfAbsent(keyOf(file), k -> new FileQueue(file, writer));
+        Batch batch;
+        boolean full;
+        synchronized (queue) {
+            if (queue.open == null) {
+                queue.open = new Batch();
+            }
+            batch = queue.open;
+            batch.records.add(record);
+            if (onWritten != null) {
+                batch.onWritten.add(onWritten);
+            }
+            full = batch.records.size() >= maxPending;
+        }
+        if (full) {
+            write(queue, batch.written);
+        }
+        return batch.written;
+    }
+
+    /**
+     * Write a queued change now, with every change of its file queued since, or wait for the write holding it
+     * @param file : folder file given to enqueue()
+     * @param written : what enqueue() returned
+     * @return true once the change is written, false if that write failed
+     */
+    public boolean commit(File file, CompletableFuture<Boolean> written) {
+        FileQueue queue = queues.get(keyOf(file));
+        if (queue != null) {
+            write(queue, written);
+        }
+        return written.join();
+    }
+
+    /**
+     * Changes of a file not known to be written yet: the batch being written, then the one being filled
+     * a reader can lay them over what it read instead of flushing (replay is idempotent), the folder keeps batching
+     * @param file : folder file
+     * @return the changes in order, empty if none
+     */
+    public List<MailboxJournal.Record> pending(File file) {
+        FileQueue queue = queues.get(keyOf(file));
+        List<MailboxJournal.Record> pending = new ArrayList<>();
+        if (queue == null) {
+            return pending;
+        }
+        synchronized (queue) {
+            if (queue.writing != null) {
+                pending.addAll(queue.writing.records);
+            }
+            if (queue.open != null) {
+                pending.addAll(queue.open.records);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Write the pending changes of a file now (before reading or rewriting it)
+     * returns once they are on disk
+     */
+    public void flush(File file) {
+        FileQueue queue = queues.get(keyOf(file));
+        if (queue != null) {
+            // also waits for a batch of this file being written by another thread
+            write(queue, null);
+        }
+    }
+
+    /**
+     * Write every pending batch (shutdown)
+     */
+    @PreDestroy
+    public void flushAll() {
+        for (FileQueue queue : queues.values()) {
+            write(queue, null);
+        }
+        background.shutdown();
+    }
+
+    /**
+     * How many logical writes were folded into each physical write
+     * @return write counters and batch size histogram
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        long logical = logicalWrites.get();
+        long physical = physicalWrites.get();
+        stats.put("windowMillis", windowMillis);
+        stats.put("backgroundThreads", (long) threads);
+        stats.put("logicalWrites", logical);
+        stats.put("physicalWrites", physical);
+        stats.put("foldedWrites", Math.max(0, logical - physical));
+        stats.put("failedWrites", failedWrites.get());
+        stats.put("largestBatch", largestBatch.get());
+        for (int i = 0; i < buckets.length; i++) {
+            stats.put(BUCKET_NAMES[i], buckets[i].get());
+        }
+        return stats;
+    }
+
+    //write the open batch of a file, unless the one the caller waits for was written meanwhile by another thread
+    private void write(FileQueue queue, CompletableFuture<Boolean> waitedFor) {
+        synchronized (queue.flushLock) {
+            if (waitedFor != null && waitedFor.isDone()) {
+                return;
+            }
+            Batch batch;
+            synchronized (queue) {
+                batch = queue.open;
+                queue.open = null;
+                queue.writing = batch;
+            }
+            if (batch == null) {
+                return;
+            }
+            boolean written = false;
+            try {
+                written = writeBatch(queue.file, batch.records, queue.writer);
+                if (!written) {
+                    System.err.println("Coalesced write of " + batch.records.size() + " changes failed: " + queue.file.getPath());
+                }
+            } finally {
+                // every change of the batch gets the result of the one write
+                for (Consumer<Boolean> onWritten : batch.onWritten) {
+                    try {
+                        onWritten.accept(written);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+                synchronized (queue) {
+                    queue.writing = null;
+                }
+                batch.written.complete(written);
+            }
+        }
+    }
+
+    private boolean writeBatch(File file, List<MailboxJournal.Record> records, BatchWriter writer) {
+        boolean written;
+        try {
+            written = writer.write(file, records);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            written = false;
+        }
+        physicalWrites.incrementAndGet();
+        if (!written) {
+            failedWrites.incrementAndGet();
+        }
+        largestBatch.accumulateAndGet(records.size(), Math::max);
+        for (int i = 0; i < BUCKET_LIMITS.length; i++) {
+            if (records.size() <= BUCKET_LIMITS[i]) {
+                buckets[i].incrementAndGet();
+                break;
+            }
+        }
+        return written;
+    }
+
+    private static String keyOf(File file) {
+        return file.getAbsoluteFile().toPath().normalize().toString();
+    }
+}
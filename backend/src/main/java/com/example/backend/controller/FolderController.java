@@ -2,7 +2,7 @@ package com.example.backend.controller;
 
 import com.example.backend.DTOS.FolderRequestDTO;
 import com.example.backend.DTOS.FolderResponseDTO;
-import com.example.backend.model.mail;
+import com.example.backend.DTOS.MailSummaryDTO;
 import com.example.backend.service.FolderService;
 import com.example.backend.service.mailService;
 import jakarta.servlet.http.HttpServletRequest;
@@ -120,10 +120,10 @@ public class FolderController {
      * get emails in a folder
      * @param id : id of folder
      * @param request :needed to know the current loggedIn user
-     * @return list of mails
+     * @return summaries of the mails (GET /api/mail/{id} for a whole mail)
      */
     @GetMapping("/{id}/emails")
-    public ResponseEntity<List<mail>> getEmailsByFolder(@PathVariable String id,
+    public ResponseEntity<List<MailSummaryDTO>> getEmailsByFolder(@PathVariable String id,
                                                         HttpServletRequest request) {
         try {
             String loggedInUser = getLoggedInUser(request);
@@ -132,7 +132,7 @@ public class FolderController {
             mailService.setSenderEmail(loggedInUser);
 
             // Call the simple version (no filters, default sort)
-            List<mail> emails = mailService.getCustomFolderEmails(id);
+            List<MailSummaryDTO> emails = mailService.getCustomFolderEmails(id);
 
             System.out.println("📁 FolderController: Found " + emails.size() + " emails");
             return ResponseEntity.ok(emails);
@@ -0,0 +1,77 @@
+package com.example.backend.controller;
+
+import com.example.backend.Util.JsonFileManager;
+import com.example.backend.Util.MailBitmapIndex;
+import com.example.backend.Util.MailLocationIndex;
+import com.example.backend.Util.MailResultCache;
+import com.example.backend.Util.MailSenderIndex;
+import com.example.backend.Util.MailTextIndex;
+import com.example.backend.Util.ParallelMailProcessor;
+import com.example.backend.Util.MailTimeIndex;
+import com.example.backend.Util.MailSortIndex;
+import com.example.backend.Util.StarredIndex;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * read only counters of the storage layer
+ * used to size caches against the real polling load
+ */
+@RestController
+@RequestMapping("/api/storage")
+@CrossOrigin(origins = "http://localhost:4200", allowCredentials = "true")
+public class StorageStatsController {
+
+    private final JsonFileManager jsonFileManager;
+    private final MailLocationIndex mailLocationIndex;
+    private final StarredIndex starredIndex;
+    private final MailTextIndex mailTextIndex;
+    private final MailBitmapIndex mailBitmapIndex;
+    private final MailTimeIndex mailTimeIndex;
+    private final MailSenderIndex mailSenderIndex;
+    private final MailSortIndex mailSortIndex;
+    private final MailResultCache mailResultCache;
+    private final ParallelMailProcessor parallelMailProcessor;
+
+    public StorageStatsController(JsonFileManager jsonFileManager, MailLocationIndex mailLocationIndex,
+                                  StarredIndex starredIndex, MailTextIndex mailTextIndex, MailBitmapIndex mailBitmapIndex,
+                                  MailTimeIndex mailTimeIndex, MailSenderIndex mailSenderIndex, MailSortIndex mailSortIndex,
+                                  MailResultCache mailResultCache, ParallelMailProcessor parallelMailProcessor) {
+        this.jsonFileManager = jsonFileManager;
+        this.mailLocationIndex = mailLocationIndex;
+        this.starredIndex = starredIndex;
+        this.mailTextIndex = mailTextIndex;
+        this.mailBitmapIndex = mailBitmapIndex;
+        this.mailTimeIndex = mailTimeIndex;
+        this.mailSenderIndex = mailSenderIndex;
+        this.mailSortIndex = mailSortIndex;
+        this.mailResultCache = mailResultCache;
+        this.parallelMailProcessor = parallelMailProcessor;
+    }
+
+    /**
+     * get the storage statistics
+     * @return counters grouped by component
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mailboxCache", jsonFileManager.getCacheStats());
+        stats.put("mappedFiles", jsonFileManager.getMappedFileStats());
+        stats.put("writeCoalescer", jsonFileManager.getWriteCoalescerStats());
+        stats.put("userDirectories", jsonFileManager.getUserLayoutStats());
+        stats.put("mailLocationIndex", mailLocationIndex.getStats());
+        stats.put("starredIndex", starredIndex.getStats());
+        stats.put("textIndex", mailTextIndex.getStats());
+        stats.put("bitmapIndex", mailBitmapIndex.getStats());
+        stats.put("timeIndex", mailTimeIndex.getStats());
+        stats.put("senderIndex", mailSenderIndex.getStats());
+        stats.put("sortIndex", mailSortIndex.getStats());
+        stats.put("resultCache", mailResultCache.getStats());
+        stats.put("parallel", parallelMailProcessor.getStats());
+        return ResponseEntity.ok(stats);
+    }
+}
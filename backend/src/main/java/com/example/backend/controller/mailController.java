@@ -3,11 +3,16 @@ package com.example.backend.controller;
 import com.example.backend.DTOS.attachementDTO;
 import com.example.backend.DTOS.mailContentDTO;
 import com.example.backend.Exceptions.UserNotFoundException;
+import com.example.backend.Repo.MailStore;
 import com.example.backend.Repo.mailRepo;
 import com.example.backend.model.mail;
 import com.example.backend.service.attachementService;
 import com.example.backend.service.mailService;
 import com.example.backend.DTOS.FilterCriteriaDTO;
+import com.example.backend.DTOS.MailSummaryDTO;
+import com.example.backend.DTOS.QueryPlanDTO;
+import com.example.backend.DTOS.SenderCountDTO;
+import com.example.backend.service.MailQueryPlanner;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Path;
 
@@ -39,12 +44,15 @@ public class mailController {
 
     private final mailService mailService;
     private final mailRepo mailRepo;
+    private final MailQueryPlanner mailQueryPlanner;
 
     @Autowired
-    public mailController(mailService mailService, mailRepo mailRepo,attachementService attachementService) {
+    public mailController(mailService mailService, mailRepo mailRepo,attachementService attachementService,
+                          MailQueryPlanner mailQueryPlanner) {
         this.mailService = mailService;
         this.mailRepo = mailRepo;
         this.attachementService =attachementService ;
+        this.mailQueryPlanner = mailQueryPlanner;
     }
 
     /**
@@ -58,16 +66,29 @@ public class mailController {
     }
 
     /**
-     * Get all emails from inbox for current user
+     * Get all emails from inbox for current user, as summaries (GET /{id} returns the whole mail)
+     * with size: one page of the listing (page from 0) and its total count instead of the whole list
+     * with cursor (empty for the first page): the page after it and the cursor of the next one (infinite scroll)
      */
 // REPLACE the existing @GetMapping("/inbox") with:
     @PostMapping("/inbox")
-    public ResponseEntity<List<mail>> getInboxEmails(
+    public ResponseEntity<?> getInboxEmails(
             @RequestParam(required = false, defaultValue = "date-desc") String sort,
+            @RequestParam(required = false, defaultValue = "0") int page,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String cursor,
             @RequestBody(required = false) FilterCriteriaDTO filters) {
         try {
-            List<mail> emails = mailService.getInboxEmails(sort, filters);
+            if (cursor != null) {
+                return ResponseEntity.ok(mailService.getFolderEmailsAfter(MailStore.INBOX, sort, filters, cursor, size));
+            }
+            if (size != null) {
+                return ResponseEntity.ok(mailService.getFolderEmailsPage(MailStore.INBOX, sort, filters, page, size));
+            }
+            List<MailSummaryDTO> emails = mailService.getInboxEmails(sort, filters);
             return ResponseEntity.ok(emails);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             System.err.println("❌ Error getting inbox: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -75,26 +96,80 @@ public class mailController {
     }
 
     @GetMapping("/inbox/priority")
-    public ResponseEntity<List<mail>> getInboxEmailsByPriority() {
+    public ResponseEntity<List<MailSummaryDTO>> getInboxEmailsByPriority() {
         try {
-            List<mail> emails = mailService.getInboxEmailsByPriority();
+            List<MailSummaryDTO> emails = mailService.getInboxEmailsByPriority();
             return ResponseEntity.ok(emails);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    /**
+     * Get the senders with the most mails in a folder (sender facets)
+     * folder: inbox, sent, draft, trash or folder_<id>
+     */
+    @GetMapping("/senders")
+    public ResponseEntity<List<SenderCountDTO>> getTopSenders(
+            @RequestParam(required = false, defaultValue = "inbox") String folder,
+            @RequestParam(required = false, defaultValue = "10") int limit) {
+        try {
+            return ResponseEntity.ok(mailService.getTopSenders(folder, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            System.err.println("❌ Error getting top senders: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Explain a folder listing (debug): index lookups, folder access, filter order and sort,
+     * with estimated and actual rows and timings of each step, the listing is run without the result cache
+     * with size: the plan of that page (top-K selection instead of a full sort)
+     * folder: inbox, sent, draft, trash or folder_<id>
+     */
+    @PostMapping("/{folder}/explain")
+    public ResponseEntity<QueryPlanDTO> explainFolderEmails(
+            @PathVariable String folder,
+            @RequestParam(required = false, defaultValue = "date-desc") String sort,
+            @RequestParam(required = false, defaultValue = "0") int page,
+            @RequestParam(required = false) Integer size,
+            @RequestBody(required = false) FilterCriteriaDTO filters) {
+        try {
+            return ResponseEntity.ok(mailQueryPlanner.explain(folder, sort, filters, page, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            System.err.println("❌ Error explaining folder listing: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     /**
      * Get all sent emails for current user
+     * with size: one page of the listing (page from 0) and its total count instead of the whole list
+     * with cursor (empty for the first page): the page after it and the cursor of the next one (infinite scroll)
      */
     // REPLACE @GetMapping("/sent") with:
     @PostMapping("/sent")
-    public ResponseEntity<List<mail>> getSentEmails(
+    public ResponseEntity<?> getSentEmails(
             @RequestParam(required = false, defaultValue = "date-desc") String sort,
+            @RequestParam(required = false, defaultValue = "0") int page,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String cursor,
             @RequestBody(required = false) FilterCriteriaDTO filters) {
         try {
-            List<mail> emails = mailService.getSentEmails(sort, filters);
+            if (cursor != null) {
+                return ResponseEntity.ok(mailService.getFolderEmailsAfter(MailStore.SENT, sort, filters, cursor, size));
+            }
+            if (size != null) {
+                return ResponseEntity.ok(mailService.getFolderEmailsPage(MailStore.SENT, sort, filters, page, size));
+            }
+            List<MailSummaryDTO> emails = mailService.getSentEmails(sort, filters);
             return ResponseEntity.ok(emails);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
@@ -103,14 +178,27 @@ public class mailController {
 
     /**
      * Get all draft emails for current user
+     * with size: one page of the listing (page from 0) and its total count instead of the whole list
+     * with cursor (empty for the first page): the page after it and the cursor of the next one (infinite scroll)
      */
     @PostMapping("/draft")
-    public ResponseEntity<List<mail>> getDraftEmails(
+    public ResponseEntity<?> getDraftEmails(
             @RequestParam(required = false, defaultValue = "date-desc") String sort,
+            @RequestParam(required = false, defaultValue = "0") int page,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String cursor,
             @RequestBody(required = false) FilterCriteriaDTO filters) {
         try {
-            List<mail> emails = mailService.getDraftEmails(sort, filters);
+            if (cursor != null) {
+                return ResponseEntity.ok(mailService.getFolderEmailsAfter(MailStore.DRAFT, sort, filters, cursor, size));
+            }
+            if (size != null) {
+                return ResponseEntity.ok(mailService.getFolderEmailsPage(MailStore.DRAFT, sort, filters, page, size));
+            }
+            List<MailSummaryDTO> emails = mailService.getDraftEmails(sort, filters);
             return ResponseEntity.ok(emails);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
@@ -118,26 +206,55 @@ public class mailController {
 
     /**
      * Get all trash emails for current user
+     * with size: one page of the listing (page from 0) and its total count instead of the whole list
+     * with cursor (empty for the first page): the page after it and the cursor of the next one (infinite scroll)
      */
     @PostMapping("/trash")
-    public ResponseEntity<List<mail>> getTrashEmails(
+    public ResponseEntity<?> getTrashEmails(
             @RequestParam(required = false, defaultValue = "date-desc") String sort,
+            @RequestParam(required = false, defaultValue = "0") int page,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String cursor,
             @RequestBody(required = false) FilterCriteriaDTO filters) {
         try {
-            List<mail> emails = mailService.getTrashEmails(sort, filters);
+            if (cursor != null) {
+                return ResponseEntity.ok(mailService.getFolderEmailsAfter(MailStore.TRASH, sort, filters, cursor, size));
+            }
+            if (size != null) {
+                return ResponseEntity.ok(mailService.getFolderEmailsPage(MailStore.TRASH, sort, filters, page, size));
+            }
+            List<MailSummaryDTO> emails = mailService.getTrashEmails(sort, filters);
             return ResponseEntity.ok(emails);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    /**
+     * Get starred emails of every folder but trash
+     * with size: one page of the listing (page from 0) and its total count instead of the whole list
+     * with cursor (empty for the first page): the page after it and the cursor of the next one (infinite scroll)
+     */
     @PostMapping("/starred")
-public ResponseEntity<List<mail>> getStarredEmails(
+public ResponseEntity<?> getStarredEmails(
         @RequestParam(required = false, defaultValue = "date-desc") String sort,
+        @RequestParam(required = false, defaultValue = "0") int page,
+        @RequestParam(required = false) Integer size,
+        @RequestParam(required = false) String cursor,
         @RequestBody(required = false) FilterCriteriaDTO filters) {
     try {
-        List<mail> emails = mailService.getStarredEmails(sort, filters);
+        if (cursor != null) {
+            return ResponseEntity.ok(mailService.getStarredEmailsAfter(sort, filters, cursor, size));
+        }
+        if (size != null) {
+            return ResponseEntity.ok(mailService.getStarredEmailsPage(sort, filters, page, size));
+        }
+        List<MailSummaryDTO> emails = mailService.getStarredEmails(sort, filters);
         return ResponseEntity.ok(emails);
+    } catch (IllegalArgumentException e) {
+        return ResponseEntity.badRequest().build();
     } catch (Exception e) {
         System.err.println("❌ Error getting starred: " + e.getMessage());
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -172,11 +289,16 @@ public ResponseEntity<Map<String, String>> toggleStar(
 
     /**
      * Get custom folder emails with optional filtering and sorting
+     * with size: one page of the listing (page from 0) and its total count instead of the whole list
+     * with cursor (empty for the first page): the page after it and the cursor of the next one (infinite scroll)
      */
     @PostMapping("/folder/{folderId}")
-    public ResponseEntity<List<mail>> getCustomFolderEmails(
+    public ResponseEntity<?> getCustomFolderEmails(
             @PathVariable String folderId,
             @RequestParam(required = false, defaultValue = "date-desc") String sort,
+            @RequestParam(required = false, defaultValue = "0") int page,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String cursor,
             @RequestBody(required = false) FilterCriteriaDTO filters,
             HttpServletRequest request) {
         try {
@@ -185,8 +307,18 @@ public ResponseEntity<Map<String, String>> toggleStar(
 
             System.out.println("📁 Getting emails for folder: " + folderId + " with sort: " + sort);
 
-            List<mail> emails = mailService.getCustomFolderEmails(folderId, sort, filters);
+            if (cursor != null) {
+                return ResponseEntity.ok(mailService.getFolderEmailsAfter("folder_" + folderId, sort, filters, cursor, size));
+
+            }
+
+            if (size != null) {
+                return ResponseEntity.ok(mailService.getFolderEmailsPage("folder_" + folderId, sort, filters, page, size));
+            }
+            List<MailSummaryDTO> emails = mailService.getCustomFolderEmails(folderId, sort, filters);
             return ResponseEntity.ok(emails);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             System.err.println("❌ Error getting custom folder emails: " + e.getMessage());
             e.printStackTrace();
@@ -197,9 +329,10 @@ public ResponseEntity<Map<String, String>> toggleStar(
 
     /**
      * Get a specific email by ID
+     * folder is optional, without it the mail is found from its id
      */
     @GetMapping("/{id}")
-    public ResponseEntity<mail> getEmailById(@PathVariable int id, @RequestParam String folder) {
+    public ResponseEntity<mail> getEmailById(@PathVariable int id, @RequestParam(required = false) String folder) {
         try {
             mail email = mailRepo.getEmailById(id, folder);
             if (email != null) {
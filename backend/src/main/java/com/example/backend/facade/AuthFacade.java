@@ -25,11 +25,11 @@ public class AuthFacade {
     }
     
     private String getInfoPath(String email) {
-        return "data/users/" + email + "/info.json";
+        return fileManager.getUserFolderPath(email, "info");
     }
     
     private String getInfoPlusPath(String email) {
-        return "data/users/" + email + "/infoplus.json";
+        return fileManager.getUserFolderPath(email, "infoplus");
     }
     
     public void signup(SignupRequest req) throws Exception {
@@ -5,6 +5,7 @@ import com.example.backend.DTOS.PasswordChangeRequest;
 import com.example.backend.DTOS.DispatcherSettingsDTO;
 import com.example.backend.model.InfoPlus;
 import com.example.backend.model.UserInfo;
+import com.example.backend.Util.JsonFileManager;
 import com.example.backend.service.ProfileCommandManager;
 import com.google.gson.Gson;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,15 +22,18 @@ public class UserProfileFacade {
     
     @Autowired
     private ProfileCommandManager commandManager;
+
+    @Autowired
+    private JsonFileManager fileManager; // resolves user directories (flat or hashed layout)
     
     private final Gson gson = new Gson();
     
     private String getInfoPath(String email) {
-        return "data/users/" + email + "/info.json";
+        return fileManager.getUserFolderPath(email, "info");
     }
     
     private String getInfoPlusPath(String email) {
-        return "data/users/" + email + "/infoplus.json";
+        return fileManager.getUserFolderPath(email, "infoplus");
     }
     
     public Map<String, Object> getProfile(String email) throws Exception {
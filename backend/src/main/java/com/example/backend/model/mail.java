@@ -2,6 +2,7 @@ package com.example.backend.model;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 
@@ -40,6 +41,9 @@ public class mail implements Cloneable {
         if (this.attachments != null) {
             cloned.attachments = new ArrayList<>(this.attachments);
         }
+        if (this.to != null) {
+            cloned.to = new LinkedList<>(this.to);
+        }
 
         // LocalDateTime is immutable, so no need to clone
         // Strings are also immutable
@@ -4,18 +4,46 @@ package com.example.backend.service;
 
 import com.example.backend.FilterPattern.*;
 import com.example.backend.DTOS.FilterCriteriaDTO;
+import com.example.backend.Util.MailQuery;
+import com.example.backend.Util.ParallelMailProcessor;
 import com.example.backend.model.mail;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Predicate;
 
 /**
  * Service to build and apply filters
- * apply chain of responsibility
+ * the criteria are compiled once into a CompiledFilter (active filters only, cheapest and most selective first,
+ * one pass) and cached, repeated polls with the same criteria reuse it
+ * apply chain of responsibility: the compiled filter can be linked with custom filters
+ * big lists are filtered in parallel chunks (ParallelMailProcessor)
  */
 @Service
 public class EmailFilterService {
 
+    private static final int MAX_COMPILED = 256;
+
+    //criteria values -> compiled filter, least recently used dropped first
+    private final Map<List<Object>, CompiledFilter> compiled = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, CompiledFilter> eldest) {
+            return size() > MAX_COMPILED;
+        }
+    };
+
+    //filters big lists in parallel
+    private final ParallelMailProcessor parallelMailProcessor;
+
+    public EmailFilterService(ParallelMailProcessor parallelMailProcessor) {
+        this.parallelMailProcessor = parallelMailProcessor;
+    }
+
     /**
      * Apply all filters to emails based on criteria
      * @param emails : list of emails to apply filters in
@@ -28,39 +56,144 @@ public class EmailFilterService {
             return emails;
         }
 
-        // Build the filter chain
-        EmailFilter chain = buildFilterChain(criteria);
+        // one pass with the compiled filters, in parallel chunks on a big list
+        return parallelMailProcessor.filter(emails, compile(criteria)::matches);
+    }
+
+    /**
+     * Same filters as applyFilters, as a test on one mail
+     * lets the storage layer filter mails while reading them instead of loading the whole folder first
+     * @param criteria : filters to apply on mails
+     * @return predicate accepting the mails that pass every filter
+     */
+    public Predicate<mail> toPredicate(FilterCriteriaDTO criteria) {
+        if (!hasActiveFilters(criteria)) {
+            return email -> true;
+        }
+        return compile(criteria)::matches;
+    }
+
+    /**
+     * Criteria of the filters the storage layer can answer from its indexes (text, priority, starred, attachment)
+     * it narrows the mails to check with them, toPredicate still decides
+     * @param criteria : filters to apply on mails
+     * @return query filled by the filters themselves, empty if no such criterion is set
+     */
+    public MailQuery toQuery(FilterCriteriaDTO criteria) {
+        MailQuery query = new MailQuery();
+        if (criteria != null) {
+            compile(criteria).narrow(query);
+        }
+        return query;
+    }
+
+    /**
+     * Build the chain of responsibility for filters: the compiled criteria, then the custom filters
+     * @param criteria : filters to apply on mails
+     * @param customFilters : more filters run after the criteria, in this order
+     * @return first filter of the chain
+     */
+    public EmailFilter buildFilterChain(FilterCriteriaDTO criteria, EmailFilter... customFilters) {
+        // a copy: the cached filter is shared, its next filter must not be set
+        EmailFilter chain = criteria == null ? new CompiledFilter(List.of()) : compile(criteria).copy();
+        EmailFilter last = chain;
+        for (EmailFilter filter : customFilters) {
+            last.setNext(filter);
+            last = filter;
+        }
+        return chain;
+    }
+
+    /**
+     * Compiled filter of the criteria, from the cache if the same criteria were seen
+     * @param criteria : filters to apply on mails
+     * @return active filters fused in evaluation order
+     */
+    public CompiledFilter compile(FilterCriteriaDTO criteria) {
+        List<Object> key = criteriaKey(criteria);
+        synchronized (compiled) {
+            CompiledFilter filter = compiled.get(key);
+            if (filter != null) {
+                return filter;
+            }
+        }
+        CompiledFilter filter = new CompiledFilter(buildClauses(criteria));
+        synchronized (compiled) {
+            compiled.put(key, filter);
+        }
+        return filter;
+    }
+
+    /**
+     * Active filters with their estimated cost (1 = a boolean check) and selectivity (fraction of mails kept)
+     * field checks first, then the text scans from the shortest field to the longest
+     * @param criteria : filters to apply on mails
+     * @return unordered clauses
+     */
+    private List<CompiledFilter.Clause> buildClauses(FilterCriteriaDTO criteria) {
+        List<CompiledFilter.Clause> clauses = new ArrayList<>();
+        if (criteria.getIsStarred() != null) {
+            clauses.add(new CompiledFilter.Clause(new StarredFilter(criteria.getIsStarred()), 1, 0.5));
+        }
+        if (criteria.getHasAttachment() != null) {
+            clauses.add(new CompiledFilter.Clause(new AttachmentFilter(criteria.getHasAttachment()), 1, 0.5));
+        }
+        if (criteria.getPriority() != null && !criteria.getPriority().isEmpty()) {
+            // 4 priority levels
+            double kept = Math.min(1.0, criteria.getPriority().size() / 4.0);
+            clauses.add(new CompiledFilter.Clause(new PriorityFilter(criteria.getPriority()), 2, kept));
+        }
+        if (criteria.getDateFrom() != null || criteria.getDateTo() != null) {
+            clauses.add(new CompiledFilter.Clause(new DateRangeFilter(criteria.getDateFrom(), criteria.getDateTo()), 3, 0.5));
+        }
+        if (isSet(criteria.getSender())) {
+            clauses.add(new CompiledFilter.Clause(new SenderFilter(criteria.getSender()), 10, 0.2));
+        }
+        if (isSet(criteria.getSubjectContains())) {
+            clauses.add(new CompiledFilter.Clause(new SubjectFilter(criteria.getSubjectContains()), 20, 0.1));
+        }
+        if (isSet(criteria.getBodyContains())) {
+            clauses.add(new CompiledFilter.Clause(new BodyFilter(criteria.getBodyContains()), 200, 0.1));
+        }
+        if (isSet(criteria.getSearchTerm())) {
+            // subject, body and sender
+            clauses.add(new CompiledFilter.Clause(new SearchFilter(criteria.getSearchTerm()), 230, 0.1));
+        }
+        return clauses;
+    }
+
+    /**
+     * Normalized criteria values (FilterCriteriaDTO has no equals): criteria keeping the same mails give equal keys
+     * (terms lower cased and trimmed like the filters read them, blank terms and empty priorities dropped, priorities sorted)
+     * @param criteria : filters to apply on mails, may be null
+     * @return key for caches of compiled filters and results
+     */
+    public List<Object> criteriaKey(FilterCriteriaDTO criteria) {
+        if (criteria == null) {
+            return Arrays.asList(null, null, null, null, null, null, null, null, null);
+        }
+        List<Integer> priorities = criteria.getPriority() == null || criteria.getPriority().isEmpty() ? null
+                : new ArrayList<>(new TreeSet<>(criteria.getPriority()));
+        return Arrays.asList(term(criteria.getSearchTerm()), criteria.getDateFrom(), criteria.getDateTo(),
+                term(criteria.getSender()), priorities, criteria.getHasAttachment(), criteria.getIsStarred(),
+                term(criteria.getSubjectContains()), term(criteria.getBodyContains()));
+    }
+
+    private static String term(String value) {
+        return isSet(value) ? value.toLowerCase().trim() : null;
+    }
 
-        // Apply the chain
-        return chain.apply(emails);
+    private static boolean isSet(String value) {
+        return value != null && !value.trim().isEmpty();
     }
 
     /**
-     * Build the chain of responsibility for filters
-     * @param criteria:filters to apply on mails
-     * @return chain of filters
+     * Check if the filters read the body of the mails (mails without it can't be checked)
+     * @param criteria : filters to apply on mails, may be null
+     * @return true if a search term or a body term is set
      */
-    private EmailFilter buildFilterChain(FilterCriteriaDTO criteria) {
-        // Create all filters
-        SearchFilter searchFilter = new SearchFilter(criteria.getSearchTerm());
-        DateRangeFilter dateFilter = new DateRangeFilter(criteria.getDateFrom(), criteria.getDateTo());
-        SenderFilter senderFilter = new SenderFilter(criteria.getSender());
-        PriorityFilter priorityFilter = new PriorityFilter(criteria.getPriority());
-        AttachmentFilter attachmentFilter = new AttachmentFilter(criteria.getHasAttachment());
-        StarredFilter starredFilter = new StarredFilter(criteria.getIsStarred());
-        SubjectFilter subjectFilter = new SubjectFilter(criteria.getSubjectContains());
-        BodyFilter bodyFilter = new BodyFilter(criteria.getBodyContains());
-
-        // Build the chain
-        searchFilter.setNext(dateFilter);
-        dateFilter.setNext(senderFilter);
-        senderFilter.setNext(priorityFilter);
-        priorityFilter.setNext(attachmentFilter);
-        attachmentFilter.setNext(starredFilter);
-        starredFilter.setNext(subjectFilter);
-        subjectFilter.setNext(bodyFilter);
-
-        return searchFilter;
+    public boolean readsBody(FilterCriteriaDTO criteria) {
+        return criteria != null && (isSet(criteria.getSearchTerm()) || isSet(criteria.getBodyContains()));
     }
 
     /**
@@ -3,6 +3,7 @@ package com.example.backend.service;
 import com.example.backend.DTOS.FolderRequestDTO;
 import com.example.backend.DTOS.FolderResponseDTO;
 import com.example.backend.Repo.FolderRepo;
+import com.example.backend.Repo.MailStore;
 import com.example.backend.Factory.FolderFactory;
 import com.example.backend.model.Folder;
 import com.example.backend.Util.JsonFileManager;
@@ -26,6 +27,9 @@ public class FolderService {
     @Autowired
     private JsonFileManager jsonFileManager;
 
+    @Autowired
+    private MailStore mailStore;
+
     @Autowired
     private FolderFactory folderFactory;
     /**
@@ -68,9 +72,8 @@ public class FolderService {
         //save folder to list of folders in folder.json
         Folder saved = folderRepo.save(userEmail, folder);
 
-        // Create empty JSON file for this folder
-        String folderPath = jsonFileManager.getUserFolderPath(userEmail, "folder_" + saved.getId());
-        jsonFileManager.writeListToFile(folderPath, List.of());
+        // Create the empty mail folder of this folder
+        mailStore.createFolder(userEmail, "folder_" + saved.getId());
 
         return mapToDTO(saved);
     }
@@ -107,8 +110,7 @@ public class FolderService {
      * @param folderId : the id of the folder to be deleted
      */
     public boolean deleteFolder(String userEmail, String folderId) {
-        String folderPath = jsonFileManager.getUserFolderPath(userEmail, "folder_" + folderId);
-        jsonFileManager.deleteFile(folderPath);
+        mailStore.deleteFolder(userEmail, "folder_" + folderId);
 
         // Delete the folder metadata
         return folderRepo.delete(userEmail, folderId);
@@ -0,0 +1,150 @@
+package com.example.backend.service;
+
+import com.example.backend.DTOS.FilterCriteriaDTO;
+import com.example.backend.DTOS.QueryPlanDTO;
+import com.example.backend.DTOS.QueryPlanStepDTO;
+import com.example.backend.FilterPattern.CompiledFilter;
+import com.example.backend.Repo.MailStore;
+import com.example.backend.Repo.SearchAccess;
+import com.example.backend.Repo.mailRepo;
+import com.example.backend.StrategyPattern.EmailSortContext;
+import com.example.backend.Util.MailPage;
+import com.example.backend.Util.MailQuery;
+import com.example.backend.model.mail;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Explains a folder listing: which indexes narrow it, how the folder is read, in which order the filters run
+ * and how the result is sorted, with the rows each step was expected to keep and the rows and time it really took
+ * the listing is planned and run like mailService does (same query, filters and order), the result cache is bypassed
+ */
+@Service
+public class MailQueryPlanner {
+
+    private final MailStore mailStore;
+    private final mailRepo mailRepo;
+    private final EmailFilterService emailFilterService;
+    private final EmailSortContext emailSortContext;
+
+    public MailQueryPlanner(MailStore mailStore, mailRepo mailRepo, EmailFilterService emailFilterService,
+                            EmailSortContext emailSortContext) {
+        this.mailStore = mailStore;
+        this.mailRepo = mailRepo;
+        this.emailFilterService = emailFilterService;
+        this.emailSortContext = emailSortContext;
+    }
+
+    /**
+     * Plan and run a folder listing of the logged in user
+     * @param folder : folder name (inbox, sent, draft, trash, folder_x)
+     * @param sort : sort strategy name, null or empty keeps the folder order
+     * @param criteria : filters to apply on mails, may be null
+     * @param page : page number from 0, used with a size
+     * @param size : mails per page, null for the whole listing
+     * @return the plan, steps in execution order
+     */
+    public QueryPlanDTO explain(String folder, String sort, FilterCriteriaDTO criteria, int page, Integer size) {
+        if (folder == null || !folder.matches(MailStore.FOLDER_NAME)) {
+            throw new IllegalArgumentException("Unknown folder: " + folder);
+        }
+        if (size != null && (page < 0 || size < 1)) {
+            throw new IllegalArgumentException("Invalid page " + page + " or size " + size);
+        }
+        long start = System.nanoTime();
+        String user = mailRepo.getCurrentUser();
+        boolean filtered = emailFilterService.hasActiveFilters(criteria);
+        // every order comes from the store, like the listing (index order, or a bounded heap for a page)
+        Comparator<mail> order = sort == null || sort.isEmpty() ? null : emailSortContext.getOrder(sort);
+        int end = size == null ? 0 : MailPage.end((int) Math.min(Integer.MAX_VALUE, (long) page * size), size);
+        MailQuery query = filtered ? emailFilterService.toQuery(criteria) : new MailQuery();
+        // like the listing: summaries only unless a filter reads the body
+        if (!emailFilterService.readsBody(criteria)) {
+            query.summaryOnly();
+        }
+        List<CompiledFilter.Clause> clauses = filtered ? emailFilterService.compile(criteria).getClauses() : List.of();
+
+        QueryPlanDTO plan = new QueryPlanDTO();
+        plan.setFolder(folder);
+        plan.setSort(sort);
+        SearchAccess access = mailStore.explainSearch(user, folder, query, order);
+        for (SearchAccess.Lookup lookup : access.getLookups()) {
+            plan.getSteps().add(new QueryPlanStepDTO("index " + lookup.getIndex(), lookup.getClause(),
+                    null, lookup.getRows(), lookup.getMicros()));
+        }
+
+        // the same search, each filter counted and timed (search calls the filter from one thread)
+        int[] reached = new int[1];
+        int[] passed = new int[clauses.size()];
+        long[] nanos = new long[clauses.size()];
+        Predicate<mail> counting = email -> {
+            reached[0]++;
+            for (int i = 0; i < clauses.size(); i++) {
+                long clauseStart = System.nanoTime();
+                boolean kept = clauses.get(i).getFilter().matches(email);
+                nanos[i] += System.nanoTime() - clauseStart;
+                if (!kept) {
+                    return false;
+                }
+                passed[i]++;
+            }
+            return true;
+        };
+        long searchStart = System.nanoTime();
+        List<mail> result = size == null ? mailStore.search(user, folder, query, counting, order, 0)
+                : mailStore.searchPage(user, folder, query, counting, order, end - size, size).getMails();
+        long searchNanos = System.nanoTime() - searchStart;
+
+        // sorted by the store while reading: timed again on a copy of the result
+        long sortNanos = 0;
+        if (order != null && !access.isOrdered() && size == null) {
+            List<mail> copy = new ArrayList<>(result);
+            long sortStart = System.nanoTime();
+            copy.sort(order);
+            sortNanos = System.nanoTime() - sortStart;
+        }
+        long filterNanos = 0;
+        for (long clauseNanos : nanos) {
+            filterNanos += clauseNanos;
+        }
+        int folderSize = access.getFolderSize() >= 0 ? access.getFolderSize() : mailStore.list(user, folder).size();
+        plan.setFolderSize(folderSize);
+        plan.setAccess(access.getPath().name().toLowerCase().replace('_', ' '));
+        plan.getSteps().add(new QueryPlanStepDTO("access", plan.getAccess(),
+                access.getCandidates() >= 0 ? access.getCandidates() : folderSize, reached[0],
+                Math.max(0, searchNanos - filterNanos - sortNanos) / 1000));
+
+        // estimates over the whole folder, each filter keeping its selectivity of what the previous ones kept
+        double estimated = folderSize;
+        for (int i = 0; i < clauses.size(); i++) {
+            CompiledFilter.Clause clause = clauses.get(i);
+            estimated *= clause.getSelectivity();
+            plan.getSteps().add(new QueryPlanStepDTO("filter", clause.getFilter().getClass().getSimpleName()
+                    + " (cost " + clause.getCost() + ", selectivity " + clause.getSelectivity() + ")",
+                    (int) Math.round(estimated), passed[i], nanos[i] / 1000));
+        }
+
+        if (order != null && access.isOrdered()) {
+            plan.getSteps().add(new QueryPlanStepDTO("sort", (access.getPath().name().startsWith("TIME") ? "time" : "sort")
+                    + " index order, no sort (" + sort + ")", null, result.size(), 0));
+        } else if (order != null && size != null) {
+            plan.getSteps().add(new QueryPlanStepDTO("sort", "top-K heap while reading, k = " + end + " (" + sort
+                    + "), timed within access", null, result.size(), 0));
+        } else if (order != null) {
+            plan.getSteps().add(new QueryPlanStepDTO("sort", "full sort while reading (" + sort + ")", null, result.size(),
+                    sortNanos / 1000));
+        } else if (sort != null && !sort.isEmpty()) {
+            long sortStart = System.nanoTime();
+            result = emailSortContext.sortEmails(result, sort);
+            plan.getSteps().add(new QueryPlanStepDTO("sort", "full sort after reading (" + sort + ")", null, result.size(),
+                    (System.nanoTime() - sortStart) / 1000));
+        }
+        plan.setResultRows(result.size());
+        plan.setTotalMicros((System.nanoTime() - start) / 1000);
+        return plan;
+    }
+}
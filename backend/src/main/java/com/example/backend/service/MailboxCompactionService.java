@@ -0,0 +1,32 @@
+package com.example.backend.service;
+
+import com.example.backend.Util.JsonFileManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * background job folding mailbox journals (inbox.journal ...) back into their json snapshot
+ * keeps journals short so uncached reads don't replay a long log
+ */
+@Service
+public class MailboxCompactionService {
+
+    private final JsonFileManager jsonFileManager;
+
+    public MailboxCompactionService(JsonFileManager jsonFileManager) {
+        this.jsonFileManager = jsonFileManager;
+    }
+
+    @Scheduled(fixedDelayString = "${mail.journal.compact-interval-ms:30000}")
+    public void compactJournals() {
+        try {
+            int compacted = jsonFileManager.compactJournals();
+            if (compacted > 0) {
+                System.out.println("Compacted " + compacted + " mailbox journals");
+            }
+        } catch (Exception e) {
+            System.err.println("Error during journal compaction: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
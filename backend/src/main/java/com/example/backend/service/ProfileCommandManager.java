@@ -1,7 +1,9 @@
 package com.example.backend.service;
 
 import com.example.backend.model.InfoPlus;
+import com.example.backend.Util.JsonFileManager;
 import com.google.gson.Gson;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.FileWriter;
@@ -20,6 +22,9 @@ public class ProfileCommandManager {
     private static final int MAX_HISTORY_SIZE = 50;
     
     private final Gson gson = new Gson();
+
+    @Autowired
+    private JsonFileManager fileManager; // resolves user directories (flat or hashed layout)
     
     // FIXED: Use ConcurrentHashMap for thread safety
     private final Map<String, Stack<ProfileChange>> undoStacks = new ConcurrentHashMap<>();
@@ -161,7 +166,7 @@ public class ProfileCommandManager {
      * FIXED: Better error handling and null safety
      */
     private void applyChange(String email, String fieldName, String value) throws Exception {
-        String path = "data/users/" + email + "/infoplus.json";
+        String path = fileManager.getUserFolderPath(email, "infoplus");
         
         // Read current infoplus
         InfoPlus infoPlus;
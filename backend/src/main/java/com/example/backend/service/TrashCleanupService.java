@@ -1,13 +1,12 @@
 package com.example.backend.service;
 
-import com.example.backend.Util.JsonFileManager;
+import com.example.backend.Repo.MailStore;
+import com.example.backend.Util.MailboxLockManager;
+import com.example.backend.Util.UserDirectoryLayout;
 import com.example.backend.model.mail;
-import com.google.gson.reflect.TypeToken;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
-import java.lang.reflect.Type;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -16,13 +15,19 @@ import java.util.stream.Collectors;
 @Service
 public class TrashCleanupService {
 
-    private final JsonFileManager jsonFileManager;
-    private final String BASE_PATH = "data/users/";
-    private static final Type MAIL_LIST_TYPE = new TypeToken<List<mail>>(){}.getType();
+    // folders of every user (json files or embedded key-value store, see mail.store.type)
+    private final MailStore mailStore;
+    // same per (user, folder) locks as mailRepo, a cleanup never races a delete into trash
+    private final MailboxLockManager mailboxLockManager;
+    // one directory per registered user (flat or hashed fan-out)
+    private final UserDirectoryLayout userDirectoryLayout;
     private static final int DAYS_TO_KEEP = 30;
 
-    public TrashCleanupService(JsonFileManager jsonFileManager) {
-        this.jsonFileManager = jsonFileManager;
+    public TrashCleanupService(MailStore mailStore, MailboxLockManager mailboxLockManager,
+                               UserDirectoryLayout userDirectoryLayout) {
+        this.mailStore = mailStore;
+        this.mailboxLockManager = mailboxLockManager;
+        this.userDirectoryLayout = userDirectoryLayout;
     }
 
     //@Scheduled(cron = "0 */2 * * * *")
@@ -32,18 +37,17 @@ public class TrashCleanupService {
         System.out.println("Time: " + LocalDateTime.now());
 
         try {
-            File usersDir = new File(BASE_PATH);
-            File[] userFolders = usersDir.listFiles(File::isDirectory);
+            // walks the fan-out levels, users not migrated yet included
+            List<String> users = userDirectoryLayout.users();
 
-            if (userFolders == null || userFolders.length == 0) {
+            if (users.isEmpty()) {
                 System.out.println("No user folders found");
                 return;
             }
 
             int totalCleaned = 0;
 
-            for (File userFolder : userFolders) {
-                String userEmail = userFolder.getName();
+            for (String userEmail : users) {
                 int cleaned = cleanUserTrash(userEmail);
                 totalCleaned += cleaned;
             }
@@ -58,10 +62,9 @@ public class TrashCleanupService {
     }
 
     private int cleanUserTrash(String userEmail) {
-        String trashPath = BASE_PATH + userEmail + "/trash.json";
-
-        try {
-            List<mail> trashEmails = jsonFileManager.readListFromFile(trashPath, MAIL_LIST_TYPE);
+        // read-filter-write of trash, a mail deleted into trash meanwhile must not be lost
+        try (MailboxLockManager.Handle locks = mailboxLockManager.write(MailboxLockManager.mailbox(userEmail, MailStore.TRASH))) {
+            List<mail> trashEmails = mailStore.list(userEmail, MailStore.TRASH);
 
             if (trashEmails == null || trashEmails.isEmpty()) {
                 return 0;
@@ -86,7 +89,7 @@ public class TrashCleanupService {
             int deletedCount = originalSize - filteredEmails.size();
 
             if (deletedCount > 0) {
-                jsonFileManager.writeListToFile(trashPath, filteredEmails);
+                mailStore.replaceAll(userEmail, MailStore.TRASH, filteredEmails);
                 System.out.println("User: " + userEmail + " - Deleted " + deletedCount + " old emails");
             }
 
@@ -1,17 +1,27 @@
 package com.example.backend.service;
 
-import java.util.PriorityQueue;
 import java.util.Queue;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 
+import com.example.backend.Repo.MailStore;
 import com.example.backend.Repo.mailRepo;
-import com.example.backend.Util.EmailPriorityComparator;
 import com.example.backend.Util.JsonFileManager;
+import com.example.backend.Util.MailCursor;
+import com.example.backend.Util.MailPage;
+import com.example.backend.Util.MailQuery;
+import com.example.backend.Util.MailResultCache;
+import com.example.backend.Util.MailboxLockManager;
 import com.example.backend.model.mail;
+import com.example.backend.DTOS.CursorPageResponse;
 import com.example.backend.DTOS.FilterCriteriaDTO;
+import com.example.backend.DTOS.MailSummaryDTO;
+import com.example.backend.DTOS.PaginatedMailResponse;
+import com.example.backend.DTOS.SenderCountDTO;
 import com.example.backend.service.EmailFilterService;
 import com.example.backend.StrategyPattern.EmailSortContext;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,7 +34,6 @@ import com.example.backend.DTOS.mailContentDTO;
 
 import com.example.backend.Exceptions.UserNotFoundException;
 import com.example.backend.Factory.mailFactory;
-import com.google.gson.reflect.TypeToken;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -36,15 +45,23 @@ import org.springframework.web.context.request.ServletRequestAttributes;
 @Setter
 public class mailService {
 
+    // largest page a paged listing returns
+    private static final int MAX_PAGE_SIZE = 500;
+    // page size of a cursor listing without size
+    private static final int DEFAULT_CURSOR_PAGE_SIZE = 50;
+
     // REMOVED: private String senderEmail = (String)
     // session.getAttribute("currentUser");
 
     private String senderEmail; // Keep this for backward compatibility with setSenderEmail()
-    private final String BasePath = "data/users/";
     private final JsonFileManager jsonFileManager;
+    // folders of every user (json files or embedded key-value store, see mail.store.type)
+    private final MailStore mailStore;
     private final attachementService attachementService;
-    private static final Type MAIL_LIST_TYPE = new TypeToken<List<mail>>() {
-    }.getType();
+    // per (user, folder) locks shared with mailRepo and TrashCleanupService
+    private final MailboxLockManager mailboxLockManager;
+    // results of the folder listings, valid while the folder version doesn't change
+    private final MailResultCache mailResultCache;
     // ADD these fields after the existing fields
     @Autowired
     private EmailSortContext emailSortContext;
@@ -56,9 +73,13 @@ public class mailService {
     @Autowired
     private mailRepo mailRepo;
 
-    public mailService(JsonFileManager jsonFileManager,attachementService attachementService) {
+    public mailService(JsonFileManager jsonFileManager, MailStore mailStore, attachementService attachementService,
+                       MailboxLockManager mailboxLockManager, MailResultCache mailResultCache) {
         this.jsonFileManager = jsonFileManager;
+        this.mailStore = mailStore;
         this.attachementService =attachementService ;
+        this.mailboxLockManager = mailboxLockManager;
+        this.mailResultCache = mailResultCache;
     }
 
     /**
@@ -86,29 +107,37 @@ public class mailService {
      * Get all emails from inbox
      */
 
-    public List<mail> getInboxEmailsByPriority() {
-        String inboxPath = BasePath + getLoggedInUser() + "/inbox.json";
-        List<mail> emails = jsonFileManager.readListFromFile(inboxPath, MAIL_LIST_TYPE);
-
-        PriorityQueue<mail> priorityQueue = new PriorityQueue<>(new EmailPriorityComparator());
-        priorityQueue.addAll(emails);
+    public List<MailSummaryDTO> getInboxEmailsByPriority() {
+        List<mail> emails = mailStore.search(getLoggedInUser(), MailStore.INBOX, new MailQuery().summaryOnly(), null, null, 0);
 
-        // Extract emails from priority queue in sorted order
-        List<mail> sortedEmails = new ArrayList<>();
-        while (!priorityQueue.isEmpty()) {
-            sortedEmails.add(priorityQueue.poll());
-        }
+        // urgent first, newest first within a priority (counting sort, no heap)
+        List<mail> sortedEmails = emailSortContext.sortEmails(emails, "priority-asc");
 
-        return sortedEmails;
+        return toSummaries(sortedEmails);
     }
     
 
+    /**
+     * Senders with the most mails in a folder, counted by the storage layer (sender index) without reading the mails
+     * @param folder : folder file name without extension (inbox, sent, draft, trash, folder_x)
+     * @param limit : number of senders (1 to 100)
+     * @return senders with their number of mails, most frequent first
+     */
+    public List<SenderCountDTO> getTopSenders(String folder, int limit) {
+        if (folder == null || !folder.matches(MailStore.FOLDER_NAME)) {
+            throw new IllegalArgumentException("Unknown folder: " + folder);
+        }
+        List<SenderCountDTO> senders = new ArrayList<>();
+        mailStore.topSenders(getLoggedInUser(), folder, Math.max(1, Math.min(limit, 100)))
+                .forEach((sender, count) -> senders.add(new SenderCountDTO(sender, count)));
+        return senders;
+    }
+
     /**
      * Compose and send a new email
      */
     public void composeMail(mailContentDTO mailContent) throws UserNotFoundException {
         String currentUser = getLoggedInUser();
-        String sentPath = BasePath + currentUser + "/sent.json";
         mail mail = mailFactory.createNewMail(mailContent);
         mail.setFrom(currentUser);
 
@@ -121,16 +150,22 @@ public class mailService {
             throw new UserNotFoundException("Email address " + receiver + " is not registered in our system");
         }
 
-        List<mail> sentMails = jsonFileManager.readListFromFile(sentPath, MAIL_LIST_TYPE);
-        sentMails.add(mail);
-        jsonFileManager.writeListToFile(sentPath, sentMails);
+        // sender's sent folder and receiver's inbox change together (ordered locking, no deadlock with a reply)
+        BooleanSupplier sent;
+        BooleanSupplier delivered;
+        try (MailboxLockManager.Handle locks = mailboxLockManager.write(
+                MailboxLockManager.mailbox(currentUser, MailStore.SENT), MailboxLockManager.mailbox(receiver, MailStore.INBOX))) {
+            sent = mailStore.queueAppend(currentUser, MailStore.SENT, mail);
 
-        // Send to all receivers
-        mail.setTo(null);
-        String path = BasePath + receiver + "/inbox.json";
-        List<mail> inboxMails = jsonFileManager.readListFromFile(path, MAIL_LIST_TYPE);
-        inboxMails.add(mail);
-        jsonFileManager.writeListToFile(path, inboxMails);
+            // Send to all receivers
+            mail.setTo(null);
+            delivered = mailStore.queueAppend(receiver, MailStore.INBOX, mail);
+        }
+        // written after the locks are released: deliveries to the same inbox queued meanwhile share one write
+        boolean sentWritten = sent.getAsBoolean();
+        if (!delivered.getAsBoolean() || !sentWritten) {
+            System.err.println("Failed to write mail " + mail.getId() + " from " + currentUser + " to " + receiver);
+        }
     }
 
     public void saveDraft(mailContentDTO mailContent) {
@@ -142,17 +177,18 @@ public class mailService {
         }
         System.out.println("Successfully processed " + mailContent.getAttachements().size() + " attachments for draft");
     }
-        String draftPath = BasePath + getLoggedInUser() + "/draft.json";
-        List<mail> draftMails = jsonFileManager.readListFromFile(draftPath, MAIL_LIST_TYPE);
+        String currentUser = getLoggedInUser();
         mail mail = mailFactory.createNewMail(mailContent);
-        draftMails.add(mail);
-        mail.setFrom(getLoggedInUser()) ;
-        jsonFileManager.writeListToFile(draftPath, draftMails);
+        mail.setFrom(currentUser) ;
+        BooleanSupplier saved;
+        try (MailboxLockManager.Handle locks = mailboxLockManager.write(MailboxLockManager.mailbox(currentUser, MailStore.DRAFT))) {
+            saved = mailStore.queueAppend(currentUser, MailStore.DRAFT, mail);
+        }
+        if (!saved.getAsBoolean()) {
+            System.err.println("Failed to write draft " + mail.getId() + " of " + currentUser);
+        }
     }
 
-    private final Object trashLock = new Object();
-    private final Object folderLock = new Object();
-
     /**
      * Move an email from one folder to another
      */
@@ -164,53 +200,14 @@ public class mailService {
 
         try {
             String currentUser = getLoggedInUser();
-            String fromFolderPath = BasePath + currentUser + "/" + fromFolder + ".json";
-            String toFolderPath = BasePath + currentUser + "/" + toFolder + ".json";
 
-            // Synchronize to prevent concurrent modification
-            synchronized (folderLock) {
-                // Read from source folder
-                List<mail> fromEmails = jsonFileManager.readListFromFile(fromFolderPath, MAIL_LIST_TYPE);
+            // Lock both folders of this user only (always taken in the same order)
+            try (MailboxLockManager.Handle locks = mailboxLockManager.write(
+                    MailboxLockManager.mailbox(currentUser, fromFolder), MailboxLockManager.mailbox(currentUser, toFolder))) {
+                mail moved = mailStore.move(currentUser, fromFolder, toFolder, id, null);
 
-                if (fromEmails == null) {
-                    fromEmails = new ArrayList<>();
-                }
-
-                // Find the email to move
-                mail emailToMove = null;
-                for (mail email : fromEmails) {
-                    if (email.getId() == id) {
-                        emailToMove = email;
-                        break;
-                    }
-                }
-
-                if (emailToMove == null) {
-                    System.out.println("Email not found with ID: " + id);
-                    return false;
-                }
-
-                // Remove from source folder
-                fromEmails.remove(emailToMove);
-                boolean removeSuccess = jsonFileManager.writeListToFile(fromFolderPath, fromEmails);
-
-                if (!removeSuccess) {
-                    System.err.println("Failed to remove from folder: " + fromFolderPath);
-                    return false;
-                }
-
-                // Add to destination folder
-                List<mail> toEmails = jsonFileManager.readListFromFile(toFolderPath, MAIL_LIST_TYPE);
-
-                if (toEmails == null) {
-                    toEmails = new ArrayList<>();
-                }
-
-                toEmails.add(emailToMove);
-                boolean addSuccess = jsonFileManager.writeListToFile(toFolderPath, toEmails);
-
-                if (!addSuccess) {
-                    System.err.println("Failed to add to folder: " + toFolderPath);
+                if (moved == null) {
+                    System.out.println("Email not found with ID: " + id + " (or move failed)");
                     return false;
                 }
 
@@ -229,84 +226,41 @@ public class mailService {
     /**
      * Get emails from custom folder
      */
-    public List<mail> getCustomFolderEmails(String folderId) {
-        String folderPath = BasePath + getLoggedInUser() + "/folder_" + folderId + ".json";
-        return jsonFileManager.readListFromFile(folderPath, MAIL_LIST_TYPE);
+    public List<MailSummaryDTO> getCustomFolderEmails(String folderId) {
+        return toSummaries(getFolderEmails("folder_" + folderId, null, null));
     }
     /**
      * Get inbox emails with optional filtering and sorting
  */
-    public List<mail> getInboxEmails(String sort, FilterCriteriaDTO filters) {
-        List<mail> emails = mailRepo.getInboxEmails();
-
-        // Apply filters if provided
-        if (filters != null && emailFilterService.hasActiveFilters(filters)) {
-            emails = emailFilterService.applyFilters(emails, filters);
-        }
-
-        // Apply sorting
-        if (sort != null && !sort.isEmpty()) {
-            emails = emailSortContext.sortEmails(emails, sort);
-        }
-
-        return emails;
+    public List<MailSummaryDTO> getInboxEmails(String sort, FilterCriteriaDTO filters) {
+        return toSummaries(getFolderEmails("inbox", sort, filters));
     }
 
     /**
      * Get sent emails with optional filtering and sorting
      */
-    public List<mail> getSentEmails(String sort, FilterCriteriaDTO filters) {
-        List<mail> emails = mailRepo.getSentEmails();
-
-        if (filters != null && emailFilterService.hasActiveFilters(filters)) {
-            emails = emailFilterService.applyFilters(emails, filters);
-        }
-
-        if (sort != null && !sort.isEmpty()) {
-            emails = emailSortContext.sortEmails(emails, sort);
-        }
-
-        return emails;
+    public List<MailSummaryDTO> getSentEmails(String sort, FilterCriteriaDTO filters) {
+        return toSummaries(getFolderEmails("sent", sort, filters));
     }
 
     /**
      * Get draft emails with optional filtering and sorting
      */
-    public List<mail> getDraftEmails(String sort, FilterCriteriaDTO filters) {
-        List<mail> emails = mailRepo.getDraftEmails();
-
-        if (filters != null && emailFilterService.hasActiveFilters(filters)) {
-            emails = emailFilterService.applyFilters(emails, filters);
-        }
-
-        if (sort != null && !sort.isEmpty()) {
-            emails = emailSortContext.sortEmails(emails, sort);
-        }
-
-        return emails;
+    public List<MailSummaryDTO> getDraftEmails(String sort, FilterCriteriaDTO filters) {
+        return toSummaries(getFolderEmails("draft", sort, filters));
     }
 
     /**
      * Get trash emails with optional filtering and sorting
      */
-    public List<mail> getTrashEmails(String sort, FilterCriteriaDTO filters) {
-        List<mail> emails = mailRepo.getTrashEmails();
-
-        if (filters != null && emailFilterService.hasActiveFilters(filters)) {
-            emails = emailFilterService.applyFilters(emails, filters);
-        }
-
-        if (sort != null && !sort.isEmpty()) {
-            emails = emailSortContext.sortEmails(emails, sort);
-        }
-
-        return emails;
+    public List<MailSummaryDTO> getTrashEmails(String sort, FilterCriteriaDTO filters) {
+        return toSummaries(getFolderEmails("trash", sort, filters));
     }
 
 /**
  * Get starred emails with optional filtering and sorting
  */
-public List<mail> getStarredEmails(String sort, FilterCriteriaDTO filters) {
+public List<MailSummaryDTO> getStarredEmails(String sort, FilterCriteriaDTO filters) {
     List<mail> emails = mailRepo.getStarredEmails();
     
     // Apply filters if provided
@@ -319,23 +273,196 @@ public List<mail> getStarredEmails(String sort, FilterCriteriaDTO filters) {
         emails = emailSortContext.sortEmails(emails, sort);
     }
 
-    return emails;
+    return toSummaries(emails);
 }
 
     /**
      * Get emails from custom folder with optional filtering and sorting
      */
-    public List<mail> getCustomFolderEmails(String folderId, String sort, FilterCriteriaDTO filters) {
-        String folderPath = BasePath + getLoggedInUser() + "/folder_" + folderId + ".json";
-        List<mail> emails = jsonFileManager.readListFromFile(folderPath, MAIL_LIST_TYPE);
+    public List<MailSummaryDTO> getCustomFolderEmails(String folderId, String sort, FilterCriteriaDTO filters) {
+        return toSummaries(getFolderEmails("folder_" + folderId, sort, filters));
+    }
+
+    /**
+     * One page of a folder listing (same filters and sort as the whole listing) and the number of mails in it
+     * only the mails up to the end of the page are kept while reading: bounded heap, O(n log k) instead of a full sort
+     * @param folder : inbox, sent, draft, trash or folder_<id>
+     * @param page : page number, from 0
+     * @param size : mails per page (at most MAX_PAGE_SIZE)
+     */
+    public PaginatedMailResponse getFolderEmailsPage(String folder, String sort, FilterCriteriaDTO filters, int page, int size) {
+        if (folder == null || !folder.matches(MailStore.FOLDER_NAME)) {
+            throw new IllegalArgumentException("Unknown folder: " + folder);
+        }
+        int pageSize = pageSize(page, size);
+        String user = mailRepo.getCurrentUser();
+        List<Object> key = new ArrayList<>(listingKey(user, folder, sort, filters));
+        key.add(page);
+        key.add(pageSize);
+        long version = mailStore.version(user, folder);
+        int offset = (int) Math.min(Integer.MAX_VALUE, (long) page * pageSize);
+        MailPage result = mailResultCache.getPage(endpointOf(folder), key, version,
+                () -> readFolderPage(folder, sort, filters, offset, pageSize));
+        return new PaginatedMailResponse(toSummaries(result.getMails()), result.getTotal(), page, pageSize);
+    }
+
+    /**
+     * One page of the starred listing (same filters and sort as the whole listing) and the number of mails in it
+     * @param page : page number, from 0
+     * @param size : mails per page (at most MAX_PAGE_SIZE)
+     */
+    public PaginatedMailResponse getStarredEmailsPage(String sort, FilterCriteriaDTO filters, int page, int size) {
+        int pageSize = pageSize(page, size);
+        boolean filtered = filters != null && emailFilterService.hasActiveFilters(filters);
+        Comparator<mail> order = sort == null || sort.isEmpty() ? null : emailSortContext.getOrder(sort);
+        MailPage result = MailPage.of(mailRepo.getStarredEmails(), filtered ? emailFilterService.toPredicate(filters) : null,
+                order, (int) Math.min(Integer.MAX_VALUE, (long) page * pageSize), pageSize);
+        return new PaginatedMailResponse(toSummaries(result.getMails()), result.getTotal(), page, pageSize);
+    }
+
+    /**
+     * Page of a folder listing that follows a cursor (keyset paging, for infinite scroll)
+     * the page starts right after the last mail of the previous one: same cost for every page,
+     * and mail arriving at the head of the inbox meanwhile doesn't shift the pages that follow
+     * @param folder : inbox, sent, draft, trash or folder_<id>
+     * @param sort : sort strategy, date-desc if empty
+     * @param cursor : nextCursor of the previous page, null or empty for the first page
+     * @param size : mails per page (at most MAX_PAGE_SIZE), null for DEFAULT_CURSOR_PAGE_SIZE
+     * @throws IllegalArgumentException for an unknown folder, a bad size or a cursor of another listing
+     */
+    public CursorPageResponse getFolderEmailsAfter(String folder, String sort, FilterCriteriaDTO filters, String cursor,
+                                                   Integer size) {
+        if (folder == null || !folder.matches(MailStore.FOLDER_NAME)) {
+            throw new IllegalArgumentException("Unknown folder: " + folder);
+        }
+        String cursorSort = sort == null || sort.isEmpty() ? "date-desc" : sort;
+        int pageSize = pageSize(0, size == null ? DEFAULT_CURSOR_PAGE_SIZE : size);
+        mail after = cursor == null || cursor.isEmpty() ? null : MailCursor.decode(cursor, cursorSort);
+        String user = mailRepo.getCurrentUser();
+        List<Object> key = new ArrayList<>(listingKey(user, folder, cursorSort, filters));
+        key.add(cursor == null ? "" : cursor);
+        key.add(pageSize);
+        long version = mailStore.version(user, folder);
+        // one mail more than the page: tells whether there is a next page
+        List<mail> mails = mailResultCache.get(endpointOf(folder), key, version,
+                () -> readFolderAfter(folder, cursorSort, filters, after, pageSize + 1));
+        return cursorPage(mails, cursorSort, pageSize);
+    }
+
+    /**
+     * Page of the starred listing that follows a cursor (same filters and sort as the whole listing)
+     * @param sort : sort strategy, date-desc if empty
+     * @param cursor : nextCursor of the previous page, null or empty for the first page
+     * @param size : mails per page (at most MAX_PAGE_SIZE), null for DEFAULT_CURSOR_PAGE_SIZE
+     */
+    public CursorPageResponse getStarredEmailsAfter(String sort, FilterCriteriaDTO filters, String cursor, Integer size) {
+        String cursorSort = sort == null || sort.isEmpty() ? "date-desc" : sort;
+        int pageSize = pageSize(0, size == null ? DEFAULT_CURSOR_PAGE_SIZE : size);
+        mail after = cursor == null || cursor.isEmpty() ? null : MailCursor.decode(cursor, cursorSort);
+        boolean filtered = filters != null && emailFilterService.hasActiveFilters(filters);
+        Comparator<mail> order = MailCursor.totalOrder(emailSortContext.getOrder(cursorSort));
+        List<mail> mails = MailPage.of(mailRepo.getStarredEmails(),
+                MailStore.after(filtered ? emailFilterService.toPredicate(filters) : null, order, after),
+                order, 0, pageSize + 1).getMails();
+        return cursorPage(mails, cursorSort, pageSize);
+    }
+
+    //the page out of page size + 1 mails, with the cursor of the next page if there is one
+    private static CursorPageResponse cursorPage(List<mail> mails, String sort, int pageSize) {
+        if (mails.size() <= pageSize) {
+            return new CursorPageResponse(toSummaries(mails), null, pageSize);
+        }
+        List<mail> page = mails.subList(0, pageSize);
+        return new CursorPageResponse(toSummaries(page), MailCursor.encode(sort, page.get(pageSize - 1)), pageSize);
+    }
+
+    /**
+     * helper method to convert mails to the rows of a listing
+     * @param mails : mails in listing order
+     * @return their summaries, same order
+     */
+    private static List<MailSummaryDTO> toSummaries(List<mail> mails) {
+        List<MailSummaryDTO> summaries = new ArrayList<>(mails.size());
+        for (mail email : mails) {
+            summaries.add(new MailSummaryDTO(email.getId(), email.getFrom(), email.getSubject(), email.getPreview(),
+                    email.isStarred(), email.isHasAttachment(), email.getPriority(), email.getTimestamp(), email.getFolder()));
+        }
+        return summaries;
+    }
+
+    /**
+     * Read a folder with optional filtering and sorting
+     * the same listing polled again is served from the result cache until the folder is written
+     * @param folder : folder file name without extension (inbox, sent, draft, trash, folder_x)
+     */
+    private List<mail> getFolderEmails(String folder, String sort, FilterCriteriaDTO filters) {
+        // the user the reads go to
+        String user = mailRepo.getCurrentUser();
+        List<Object> key = listingKey(user, folder, sort, filters);
+        // version read before the folder: a write during the read makes this result stale right away
+        long version = mailStore.version(user, folder);
+        return mailResultCache.get(endpointOf(folder), key, version, () -> readFolderEmails(folder, sort, filters));
+    }
+
+    //index criteria of the filters, listings only show summaries: mail details are left on disk unless a filter reads the body
+    private MailQuery listingQuery(FilterCriteriaDTO filters, boolean filtered) {
+        MailQuery query = filtered ? emailFilterService.toQuery(filters) : new MailQuery();
+        return emailFilterService.readsBody(filters) ? query : query.summaryOnly();
+    }
+
+    //result cache key of a listing
+    private List<Object> listingKey(String user, String folder, String sort, FilterCriteriaDTO filters) {
+        return Arrays.asList(user, folder, emailFilterService.criteriaKey(filters), sort == null ? "" : sort);
+    }
 
-        // Apply filters if provided
-        if (filters != null && emailFilterService.hasActiveFilters(filters)) {
-            emails = emailFilterService.applyFilters(emails, filters);
+    //result cache counters of a folder
+    private static String endpointOf(String folder) {
+        return folder.startsWith("folder_") ? "folder" : folder;
+    }
+
+    //page size within 1..MAX_PAGE_SIZE, IllegalArgumentException for a negative page or a size under 1
+    private static int pageSize(int page, int size) {
+        if (page < 0 || size < 1) {
+            throw new IllegalArgumentException("Invalid page " + page + " or size " + size);
         }
+        return Math.min(size, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Read one page of a folder with optional filtering and sorting
+     * every order is given to the storage layer: the date orders come from its index, the others keep a bounded heap
+     */
+    private MailPage readFolderPage(String folder, String sort, FilterCriteriaDTO filters, int offset, int limit) {
+        boolean filtered = filters != null && emailFilterService.hasActiveFilters(filters);
+        Comparator<mail> order = sort == null || sort.isEmpty() ? null : emailSortContext.getOrder(sort);
+        return mailRepo.getFolderEmailsPage(folder, listingQuery(filters, filtered),
+                filtered ? emailFilterService.toPredicate(filters) : null, order, offset, limit);
+    }
 
-        // Apply sorting if provided
-        if (sort != null && !sort.isEmpty()) {
+    /**
+     * Read the mails of a folder after a mail with optional filtering, in the order of a sort strategy made total by id
+     * the date orders start from the time index, the others keep a bounded heap of the mails after it
+     */
+    private List<mail> readFolderAfter(String folder, String sort, FilterCriteriaDTO filters, mail after, int limit) {
+        boolean filtered = filters != null && emailFilterService.hasActiveFilters(filters);
+        return mailRepo.getFolderEmailsAfter(folder, listingQuery(filters, filtered),
+                filtered ? emailFilterService.toPredicate(filters) : null,
+                MailCursor.totalOrder(emailSortContext.getOrder(sort)), after, limit);
+    }
+
+    /**
+     * Read a folder with optional filtering and sorting
+     * the filters and the orders are answered by the storage layer (indexes kept in every strategy order)
+     */
+    private List<mail> readFolderEmails(String folder, String sort, FilterCriteriaDTO filters) {
+        boolean filtered = filters != null && emailFilterService.hasActiveFilters(filters);
+        Comparator<mail> order = sort == null || sort.isEmpty() ? null : emailSortContext.getOrder(sort);
+        // Apply filters and the order while reading the folder if provided (summaries only: bodies stay on disk)
+        List<mail> emails = mailRepo.getFolderEmails(folder, listingQuery(filters, filtered),
+                filtered ? emailFilterService.toPredicate(filters) : null, order);
+
+        // Apply a sorting only the strategy knows
+        if (order == null && sort != null && !sort.isEmpty()) {
             emails = emailSortContext.sortEmails(emails, sort);
         }
 
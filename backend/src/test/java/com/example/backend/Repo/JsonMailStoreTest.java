@@ -0,0 +1,376 @@
+package com.example.backend.Repo;
+
+import com.example.backend.DTOS.attachementDTO;
+import com.example.backend.Util.AtomicFileWriter;
+import com.example.backend.Util.DurabilityMode;
+import com.example.backend.Util.FsyncPolicy;
+import com.example.backend.Util.JsonFileManager;
+import com.example.backend.Util.MailBitmapIndex;
+import com.example.backend.Util.MailLocationIndex;
+import com.example.backend.Util.MailQuery;
+import com.example.backend.Util.MailSenderIndex;
+import com.example.backend.Util.MailSortIndex;
+import com.example.backend.Util.MailSortOrder;
+import com.example.backend.Util.MailTextIndex;
+import com.example.backend.Util.MailTimeIndex;
+import com.example.backend.Util.MailTimeOrder;
+import com.example.backend.Util.MailStorageFormat;
+import com.example.backend.Util.MailboxCache;
+import com.example.backend.Util.MailboxJournal;
+import com.example.backend.Util.MailboxLockManager;
+import com.example.backend.Util.MappedFileCache;
+import com.example.backend.Util.StarredIndex;
+import com.example.backend.Util.UserDirectoryLayout;
+import com.example.backend.Util.WriteCoalescer;
+
+import com.example.backend.FilterPattern.SubjectFilter;
+import com.example.backend.model.mail;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MailStore conformance of the json file layout (cache and journal on, like the default configuration)
+ * users in the hashed fan-out layout, so folder paths are resolved through UserDirectoryLayout
+ * plus the starred index file, which the other backends don't have
+ */
+class JsonMailStoreTest extends MailStoreConformanceTest {
+
+    // text index of the last opened store, saved when the store is closed (like at shutdown)
+    private MailTextIndex textIndex;
+
+    @Override
+    protected MailStore openStore(Path dir) {
+        AtomicFileWriter writer = new AtomicFileWriter(FsyncPolicy.NEVER);
+        JsonFileManager manager = new JsonFileManager(new MailboxCache(10000), new MailboxJournal(true, writer), writer,
+                MailStorageFormat.JSON, new MappedFileCache(0, 0), new WriteCoalescer(0, 1, DurabilityMode.COMMIT),
+                new UserDirectoryLayout(dir.resolve("users").toString(), 2));
+        textIndex = new MailTextIndex(writer, 100);
+        return new JsonMailStore(manager, new MailLocationIndex(100), new StarredIndex(writer, 100), textIndex,
+                new MailBitmapIndex(100), new MailTimeIndex(100), new MailSenderIndex(100), new MailSortIndex(100000));
+    }
+
+    @Override
+    protected void closeStore(MailStore store) {
+        textIndex.close();
+    }
+
+    @Test
+    void savedTextIndexIsCheckedAgainstTheFolderWhenLoaded() {
+        MailStore store = openStore(tempDir);
+        store.append("alice@example.com", MailStore.INBOX, textMail(1, "weekly meeting"));
+        store.append("alice@example.com", MailStore.INBOX, textMail(2, "lunch"));
+        assertEquals(1, store.search("alice@example.com", MailStore.INBOX, meeting(), meetingFilter(), null, 0).size());
+        closeStore(store);
+
+        // changed by a store that never searched this folder: the saved index doesn't know
+        store = openStore(tempDir);
+        store.append("alice@example.com", MailStore.INBOX, textMail(3, "meeting moved"));
+        store.delete("alice@example.com", MailStore.INBOX, 1);
+        closeStore(store);
+
+        store = openStore(tempDir);
+        List<mail> found = store.search("alice@example.com", MailStore.INBOX, meeting(), meetingFilter(), null, 0);
+
+        assertEquals(1, found.size());
+        assertEquals(3, found.get(0).getId());
+        assertEquals(1L, textIndex.getStats().get("loads").longValue());
+        assertEquals(0L, textIndex.getStats().get("builds").longValue());
+        assertEquals(1L, textIndex.getStats().get("reindexedMails").longValue());
+    }
+
+    @Test
+    void missingStarredIndexIsRebuiltFromTheFolders() throws IOException {
+        MailStore store = openStore(tempDir);
+        store.append("alice@example.com", MailStore.INBOX, starredMail(1));
+        store.append("alice@example.com", MailStore.SENT, starredMail(2));
+        Path index = starredIndexFile();
+        assertTrue(Files.exists(index));
+
+        // index lost (or mailbox from before the index existed)
+        Files.delete(index);
+        store = openStore(tempDir);
+
+        assertEquals(2, store.starred("alice@example.com").size());
+        assertTrue(Files.exists(index));
+    }
+
+    @Test
+    void extraIdsInTheStarredIndexAreSkipped() throws IOException {
+        MailStore store = openStore(tempDir);
+        store.createFolder("alice@example.com", MailStore.INBOX);
+        store.append("alice@example.com", MailStore.INBOX, starredMail(1));
+        // crash between the index write and the folder write: the index names a mail the folder doesn't have
+        Files.writeString(starredIndexFile(), "{\"inbox\":[1,7]}");
+        store = openStore(tempDir);
+
+        List<mail> starred = store.starred("alice@example.com");
+
+        assertEquals(1, starred.size());
+        assertEquals(1, starred.get(0).getId());
+    }
+
+    @Test
+    void explainedAccessFollowsTheIndexes() {
+        MailStore store = openStore(tempDir);
+        for (int id = 1; id <= 64; id++) {
+            mail email = textMail(id, "mail " + id);
+            email.setPriority(id == 5 ? 1 : 3);
+            store.append("alice@example.com", MailStore.INBOX, email);
+        }
+
+        SearchAccess urgent = store.explainSearch("alice@example.com", MailStore.INBOX,
+                new MailQuery().priorityIn(List.of(1)), null);
+        SearchAccess newest = store.explainSearch("alice@example.com", MailStore.INBOX,
+                new MailQuery(), MailTimeOrder.NEWEST_FIRST);
+        SearchAccess everything = store.explainSearch("alice@example.com", MailStore.INBOX, new MailQuery(), null);
+        SearchAccess bySubject = store.explainSearch("alice@example.com", MailStore.INBOX, new MailQuery(),
+                new MailSortOrder("subject-asc", Comparator.comparing(mail::getSubject)));
+
+        // one candidate in 64 mails: read by id
+        assertEquals(SearchAccess.Path.LOOKUP_BY_ID, urgent.getPath());
+        assertEquals(1, urgent.getCandidates());
+        assertEquals(64, urgent.getFolderSize());
+        assertEquals("bitmap", urgent.getLookups().get(0).getIndex());
+        assertEquals(1, urgent.getLookups().get(0).getRows());
+        // the whole folder in time order: one read, no sort
+        assertEquals(SearchAccess.Path.TIME_ORDER_READ, newest.getPath());
+        assertTrue(newest.isOrdered());
+        assertEquals("time", newest.getLookups().get(0).getIndex());
+        // another listing order: one read in the order of the sort index
+        assertEquals(SearchAccess.Path.SORT_ORDER_READ, bySubject.getPath());
+        assertEquals("sort", bySubject.getLookups().get(0).getIndex());
+        assertEquals(64, bySubject.getCandidates());
+        assertEquals(SearchAccess.Path.SCAN, everything.getPath());
+        assertTrue(everything.getLookups().isEmpty());
+    }
+
+    @Test
+    void summaryReadsLeaveTheDetailsOnDisk() {
+        for (MailStorageFormat format : MailStorageFormat.values()) {
+            // no folder cache: every search reads the file
+            AtomicFileWriter writer = new AtomicFileWriter(FsyncPolicy.NEVER);
+            JsonFileManager manager = new JsonFileManager(new MailboxCache(0), new MailboxJournal(true, writer), writer,
+                    format, new MappedFileCache(0, 0), new WriteCoalescer(0, 1, DurabilityMode.COMMIT),
+                    new UserDirectoryLayout(tempDir.resolve(format.name()).toString(), 0));
+            MailStore store = new JsonMailStore(manager, new MailLocationIndex(100), new StarredIndex(writer, 100),
+                    new MailTextIndex(writer, 100), new MailBitmapIndex(100), new MailTimeIndex(100), new MailSenderIndex(100),
+                    new MailSortIndex(100000));
+            store.replaceAll("alice@example.com", MailStore.INBOX, List.of(detailedMail(1), detailedMail(2)));
+            // in the journal only
+            store.updateStarred("alice@example.com", MailStore.INBOX, 2, true, DurabilityMode.COMMIT);
+            store.append("alice@example.com", MailStore.INBOX, detailedMail(3));
+
+            List<mail> summaries = store.search("alice@example.com", MailStore.INBOX, new MailQuery().summaryOnly(),
+                    email -> email.getPriority() == 2, null, 0);
+            List<mail> whole = store.search("alice@example.com", MailStore.INBOX, new MailQuery(), null, null, 0);
+
+            assertEquals(3, summaries.size(), format.name());
+            mail summary = summaries.get(1);
+            assertEquals(2, summary.getId());
+            assertEquals("sender@example.com", summary.getFrom());
+            assertEquals("subject 2", summary.getSubject());
+            assertEquals("preview 2", summary.getPreview());
+            assertTrue(summary.isStarred());
+            assertTrue(summary.isHasAttachment());
+            assertEquals(LocalDateTime.of(2025, 3, 1, 10, 2), summary.getTimestamp());
+            assertNull(summary.getBody(), format.name());
+            assertNull(summary.getTo());
+            assertNull(summary.getAttachments());
+            assertEquals("body 2", whole.get(1).getBody());
+            assertEquals(1, whole.get(1).getAttachments().size());
+        }
+    }
+
+    @Test
+    void listingsInIndexOrderLeaveTheDetailsOnDisk() {
+        MailStore store = openStore(tempDir);
+        List<mail> mails = new ArrayList<>();
+        for (int id = 1; id <= 20; id++) {
+            mails.add(detailedMail(id));
+        }
+        store.replaceAll("alice@example.com", MailStore.INBOX, mails);
+        // cached and indexed, like a folder listed before
+        store.list("alice@example.com", MailStore.INBOX);
+        MailSortOrder bySubject = new MailSortOrder("subject-desc", Comparator.comparing(mail::getSubject).reversed());
+
+        for (Comparator<mail> order : List.of(MailTimeOrder.NEWEST_FIRST, bySubject)) {
+            SearchAccess access = store.explainSearch("alice@example.com", MailStore.INBOX,
+                    new MailQuery().summaryOnly(), order);
+            List<mail> listed = store.search("alice@example.com", MailStore.INBOX, new MailQuery().summaryOnly(), null,
+                    order, 0);
+            List<mail> page = store.searchPage("alice@example.com", MailStore.INBOX, new MailQuery().summaryOnly(), null,
+                    order, 5, 5).getMails();
+
+            assertTrue(access.getPath() == SearchAccess.Path.TIME_ORDER_READ
+                    || access.getPath() == SearchAccess.Path.SORT_ORDER_READ, access.getPath().name());
+            assertEquals(20, listed.size());
+            assertEquals(listed.subList(5, 10).stream().map(mail::getId).collect(Collectors.toList()),
+                    page.stream().map(mail::getId).collect(Collectors.toList()));
+            for (mail summary : listed) {
+                assertNull(summary.getBody());
+                assertNull(summary.getTo());
+                assertNull(summary.getAttachments());
+                assertEquals("preview " + summary.getId(), summary.getPreview());
+                assertTrue(summary.isHasAttachment());
+            }
+            assertNull(page.get(0).getBody());
+        }
+        assertEquals(20, store.search("alice@example.com", MailStore.INBOX, new MailQuery().summaryOnly(), null,
+                MailTimeOrder.NEWEST_FIRST, 0).get(0).getId());
+        // whole mails when asked for
+        assertEquals("body 20", store.search("alice@example.com", MailStore.INBOX, new MailQuery(), null,
+                MailTimeOrder.NEWEST_FIRST, 0).get(0).getBody());
+    }
+
+    @Test
+    void unfilteredCursorPagesOfABigFolderAreReadById() {
+        MailStore store = openStore(tempDir);
+        List<mail> mails = new ArrayList<>();
+        for (int id = 1; id <= 400; id++) {
+            mail email = textMail(id, "mail " + (id % 37));
+            email.setTimestamp(LocalDateTime.of(2025, 3, 1, 10, 0).plusMinutes((id * 13) % 97));
+            mails.add(email);
+        }
+        store.replaceAll("alice@example.com", MailStore.INBOX, mails);
+        MailSortOrder bySubject = new MailSortOrder("subject-asc", Comparator.comparing(mail::getSubject));
+
+        for (Comparator<mail> order : List.of(MailTimeOrder.NEWEST_FIRST, MailTimeOrder.OLDEST_FIRST, bySubject)) {
+            List<mail> all = store.search("alice@example.com", MailStore.INBOX, null, null, order, 0);
+            List<Integer> paged = new ArrayList<>();
+            mail after = null;
+            List<mail> page;
+            do {
+                // 10 ids out of 400: below the scan ratio, the page is read by id
+                page = store.searchAfter("alice@example.com", MailStore.INBOX, null, null, order, after, 10);
+                page.forEach(email -> paged.add(email.getId()));
+                after = page.isEmpty() ? null : page.get(page.size() - 1);
+            } while (page.size() == 10);
+            assertEquals(all.stream().map(mail::getId).collect(Collectors.toList()), paged);
+        }
+    }
+
+    @Test
+    void starTogglesQueuedWhileTheFolderIsWrittenShareTheNextWrite() throws Exception {
+        AtomicFileWriter writer = new AtomicFileWriter(FsyncPolicy.NEVER);
+        MailboxJournal journal = new MailboxJournal(true, writer);
+        WriteCoalescer coalescer = new WriteCoalescer(0, 64, DurabilityMode.COMMIT);
+        JsonFileManager manager = new JsonFileManager(new MailboxCache(10000), journal, writer, MailStorageFormat.JSON,
+                new MappedFileCache(0, 0), coalescer, new UserDirectoryLayout(tempDir.resolve("users").toString(), 2));
+        MailStore store = new JsonMailStore(manager, new MailLocationIndex(100), new StarredIndex(writer, 100),
+                new MailTextIndex(writer, 100), new MailBitmapIndex(100), new MailTimeIndex(100), new MailSenderIndex(100),
+                new MailSortIndex(100000));
+        MailboxLockManager locks = new MailboxLockManager(64);
+        String user = "alice@example.com";
+        int toggles = 8;
+        for (int id = 1; id <= toggles; id++) {
+            store.append(user, MailStore.INBOX, textMail(id, "mail " + id));
+        }
+        // indexed and cached: a toggle reads its mail by position
+        store.list(user, MailStore.INBOX);
+        File inbox = new File(manager.getUserFolderPath(user, MailStore.INBOX));
+        long queuedBefore = coalescer.getStats().get("logicalWrites");
+        long version = store.version(user, MailStore.INBOX);
+
+        List<Boolean> results = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        // the first write of the folder waits until every toggle is queued
+        synchronized (journal.lockFor(inbox)) {
+            for (int id = 1; id <= toggles; id++) {
+                int toggled = id;
+                // what mailRepo.toggleStar does: queue under the mailbox lock, commit after releasing it
+                Thread thread = new Thread(() -> {
+                    BooleanSupplier commit;
+                    try (MailboxLockManager.Handle handle = locks.write(MailboxLockManager.mailbox(user, MailStore.INBOX))) {
+                        commit = store.queueStarred(user, MailStore.INBOX, toggled,
+                                !store.get(user, MailStore.INBOX, toggled).isStarred());
+                    }
+                    results.add(commit.getAsBoolean());
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (coalescer.getStats().get("logicalWrites") < queuedBefore + toggles) {
+                assertTrue(System.currentTimeMillis() < deadline, "toggles not queued");
+                Thread.sleep(1);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(toggles, results.size());
+        assertFalse(results.contains(false));
+        assertTrue(coalescer.getStats().get("largestBatch") > 1);
+        assertEquals(toggles, store.starred(user).size());
+        assertTrue(store.search(user, MailStore.INBOX, null, email -> !email.isStarred(), null, 0).isEmpty());
+        assertNotEquals(version, store.version(user, MailStore.INBOX));
+    }
+
+    private static MailQuery meeting() {
+        MailQuery query = new MailQuery();
+        new SubjectFilter("meeting").narrow(query);
+        return query;
+    }
+
+    private static Predicate<mail> meetingFilter() {
+        return new SubjectFilter("meeting")::matches;
+    }
+
+    private static mail textMail(int id, String subject) {
+        mail email = new mail();
+        email.setId(id);
+        email.setSubject(subject);
+        return email;
+    }
+
+    private static mail detailedMail(int id) {
+        mail email = new mail();
+        email.setId(id);
+        email.setFrom("sender@example.com");
+        email.setTo(new LinkedList<>(List.of("alice@example.com", "bob@example.com")));
+        email.setSubject("subject " + id);
+        email.setBody("body " + id);
+        email.setPreview("preview " + id);
+        email.setPriority(2);
+        email.setHasAttachment(true);
+        email.setTimestamp(LocalDateTime.of(2025, 3, 1, 10, id));
+        attachementDTO attachment = new attachementDTO();
+        attachment.setFilename("report.pdf");
+        attachment.setFilePath("files/report.pdf");
+        attachment.setMimeType("application/pdf");
+        attachment.setFileSize(1234);
+        email.setAttachments(List.of(attachment));
+        return email;
+    }
+
+    private static mail starredMail(int id) {
+        mail email = new mail();
+        email.setId(id);
+        email.setSubject("subject " + id);
+        email.setStarred(true);
+        return email;
+    }
+
+    private Path starredIndexFile() throws IOException {
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            return files.filter(file -> file.getFileName().toString().equals("starred-index.json")).findFirst().orElseThrow();
+        }
+    }
+}
@@ -0,0 +1,771 @@
+package com.example.backend.Repo;
+
+import com.example.backend.FilterPattern.AttachmentFilter;
+import com.example.backend.FilterPattern.DateRangeFilter;
+import com.example.backend.FilterPattern.EmailFilter;
+import com.example.backend.FilterPattern.PriorityFilter;
+import com.example.backend.FilterPattern.SearchFilter;
+import com.example.backend.FilterPattern.SenderFilter;
+import com.example.backend.FilterPattern.StarredFilter;
+import com.example.backend.FilterPattern.SubjectFilter;
+import com.example.backend.Util.DurabilityMode;
+import com.example.backend.Util.MailCursor;
+import com.example.backend.Util.MailPage;
+import com.example.backend.Util.MailQuery;
+import com.example.backend.Util.MailSortOrder;
+import com.example.backend.Util.MailTimeOrder;
+import com.example.backend.model.mail;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Behaviour every MailStore backend must have
+ * each backend runs this suite through a subclass that opens it on a temp directory
+ */
+abstract class MailStoreConformanceTest {
+
+    private static final String USER = "alice@example.com";
+    private static final String OTHER_USER = "bob@example.com";
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 3, 1, 10, 0);
+
+    @TempDir
+    Path tempDir;
+
+    private MailStore store;
+
+    /**
+     * Open the backend on a directory, opening it again on the same directory must see the same data
+     */
+    protected abstract MailStore openStore(Path dir);
+
+    /**
+     * Release the backend (flush, close files)
+     */
+    protected void closeStore(MailStore store) {
+    }
+
+    @BeforeEach
+    void open() {
+        store = openStore(tempDir);
+    }
+
+    @AfterEach
+    void close() {
+        closeStore(store);
+    }
+
+    @Test
+    void appendKeepsFolderOrder() {
+        store.append(USER, MailStore.INBOX, mail(3, "third", T0));
+        store.append(USER, MailStore.INBOX, mail(1, "first", T0.plusHours(1)));
+        store.append(USER, MailStore.INBOX, mail(2, "second", T0.minusHours(1)));
+
+        assertEquals(List.of(3, 1, 2), ids(store.list(USER, MailStore.INBOX)));
+    }
+
+    @Test
+    void appendWithExistingIdReplacesInPlace() {
+        store.append(USER, MailStore.INBOX, mail(1, "a", T0));
+        store.append(USER, MailStore.INBOX, mail(2, "b", T0));
+        store.append(USER, MailStore.INBOX, mail(1, "a edited", T0.plusDays(1)));
+
+        List<mail> mails = store.list(USER, MailStore.INBOX);
+        assertEquals(List.of(1, 2), ids(mails));
+        assertEquals("a edited", mails.get(0).getSubject());
+        assertEquals(T0.plusDays(1), mails.get(0).getTimestamp());
+    }
+
+    @Test
+    void getFindsMailById() {
+        store.append(USER, MailStore.INBOX, mail(7, "hello", T0));
+
+        mail found = store.get(USER, MailStore.INBOX, 7);
+        assertNotNull(found);
+        assertEquals("hello", found.getSubject());
+        assertEquals(T0, found.getTimestamp());
+        assertEquals("sender@example.com", found.getFrom());
+        assertNull(store.get(USER, MailStore.INBOX, 8));
+        assertNull(store.get(USER, MailStore.SENT, 7));
+    }
+
+    @Test
+    void locateFindsTheFolderOfAMail() {
+        store.append(USER, MailStore.INBOX, mail(1, "a", T0));
+        store.append(USER, MailStore.SENT, mail(2, "b", T0));
+        store.createFolder(USER, "folder_3");
+        store.append(USER, "folder_3", mail(3, "c", T0));
+
+        assertEquals(MailStore.INBOX, store.locate(USER, 1));
+        assertEquals(MailStore.SENT, store.locate(USER, 2));
+        assertEquals("folder_3", store.locate(USER, 3));
+        assertNull(store.locate(USER, 4));
+        assertNull(store.locate(OTHER_USER, 1));
+
+        store.move(USER, MailStore.INBOX, MailStore.TRASH, 1, null);
+        assertEquals(MailStore.TRASH, store.locate(USER, 1));
+        store.delete(USER, MailStore.TRASH, 1);
+        assertNull(store.locate(USER, 1));
+    }
+
+    @Test
+    void lookupsStayRightAfterEarlierMailsAreRemoved() {
+        for (int id = 1; id <= 6; id++) {
+            store.append(USER, MailStore.INBOX, mail(id, "mail " + id, T0));
+        }
+        // read once so backends with positional indexes have them
+        store.list(USER, MailStore.INBOX);
+
+        store.delete(USER, MailStore.INBOX, 2);
+        store.move(USER, MailStore.INBOX, MailStore.SENT, 4, null);
+        store.append(USER, MailStore.INBOX, mail(7, "mail 7", T0));
+
+        for (int id : new int[] { 1, 3, 5, 6, 7 }) {
+            assertEquals("mail " + id, store.get(USER, MailStore.INBOX, id).getSubject());
+        }
+        assertNull(store.get(USER, MailStore.INBOX, 2));
+        assertNull(store.get(USER, MailStore.INBOX, 4));
+        assertEquals("mail 4", store.get(USER, MailStore.SENT, 4).getSubject());
+        assertEquals(List.of(1, 3, 5, 6, 7), ids(store.list(USER, MailStore.INBOX)));
+    }
+
+    @Test
+    void returnedMailsAreCopies() {
+        store.append(USER, MailStore.INBOX, mail(1, "original", T0));
+
+        store.get(USER, MailStore.INBOX, 1).setSubject("changed");
+        store.list(USER, MailStore.INBOX).get(0).setSubject("changed");
+
+        assertEquals("original", store.get(USER, MailStore.INBOX, 1).getSubject());
+    }
+
+    @Test
+    void updateStarredChangesOnlyTheFlag() {
+        store.append(USER, MailStore.INBOX, mail(1, "a", T0));
+        store.append(USER, MailStore.INBOX, mail(2, "b", T0));
+
+        assertTrue(store.updateStarred(USER, MailStore.INBOX, 2, true, DurabilityMode.COMMIT));
+        assertTrue(store.get(USER, MailStore.INBOX, 2).isStarred());
+        assertFalse(store.get(USER, MailStore.INBOX, 1).isStarred());
+        assertEquals("b", store.get(USER, MailStore.INBOX, 2).getSubject());
+
+        assertTrue(store.updateStarred(USER, MailStore.INBOX, 2, false, DurabilityMode.FIRE_AND_FORGET));
+        assertFalse(store.get(USER, MailStore.INBOX, 2).isStarred());
+        assertEquals(List.of(1, 2), ids(store.list(USER, MailStore.INBOX)));
+
+        assertFalse(store.updateStarred(USER, MailStore.INBOX, 99, true, DurabilityMode.COMMIT));
+    }
+
+    @Test
+    void moveAppliesChangeAndRemovesFromSource() {
+        store.append(USER, MailStore.INBOX, mail(1, "a", T0));
+        store.append(USER, MailStore.INBOX, mail(2, "b", T0));
+        store.append(USER, MailStore.TRASH, mail(5, "old", T0));
+        LocalDateTime trashedAt = T0.plusDays(3);
+
+        mail moved = store.move(USER, MailStore.INBOX, MailStore.TRASH, 1, email -> email.setTrashedAt(trashedAt));
+
+        assertNotNull(moved);
+        assertEquals(trashedAt, moved.getTrashedAt());
+        assertEquals(List.of(2), ids(store.list(USER, MailStore.INBOX)));
+        assertEquals(List.of(5, 1), ids(store.list(USER, MailStore.TRASH)));
+        assertEquals(trashedAt, store.get(USER, MailStore.TRASH, 1).getTrashedAt());
+
+        assertNull(store.move(USER, MailStore.INBOX, MailStore.TRASH, 1, null));
+        assertEquals(List.of(5, 1), ids(store.list(USER, MailStore.TRASH)));
+    }
+
+    @Test
+    void deleteRemovesOnlyThatMail() {
+        store.append(USER, MailStore.TRASH, mail(1, "a", T0));
+        store.append(USER, MailStore.TRASH, mail(2, "b", T0));
+        store.append(USER, MailStore.TRASH, mail(3, "c", T0));
+
+        assertTrue(store.delete(USER, MailStore.TRASH, 2));
+        assertEquals(List.of(1, 3), ids(store.list(USER, MailStore.TRASH)));
+        assertFalse(store.delete(USER, MailStore.TRASH, 2));
+        assertFalse(store.delete(USER, MailStore.DRAFT, 1));
+    }
+
+    @Test
+    void rangeByTimeIsInclusiveAndOrderedByTimeThenId() {
+        store.append(USER, MailStore.INBOX, mail(4, "late", T0.plusHours(3)));
+        store.append(USER, MailStore.INBOX, mail(2, "tie", T0.plusHours(1)));
+        store.append(USER, MailStore.INBOX, mail(1, "tie", T0.plusHours(1)));
+        store.append(USER, MailStore.INBOX, mail(3, "early", T0));
+        store.append(USER, MailStore.INBOX, mail(5, "undated", null));
+        store.append(USER, MailStore.INBOX, mail(6, "before epoch", LocalDateTime.of(1960, 1, 1, 0, 0)));
+
+        assertEquals(List.of(3, 1, 2), ids(store.rangeByTime(USER, MailStore.INBOX, T0, T0.plusHours(1))));
+        assertEquals(List.of(1, 2, 4), ids(store.rangeByTime(USER, MailStore.INBOX, T0.plusMinutes(1), null)));
+        assertEquals(List.of(6, 3), ids(store.rangeByTime(USER, MailStore.INBOX, null, T0.plusMinutes(59))));
+        assertEquals(List.of(6, 3, 1, 2, 4), ids(store.rangeByTime(USER, MailStore.INBOX, null, null)));
+        assertEquals(List.of(), ids(store.rangeByTime(USER, MailStore.INBOX, T0.plusHours(4), null)));
+        assertEquals(List.of(), ids(store.rangeByTime(USER, MailStore.SENT, null, null)));
+    }
+
+    @Test
+    void rangeByTimeFollowsReplacedTimestamps() {
+        store.append(USER, MailStore.INBOX, mail(1, "a", T0));
+        store.append(USER, MailStore.INBOX, mail(1, "a", T0.plusDays(10)));
+
+        assertEquals(List.of(), ids(store.rangeByTime(USER, MailStore.INBOX, T0, T0.plusDays(1))));
+        assertEquals(List.of(1), ids(store.rangeByTime(USER, MailStore.INBOX, T0.plusDays(9), null)));
+    }
+
+    @Test
+    void scanFiltersOrdersAndLimits() {
+        for (int id = 1; id <= 10; id++) {
+            mail email = mail(id, "mail " + id, T0.plusMinutes(id));
+            email.setStarred(id % 2 == 0);
+            store.append(USER, MailStore.INBOX, email);
+        }
+
+        assertEquals(List.of(2, 4, 6, 8, 10), ids(store.scan(USER, MailStore.INBOX, mail::isStarred, null, 0)));
+        Comparator<mail> newestFirst = Comparator.comparing(mail::getTimestamp).reversed();
+        assertEquals(List.of(10, 8, 6), ids(store.scan(USER, MailStore.INBOX, mail::isStarred, newestFirst, 3)));
+        assertEquals(10, store.scan(USER, MailStore.INBOX, null, null, 0).size());
+        assertEquals(List.of(), ids(store.scan(USER, "folder_404", null, null, 0)));
+    }
+
+    @Test
+    void foldersListsMailFoldersSorted() {
+        store.append(USER, MailStore.SENT, mail(1, "a", T0));
+        store.append(USER, MailStore.INBOX, mail(2, "b", T0));
+        assertTrue(store.createFolder(USER, "folder_42"));
+        assertTrue(store.createFolder(USER, "folder_42"));
+
+        assertEquals(List.of("folder_42", "inbox", "sent"), store.folders(USER));
+        assertEquals(List.of(), store.list(USER, "folder_42"));
+        assertEquals(List.of(), store.folders("nobody@example.com"));
+    }
+
+    @Test
+    void deleteFolderDropsItsMails() {
+        store.createFolder(USER, "folder_1");
+        store.append(USER, "folder_1", mail(1, "a", T0));
+
+        assertTrue(store.deleteFolder(USER, "folder_1"));
+        assertEquals(List.of(), store.folders(USER));
+        assertEquals(List.of(), store.list(USER, "folder_1"));
+        assertNull(store.get(USER, "folder_1", 1));
+        assertFalse(store.deleteFolder(USER, "folder_1"));
+
+        // a folder created again with the same name starts empty
+        store.createFolder(USER, "folder_1");
+        assertEquals(List.of(), store.list(USER, "folder_1"));
+    }
+
+    @Test
+    void replaceAllOverwritesTheFolder() {
+        store.append(USER, MailStore.TRASH, mail(1, "a", T0));
+        store.append(USER, MailStore.TRASH, mail(2, "b", T0));
+        store.append(USER, MailStore.TRASH, mail(3, "c", T0));
+
+        assertTrue(store.replaceAll(USER, MailStore.TRASH, List.of(mail(3, "c", T0), mail(1, "a", T0))));
+        assertEquals(List.of(3, 1), ids(store.list(USER, MailStore.TRASH)));
+        assertNull(store.get(USER, MailStore.TRASH, 2));
+        assertEquals(List.of(1, 3), ids(store.rangeByTime(USER, MailStore.TRASH, T0, T0)));
+
+        assertTrue(store.replaceAll(USER, MailStore.TRASH, new ArrayList<>()));
+        assertEquals(List.of(), store.list(USER, MailStore.TRASH));
+    }
+
+    @Test
+    void dataSurvivesReopen() {
+        store.append(USER, MailStore.INBOX, mail(1, "a", T0));
+        store.append(USER, MailStore.INBOX, mail(2, "b", T0.plusHours(1)));
+        store.updateStarred(USER, MailStore.INBOX, 2, true, DurabilityMode.COMMIT);
+        store.move(USER, MailStore.INBOX, MailStore.TRASH, 1, null);
+        store.createFolder(USER, "folder_9");
+
+        closeStore(store);
+        store = openStore(tempDir);
+
+        assertEquals(List.of(2), ids(store.list(USER, MailStore.INBOX)));
+        assertTrue(store.get(USER, MailStore.INBOX, 2).isStarred());
+        assertEquals(List.of(1), ids(store.list(USER, MailStore.TRASH)));
+        assertEquals(List.of("folder_9", "inbox", "trash"), store.folders(USER));
+        assertEquals(List.of(2), ids(store.rangeByTime(USER, MailStore.INBOX, T0, null)));
+    }
+
+    @Test
+    void starredListsEveryFolderButTrash() {
+        store.append(USER, MailStore.INBOX, mail(1, "a", T0));
+        store.append(USER, MailStore.INBOX, mail(2, "b", T0));
+        store.append(USER, MailStore.SENT, mail(3, "c", T0));
+        store.createFolder(USER, "folder_5");
+        store.append(USER, "folder_5", mail(4, "d", T0));
+        mail trashed = mail(6, "e", T0);
+        trashed.setStarred(true);
+        store.append(USER, MailStore.TRASH, trashed);
+        store.updateStarred(USER, "folder_5", 4, true, DurabilityMode.COMMIT);
+        store.updateStarred(USER, MailStore.SENT, 3, true, DurabilityMode.COMMIT);
+        store.updateStarred(USER, MailStore.INBOX, 2, true, DurabilityMode.FIRE_AND_FORGET);
+
+        List<mail> starred = store.starred(USER);
+
+        assertEquals(List.of(2, 3, 4), ids(starred));
+        assertEquals(MailStore.INBOX, starred.get(0).getFolder());
+        assertEquals(MailStore.SENT, starred.get(1).getFolder());
+        assertEquals("folder_5", starred.get(2).getFolder());
+        assertEquals(List.of(), store.starred(OTHER_USER));
+    }
+
+    @Test
+    void starredFollowsMovesUnstarsAndDeletes() {
+        store.append(USER, MailStore.INBOX, mail(1, "a", T0));
+        store.append(USER, MailStore.INBOX, mail(2, "b", T0));
+        store.updateStarred(USER, MailStore.INBOX, 1, true, DurabilityMode.COMMIT);
+        store.updateStarred(USER, MailStore.INBOX, 2, true, DurabilityMode.COMMIT);
+        assertEquals(List.of(1, 2), ids(store.starred(USER)));
+
+        store.createFolder(USER, "folder_7");
+        store.move(USER, MailStore.INBOX, "folder_7", 1, null);
+        assertEquals("folder_7", store.starred(USER).get(1).getFolder());
+
+        store.updateStarred(USER, "folder_7", 1, false, DurabilityMode.COMMIT);
+        assertEquals(List.of(2), ids(store.starred(USER)));
+
+        store.move(USER, MailStore.INBOX, MailStore.TRASH, 2, null);
+        assertEquals(List.of(), store.starred(USER));
+        store.move(USER, MailStore.TRASH, MailStore.INBOX, 2, null);
+        assertEquals(List.of(2), ids(store.starred(USER)));
+
+        store.delete(USER, MailStore.INBOX, 2);
+        assertEquals(List.of(), store.starred(USER));
+
+        store.updateStarred(USER, "folder_7", 1, true, DurabilityMode.COMMIT);
+        store.deleteFolder(USER, "folder_7");
+        assertEquals(List.of(), store.starred(USER));
+    }
+
+    @Test
+    void starredFollowsReplacedMails() {
+        mail draft = mail(1, "draft", T0);
+        draft.setStarred(true);
+        store.append(USER, MailStore.DRAFT, draft);
+        assertEquals(List.of(1), ids(store.starred(USER)));
+
+        // saving the draft again without the star
+        store.append(USER, MailStore.DRAFT, mail(1, "draft v2", T0));
+        assertEquals(List.of(), store.starred(USER));
+
+        mail starred = mail(2, "b", T0);
+        starred.setStarred(true);
+        store.replaceAll(USER, MailStore.INBOX, List.of(mail(1, "a", T0), starred));
+        assertEquals(List.of(2), ids(store.starred(USER)));
+        store.replaceAll(USER, MailStore.INBOX, List.of(mail(1, "a", T0)));
+        assertEquals(List.of(), store.starred(USER));
+    }
+
+    @Test
+    void starredSurvivesReopen() {
+        store.append(USER, MailStore.INBOX, mail(1, "a", T0));
+        store.append(USER, MailStore.INBOX, mail(2, "b", T0));
+        store.updateStarred(USER, MailStore.INBOX, 2, true, DurabilityMode.COMMIT);
+
+        closeStore(store);
+        store = openStore(tempDir);
+
+        assertEquals(List.of(2), ids(store.starred(USER)));
+        assertEquals("b", store.starred(USER).get(0).getSubject());
+    }
+
+    @Test
+    void searchFindsWhatTheFiltersFind() {
+        store.append(USER, MailStore.INBOX, text(1, "Team meeting", "see you at noon", "boss@example.com"));
+        store.append(USER, MailStore.INBOX, text(2, "Lunch", "hello world", "friend@example.com"));
+        store.append(USER, MailStore.INBOX, text(3, "MEETING notes", null, "notes@meetings.org"));
+        store.append(USER, MailStore.INBOX, text(4, null, "nothing here", null));
+
+        assertSearchLikeScan("meeting");
+        // across words and case
+        assertSearchLikeScan("LO WO");
+        assertSearchLikeScan("meetings.org");
+        // shorter than what an index can narrow
+        assertSearchLikeScan("no");
+        assertSearchLikeScan("zzz");
+
+        // a draft saved again with another subject, a removed and a moved mail
+        store.append(USER, MailStore.INBOX, text(2, "meeting moved", "hello world", "friend@example.com"));
+        store.delete(USER, MailStore.INBOX, 1);
+        store.move(USER, MailStore.INBOX, MailStore.TRASH, 3, null);
+        store.append(USER, MailStore.INBOX, text(5, "new meeting", "agenda", "boss@example.com"));
+        assertSearchLikeScan("meeting");
+        assertSearchLikeScan("hello");
+        assertEquals(List.of(3), ids(store.search(USER, MailStore.TRASH, query("meeting"), new SearchFilter("meeting")::matches, null, 0)));
+
+        // two criteria: both must match
+        MailQuery both = query("meeting");
+        new SubjectFilter("new").narrow(both);
+        Predicate<mail> filter = new SearchFilter("meeting")::matches;
+        filter = filter.and(new SubjectFilter("new")::matches);
+        assertEquals(List.of(5), ids(store.search(USER, MailStore.INBOX, both, filter, null, 0)));
+        assertEquals(List.of(), store.search(USER, "folder_404", both, filter, null, 0));
+    }
+
+    @Test
+    void searchByFlagsFindsWhatTheFiltersFind() {
+        for (int id = 1; id <= 40; id++) {
+            mail email = mail(id, "mail " + id, T0);
+            email.setPriority(id % 4 + 1);
+            email.setStarred(id % 3 == 0);
+            email.setHasAttachment(id % 5 == 0);
+            store.append(USER, MailStore.INBOX, email);
+        }
+        assertFlagSearchLikeScan();
+
+        // starred, unstarred, saved again with other flags, removed, moved
+        store.updateStarred(USER, MailStore.INBOX, 1, true, DurabilityMode.COMMIT);
+        store.updateStarred(USER, MailStore.INBOX, 3, false, DurabilityMode.COMMIT);
+        mail changed = mail(2, "mail 2 again", T0);
+        changed.setPriority(1);
+        changed.setHasAttachment(true);
+        store.append(USER, MailStore.INBOX, changed);
+        store.delete(USER, MailStore.INBOX, 6);
+        store.move(USER, MailStore.INBOX, MailStore.TRASH, 9, null);
+        assertFlagSearchLikeScan();
+        assertEquals(List.of(9), ids(store.search(USER, MailStore.TRASH, query(new StarredFilter(true)),
+                new StarredFilter(true)::matches, null, 0)));
+
+        // text and flags together
+        MailQuery both = query(new PriorityFilter(List.of(2)));
+        new SubjectFilter("mail 1").narrow(both);
+        Predicate<mail> filter = new PriorityFilter(List.of(2))::matches;
+        filter = filter.and(new SubjectFilter("mail 1")::matches);
+        assertEquals(ids(store.scan(USER, MailStore.INBOX, filter, null, 0)),
+                ids(store.search(USER, MailStore.INBOX, both, filter, null, 0)));
+    }
+
+    @Test
+    void searchInDateOrderFindsWhatASortedScanFinds() {
+        for (int id = 1; id <= 40; id++) {
+            // out of order, same times, mails without timestamp
+            mail email = mail(id, "mail " + id, id % 7 == 0 ? null : T0.plusHours((id * 13) % 17));
+            email.setStarred(id % 2 == 0);
+            store.append(USER, MailStore.INBOX, email);
+        }
+        assertDateSearchLikeScan();
+
+        // saved again at another time, removed, moved
+        store.append(USER, MailStore.INBOX, mail(3, "mail 3 again", T0.minusDays(1)));
+        store.append(USER, MailStore.INBOX, mail(14, "mail 14 dated", T0.plusHours(1)));
+        store.delete(USER, MailStore.INBOX, 5);
+        store.move(USER, MailStore.INBOX, MailStore.TRASH, 8, null);
+        store.append(USER, MailStore.INBOX, mail(41, "newest", T0.plusDays(2)));
+        assertDateSearchLikeScan();
+    }
+
+    @Test
+    void searchInSortOrderFindsWhatASortedScanFinds() {
+        for (int id = 1; id <= 40; id++) {
+            mail email = mail(id, id % 6 == 0 ? null : "Subject " + (char) ('a' + id % 5), T0.plusMinutes(id));
+            email.setFrom(id % 7 == 0 ? null : "sender" + (id % 4) + "@example.com");
+            email.setPriority(1 + id % 4);
+            email.setStarred(id % 3 == 0);
+            store.append(USER, MailStore.INBOX, email);
+        }
+        assertSortedSearchLikeScan();
+
+        // saved again with other sort fields, removed, moved, added
+        mail changed = mail(4, "AAA first", T0);
+        changed.setPriority(4);
+        store.append(USER, MailStore.INBOX, changed);
+        store.delete(USER, MailStore.INBOX, 9);
+        store.move(USER, MailStore.INBOX, MailStore.TRASH, 10, null);
+        store.append(USER, MailStore.INBOX, mail(41, "zzz last", T0.plusDays(1)));
+        assertSortedSearchLikeScan();
+
+        List<mail> rewritten = new ArrayList<>(store.list(USER, MailStore.INBOX));
+        rewritten.remove(0);
+        rewritten.get(0).setSubject(null);
+        store.replaceAll(USER, MailStore.INBOX, rewritten);
+        assertSortedSearchLikeScan();
+    }
+
+    @Test
+    void searchPageIsAWindowOfTheWholeSearch() {
+        for (int id = 1; id <= 60; id++) {
+            mail email = mail(id, "mail " + id, id % 9 == 0 ? null : T0.plusHours((id * 7) % 23));
+            email.setPriority(1 + id % 4);
+            store.append(USER, MailStore.INBOX, email);
+        }
+        List<EmailFilter> filters = List.of(new DateRangeFilter(null, null), new PriorityFilter(List.of(1, 3)),
+                new DateRangeFilter(T0.plusHours(4), T0.plusHours(12)));
+        List<Comparator<mail>> orders = new ArrayList<>();
+        orders.add(null);
+        orders.add(MailTimeOrder.NEWEST_FIRST);
+        orders.add(Comparator.comparingInt(mail::getPriority));
+        for (EmailFilter filter : filters) {
+            for (Comparator<mail> order : orders) {
+                List<Integer> all = ids(store.search(USER, MailStore.INBOX, query(filter), filter::matches, order, 0));
+                for (int offset : new int[]{0, 10, 25, 100}) {
+                    MailPage page = store.searchPage(USER, MailStore.INBOX, query(filter), filter::matches, order, offset, 10);
+                    assertEquals(all.subList(Math.min(offset, all.size()), Math.min(offset + 10, all.size())), ids(page.getMails()));
+                    assertEquals(all.size(), page.getTotal());
+                }
+            }
+        }
+    }
+
+    @Test
+    void pageFarPastTheEndIsEmptyWithTheTotal() {
+        for (int id = 1; id <= 30; id++) {
+            mail email = mail(id, "mail " + id, T0.plusHours(id % 7));
+            email.setPriority(1 + id % 4);
+            store.append(USER, MailStore.INBOX, email);
+        }
+        // page 800000 of 500: nothing may be sized after the offset
+        int offset = 800_000 * 500;
+        EmailFilter urgent = new PriorityFilter(List.of(1));
+        for (Comparator<mail> order : List.of(MailTimeOrder.NEWEST_FIRST, Comparator.comparingInt(mail::getPriority))) {
+            MailPage page = store.searchPage(USER, MailStore.INBOX, null, null, order, offset, 500);
+            assertTrue(page.getMails().isEmpty());
+            assertEquals(30, page.getTotal());
+
+            page = store.searchPage(USER, MailStore.INBOX, query(urgent), urgent::matches, order, offset, 500);
+            assertTrue(page.getMails().isEmpty());
+            assertEquals(7, page.getTotal());
+            // a limit that large keeps what there is
+            assertEquals(30, store.search(USER, MailStore.INBOX, null, null, order, offset + 500).size());
+        }
+    }
+
+    @Test
+    void searchAfterPagesThroughTheWholeSearch() {
+        for (int id = 1; id <= 60; id++) {
+            mail email = mail(id, "mail " + (id % 11), id % 9 == 0 ? null : T0.plusHours((id * 7) % 23));
+            email.setPriority(1 + id % 4);
+            email.setFrom(id % 5 == 0 ? null : "sender" + (id % 6) + "@example.com");
+            store.append(USER, MailStore.INBOX, email);
+        }
+        // null: no filter at all, an indexed order then gives only the ids of the page
+        List<EmailFilter> filters = Arrays.asList(null, new DateRangeFilter(null, null), new PriorityFilter(List.of(1, 3)),
+                new DateRangeFilter(T0.plusHours(4), T0.plusHours(12)));
+        List<Comparator<mail>> orders = List.of(MailTimeOrder.NEWEST_FIRST, MailTimeOrder.OLDEST_FIRST,
+                MailCursor.totalOrder(Comparator.comparingInt(mail::getPriority)),
+                MailCursor.totalOrder(Comparator.comparing(mail::getFrom, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))),
+                MailCursor.totalOrder(Comparator.comparing((mail email) -> email.getSubject()).reversed()));
+        for (EmailFilter filter : filters) {
+            MailQuery query = filter == null ? null : query(filter);
+            Predicate<mail> test = filter == null ? null : filter::matches;
+            for (Comparator<mail> order : orders) {
+                List<Integer> all = ids(store.search(USER, MailStore.INBOX, query, test, order, 0));
+                List<Integer> paged = new ArrayList<>();
+                mail after = null;
+                List<mail> page;
+                do {
+                    page = store.searchAfter(USER, MailStore.INBOX, query, test, order, after, 7);
+                    paged.addAll(ids(page));
+                    // through a cursor, like a client
+                    after = page.isEmpty() ? null : MailCursor.decode(MailCursor.encode("any", page.get(page.size() - 1)), "any");
+                } while (page.size() == 7);
+                assertEquals(all, paged);
+            }
+        }
+    }
+
+    @Test
+    void searchAfterIsNotShiftedByNewMail() {
+        for (int id = 1; id <= 30; id++) {
+            store.append(USER, MailStore.INBOX, mail(id, "mail " + id, T0.plusMinutes(id)));
+        }
+        List<mail> first = store.searchAfter(USER, MailStore.INBOX, null, null, MailTimeOrder.NEWEST_FIRST, null, 10);
+        List<Integer> second = ids(store.searchAfter(USER, MailStore.INBOX, null, null, MailTimeOrder.NEWEST_FIRST,
+                first.get(9), 10));
+
+        // new mail at the head, and the last mail seen deleted
+        store.append(USER, MailStore.INBOX, mail(31, "newer", T0.plusDays(1)));
+        store.append(USER, MailStore.INBOX, mail(32, "newer", T0.plusDays(2)));
+        store.delete(USER, MailStore.INBOX, first.get(9).getId());
+
+        assertEquals(second, ids(store.searchAfter(USER, MailStore.INBOX, null, null, MailTimeOrder.NEWEST_FIRST,
+                first.get(9), 10)));
+    }
+
+    @Test
+    void searchBySenderAndTopSendersFollowTheFolder() {
+        store.append(USER, MailStore.INBOX, text(1, "a", null, "Boss@Example.com"));
+        store.append(USER, MailStore.INBOX, text(2, "b", null, "friend@example.com"));
+        store.append(USER, MailStore.INBOX, text(3, "c", null, " boss@example.com "));
+        store.append(USER, MailStore.INBOX, text(4, "d", null, null));
+        store.append(USER, MailStore.INBOX, text(5, "e", null, "news@lists.org"));
+        assertSenderSearchLikeScan();
+        Map<String, Integer> expected = new LinkedHashMap<>();
+        expected.put("boss@example.com", 2);
+        expected.put("friend@example.com", 1);
+        assertEquals(expected, store.topSenders(USER, MailStore.INBOX, 2));
+
+        // saved again from another sender, removed, moved
+        store.append(USER, MailStore.INBOX, text(2, "b", null, "news@lists.org"));
+        store.delete(USER, MailStore.INBOX, 1);
+        store.move(USER, MailStore.INBOX, MailStore.TRASH, 3, null);
+        assertSenderSearchLikeScan();
+        expected = new LinkedHashMap<>();
+        expected.put("news@lists.org", 2);
+        assertEquals(expected, store.topSenders(USER, MailStore.INBOX, 5));
+        assertEquals(Map.of("boss@example.com", 1), store.topSenders(USER, MailStore.TRASH, 5));
+        assertEquals(Map.of(), store.topSenders(USER, "folder_404", 5));
+    }
+
+    @Test
+    void versionChangesOnEveryWriteToTheFolder() {
+        List<Long> versions = new ArrayList<>();
+        versions.add(store.version(USER, MailStore.INBOX));
+        store.createFolder(USER, MailStore.INBOX);
+        versions.add(store.version(USER, MailStore.INBOX));
+        store.append(USER, MailStore.INBOX, mail(1, "a", T0));
+        versions.add(store.version(USER, MailStore.INBOX));
+        store.updateStarred(USER, MailStore.INBOX, 1, true, DurabilityMode.COMMIT);
+        versions.add(store.version(USER, MailStore.INBOX));
+        long trash = store.version(USER, MailStore.TRASH);
+        store.move(USER, MailStore.INBOX, MailStore.TRASH, 1, null);
+        versions.add(store.version(USER, MailStore.INBOX));
+        assertNotEquals(trash, store.version(USER, MailStore.TRASH));
+        store.replaceAll(USER, MailStore.INBOX, List.of(mail(2, "b", T0)));
+        versions.add(store.version(USER, MailStore.INBOX));
+        store.delete(USER, MailStore.INBOX, 2);
+        versions.add(store.version(USER, MailStore.INBOX));
+        store.deleteFolder(USER, MailStore.INBOX);
+        versions.add(store.version(USER, MailStore.INBOX));
+
+        assertEquals(versions.size(), versions.stream().distinct().count(), versions.toString());
+        // reads and other users don't change it
+        long version = store.version(USER, MailStore.INBOX);
+        store.list(USER, MailStore.INBOX);
+        store.append(OTHER_USER, MailStore.INBOX, mail(3, "c", T0));
+        assertEquals(version, store.version(USER, MailStore.INBOX));
+    }
+
+    @Test
+    void usersAreIsolated() {
+        store.append(USER, MailStore.INBOX, mail(1, "for alice", T0));
+        store.append(OTHER_USER, MailStore.INBOX, mail(1, "for bob", T0));
+
+        store.delete(OTHER_USER, MailStore.INBOX, 1);
+
+        assertEquals("for alice", store.get(USER, MailStore.INBOX, 1).getSubject());
+        assertNull(store.get(OTHER_USER, MailStore.INBOX, 1));
+    }
+
+    private static mail mail(int id, String subject, LocalDateTime timestamp) {
+        mail email = new mail();
+        email.setId(id);
+        email.setFrom("sender@example.com");
+        email.setSubject(subject);
+        email.setBody("body of " + subject);
+        email.setTimestamp(timestamp);
+        email.setPriority(3);
+        return email;
+    }
+
+    private void assertSearchLikeScan(String term) {
+        Predicate<mail> filter = new SearchFilter(term)::matches;
+        assertEquals(ids(store.scan(USER, MailStore.INBOX, filter, null, 0)),
+                ids(store.search(USER, MailStore.INBOX, query(term), filter, null, 0)), term);
+        Comparator<mail> bySubject = Comparator.comparing(email -> String.valueOf(email.getSubject()));
+        assertEquals(ids(store.scan(USER, MailStore.INBOX, filter, bySubject, 1)),
+                ids(store.search(USER, MailStore.INBOX, query(term), filter, bySubject, 1)), term);
+    }
+
+    private void assertFlagSearchLikeScan() {
+        List<EmailFilter> filters = List.of(new StarredFilter(true), new StarredFilter(false),
+                new AttachmentFilter(true), new AttachmentFilter(false),
+                new PriorityFilter(List.of(1)), new PriorityFilter(List.of(2, 4)), new PriorityFilter(List.of(9)));
+        for (EmailFilter filter : filters) {
+            assertEquals(ids(store.scan(USER, MailStore.INBOX, filter::matches, null, 0)),
+                    ids(store.search(USER, MailStore.INBOX, query(filter), filter::matches, null, 0)));
+        }
+        MailQuery all = new MailQuery();
+        Predicate<mail> allFilters = email -> true;
+        for (EmailFilter filter : List.of(new StarredFilter(false), new AttachmentFilter(true), new PriorityFilter(List.of(1, 3)))) {
+            filter.narrow(all);
+            allFilters = allFilters.and(filter::matches);
+        }
+        assertEquals(ids(store.scan(USER, MailStore.INBOX, allFilters, null, 0)),
+                ids(store.search(USER, MailStore.INBOX, all, allFilters, null, 0)));
+    }
+
+    private void assertDateSearchLikeScan() {
+        List<EmailFilter> filters = List.of(new DateRangeFilter(null, null), new DateRangeFilter(T0.plusHours(3), null),
+                new DateRangeFilter(null, T0.minusDays(1)), new DateRangeFilter(T0.plusHours(2), T0.plusHours(5)),
+                new StarredFilter(true));
+        for (EmailFilter filter : filters) {
+            for (Comparator<mail> order : List.of(MailTimeOrder.OLDEST_FIRST, MailTimeOrder.NEWEST_FIRST)) {
+                for (int limit : new int[]{0, 3}) {
+                    assertEquals(ids(store.scan(USER, MailStore.INBOX, filter::matches, order, limit)),
+                            ids(store.search(USER, MailStore.INBOX, query(filter), filter::matches, order, limit)));
+                }
+            }
+            // range without order: folder order, like a scan
+            assertEquals(ids(store.scan(USER, MailStore.INBOX, filter::matches, null, 0)),
+                    ids(store.search(USER, MailStore.INBOX, query(filter), filter::matches, null, 0)));
+        }
+    }
+
+    private void assertSortedSearchLikeScan() {
+        List<Comparator<mail>> orders = List.of(
+                new MailSortOrder("subject-asc", Comparator.comparing(mail::getSubject,
+                        Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))),
+                new MailSortOrder("sender-desc", Comparator.comparing(mail::getFrom,
+                        Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)).reversed()),
+                new MailSortOrder("priority-asc", Comparator.comparingInt(mail::getPriority)));
+        List<EmailFilter> filters = List.of(new DateRangeFilter(null, null), new StarredFilter(true),
+                new DateRangeFilter(T0.plusMinutes(5), T0.plusMinutes(30)));
+        for (Comparator<mail> order : orders) {
+            for (EmailFilter filter : filters) {
+                for (int limit : new int[]{0, 3}) {
+                    assertEquals(ids(store.scan(USER, MailStore.INBOX, filter::matches, order, limit)),
+                            ids(store.search(USER, MailStore.INBOX, query(filter), filter::matches, order, limit)));
+                }
+            }
+        }
+    }
+
+    private void assertSenderSearchLikeScan() {
+        for (String term : List.of("boss", "EXAMPLE.COM", "@", "lists", "nobody")) {
+            EmailFilter filter = new SenderFilter(term);
+            assertEquals(ids(store.scan(USER, MailStore.INBOX, filter::matches, null, 0)),
+                    ids(store.search(USER, MailStore.INBOX, query(filter), filter::matches, null, 0)), term);
+        }
+    }
+
+    private static MailQuery query(String term) {
+        return query(new SearchFilter(term));
+    }
+
+    private static MailQuery query(EmailFilter filter) {
+        MailQuery query = new MailQuery();
+        filter.narrow(query);
+        return query;
+    }
+
+    private static mail text(int id, String subject, String body, String from) {
+        mail email = mail(id, subject, T0);
+        email.setBody(body);
+        email.setFrom(from);
+        return email;
+    }
+
+    private static List<Integer> ids(List<mail> mails) {
+        List<Integer> ids = new ArrayList<>();
+        for (mail email : mails) {
+            ids.add(email.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.backend.Repo;
+
+import java.nio.file.Path;
+
+/**
+ * MailStore conformance of the embedded key-value store backend
+ */
+class MvStoreMailStoreTest extends MailStoreConformanceTest {
+
+    @Override
+    protected MailStore openStore(Path dir) {
+        return new MvStoreMailStore(dir.resolve("mailstore.mv.db").toString());
+    }
+
+    @Override
+    protected void closeStore(MailStore store) {
+        ((MvStoreMailStore) store).close();
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.backend.Util;
+
+import com.example.backend.DTOS.attachementDTO;
+import com.example.backend.model.mail;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Binary folder format: every field survives a round trip, repeated strings are stored once,
+ * a truncated or torn file is an error rather than a shorter folder
+ */
+class BinaryMailCodecTest {
+
+    // magic + version
+    private static final int HEADER = 6;
+
+    @Test
+    void everyFieldSurvivesARoundTrip() throws IOException {
+        List<mail> mails = List.of(fullMail(1), emptyMail(2), fullMail(3));
+
+        assertSameMails(mails, read(write(mails)));
+        assertTrue(read(write(new ArrayList<>())).isEmpty());
+    }
+
+    @Test
+    void repeatedStringsAreStoredOnce() throws IOException {
+        List<mail> mails = new ArrayList<>();
+        for (int id = 1; id <= 50; id++) {
+            mails.add(fullMail(id));
+        }
+
+        byte[] bytes = write(mails);
+
+        assertEquals(1, occurrences(bytes, "alice@example.com"));
+        assertEquals(1, occurrences(bytes, "application/pdf"));
+        // subjects aren't in the table
+        assertEquals(50, occurrences(bytes, "Caf\u00e9 order"));
+        assertSameMails(mails, read(bytes));
+    }
+
+    @Test
+    void truncatedFileIsAnError() throws IOException {
+        byte[] bytes = write(List.of(fullMail(1), fullMail(2)));
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] cut = Arrays.copyOf(bytes, length);
+            assertThrows(IOException.class, () -> read(cut), "cut at " + length);
+        }
+    }
+
+    @Test
+    void tornRecordIsAnError() throws IOException {
+        byte[] bytes = write(List.of(emptyMail(1)));
+        // header, empty string table, record count, then the length of the only record
+        int lengthAt = HEADER + 4 + 4;
+        int length = ByteBuffer.wrap(bytes, lengthAt, 4).getInt();
+
+        // record cut short, the length says so: its fields run past its end
+        byte[] shorter = Arrays.copyOf(bytes, bytes.length - 4);
+        ByteBuffer.wrap(shorter).putInt(lengthAt, length - 4);
+        assertThrows(IOException.class, () -> read(shorter));
+
+        byte[] negative = bytes.clone();
+        ByteBuffer.wrap(negative).putInt(lengthAt, -1);
+        assertThrows(IOException.class, () -> read(negative));
+    }
+
+    @Test
+    void jsonIsNotTakenForBinary() throws IOException {
+        byte[] json = "[{\"id\":1}]".getBytes(StandardCharsets.UTF_8);
+        byte[] binary = write(List.of(emptyMail(1)));
+
+        assertFalse(BinaryMailCodec.hasMagic(json, json.length));
+        assertTrue(BinaryMailCodec.hasMagic(binary, BinaryMailCodec.magicLength()));
+        assertFalse(BinaryMailCodec.hasMagic(binary, BinaryMailCodec.magicLength() - 1));
+        assertThrows(IOException.class, () -> read(json));
+    }
+
+    private static byte[] write(List<mail> mails) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryMailCodec.write(mails, out);
+        return out.toByteArray();
+    }
+
+    private static List<mail> read(byte[] bytes) throws IOException {
+        List<mail> mails = new ArrayList<>();
+        BinaryMailCodec.read(new ByteArrayInputStream(bytes), mails::add);
+        return mails;
+    }
+
+    //field by field, the messages name the field that differs
+    static void assertSameMails(List<mail> expected, List<mail> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            mail e = expected.get(i);
+            mail a = actual.get(i);
+            assertEquals(e.getId(), a.getId(), "id");
+            assertEquals(e.getFrom(), a.getFrom(), "from");
+            assertEquals(e.getTo() == null ? null : new ArrayList<>(e.getTo()),
+                    a.getTo() == null ? null : new ArrayList<>(a.getTo()), "to");
+            assertEquals(e.getSubject(), a.getSubject(), "subject");
+            assertEquals(e.getBody(), a.getBody(), "body");
+            assertEquals(e.getPreview(), a.getPreview(), "preview");
+            assertEquals(e.isStarred(), a.isStarred(), "starred");
+            assertEquals(e.isHasAttachment(), a.isHasAttachment(), "hasAttachment");
+            assertEquals(e.getTimestamp(), a.getTimestamp(), "timestamp");
+            assertEquals(e.getPriority(), a.getPriority(), "priority");
+            assertEquals(e.getAttachments() == null, a.getAttachments() == null, "attachments");
+            if (e.getAttachments() != null) {
+                assertEquals(e.getAttachments().size(), a.getAttachments().size(), "attachments");
+                for (int j = 0; j < e.getAttachments().size(); j++) {
+                    attachementDTO ea = e.getAttachments().get(j);
+                    attachementDTO aa = a.getAttachments().get(j);
+                    assertEquals(ea.getFilename(), aa.getFilename(), "filename");
+                    assertEquals(ea.getFilePath(), aa.getFilePath(), "filePath");
+                    assertEquals(ea.getMimeType(), aa.getMimeType(), "mimeType");
+                    assertEquals(ea.getFileSize(), aa.getFileSize(), "fileSize");
+                }
+            }
+            assertEquals(e.getTrashedAt(), a.getTrashedAt(), "trashedAt");
+            assertEquals(e.getFolder(), a.getFolder(), "folder");
+            assertEquals(e.getCustomFolderId(), a.getCustomFolderId(), "customFolderId");
+        }
+    }
+
+    private static int occurrences(byte[] bytes, String text) {
+        byte[] needle = text.getBytes(StandardCharsets.UTF_8);
+        int count = 0;
+        for (int i = 0; i + needle.length <= bytes.length; i++) {
+            if (Arrays.equals(bytes, i, i + needle.length, needle, 0, needle.length)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    static mail fullMail(int id) {
+        mail email = new mail();
+        email.setId(id);
+        email.setFrom("alice@example.com");
+        email.setTo(new LinkedList<>(List.of("bob@example.com", "carol@example.com")));
+        email.setSubject("Caf\u00e9 order");
+        email.setBody("Body of " + id + "\n\u65e5\u672c\u8a9e \ud83d\udce7");
+        email.setPreview("Body of " + id);
+        email.setStarred(id % 2 == 1);
+        email.setHasAttachment(true);
+        // times are kept to the millisecond, before 1970 too
+        email.setTimestamp(LocalDateTime.of(2024, 5, 17, 9, 30, 12, 345_000_000));
+        email.setPriority(1 + id % 4);
+        email.setAttachments(new ArrayList<>(List.of(
+                new attachementDTO("report.pdf", "uploads/" + id + "/report.pdf", "application/pdf", 123_456L))));
+        email.setTrashedAt(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_000_000));
+        email.setFolder("trash");
+        email.setCustomFolderId("folder_" + id);
+        return email;
+    }
+
+    //nothing set: nulls and empty lists must come back as they were
+    private static mail emptyMail(int id) {
+        mail email = new mail();
+        email.setId(id);
+        email.setTo(new LinkedList<>());
+        return email;
+    }
+}
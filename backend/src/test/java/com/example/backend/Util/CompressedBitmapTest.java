@@ -0,0 +1,96 @@
+package com.example.backend.Util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compressed bitmap against java.util.TreeSet, across array and bitmap containers
+ */
+class CompressedBitmapTest {
+
+    @Test
+    void behavesLikeTreeSet() {
+        Random random = new Random(7);
+        CompressedBitmap bitmap = new CompressedBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+
+        for (int op = 0; op < 200_000; op++) {
+            // a dense group (turns into a bitmap container and back) and sparse values over several groups
+            int value = random.nextBoolean() ? random.nextInt(9000) : random.nextInt(1 << 22);
+            if (random.nextInt(3) == 0) {
+                bitmap.remove(value);
+                expected.remove(value);
+            } else {
+                bitmap.add(value);
+                expected.add(value);
+            }
+            if (op % 997 == 0) {
+                assertEquals(expected.contains(value), bitmap.contains(value));
+                assertEquals(expected.size(), bitmap.cardinality());
+            }
+        }
+        assertArrayEquals(expected, bitmap.toArray());
+    }
+
+    @Test
+    void setOperationsMatchTreeSet() {
+        Random random = new Random(11);
+        for (int round = 0; round < 20; round++) {
+            TreeSet<Integer> x = new TreeSet<>();
+            TreeSet<Integer> y = new TreeSet<>();
+            CompressedBitmap a = new CompressedBitmap();
+            CompressedBitmap b = new CompressedBitmap();
+            // round 0..9 sparse, 10..19 dense enough for bitmap containers
+            int range = round < 10 ? 1 << 20 : 70_000;
+            int count = round < 10 ? 3000 : 20_000;
+            for (int i = 0; i < count; i++) {
+                int u = random.nextInt(range);
+                int v = random.nextInt(range);
+                x.add(u);
+                a.add(u);
+                y.add(v);
+                b.add(v);
+            }
+
+            TreeSet<Integer> and = new TreeSet<>(x);
+            and.retainAll(y);
+            TreeSet<Integer> or = new TreeSet<>(x);
+            or.addAll(y);
+            TreeSet<Integer> andNot = new TreeSet<>(x);
+            andNot.removeAll(y);
+
+            assertArrayEquals(and, a.and(b).toArray());
+            assertArrayEquals(or, a.or(b).toArray());
+            assertArrayEquals(andNot, a.andNot(b).toArray());
+            // operands unchanged
+            assertArrayEquals(x, a.toArray());
+            assertArrayEquals(y, b.toArray());
+        }
+    }
+
+    @Test
+    void emptyResultsAreEmpty() {
+        CompressedBitmap a = CompressedBitmap.of(1, 2, 3);
+        CompressedBitmap b = CompressedBitmap.of(70_000);
+
+        assertTrue(a.and(b).isEmpty());
+        assertTrue(a.andNot(a).isEmpty());
+        assertEquals(4, a.or(b).cardinality());
+        a.remove(1);
+        a.remove(2);
+        a.remove(3);
+        assertTrue(a.isEmpty());
+    }
+
+    private static void assertArrayEquals(TreeSet<Integer> expected, int[] actual) {
+        assertEquals(expected.size(), actual.length);
+        int i = 0;
+        for (int value : expected) {
+            assertEquals(value, actual[i++]);
+        }
+    }
+}
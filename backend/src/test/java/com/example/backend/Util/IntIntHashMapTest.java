@@ -0,0 +1,70 @@
+package com.example.backend.Util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Open addressing map against java.util.HashMap on random operations (backward shift removal is the tricky part)
+ */
+class IntIntHashMapTest {
+
+    private static final int MISSING = Integer.MIN_VALUE;
+
+    @Test
+    void behavesLikeHashMap() {
+        Random random = new Random(42);
+        IntIntHashMap map = new IntIntHashMap(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+
+        for (int op = 0; op < 200_000; op++) {
+            // small key range so the same keys are inserted, replaced and removed again, 0 included
+            int key = random.nextInt(2000) - 100;
+            int value = random.nextInt();
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1:
+                    assertEquals(expected.getOrDefault(key, MISSING).intValue(), map.put(key, value, MISSING));
+                    expected.put(key, value);
+                    break;
+                case 2:
+                    assertEquals(expected.getOrDefault(key, MISSING).intValue(), map.remove(key, MISSING));
+                    expected.remove(key);
+                    break;
+                default:
+                    assertEquals(expected.getOrDefault(key, MISSING).intValue(), map.get(key, MISSING));
+                    assertEquals(expected.containsKey(key), map.containsKey(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().intValue(), map.get(entry.getKey(), MISSING));
+        }
+    }
+
+    @Test
+    void replaceAllSeesEveryEntry() {
+        IntIntHashMap map = new IntIntHashMap();
+        for (int id = 0; id < 100; id++) {
+            map.put(id, id, MISSING);
+        }
+        map.remove(40, MISSING);
+
+        // positions after the removed one move up by one
+        map.replaceAll((key, value) -> value > 40 ? value - 1 : value);
+
+        assertEquals(0, map.get(0, MISSING));
+        assertEquals(39, map.get(39, MISSING));
+        assertEquals(40, map.get(41, MISSING));
+        assertEquals(98, map.get(99, MISSING));
+        assertEquals(MISSING, map.get(40, MISSING));
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(0));
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.Type;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stress tests for the atomic write path of JsonFileManager:
+ * readers running without locks must never observe a torn or half-applied folder
+ */
+class JsonFileManagerAtomicWriteTest {
+
+    private static final Type MAIL_LIST_TYPE = new TypeToken<List<mail>>(){}.getType();
+    private static final int READERS = 4;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void concurrentReadersNeverSeeATornFile() throws Exception {
+        // cache off so every read really parses the file from disk
+        AtomicFileWriter writer = new AtomicFileWriter(FsyncPolicy.NEVER);
+        JsonFileManager manager = new JsonFileManager(new MailboxCache(0), new MailboxJournal(false, writer), writer,
+                MailStorageFormat.JSON, new MappedFileCache(0, 0), new WriteCoalescer(0, 1, DurabilityMode.COMMIT),
+                new UserDirectoryLayout(tempDir.toString(), 0));
+        String path = tempDir.resolve("inbox.json").toString();
+        assertTrue(manager.writeListToFile(path, generation(0)));
+
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicInteger reads = new AtomicInteger();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            Thread reader = new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        List<mail> mails = manager.readListFromFile(path, MAIL_LIST_TYPE);
+                        assertCompleteGeneration(mails);
+                        reads.incrementAndGet();
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        // write-heavy load: every write replaces the whole file with a list of a different size
+        for (int gen = 1; gen <= 150 && failures.isEmpty(); gen++) {
+            assertTrue(manager.writeListToFile(path, generation(gen)));
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertTrue(failures.isEmpty(), "readers saw a torn file: " + failures);
+        assertTrue(reads.get() > 0);
+    }
+
+    @Test
+    void journalReadersSeeConsistentFolderDuringCompaction() throws Exception {
+        AtomicFileWriter writer = new AtomicFileWriter(FsyncPolicy.NEVER);
+        JsonFileManager manager = new JsonFileManager(new MailboxCache(0), new MailboxJournal(true, writer), writer,
+                MailStorageFormat.JSON, new MappedFileCache(0, 0), new WriteCoalescer(0, 1, DurabilityMode.COMMIT),
+                new UserDirectoryLayout(tempDir.toString(), 0));
+        String path = tempDir.resolve("inbox.json").toString();
+        assertTrue(manager.writeListToFile(path, new ArrayList<>()));
+
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean done = new AtomicBoolean(false);
+
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            Thread reader = new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        // deliveries happen in id order, so any consistent view is exactly ids 1..n
+                        List<mail> mails = manager.readListFromFile(path, MAIL_LIST_TYPE);
+                        for (int i = 0; i < mails.size(); i++) {
+                            assertEquals(i + 1, mails.get(i).getId(), "snapshot and journal mixed up");
+                        }
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        for (int id = 1; id <= 400 && failures.isEmpty(); id++) {
+            assertTrue(manager.appendMailToFile(path, newMail(id, "delivery", 64)));
+            if (id % 25 == 0) {
+                manager.compactJournals();
+            }
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertTrue(failures.isEmpty(), "readers saw an inconsistent folder: " + failures);
+        assertEquals(400, manager.readListFromFile(path, MAIL_LIST_TYPE).size());
+    }
+
+    //every mail of a generation carries the generation in its subject, the size depends on the generation
+    private static List<mail> generation(int gen) {
+        List<mail> mails = new ArrayList<>();
+        for (int i = 0; i < sizeOf(gen); i++) {
+            mails.add(newMail(i, "generation-" + gen, 512));
+        }
+        return mails;
+    }
+
+    private static int sizeOf(int gen) {
+        return 200 + (gen % 7) * 150;
+    }
+
+    private static void assertCompleteGeneration(List<mail> mails) {
+        assertFalse(mails.isEmpty(), "read an empty folder");
+        String subject = mails.get(0).getSubject();
+        int gen = Integer.parseInt(subject.substring("generation-".length()));
+        assertEquals(sizeOf(gen), mails.size(), "partial generation " + gen);
+        for (mail email : mails) {
+            assertEquals(subject, email.getSubject(), "mixed generations");
+        }
+    }
+
+    private static mail newMail(int id, String subject, int bodyLength) {
+        mail email = new mail();
+        email.setId(id);
+        email.setFrom("sender@gmail.com");
+        email.setSubject(subject);
+        email.setBody("x".repeat(bodyLength));
+        email.setPriority(1 + id % 4);
+        email.setTimestamp(LocalDateTime.now());
+        return email;
+    }
+}
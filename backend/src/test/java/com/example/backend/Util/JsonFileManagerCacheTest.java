@@ -0,0 +1,65 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.Type;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Write-through cache of JsonFileManager: a written folder is read back from memory, empty or not
+ */
+class JsonFileManagerCacheTest {
+
+    private static final Type MAIL_LIST_TYPE = new TypeToken<List<mail>>(){}.getType();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void emptiedFolderIsServedFromTheCache() {
+        JsonFileManager manager = manager();
+        String trash = tempDir.resolve("trash.json").toString();
+        assertTrue(manager.writeListToFile(trash, List.of(mail(1), mail(2))));
+        assertEquals(2, manager.readListFromFile(trash, MAIL_LIST_TYPE).size());
+
+        // emptying the trash
+        assertTrue(manager.writeListToFile(trash, new ArrayList<mail>()));
+        long misses = manager.getCacheStats().get("misses");
+
+        assertTrue(manager.readListFromFile(trash, MAIL_LIST_TYPE).isEmpty());
+        assertEquals(misses, manager.getCacheStats().get("misses").longValue());
+        assertEquals(1L, manager.getCacheStats().get("entries").longValue());
+    }
+
+    @Test
+    void newEmptyCustomFolderIsCachedButOtherFilesAreNot() {
+        JsonFileManager manager = manager();
+        assertTrue(manager.writeListToFile(tempDir.resolve("folder_7.json").toString(), new ArrayList<mail>()));
+        assertTrue(manager.writeListToFile(tempDir.resolve("contacts.json").toString(), new ArrayList<String>()));
+
+        assertEquals(1L, manager.getCacheStats().get("entries").longValue());
+        assertTrue(manager.readListFromFile(tempDir.resolve("folder_7.json").toString(), MAIL_LIST_TYPE).isEmpty());
+        assertEquals(0L, manager.getCacheStats().get("misses").longValue());
+    }
+
+    private JsonFileManager manager() {
+        AtomicFileWriter writer = new AtomicFileWriter(FsyncPolicy.NEVER);
+        return new JsonFileManager(new MailboxCache(10_000), new MailboxJournal(false, writer), writer,
+                MailStorageFormat.JSON, new MappedFileCache(0, 0), new WriteCoalescer(0, 1, DurabilityMode.COMMIT),
+                new UserDirectoryLayout(tempDir.toString(), 0));
+    }
+
+    private static mail mail(int id) {
+        mail email = new mail();
+        email.setId(id);
+        email.setSubject("subject " + id);
+        return email;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cursors give back the sort fields and id of the mail they were made from, and only for the same sort
+ */
+class MailCursorTest {
+
+    @Test
+    void cursorKeepsTheSortFieldsAndId() {
+        mail last = new mail();
+        last.setId(42);
+        last.setFrom("Boss@Example.com");
+        last.setSubject("Q3 report / \u00fcn\u00efcode ?&=");
+        last.setPriority(2);
+        last.setTimestamp(LocalDateTime.of(2025, 3, 1, 10, 0, 5, 123_000_000));
+        last.setBody("not in the cursor");
+
+        String cursor = MailCursor.encode("sender-asc", last);
+        mail decoded = MailCursor.decode(cursor, "sender-asc");
+
+        assertTrue(cursor.matches("[A-Za-z0-9_-]+"));
+        assertEquals(42, decoded.getId());
+        assertEquals(last.getFrom(), decoded.getFrom());
+        assertEquals(last.getSubject(), decoded.getSubject());
+        assertEquals(2, decoded.getPriority());
+        assertEquals(last.getTimestamp(), decoded.getTimestamp());
+        assertNull(decoded.getBody());
+    }
+
+    @Test
+    void cursorOfAnotherSortOrGarbageIsRejected() {
+        mail last = new mail();
+        last.setId(1);
+        String cursor = MailCursor.encode("date-desc", last);
+
+        assertThrows(IllegalArgumentException.class, () -> MailCursor.decode(cursor, "date-asc"));
+        assertThrows(IllegalArgumentException.class, () -> MailCursor.decode("not a cursor!", "date-desc"));
+        assertThrows(IllegalArgumentException.class, () -> MailCursor.decode("bm90IGpzb24", "date-desc"));
+    }
+
+    @Test
+    void totalOrderBreaksTiesById() {
+        assertSame(MailTimeOrder.NEWEST_FIRST, MailCursor.totalOrder(MailTimeOrder.NEWEST_FIRST));
+        mail a = new mail();
+        a.setId(1);
+        a.setPriority(3);
+        mail b = new mail();
+        b.setId(2);
+        b.setPriority(3);
+        assertTrue(MailCursor.totalOrder(Comparator.comparingInt(mail::getPriority)).compare(a, b) < 0);
+    }
+}
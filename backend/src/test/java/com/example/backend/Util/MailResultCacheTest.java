@@ -0,0 +1,64 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Listing results served while the folder version doesn't change, bounded by weight
+ */
+class MailResultCacheTest {
+
+    @Test
+    void resultIsServedUntilTheVersionChanges() {
+        MailResultCache cache = new MailResultCache(100);
+        AtomicInteger loads = new AtomicInteger();
+        List<Object> key = List.of("alice@example.com", "inbox", "date-desc");
+
+        List<mail> first = cache.get("inbox", key, 1, () -> mails(3, loads));
+        first.clear();
+        List<mail> second = cache.get("inbox", key, 1, () -> mails(3, loads));
+        List<mail> third = cache.get("inbox", key, 2, () -> mails(4, loads));
+
+        assertEquals(3, second.size());
+        assertEquals(4, third.size());
+        assertEquals(2, loads.get());
+        assertEquals(1L, cache.getStats().get("inbox.hits").longValue());
+        assertEquals(2L, cache.getStats().get("inbox.misses").longValue());
+        // a result computed at an older version doesn't replace a newer one
+        cache.get("inbox", key, 1, () -> mails(1, loads));
+        assertEquals(4, cache.get("inbox", key, 2, () -> mails(5, loads)).size());
+    }
+
+    @Test
+    void weightIsBounded() {
+        MailResultCache cache = new MailResultCache(10);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("sent", List.of("a"), 1, () -> mails(6, loads));
+        cache.get("sent", List.of("b"), 1, () -> mails(6, loads));
+        cache.get("sent", List.of("c"), 1, () -> mails(11, loads));
+
+        assertEquals(1L, cache.getStats().get("entries").longValue());
+        assertEquals(6L, cache.getStats().get("weight").longValue());
+        assertEquals(1L, cache.getStats().get("evictions").longValue());
+        cache.get("sent", List.of("b"), 1, () -> mails(6, loads));
+        assertEquals(3, loads.get());
+    }
+
+    private static List<mail> mails(int count, AtomicInteger loads) {
+        loads.incrementAndGet();
+        List<mail> mails = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            mail email = new mail();
+            email.setId(i);
+            mails.add(email);
+        }
+        return mails;
+    }
+}
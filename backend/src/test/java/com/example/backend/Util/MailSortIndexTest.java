@@ -0,0 +1,81 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Trees kept up to date by the writes, built once per folder and order, least recently used ones dropped over the budget
+ */
+class MailSortIndexTest {
+
+    private static final MailSortOrder BY_PRIORITY = new MailSortOrder("priority-asc", Comparator.comparingInt(mail::getPriority));
+    private static final MailSortOrder BY_SUBJECT = new MailSortOrder("subject-asc", Comparator.comparing(mail::getSubject));
+
+    @Test
+    void writesUpdateTheBuiltOrderWithoutARebuild() {
+        MailSortIndex index = new MailSortIndex(1000);
+        List<mail> folder = mails(1, 2, 3);
+        // priorities 2, 3, 4
+        assertArrayEquals(new int[]{1, 2, 3}, index.ids("alice", "inbox", BY_PRIORITY, null, () -> folder));
+
+        index.added("alice", "inbox", mail(4, 1));
+        index.added("alice", "inbox", mail(2, 4));
+        index.removed("alice", "inbox", 1);
+        // equal priorities: the id breaks the tie
+
+        assertArrayEquals(new int[]{4, 2, 3}, index.ids("alice", "inbox", BY_PRIORITY, null, () -> fail("rebuilt")));
+        assertArrayEquals(new int[]{3}, index.ids("alice", "inbox", BY_PRIORITY, mail(2, 4), () -> fail("rebuilt")));
+        assertEquals(1L, index.getStats().get("builds").longValue());
+    }
+
+    @Test
+    void leastRecentlyUsedOrdersAreDroppedOverTheBudget() {
+        MailSortIndex index = new MailSortIndex(5);
+        List<mail> folder = mails(1, 2, 3);
+        index.ids("alice", "inbox", BY_PRIORITY, null, () -> folder);
+        index.ids("alice", "inbox", BY_SUBJECT, null, () -> folder);
+
+        // 6 mails over 5: the priority order went first
+        assertEquals(1L, index.getStats().get("evictions").longValue());
+        assertEquals(3L, index.getStats().get("entries").longValue());
+        index.ids("alice", "inbox", BY_SUBJECT, null, () -> fail("rebuilt"));
+        index.ids("alice", "inbox", BY_PRIORITY, null, () -> folder);
+        assertEquals(3L, index.getStats().get("builds").longValue());
+        // bigger than the whole budget: not kept, the caller sorts
+        assertNull(index.ids("bob", "inbox", BY_PRIORITY, null, () -> mails(1, 2, 3, 4, 5, 6)));
+    }
+
+    @Test
+    void aPageTakesOnlyItsIds() {
+        MailSortIndex index = new MailSortIndex(1000);
+        List<mail> folder = mails(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+
+        assertArrayEquals(new int[]{1, 2, 3}, index.ids("alice", "inbox", BY_PRIORITY, null, 3, () -> folder));
+        assertArrayEquals(new int[]{5, 6, 7}, index.ids("alice", "inbox", BY_PRIORITY, mail(4, 5), 3, () -> fail("rebuilt")));
+        // the end of the folder: what is left
+        assertArrayEquals(new int[]{10}, index.ids("alice", "inbox", BY_PRIORITY, mail(9, 10), 3, () -> fail("rebuilt")));
+        assertEquals(10, index.ids("alice", "inbox", BY_PRIORITY, null, 0, () -> fail("rebuilt")).length);
+    }
+
+    private static List<mail> mails(int... ids) {
+        List<mail> mails = new ArrayList<>();
+        for (int id : ids) {
+            mails.add(mail(id, id + 1));
+        }
+        return mails;
+    }
+
+    private static mail mail(int id, int priority) {
+        mail email = new mail();
+        email.setId(id);
+        email.setPriority(priority);
+        email.setSubject("subject " + (10 - id));
+        return email;
+    }
+}
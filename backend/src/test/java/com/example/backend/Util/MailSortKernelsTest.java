@@ -0,0 +1,90 @@
+package com.example.backend.Util;
+
+import com.example.backend.StrategyPattern.EmailSortStrategy;
+import com.example.backend.StrategyPattern.SortByDateStrategy;
+import com.example.backend.StrategyPattern.SortByPriorityStrategy;
+import com.example.backend.StrategyPattern.SortBySenderStrategy;
+import com.example.backend.StrategyPattern.SortBySubjectStrategy;
+import com.example.backend.model.mail;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The sort kernels of the strategies give exactly the order of their comparators (the one MailSortIndex keeps)
+ */
+class MailSortKernelsTest {
+
+    @Test
+    void everyStrategySortsLikeItsOrder() {
+        List<EmailSortStrategy> strategies = List.of(
+                new SortByDateStrategy(true), new SortByDateStrategy(false),
+                new SortByPriorityStrategy(true), new SortByPriorityStrategy(false),
+                new SortBySenderStrategy(true), new SortBySenderStrategy(false),
+                new SortBySubjectStrategy(true), new SortBySubjectStrategy(false));
+        List<mail> mails = randomMails(5_000);
+        for (EmailSortStrategy strategy : strategies) {
+            List<mail> expected = new ArrayList<>(mails);
+            expected.sort(strategy.getOrder());
+            List<mail> sorted = new ArrayList<>(mails);
+
+            strategy.sort(sorted);
+
+            assertEquals(expected, sorted, strategy.getStrategyName());
+        }
+    }
+
+    @Test
+    void priorityTiesAreNewestFirst() {
+        List<mail> mails = new ArrayList<>(List.of(mail(1, 2, 10), mail(2, 1, 5), mail(3, 2, 30), mail(4, 1, 20)));
+
+        new SortByPriorityStrategy(true).sort(mails);
+
+        assertEquals(List.of(4, 2, 3, 1), mails.stream().map(mail::getId).toList());
+    }
+
+    @Test
+    void collationKeysCompareLikeCaseInsensitiveOrder() {
+        String[] texts = {"", "a", "A", "ab", "Ab", "aB", "b", "B", "Z", "_", "[", "`", "{", "bob@x.org", "Bob@X.org",
+                "\u00e9t\u00e9", "\u00c9T\u00c9", "\u0130stanbul", "istanbul", "\u017fun", "sun", "\u00df", "SS",
+                "\u03a3\u03bf\u03c6\u03af\u03b1", "\u03c3\u03bf\u03c6\u03af\u03b1", "\u03c2"};
+        for (String a : texts) {
+            for (String b : texts) {
+                assertEquals(Integer.signum(String.CASE_INSENSITIVE_ORDER.compare(a, b)),
+                        Integer.signum(MailSortKernels.collationKey(a).compareTo(MailSortKernels.collationKey(b))),
+                        a + " / " + b);
+            }
+        }
+        assertSame("already folded", MailSortKernels.collationKey("already folded"));
+    }
+
+    private static List<mail> randomMails(int count) {
+        Random random = new Random(11);
+        String[] senders = {"alice@example.com", "Alice@Example.com", "bob@example.com", "Carol@x.org", "\u00e9lise@x.org"};
+        List<mail> mails = new ArrayList<>();
+        for (int id = 1; id <= count; id++) {
+            // duplicate dates, dates before 1970, no date, no sender or subject
+            mail email = mail(id, 1 + random.nextInt(4), random.nextInt(2_000) - 500);
+            if (random.nextInt(20) == 0) {
+                email.setTimestamp(null);
+            }
+            email.setFrom(random.nextInt(15) == 0 ? null : senders[random.nextInt(senders.length)]);
+            email.setSubject(random.nextInt(15) == 0 ? null : (random.nextBoolean() ? "Re: " : "re: ") + random.nextInt(50));
+            mails.add(email);
+        }
+        return mails;
+    }
+
+    private static mail mail(int id, int priority, int days) {
+        mail email = new mail();
+        email.setId(id);
+        email.setPriority(priority);
+        email.setTimestamp(LocalDateTime.of(1970, 1, 1, 0, 0).plusDays(days / 4).plusMinutes(days));
+        return email;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Ids in date order out of the sorted times of a folder, a page copies only its own ids
+ */
+class MailTimeIndexTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 3, 1, 10, 0);
+
+    @Test
+    void aPageTakesOnlyItsIdsInEitherDirection() {
+        MailTimeIndex index = new MailTimeIndex(10);
+        // mail n at T0 + n hours, 8 has no date (last oldest first, first newest first)
+        List<mail> folder = new ArrayList<>();
+        for (int id = 1; id <= 8; id++) {
+            folder.add(mail(id, id == 8 ? null : T0.plusHours(id)));
+        }
+
+        assertArrayEquals(new int[]{1, 2, 3}, index.idsAfter("alice", "inbox", null, null, false, null, 3, () -> folder));
+        assertArrayEquals(new int[]{8, 7, 6}, index.idsAfter("alice", "inbox", null, null, true, null, 3, () -> fail("rebuilt")));
+        assertArrayEquals(new int[]{5, 4, 3}, index.idsAfter("alice", "inbox", null, null, true, mail(6, T0.plusHours(6)), 3,
+                () -> fail("rebuilt")));
+        assertArrayEquals(new int[]{7, 8}, index.idsAfter("alice", "inbox", null, null, false, mail(6, T0.plusHours(6)), 3,
+                () -> fail("rebuilt")));
+        // within a range, newest first: the newest of the range
+        assertArrayEquals(new int[]{5, 4}, index.idsAfter("alice", "inbox", T0.plusHours(2), T0.plusHours(5), true, null, 2,
+                () -> fail("rebuilt")));
+        assertEquals(8, index.ids("alice", "inbox", null, null, true, () -> fail("rebuilt")).length);
+    }
+
+    private static mail mail(int id, LocalDateTime timestamp) {
+        mail email = new mail();
+        email.setId(id);
+        email.setTimestamp(timestamp);
+        return email;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * json -> binary -> json conversion of a users directory keeps every mail, folds pending journals in,
+ * and leaves the files that aren't mail folders alone; the format of a file is read from its first bytes
+ */
+class MailboxFormatToolTest {
+
+    private static final Type MAIL_LIST_TYPE = new TypeToken<List<mail>>(){}.getType();
+    private static final String USER = "alice@example.com";
+    private static final String CONTACTS = "[\n  {\"name\": \"Bob\"}\n]";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void roundTripKeepsEveryMail() throws IOException {
+        JsonFileManager json = manager(MailStorageFormat.JSON, true);
+        assertTrue(json.createUserFolder(USER));
+        String inbox = json.getUserFolderPath(USER, "inbox");
+        String custom = json.getUserFolderPath(USER, "folder_3");
+        List<mail> inboxMails = new ArrayList<>(List.of(BinaryMailCodecTest.fullMail(1), BinaryMailCodecTest.fullMail(2)));
+        assertTrue(json.writeListToFile(inbox, inboxMails));
+        assertTrue(json.writeListToFile(custom, List.of(BinaryMailCodecTest.fullMail(7))));
+        // left in the journal, not yet in the folder file
+        mail pending = BinaryMailCodecTest.fullMail(3);
+        assertTrue(json.appendMailToFile(inbox, pending));
+        inboxMails.add(pending);
+        Path contacts = Path.of(json.getUserFolderPath(USER, "contacts"));
+        Files.writeString(contacts, CONTACTS);
+
+        assertEquals(0, MailboxFormatTool.convertAll(tempDir.toFile(), MailStorageFormat.BINARY));
+
+        assertTrue(isBinary(inbox));
+        assertTrue(isBinary(custom));
+        assertFalse(new MailboxJournal(true, new AtomicFileWriter(FsyncPolicy.NEVER)).journalFileFor(new File(inbox)).exists());
+        assertEquals(CONTACTS, Files.readString(contacts));
+        // a server still configured for json reads the binary files
+        JsonFileManager reader = manager(MailStorageFormat.JSON, false);
+        BinaryMailCodecTest.assertSameMails(inboxMails, reader.readListFromFile(inbox, MAIL_LIST_TYPE));
+
+        assertEquals(0, MailboxFormatTool.convertAll(tempDir.toFile(), MailStorageFormat.JSON));
+
+        assertFalse(isBinary(inbox));
+        assertEquals('[', Files.readString(Path.of(inbox)).trim().charAt(0));
+        assertEquals(CONTACTS, Files.readString(contacts));
+        BinaryMailCodecTest.assertSameMails(inboxMails, manager(MailStorageFormat.JSON, false).readListFromFile(inbox, MAIL_LIST_TYPE));
+        BinaryMailCodecTest.assertSameMails(List.of(BinaryMailCodecTest.fullMail(7)),
+                manager(MailStorageFormat.JSON, false).readListFromFile(custom, MAIL_LIST_TYPE));
+    }
+
+    @Test
+    void jsonFileIsReadAsJsonByABinaryServer() {
+        JsonFileManager json = manager(MailStorageFormat.JSON, false);
+        assertTrue(json.createUserFolder(USER));
+        String sent = json.getUserFolderPath(USER, "sent");
+        assertTrue(json.writeListToFile(sent, List.of(BinaryMailCodecTest.fullMail(5))));
+
+        JsonFileManager binary = manager(MailStorageFormat.BINARY, false);
+
+        assertFalse(isBinary(sent));
+        BinaryMailCodecTest.assertSameMails(List.of(BinaryMailCodecTest.fullMail(5)), binary.readListFromFile(sent, MAIL_LIST_TYPE));
+        // the next write switches the folder to the configured format
+        assertTrue(binary.writeListToFile(sent, List.of(BinaryMailCodecTest.fullMail(6))));
+        assertTrue(isBinary(sent));
+    }
+
+    private JsonFileManager manager(MailStorageFormat format, boolean journal) {
+        AtomicFileWriter writer = new AtomicFileWriter(FsyncPolicy.NEVER);
+        return new JsonFileManager(new MailboxCache(0), new MailboxJournal(journal, writer), writer, format,
+                new MappedFileCache(0, 0), new WriteCoalescer(0, 1, DurabilityMode.COMMIT),
+                new UserDirectoryLayout(tempDir.toString(), 0));
+    }
+
+    private static boolean isBinary(String path) {
+        try {
+            byte[] bytes = Files.readAllBytes(Path.of(path));
+            return BinaryMailCodec.hasMagic(bytes, bytes.length);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.backend.Util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Striped mailbox locks: opposing multi-mailbox operations never deadlock, a stripe is taken once per operation,
+ * and a handle gives back every lock it took
+ */
+class MailboxLockManagerTest {
+
+    private static final String ALICE_INBOX = MailboxLockManager.mailbox("alice@example.com", "inbox");
+    private static final String BOB_INBOX = MailboxLockManager.mailbox("bob@example.com", "inbox");
+
+    @Test
+    void opposingTwoMailboxOperationsNeverDeadlock() throws Exception {
+        // few stripes: the two mailboxes and the counter below share them with other operations
+        MailboxLockManager locks = new MailboxLockManager(4);
+        try (MailboxLockManager.Handle handle = locks.write(ALICE_INBOX, BOB_INBOX)) {
+            // two stripes: the order they are taken in matters
+            assertEquals(2, handle.stripes());
+        }
+        int threads = 16;
+        int rounds = 2000;
+        int[] moved = {0};
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            // a deadlocked thread must not keep the test JVM alive
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            // A -> B for half of them (a move), B -> A for the other half (the reply)
+            String[] mailboxes = t % 2 == 0 ? new String[]{ALICE_INBOX, BOB_INBOX} : new String[]{BOB_INBOX, ALICE_INBOX};
+            done.add(pool.submit(() -> {
+                for (int i = 0; i < rounds; i++) {
+                    try (MailboxLockManager.Handle handle = locks.write(mailboxes)) {
+                        moved[0]++;
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : done) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } catch (TimeoutException e) {
+            fail("opposing acquisitions deadlocked");
+        } finally {
+            pool.shutdownNow();
+        }
+        // exclusive: no increment was lost
+        assertEquals(threads * rounds, moved[0]);
+    }
+
+    @Test
+    void mailboxesSharingAStripeAreLockedOnce() {
+        MailboxLockManager single = new MailboxLockManager(1);
+        try (MailboxLockManager.Handle handle = single.write(ALICE_INBOX, BOB_INBOX, ALICE_INBOX)) {
+            assertEquals(1, handle.stripes());
+        }
+        MailboxLockManager many = new MailboxLockManager(64);
+        try (MailboxLockManager.Handle handle = many.read(ALICE_INBOX, ALICE_INBOX)) {
+            assertEquals(1, handle.stripes());
+        }
+    }
+
+    @Test
+    void stripeCountsRoundUpToAPowerOfTwo() {
+        assertEquals(1, new MailboxLockManager(0).getStripeCount());
+        assertEquals(1, new MailboxLockManager(1).getStripeCount());
+        assertEquals(8, new MailboxLockManager(5).getStripeCount());
+        assertEquals(64, new MailboxLockManager(64).getStripeCount());
+        assertEquals(128, new MailboxLockManager(65).getStripeCount());
+    }
+
+    @Test
+    void aHandleReleasesTheLocksItTook() throws Exception {
+        MailboxLockManager locks = new MailboxLockManager(1);
+        ExecutorService other = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<?> writer;
+            try (MailboxLockManager.Handle handle = locks.write(ALICE_INBOX, BOB_INBOX)) {
+                writer = other.submit(() -> locks.write(BOB_INBOX).close());
+                // held: the other writer waits
+                assertThrows(TimeoutException.class, () -> writer.get(100, TimeUnit.MILLISECONDS));
+            }
+            writer.get(5, TimeUnit.SECONDS);
+
+            // readers share, a writer waits for them
+            Future<?> blocked;
+            try (MailboxLockManager.Handle reader = locks.read(ALICE_INBOX)) {
+                other.submit(() -> locks.read(BOB_INBOX).close()).get(5, TimeUnit.SECONDS);
+                blocked = other.submit(() -> locks.write(ALICE_INBOX).close());
+                assertThrows(TimeoutException.class, () -> blocked.get(100, TimeUnit.MILLISECONDS));
+            }
+            blocked.get(5, TimeUnit.SECONDS);
+        } finally {
+            other.shutdownNow();
+        }
+    }
+}
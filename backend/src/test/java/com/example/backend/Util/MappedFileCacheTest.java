@@ -0,0 +1,79 @@
+package com.example.backend.Util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Mappings are reused while the file is unchanged, dropped as soon as it is rewritten,
+ * and never more bytes than the budget are mapped, released or not
+ */
+class MappedFileCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void smallFilesAreReadNormally() throws IOException {
+        MappedFileCache cache = new MappedFileCache(16, 1000);
+
+        assertNull(cache.map(file("inbox.json", 10)));
+        assertEquals(0L, cache.getStats().get("mapped").longValue());
+    }
+
+    @Test
+    void rewrittenFileDropsItsOldMapping() throws IOException {
+        MappedFileCache cache = new MappedFileCache(16, 1000);
+        File inbox = file("inbox.json", 40);
+        assertEquals(40, cache.map(inbox).remaining());
+        cache.map(inbox);
+        assertEquals(1L, cache.getStats().get("hits").longValue());
+
+        // atomic rewrite: new inode, other size
+        Path temp = tempDir.resolve("inbox.json.tmp");
+        Files.writeString(temp, "b".repeat(60));
+        Files.move(temp, inbox.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ByteBuffer mapped = cache.map(inbox);
+
+        assertEquals(60, mapped.remaining());
+        assertEquals('b', mapped.get());
+        assertEquals(1L, cache.getStats().get("files").longValue());
+        assertEquals(60L, cache.getStats().get("cachedBytes").longValue());
+
+        cache.invalidate(inbox);
+        assertEquals(0L, cache.getStats().get("files").longValue());
+        assertEquals(0L, cache.getStats().get("cachedBytes").longValue());
+    }
+
+    @Test
+    void mappedBytesStayWithinTheBudget() throws IOException {
+        MappedFileCache cache = new MappedFileCache(16, 100);
+        ByteBuffer held = cache.map(file("inbox.json", 60));
+        assertNotNull(held);
+
+        // the inbox mapping is dropped from the cache but a reader still holds it: no room for another 60 bytes
+        assertNull(cache.map(file("trash.json", 60)));
+        assertEquals(0L, cache.getStats().get("cachedBytes").longValue());
+        assertEquals(60L, cache.getStats().get("pinnedBytes").longValue());
+        assertEquals(1L, cache.getStats().get("refused").longValue());
+        // a file that fits next to it is mapped
+        assertNotNull(cache.map(file("sent.json", 30)));
+        assertEquals(90L, cache.getStats().get("pinnedBytes").longValue());
+        assertEquals('a', held.get());
+    }
+
+    private File file(String name, int size) throws IOException {
+        Path path = tempDir.resolve(name);
+        Files.write(path, "a".repeat(size).getBytes(StandardCharsets.US_ASCII));
+        return path.toFile();
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.backend.Util;
+
+import com.example.backend.model.mail;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Parallel filter and sort against the sequential ones on a list big enough to be cut into chunks
+ */
+class ParallelMailProcessorTest {
+
+    private final ParallelMailProcessor parallel = new ParallelMailProcessor(4, 0);
+
+    @Test
+    void parallelFilterKeepsTheListOrder() {
+        List<mail> mails = randomMails(20_000);
+        Predicate<mail> urgent = email -> email.getPriority() == 1;
+        List<mail> expected = new ArrayList<>();
+        for (mail email : mails) {
+            if (urgent.test(email)) {
+                expected.add(email);
+            }
+        }
+
+        List<mail> kept = parallel.filter(mails, urgent);
+
+        assertEquals(expected, kept);
+        assertEquals(1L, parallel.getStats().get("parallelFilters").longValue());
+    }
+
+    @Test
+    void parallelSortIsStableLikeListSort() {
+        List<mail> mails = randomMails(20_000);
+        // few distinct keys: many ties, the merge must keep them in list order
+        Comparator<mail> byPriority = Comparator.comparingInt(mail::getPriority);
+        List<mail> expected = new ArrayList<>(mails);
+        expected.sort(byPriority);
+
+        parallel.sort(mails, byPriority);
+
+        assertEquals(expected, mails);
+        assertEquals(1L, parallel.getStats().get("parallelSorts").longValue());
+    }
+
+    @Test
+    void smallListsStayOnTheCallingThread() {
+        ParallelMailProcessor processor = new ParallelMailProcessor(4, 50_000);
+        List<mail> mails = randomMails(10_000);
+
+        processor.sort(mails, Comparator.comparingInt(mail::getPriority));
+        processor.filter(mails, email -> true);
+
+        assertFalse(processor.isParallel(mails.size()));
+        assertEquals(0L, processor.getStats().get("parallelSorts").longValue());
+        assertEquals(0L, processor.getStats().get("parallelFilters").longValue());
+    }
+
+    private static List<mail> randomMails(int count) {
+        Random random = new Random(7);
+        List<mail> mails = new ArrayList<>();
+        for (int id = 1; id <= count; id++) {
+            mail email = new mail();
+            email.setId(id);
+            email.setPriority(1 + random.nextInt(4));
+            mails.add(email);
+        }
+        return mails;
+    }
+}
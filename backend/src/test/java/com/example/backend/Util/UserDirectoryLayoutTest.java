@@ -0,0 +1,120 @@
+package com.example.backend.Util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hashed fan-out of user directories and the lazy move of flat users
+ */
+class UserDirectoryLayoutTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void flatLayoutKeepsTheOriginalPaths() {
+        UserDirectoryLayout layout = new UserDirectoryLayout(tempDir.toString(), 0);
+
+        assertEquals(tempDir + "/alice@gmail.com", layout.userDirectory("alice@gmail.com"));
+    }
+
+    @Test
+    void fanOutPutsUsersUnderStableHexBuckets() {
+        UserDirectoryLayout layout = new UserDirectoryLayout(tempDir.toString(), 2);
+
+        String bucket = layout.bucketOf("alice@gmail.com");
+        assertTrue(bucket.matches("[0-9a-f]{2}/[0-9a-f]{2}/"), bucket);
+        assertEquals(bucket, new UserDirectoryLayout(tempDir.toString(), 2).bucketOf("alice@gmail.com"));
+        assertEquals(tempDir + "/" + bucket + "alice@gmail.com", layout.userDirectory("alice@gmail.com"));
+    }
+
+    @Test
+    void bucketsSpreadUsersOfTheSameDomain() {
+        UserDirectoryLayout layout = new UserDirectoryLayout(tempDir.toString(), 1);
+        boolean[] used = new boolean[256];
+        int distinct = 0;
+        for (int i = 0; i < 2000; i++) {
+            int b = Integer.parseInt(layout.bucketOf("user" + i + "@gmail.com").substring(0, 2), 16);
+            if (!used[b]) {
+                used[b] = true;
+                distinct++;
+            }
+        }
+        // 2000 users over 256 buckets leave (almost) none empty
+        assertTrue(distinct > 240, "buckets used: " + distinct);
+    }
+
+    @Test
+    void flatUserIsMovedOnFirstAccess() throws Exception {
+        Path flat = tempDir.resolve("alice@gmail.com");
+        Files.createDirectories(flat);
+        Files.writeString(flat.resolve("inbox.json"), "[]");
+        UserDirectoryLayout layout = new UserDirectoryLayout(tempDir.toString(), 2);
+
+        String moved = layout.userDirectory("alice@gmail.com");
+
+        assertFalse(Files.exists(flat));
+        assertEquals("[]", Files.readString(Path.of(moved, "inbox.json")));
+        assertEquals(moved, layout.userDirectory("alice@gmail.com"));
+        assertEquals(1L, layout.getStats().get("migratedUsers").longValue());
+    }
+
+    @Test
+    void unknownUserIsNeitherCreatedNorFound() {
+        UserDirectoryLayout layout = new UserDirectoryLayout(tempDir.toString(), 2);
+
+        assertFalse(layout.exists("nobody@gmail.com"));
+        assertFalse(new File(layout.userDirectory("nobody@gmail.com")).exists());
+        assertEquals(0L, layout.getStats().get("migratedUsers").longValue());
+    }
+
+    @Test
+    void usersListsMovedAndNotYetMovedUsers() throws Exception {
+        Files.createDirectories(tempDir.resolve("flat@gmail.com"));
+        UserDirectoryLayout layout = new UserDirectoryLayout(tempDir.toString(), 2);
+        Files.createDirectories(Path.of(layout.userDirectory("hashed@gmail.com")));
+        Files.createDirectories(tempDir.resolve("moved@gmail.com"));
+        assertTrue(layout.exists("moved@gmail.com"));
+
+        List<String> users = new ArrayList<>(layout.users());
+        Collections.sort(users);
+        assertEquals(List.of("flat@gmail.com", "hashed@gmail.com", "moved@gmail.com"), users);
+        // listing moves nothing
+        assertTrue(Files.isDirectory(tempDir.resolve("flat@gmail.com")));
+    }
+
+    @Test
+    void concurrentFirstAccessesMoveTheUserOnce() throws Exception {
+        Path flat = tempDir.resolve("alice@gmail.com");
+        Files.createDirectories(flat);
+        Files.writeString(flat.resolve("sent.json"), "[]");
+        UserDirectoryLayout layout = new UserDirectoryLayout(tempDir.toString(), 2);
+
+        List<String> resolved = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> resolved.add(layout.userDirectory("alice@gmail.com")));
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        String target = tempDir + "/" + layout.bucketOf("alice@gmail.com") + "alice@gmail.com";
+        for (String path : resolved) {
+            assertEquals(target, path);
+        }
+        assertTrue(Files.exists(Path.of(target, "sent.json")));
+        assertEquals(1L, layout.getStats().get("migratedUsers").longValue());
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.backend.Util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Group commit under concurrent writers: changes made while a file is being written share the next write,
+ * every file keeps its submission order, other files don't wait, and every change of a failed write is told so
+ */
+class WriteCoalescerTest {
+
+    @TempDir
+    Path tempDir;
+
+    //batches as the writer received them: ids of the records
+    private final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void changesMadeDuringAWriteShareTheNextOne() throws Exception {
+        WriteCoalescer coalescer = new WriteCoalescer(0, 64, DurabilityMode.COMMIT);
+        File inbox = file("inbox.json");
+        CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        WriteCoalescer.BatchWriter writer = (file, records) -> {
+            if (batches.isEmpty()) {
+                firstWriteStarted.countDown();
+                await(release);
+            }
+            return record(records);
+        };
+
+        CompletableFuture<Boolean> first = CompletableFuture.supplyAsync(
+                () -> coalescer.submit(inbox, MailboxJournal.Record.remove(0), writer, DurabilityMode.COMMIT).join());
+        assertTrue(firstWriteStarted.await(5, TimeUnit.SECONDS));
+        List<CompletableFuture<Boolean>> others = new ArrayList<>();
+        for (int id = 1; id <= 10; id++) {
+            int change = id;
+            others.add(CompletableFuture.supplyAsync(
+                    () -> coalescer.submit(inbox, MailboxJournal.Record.remove(change), writer, DurabilityMode.COMMIT).join(),
+                    command -> new Thread(command).start()));
+        }
+        // all ten queued behind the write in progress
+        while (coalescer.getStats().get("logicalWrites") < 11) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        for (CompletableFuture<Boolean> other : others) {
+            assertTrue(other.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, batches.size());
+        assertEquals(List.of(0), batches.get(0));
+        assertEquals(10, batches.get(1).size());
+        assertEquals(2L, coalescer.getStats().get("physicalWrites").longValue());
+        assertEquals(9L, coalescer.getStats().get("foldedWrites").longValue());
+    }
+
+    @Test
+    void everyWriterKeepsItsOrder() throws Exception {
+        WriteCoalescer coalescer = new WriteCoalescer(1, 8, DurabilityMode.COMMIT);
+        File inbox = file("inbox.json");
+        int writers = 4;
+        int changes = 200;
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int base = w * changes;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < changes; i++) {
+                    // mixed durabilities on the same file
+                    DurabilityMode durability = i % 3 == 0 ? DurabilityMode.FIRE_AND_FORGET : DurabilityMode.COMMIT;
+                    coalescer.submit(inbox, MailboxJournal.Record.remove(base + i), (file, records) -> record(records),
+                            durability);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        coalescer.flush(inbox);
+
+        List<Integer> written = new ArrayList<>();
+        synchronized (batches) {
+            batches.forEach(written::addAll);
+        }
+        assertEquals(writers * changes, written.size());
+        int[] last = new int[writers];
+        Arrays.fill(last, -1);
+        for (int id : written) {
+            int w = id / changes;
+            assertTrue(id % changes > last[w], "out of order: " + id);
+            last[w] = id % changes;
+        }
+        assertTrue(coalescer.getStats().get("largestBatch") <= 8 + writers);
+    }
+
+    @Test
+    void otherFilesDontWaitForABlockedWrite() throws Exception {
+        WriteCoalescer coalescer = new WriteCoalescer(0, 64, DurabilityMode.COMMIT);
+        CountDownLatch inboxBlocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> inbox = CompletableFuture.supplyAsync(() -> coalescer.submit(file("inbox.json"),
+                MailboxJournal.Record.remove(1), (file, records) -> {
+                    inboxBlocked.countDown();
+                    await(release);
+                    return true;
+                }, DurabilityMode.COMMIT).join());
+        assertTrue(inboxBlocked.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Boolean> trash = CompletableFuture.supplyAsync(() -> coalescer.submit(file("trash.json"),
+                MailboxJournal.Record.remove(2), (file, records) -> record(records), DurabilityMode.COMMIT).join());
+
+        assertTrue(trash.get(5, TimeUnit.SECONDS));
+        assertFalse(inbox.isDone());
+        release.countDown();
+        assertTrue(inbox.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void everyChangeOfAFailedWriteIsToldSo() {
+        // an hour: only the flush writes
+        WriteCoalescer coalescer = new WriteCoalescer(3_600_000, 64, DurabilityMode.FIRE_AND_FORGET);
+        File inbox = file("inbox.json");
+        WriteCoalescer.BatchWriter failing = (file, records) -> {
+            record(records);
+            return !records.stream().anyMatch(record -> record.getId() == 2);
+        };
+        CompletableFuture<Boolean> one = coalescer.submit(inbox, MailboxJournal.Record.remove(1), failing,
+                DurabilityMode.FIRE_AND_FORGET);
+        CompletableFuture<Boolean> two = coalescer.submit(inbox, MailboxJournal.Record.remove(2), failing,
+                DurabilityMode.FIRE_AND_FORGET);
+        assertFalse(one.isDone());
+
+        coalescer.flush(inbox);
+
+        assertFalse(one.join());
+        assertFalse(two.join());
+        assertEquals(List.of(List.of(1, 2)), batches);
+        // the next batch is written on its own
+        assertTrue(coalescer.submit(inbox, MailboxJournal.Record.remove(3), failing, DurabilityMode.COMMIT).join());
+        // a writer that throws fails its batch too
+        assertFalse(coalescer.submit(file("trash.json"), MailboxJournal.Record.remove(4), (file, records) -> {
+            throw new IllegalStateException("disk gone");
+        }, DurabilityMode.COMMIT).join());
+        assertEquals(2L, coalescer.getStats().get("failedWrites").longValue());
+    }
+
+    private boolean record(List<MailboxJournal.Record> records) {
+        List<Integer> ids = new ArrayList<>();
+        for (MailboxJournal.Record record : records) {
+            ids.add(record.getId());
+        }
+        batches.add(ids);
+        return true;
+    }
+
+    private File file(String name) {
+        return tempDir.resolve(name).toFile();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
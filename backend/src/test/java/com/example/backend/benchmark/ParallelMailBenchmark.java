@@ -0,0 +1,125 @@
+package com.example.backend.benchmark;
+
+import com.example.backend.DTOS.FilterCriteriaDTO;
+import com.example.backend.StrategyPattern.SortBySenderStrategy;
+import com.example.backend.Util.ParallelMailProcessor;
+import com.example.backend.model.mail;
+import com.example.backend.service.EmailFilterService;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Sequential vs parallel filter and sort of a folder in memory, by folder size
+ * the smallest size where the parallel path wins is the value for mail.parallel.min-size on that machine
+ * (the crossover moves with the number of cores and the cost of the filter, measure on the target hardware)
+ * run: mvn test-compile, then java -cp target/test-classes:target/classes:<test classpath> org.openjdk.jmh.Main ParallelMailBenchmark
+ * not a test: surefire only runs *Test classes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ParallelMailBenchmark {
+
+    @Param({"2500", "10000", "25000", "50000", "100000", "250000"})
+    public int size;
+
+    private List<mail> mails;
+    private Predicate<mail> filter;
+    private Comparator<mail> order;
+    private ParallelMailProcessor sequential;
+    private ParallelMailProcessor parallel;
+
+    @Setup
+    public void setUp() {
+        sequential = new ParallelMailProcessor(1, Integer.MAX_VALUE);
+        // one thread per core (at most 4), every list big enough to be cut goes parallel
+        parallel = new ParallelMailProcessor(0, 0);
+        mails = randomMails(size);
+        // a typical search: a text term over subject, body and sender plus a flag
+        FilterCriteriaDTO criteria = new FilterCriteriaDTO();
+        criteria.setSearchTerm("report");
+        criteria.setHasAttachment(false);
+        filter = new EmailFilterService(sequential).toPredicate(criteria);
+        order = new SortBySenderStrategy(true).getOrder();
+    }
+
+    @TearDown
+    public void tearDown() {
+        sequential.close();
+        parallel.close();
+    }
+
+    @Benchmark
+    public List<mail> filterSequential() {
+        return sequential.filter(mails, filter);
+    }
+
+    @Benchmark
+    public List<mail> filterParallel() {
+        return parallel.filter(mails, filter);
+    }
+
+    @Benchmark
+    public List<mail> sortSequential() {
+        List<mail> copy = new ArrayList<>(mails);
+        sequential.sort(copy, order);
+        return copy;
+    }
+
+    @Benchmark
+    public List<mail> sortParallel() {
+        List<mail> copy = new ArrayList<>(mails);
+        parallel.sort(copy, order);
+        return copy;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Main.main(new String[]{ParallelMailBenchmark.class.getSimpleName()});
+    }
+
+    static List<mail> randomMails(int count) {
+        String[] words = {"meeting", "report", "invoice", "lunch", "project", "update", "weekly", "review", "draft", "budget"};
+        Random random = new Random(42);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        List<mail> mails = new ArrayList<>(count);
+        for (int id = 1; id <= count; id++) {
+            mail email = new mail();
+            email.setId(id);
+            email.setFrom("User" + random.nextInt(500) + "@example.com");
+            email.setSubject(words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)] + " " + id);
+            StringBuilder body = new StringBuilder();
+            for (int w = 0; w < 40; w++) {
+                body.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            email.setBody(body.toString());
+            email.setPriority(1 + random.nextInt(4));
+            email.setStarred(random.nextInt(10) == 0);
+            email.setHasAttachment(random.nextInt(5) == 0);
+            email.setTimestamp(start.plusMinutes(random.nextInt(500_000)));
+            mails.add(email);
+        }
+        return mails;
+    }
+}
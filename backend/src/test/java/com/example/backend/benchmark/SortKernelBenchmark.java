@@ -0,0 +1,147 @@
+package com.example.backend.benchmark;
+
+import com.example.backend.StrategyPattern.SortByDateStrategy;
+import com.example.backend.StrategyPattern.SortByPriorityStrategy;
+import com.example.backend.StrategyPattern.SortBySenderStrategy;
+import com.example.backend.StrategyPattern.SortBySubjectStrategy;
+import com.example.backend.model.mail;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sort kernels of the strategies (MailSortKernels) against sorting with their comparators, by folder size
+ * *Baseline: the comparators the strategies sorted with before the kernels (timestamp or priority alone,
+ * case insensitive text, no tie-breaks; priority: the PriorityQueue fill and drain)
+ * *Comparator: List.sort with getOrder(), the order the kernels give (ties broken by timestamp then id)
+ * *Kernel: the strategy's sort(), same result as *Comparator
+ * run: mvn test-compile, then java -cp target/test-classes:target/classes:<test classpath> org.openjdk.jmh.Main SortKernelBenchmark
+ * not a test: surefire only runs *Test classes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SortKernelBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private List<mail> mails;
+    private final SortByDateStrategy byDate = new SortByDateStrategy(false);
+    private final SortByPriorityStrategy byPriority = new SortByPriorityStrategy(true);
+    private final SortBySenderStrategy bySender = new SortBySenderStrategy(true);
+    private final SortBySubjectStrategy bySubject = new SortBySubjectStrategy(true);
+
+    @Setup
+    public void setUp() {
+        mails = ParallelMailBenchmark.randomMails(size);
+    }
+
+    @Benchmark
+    public List<mail> dateBaseline() {
+        return sorted(Comparator.comparing(mail::getTimestamp,
+                Comparator.nullsLast(Comparator.<LocalDateTime>naturalOrder())).reversed());
+    }
+
+    @Benchmark
+    public List<mail> dateComparator() {
+        return sorted(byDate.getOrder());
+    }
+
+    @Benchmark
+    public List<mail> dateKernel() {
+        List<mail> copy = new ArrayList<>(mails);
+        byDate.sort(copy);
+        return copy;
+    }
+
+    @Benchmark
+    public List<mail> priorityBaseline() {
+        return drained(Comparator.comparingInt(mail::getPriority));
+    }
+
+    @Benchmark
+    public List<mail> priorityQueue() {
+        return drained(byPriority.getOrder());
+    }
+
+    @Benchmark
+    public List<mail> priorityKernel() {
+        List<mail> copy = new ArrayList<>(mails);
+        byPriority.sort(copy);
+        return copy;
+    }
+
+    @Benchmark
+    public List<mail> senderBaseline() {
+        return sorted(Comparator.comparing(mail::getFrom, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)));
+    }
+
+    @Benchmark
+    public List<mail> senderComparator() {
+        return sorted(bySender.getOrder());
+    }
+
+    @Benchmark
+    public List<mail> senderKernel() {
+        List<mail> copy = new ArrayList<>(mails);
+        bySender.sort(copy);
+        return copy;
+    }
+
+    @Benchmark
+    public List<mail> subjectBaseline() {
+        return sorted(Comparator.comparing(mail::getSubject, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)));
+    }
+
+    @Benchmark
+    public List<mail> subjectComparator() {
+        return sorted(bySubject.getOrder());
+    }
+
+    @Benchmark
+    public List<mail> subjectKernel() {
+        List<mail> copy = new ArrayList<>(mails);
+        bySubject.sort(copy);
+        return copy;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Main.main(new String[]{SortKernelBenchmark.class.getSimpleName()});
+    }
+
+    private List<mail> sorted(Comparator<mail> order) {
+        List<mail> copy = new ArrayList<>(mails);
+        copy.sort(order);
+        return copy;
+    }
+
+    private List<mail> drained(Comparator<mail> order) {
+        PriorityQueue<mail> queue = new PriorityQueue<>(order);
+        queue.addAll(mails);
+        List<mail> sorted = new ArrayList<>(mails.size());
+        while (!queue.isEmpty()) {
+            sorted.add(queue.poll());
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.backend.service;
+
+import com.example.backend.DTOS.FilterCriteriaDTO;
+import com.example.backend.FilterPattern.AbstractEmailFilter;
+import com.example.backend.FilterPattern.AttachmentFilter;
+import com.example.backend.FilterPattern.BodyFilter;
+import com.example.backend.FilterPattern.CompiledFilter;
+import com.example.backend.FilterPattern.EmailFilter;
+import com.example.backend.FilterPattern.PriorityFilter;
+import com.example.backend.FilterPattern.SearchFilter;
+import com.example.backend.FilterPattern.StarredFilter;
+import com.example.backend.Util.ParallelMailProcessor;
+import com.example.backend.model.mail;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Criteria compiled into one ordered, cached filter
+ */
+class EmailFilterServiceTest {
+
+    private final EmailFilterService service = new EmailFilterService(new ParallelMailProcessor(1, Integer.MAX_VALUE));
+
+    @Test
+    void compiledFilterKeepsWhatEveryFilterKeeps() {
+        List<mail> mails = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            mails.add(mail(i, i % 3 == 0 ? "Weekly Report " + i : "hello " + i, i % 5 == 0 ? "\u00c9T\u00c9 report" : "body",
+                    i % 2 == 0, 1 + i % 4));
+        }
+        FilterCriteriaDTO criteria = new FilterCriteriaDTO();
+        criteria.setSearchTerm(" REPORT ");
+        criteria.setIsStarred(true);
+        criteria.setPriority(List.of(1, 3));
+        criteria.setBodyContains("\u00e9t\u00e9");
+
+        List<mail> expected = mails.stream()
+                .filter(new SearchFilter(" REPORT ")::matches)
+                .filter(new StarredFilter(true)::matches)
+                .filter(new PriorityFilter(List.of(1, 3))::matches)
+                .filter(new BodyFilter("\u00e9t\u00e9")::matches)
+                .collect(Collectors.toList());
+
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, service.applyFilters(mails, criteria));
+        assertEquals(expected, mails.stream().filter(service.toPredicate(criteria)).collect(Collectors.toList()));
+    }
+
+    @Test
+    void cheapFiltersRunFirstAndInactiveOnesAreDropped() {
+        FilterCriteriaDTO criteria = new FilterCriteriaDTO();
+        criteria.setSearchTerm("report");
+        criteria.setHasAttachment(false);
+        criteria.setSender("   ");
+
+        List<EmailFilter> filters = service.compile(criteria).getFilters();
+
+        assertEquals(2, filters.size());
+        assertTrue(filters.get(0) instanceof AttachmentFilter);
+        assertTrue(filters.get(1) instanceof SearchFilter);
+    }
+
+    @Test
+    void sameCriteriaReuseTheCompiledFilter() {
+        FilterCriteriaDTO first = new FilterCriteriaDTO();
+        first.setSubjectContains("report");
+        first.setDateFrom(LocalDateTime.of(2025, 1, 1, 0, 0));
+        FilterCriteriaDTO second = new FilterCriteriaDTO();
+        second.setSubjectContains("report");
+        second.setDateFrom(LocalDateTime.of(2025, 1, 1, 0, 0));
+
+        CompiledFilter compiled = service.compile(first);
+
+        assertSame(compiled, service.compile(second));
+        second.setIsStarred(true);
+        assertNotSame(compiled, service.compile(second));
+    }
+
+    @Test
+    void criteriaKeepingTheSameMailsHaveTheSameKey() {
+        FilterCriteriaDTO first = new FilterCriteriaDTO();
+        first.setSender(" Boss ");
+        first.setPriority(List.of(3, 1));
+        first.setBodyContains("  ");
+        FilterCriteriaDTO second = new FilterCriteriaDTO();
+        second.setSender("boss");
+        second.setPriority(List.of(1, 3, 1));
+
+        assertEquals(service.criteriaKey(first), service.criteriaKey(second));
+        assertEquals(service.criteriaKey(null), service.criteriaKey(new FilterCriteriaDTO()));
+        second.setPriority(List.of(1));
+        assertNotEquals(service.criteriaKey(first), service.criteriaKey(second));
+    }
+
+    @Test
+    void customFiltersChainAfterTheCriteria() {
+        FilterCriteriaDTO criteria = new FilterCriteriaDTO();
+        criteria.setIsStarred(true);
+        EmailFilter evenIds = new AbstractEmailFilter() {
+            @Override
+            public List<mail> apply(List<mail> emails) {
+                return passToNext(emails.stream().filter(this::matches).collect(Collectors.toList()));
+            }
+
+            @Override
+            public boolean matches(mail email) {
+                return email.getId() % 2 == 0;
+            }
+        };
+        List<mail> mails = List.of(mail(1, "a", "b", true, 1), mail(2, "a", "b", true, 1), mail(4, "a", "b", false, 1));
+
+        List<mail> result = service.buildFilterChain(criteria, evenIds).apply(mails);
+
+        assertEquals(1, result.size());
+        assertEquals(2, result.get(0).getId());
+        // the cached filter itself isn't linked to the custom one
+        assertEquals(2, service.compile(criteria).apply(mails).size());
+    }
+
+    @Test
+    void customFiltersWithoutMatchesStillTestOneMail() {
+        // a filter written against the list-only interface
+        EmailFilter urgent = new AbstractEmailFilter() {
+            @Override
+            public List<mail> apply(List<mail> emails) {
+                return passToNext(emails.stream().filter(email -> email.getPriority() == 1).collect(Collectors.toList()));
+            }
+        };
+
+        assertTrue(urgent.matches(mail(1, "a", "b", false, 1)));
+        assertFalse(urgent.matches(mail(2, "a", "b", false, 3)));
+    }
+
+    private static mail mail(int id, String subject, String body, boolean starred, int priority) {
+        mail email = new mail();
+        email.setId(id);
+        email.setSubject(subject);
+        email.setBody(body);
+        email.setFrom("sender" + id + "@example.com");
+        email.setStarred(starred);
+        email.setPriority(priority);
+        return email;
+    }
+}